@@ -0,0 +1,86 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.io.Serializable;
+
+/**
+ *
+ * BenchmarkKeyType - typy kluczy używanych w benchmarkach.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public enum BenchmarkKeyType {
+
+	/** klucz tekstowy, np. nazwa użytkownika */
+	STRING {
+		@Override
+		public Object createKey(int i) {
+			return "user-" + i;
+		}
+	},
+	/** klucz liczbowy, np. identyfikator encji */
+	LONG {
+		@Override
+		public Object createKey(int i) {
+			return Long.valueOf(i);
+		}
+	},
+	/** klucz złożony, podobny do kluczy regionów encji Hibernate'a */
+	COMPOSITE {
+		@Override
+		public Object createKey(int i) {
+			return new CompositeKey("pl.slawas.entities.SampleEntity", i);
+		}
+	};
+
+	/**
+	 * @param i
+	 *            numer klucza
+	 * @return klucz
+	 */
+	public abstract Object createKey(int i);
+
+	/**
+	 * Klucz złożony z nazwy encji i identyfikatora.
+	 */
+	public static final class CompositeKey implements Serializable {
+
+		private static final long serialVersionUID = 5081622245017155457L;
+
+		private final String entityName;
+
+		private final long id;
+
+		private final int hashCode;
+
+		public CompositeKey(String entityName, long id) {
+			this.entityName = entityName;
+			this.id = id;
+			this.hashCode = 31 * entityName.hashCode() + Long.hashCode(id);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CompositeKey)) {
+				return false;
+			}
+			CompositeKey other = (CompositeKey) obj;
+			return id == other.id && entityName.equals(other.entityName);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public String toString() {
+			return entityName + '#' + id;
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.util.Properties;
+
+import pl.slawas.common.cache.ehcache.EhCacheConfig;
+
+/**
+ *
+ * BenchmarkPool - konfiguracje zasobów regionu budowane przez
+ * {@link pl.slawas.common.cache.ehcache.EhCacheProvider} na podstawie
+ * parametrów {@link EhCacheConfig#PROP_CACHE_HEAP},
+ * {@link EhCacheConfig#PROP_CACHE_OFFHEAP} i {@link EhCacheConfig#PROP_CACHE_DISK}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public enum BenchmarkPool {
+
+	/** tylko sterta - mieści wszystkie klucze benchmarku */
+	HEAP(BenchmarkSupport.KEY_COUNT, 0, 0),
+	/** sterta + off-heap */
+	HEAP_OFFHEAP(BenchmarkSupport.KEY_COUNT / 10, 32, 0),
+	/** sterta + off-heap + dysk */
+	HEAP_OFFHEAP_DISK(BenchmarkSupport.KEY_COUNT / 10, 8, 64);
+
+	private final int heapEntries;
+
+	private final int offHeapMBytes;
+
+	private final int diskMBytes;
+
+	private BenchmarkPool(int heapEntries, int offHeapMBytes, int diskMBytes) {
+		this.heapEntries = heapEntries;
+		this.offHeapMBytes = offHeapMBytes;
+		this.diskMBytes = diskMBytes;
+	}
+
+	/**
+	 * Ustawienie parametrów zasobów regionu.
+	 *
+	 * @param props
+	 *            parametry providera
+	 * @param regionName
+	 *            nazwa regionu
+	 */
+	public void configure(Properties props, String regionName) {
+		props.put(regionName + '.' + EhCacheConfig.PROP_CACHE_HEAP, Integer.toString(heapEntries));
+		if (offHeapMBytes > 0) {
+			props.put(regionName + '.' + EhCacheConfig.PROP_CACHE_OFFHEAP, Integer.toString(offHeapMBytes));
+		}
+		if (diskMBytes > 0) {
+			props.put(regionName + '.' + EhCacheConfig.PROP_CACHE_DISK, Integer.toString(diskMBytes));
+		}
+	}
+
+}
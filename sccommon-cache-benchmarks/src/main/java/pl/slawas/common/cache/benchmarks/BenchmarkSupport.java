@@ -0,0 +1,103 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import pl.slawas.common.cache.CacheConstants;
+import pl.slawas.common.cache.CacheProviderEnum;
+import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.IObjectCacheProvider;
+import pl.slawas.common.cache.ehcache.EhCacheConfig;
+import pl.slawas.common.cache.ehcache.EhCacheProvider;
+
+/**
+ *
+ * BenchmarkSupport - tworzenie i zamykanie providera pamięci podręcznej na
+ * potrzeby benchmarków. Każdy provider dostaje własny katalog warstwy dyskowej,
+ * usuwany po zamknięciu.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class BenchmarkSupport {
+
+	/** Liczba kluczy używanych w benchmarkach */
+	public static final int KEY_COUNT = 10000;
+
+	/** Plik konfiguracji EhCache bez szablonu domyślnego - regiony budowane są z parametrów */
+	public static final String CONFIG_PATH = "/ehcache-benchmark.xml";
+
+	/** Wartość przechowywana w regionach */
+	public static final String VALUE;
+
+	static {
+		StringBuilder value = new StringBuilder(256);
+		while (value.length() < 256) {
+			value.append("sccommon-cache-benchmark;");
+		}
+		VALUE = value.toString();
+	}
+
+	private final Properties props = new Properties();
+
+	private final File persistenceDirectory;
+
+	private IObjectCacheProvider<?> provider;
+
+	public BenchmarkSupport(String providerName) throws IOException {
+		this.persistenceDirectory = Files.createTempDirectory("sccommon-cache-benchmark").toFile();
+		props.put(CacheConstants.PROP_PROVIDER, CacheProviderEnum.EhCache.name());
+		props.put(CacheConstants.PROP_PROVIDER_IMPL, EhCacheProvider.class.getName());
+		props.put(CacheConstants.PROP_PROVIDER_NAME, providerName);
+		props.put(CacheConstants.PROP_CONFIG_PATH, CONFIG_PATH);
+		props.put(EhCacheConfig.PROP_PERSISTENCE_DIRECTORY, persistenceDirectory.getAbsolutePath());
+	}
+
+	/**
+	 * @return parametry providera, regiony należy skonfigurować przed
+	 *         {@link #start()}
+	 */
+	public Properties getProps() {
+		return props;
+	}
+
+	public IObjectCacheProvider<?> start() {
+		this.provider = CacheProviderFactory.getInstance(props);
+		return this.provider;
+	}
+
+	public void stop() {
+		if (provider != null) {
+			provider.close();
+			provider = null;
+		}
+		delete(persistenceDirectory);
+	}
+
+	/**
+	 * @return klucze benchmarku
+	 */
+	public static Object[] createKeys(BenchmarkKeyType keyType) {
+		Object[] keys = new Object[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; i++) {
+			keys[i] = keyType.createKey(i);
+		}
+		return keys;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		if (!file.delete() && file.exists()) {
+			file.deleteOnExit();
+		}
+	}
+
+}
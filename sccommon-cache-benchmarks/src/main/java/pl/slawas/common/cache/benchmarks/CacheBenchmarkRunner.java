@@ -0,0 +1,54 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * CacheBenchmarkRunner - uruchomienie benchmarków dla kolejnych liczb wątków.
+ * Wyniki każdego przebiegu zapisywane są w formacie JSON w pliku
+ * {@code <katalog>/jmh-result-threads-<liczba wątków>.json}, który można
+ * porównywać pomiędzy wersjami (np. narzędziem JMH Visualizer).
+ * <p>
+ * Parametry systemowe:
+ * <ul>
+ * <li>{@code benchmark.threads} - liczby wątków oddzielone przecinkami,
+ * domyślnie {@code 1,4,16,64}</li>
+ * <li>{@code benchmark.output} - katalog wyników, domyślnie
+ * {@code target/jmh}</li>
+ * </ul>
+ * Argument (opcjonalny): wyrażenie regularne wybierające benchmarki, domyślnie
+ * wszystkie z pakietu.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class CacheBenchmarkRunner {
+
+	private CacheBenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = (args.length > 0 ? args[0] : CacheBenchmarkRunner.class.getPackage().getName() + ".*");
+		String[] threadCounts = System.getProperty("benchmark.threads", "1,4,16,64").split(",");
+		File outputDir = new File(System.getProperty("benchmark.output", "target/jmh"));
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IllegalArgumentException("Can't create output directory " + outputDir);
+		}
+		for (String threadCount : threadCounts) {
+			int threads = Integer.parseInt(threadCount.trim());
+			File result = new File(outputDir, "jmh-result-threads-" + threads + ".json");
+			ChainedOptionsBuilder options = new OptionsBuilder().include(include).threads(threads)
+					.resultFormat(ResultFormatType.JSON).result(result.getAbsolutePath());
+			new Runner(options.build()).run();
+		}
+	}
+
+}
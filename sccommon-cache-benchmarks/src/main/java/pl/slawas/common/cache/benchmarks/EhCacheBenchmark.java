@@ -0,0 +1,92 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.slawas.common.cache.IObjectCache;
+import pl.slawas.common.cache.exceptions.CacheErrorException;
+
+/**
+ *
+ * EhCacheBenchmark - operacje get/put/contains na regionie
+ * {@link pl.slawas.common.cache.ehcache.EhCache} dla różnych konfiguracji
+ * zasobów i typów kluczy. Region wypełniany jest wszystkimi kluczami przed
+ * pomiarem, więc {@link #get()} mierzy trafienia.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EhCacheBenchmark {
+
+	private static final String REGION_NAME = "EhCacheBenchmark";
+
+	@Param({ "HEAP", "HEAP_OFFHEAP", "HEAP_OFFHEAP_DISK" })
+	public BenchmarkPool pool;
+
+	@Param({ "STRING", "LONG", "COMPOSITE" })
+	public BenchmarkKeyType keyType;
+
+	private BenchmarkSupport support;
+
+	private IObjectCache cache;
+
+	private Object[] keys;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, CacheErrorException {
+		support = new BenchmarkSupport(REGION_NAME + '.' + pool + '.' + keyType);
+		pool.configure(support.getProps(), REGION_NAME);
+		cache = support.start().getCache(REGION_NAME);
+		keys = BenchmarkSupport.createKeys(keyType);
+		for (Object key : keys) {
+			cache.put(key, BenchmarkSupport.VALUE);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		support.stop();
+	}
+
+	@Benchmark
+	public Object get() throws CacheErrorException {
+		return cache.get(nextKey());
+	}
+
+	@Benchmark
+	public void put() throws CacheErrorException {
+		cache.put(nextKey(), BenchmarkSupport.VALUE);
+	}
+
+	@Benchmark
+	public boolean contains() {
+		return cache.contains(nextKey());
+	}
+
+	private Object nextKey() {
+		return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+	}
+
+}
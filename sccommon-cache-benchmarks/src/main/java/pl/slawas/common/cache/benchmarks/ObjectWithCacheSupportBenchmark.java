@@ -0,0 +1,82 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.slawas.common.cache.CacheUsage;
+import pl.slawas.common.cache.ObjectWithCacheSupport;
+
+/**
+ *
+ * ObjectWithCacheSupportBenchmark - koszt utworzenia obiektu
+ * {@link ObjectWithCacheSupport} (pobranie providera i regionu, ustawienie
+ * czasu życia) - obiekty te tworzone są przy każdym użyciu pamięci podręcznej,
+ * np. w fabrykach obiektów.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectWithCacheSupportBenchmark {
+
+	private static final String REGION_NAME = "ObjectWithCacheSupportBenchmark";
+
+	@Param({ "true", "false" })
+	public boolean useDefaultRegion;
+
+	private BenchmarkSupport support;
+
+	private Properties props;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		support = new BenchmarkSupport(REGION_NAME + '.' + useDefaultRegion);
+		BenchmarkPool.HEAP.configure(support.getProps(), REGION_NAME);
+		support.start();
+		props = support.getProps();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		support.stop();
+	}
+
+	@Benchmark
+	public Object construct() {
+		return new CachedObject(useDefaultRegion, props);
+	}
+
+	/**
+	 * Obiekt korzystający z pamięci podręcznej.
+	 */
+	private static class CachedObject extends ObjectWithCacheSupport {
+
+		private static final long serialVersionUID = 7519049512212788235L;
+
+		CachedObject(boolean useDefaultRegion, Properties props) {
+			super(CacheUsage.TO_USE, REGION_NAME, useDefaultRegion, props);
+		}
+	}
+
+}
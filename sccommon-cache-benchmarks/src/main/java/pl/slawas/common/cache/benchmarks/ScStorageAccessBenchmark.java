@@ -0,0 +1,83 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.cache.ehcache.ScStorageAccessImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * ScStorageAccessBenchmark - ścieżka pamięci podręcznej drugiego poziomu
+ * Hibernate'a: {@link ScStorageAccessImpl#getFromCache} i
+ * {@link ScStorageAccessImpl#putIntoCache} z kluczami złożonymi, podobnymi do
+ * kluczy regionów encji. Sesja nie jest używana przez implementację, więc
+ * przekazywana jest wartość {@code null}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScStorageAccessBenchmark {
+
+	private static final String REGION_NAME = "pl.slawas.entities.SampleEntity";
+
+	@Param({ "HEAP", "HEAP_OFFHEAP", "HEAP_OFFHEAP_DISK" })
+	public BenchmarkPool pool;
+
+	private BenchmarkSupport support;
+
+	private ScStorageAccessImpl storageAccess;
+
+	private Object[] keys;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		support = new BenchmarkSupport("ScStorageAccessBenchmark." + pool);
+		pool.configure(support.getProps(), REGION_NAME);
+		storageAccess = new ScStorageAccessImpl(support.start().getCache(REGION_NAME));
+		keys = BenchmarkSupport.createKeys(BenchmarkKeyType.COMPOSITE);
+		for (Object key : keys) {
+			storageAccess.putIntoCache(key, BenchmarkSupport.VALUE, null);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		support.stop();
+	}
+
+	@Benchmark
+	public Object getFromCache() {
+		return storageAccess.getFromCache(nextKey(), null);
+	}
+
+	@Benchmark
+	public void putIntoCache() {
+		storageAccess.putIntoCache(nextKey(), BenchmarkSupport.VALUE, null);
+	}
+
+	private Object nextKey() {
+		return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+	}
+
+}
@@ -0,0 +1,166 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.ehcache.impl.serialization.PlainJavaSerializer;
+import org.ehcache.spi.serialization.Serializer;
+import org.hibernate.cache.ehcache.ScStorageAccessImpl;
+import org.hibernate.cache.spi.entry.StandardCacheEntryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.slawas.common.cache.ehcache.CompactSerializer;
+import pl.slawas.common.cache.ehcache.EhCacheConfig;
+import pl.slawas.common.cache.ehcache.Element;
+
+/**
+ *
+ * SerializerBenchmark - porównanie serializacji Java
+ * ({@link PlainJavaSerializer}, domyślnej dla {@link Element}) ze zwartym
+ * formatem {@link CompactSerializer}: koszt samej serializacji i odczytu oraz
+ * put/get regionu Hibernate'a ({@link ScStorageAccessImpl}), którego większość
+ * elementów leży w warstwie off-heap. Liczba bajtów na element zapisywana jest
+ * w logu podczas przygotowania benchmarku.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.2 $
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(SerializerBenchmark.class);
+
+	private static final String REGION_NAME = "pl.slawas.entities.SerializedEntity";
+
+	/**
+	 * Porównywane serializatory.
+	 */
+	public enum SerializerType {
+		JAVA, COMPACT;
+
+		Serializer<Element> create() {
+			ClassLoader classLoader = SerializerBenchmark.class.getClassLoader();
+			return (this == JAVA ? new PlainJavaSerializer<>(classLoader) : new CompactSerializer<>(classLoader));
+		}
+	}
+
+	/**
+	 * Rodzaje przechowywanych wartości.
+	 */
+	public enum ValueType {
+		/** encja Hibernate'a - stan encji, nazwa klasy i wersja */
+		HIBERNATE_ENTRY,
+		/** napis (wartość pozostałych benchmarków) */
+		STRING;
+
+		Serializable create(int i) {
+			if (this == STRING) {
+				return BenchmarkSupport.VALUE;
+			}
+			Serializable[] state = { "Jan" + i, "Kowalski", "jan.kowalski" + i + "@slawas.pl", i, (long) i * 31,
+					Boolean.TRUE, new Timestamp(1500000000000L + i), null };
+			try {
+				Constructor<StandardCacheEntryImpl> constructor = StandardCacheEntryImpl.class
+						.getDeclaredConstructor(Serializable[].class, String.class, Object.class);
+				constructor.setAccessible(true);
+				return constructor.newInstance(state, "pl.slawas.entities.User", i % 7);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	@Param({ "JAVA", "COMPACT" })
+	public SerializerType serializer;
+
+	@Param({ "HIBERNATE_ENTRY", "STRING" })
+	public ValueType valueType;
+
+	private Serializer<Element> elementSerializer;
+
+	private Element element;
+
+	private ByteBuffer serialized;
+
+	private BenchmarkSupport support;
+
+	private ScStorageAccessImpl storageAccess;
+
+	private Object[] keys;
+
+	private Serializable[] values;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		elementSerializer = serializer.create();
+		element = new Element(valueType.create(0));
+		serialized = elementSerializer.serialize(element);
+		logger.info("{}/{}: {} bytes per entry", new Object[] { serializer, valueType, serialized.remaining() });
+
+		support = new BenchmarkSupport("SerializerBenchmark." + serializer + '.' + valueType);
+		BenchmarkPool.HEAP_OFFHEAP.configure(support.getProps(), REGION_NAME);
+		if (serializer == SerializerType.COMPACT) {
+			support.getProps().put(REGION_NAME + '.' + EhCacheConfig.PROP_CACHE_VALUE_SERIALIZER,
+					EhCacheConfig.SERIALIZER_COMPACT);
+		}
+		storageAccess = new ScStorageAccessImpl(support.start().getCache(REGION_NAME));
+		keys = BenchmarkSupport.createKeys(BenchmarkKeyType.COMPOSITE);
+		values = new Serializable[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			values[i] = valueType.create(i);
+			storageAccess.putIntoCache(keys[i], values[i], null);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		support.stop();
+	}
+
+	@Benchmark
+	public ByteBuffer serialize() {
+		return elementSerializer.serialize(element);
+	}
+
+	@Benchmark
+	public Element deserialize() throws ClassNotFoundException {
+		return elementSerializer.read(serialized.duplicate());
+	}
+
+	@Benchmark
+	public Object regionGet() {
+		return storageAccess.getFromCache(keys[ThreadLocalRandom.current().nextInt(keys.length)], null);
+	}
+
+	@Benchmark
+	public void regionPut() {
+		int i = ThreadLocalRandom.current().nextInt(keys.length);
+		storageAccess.putIntoCache(keys[i], values[i], null);
+	}
+
+}
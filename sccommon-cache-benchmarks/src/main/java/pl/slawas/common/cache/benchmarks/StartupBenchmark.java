@@ -0,0 +1,142 @@
+package pl.slawas.common.cache.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.slawas.common.cache.CacheConstants;
+import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.IObjectCacheProvider;
+import pl.slawas.common.cache.ITypedObjectCache;
+import pl.slawas.common.cache.exceptions.CacheErrorException;
+
+/**
+ *
+ * StartupBenchmark - czas uruchomienia managera z wieloma regionami
+ * zadeklarowanymi w XML, z których aplikacja używa tylko kilku: sam start i
+ * zamknięcie providera oraz start, odczyt i zapis w {@link #TOUCHED_REGIONS}
+ * regionach i zamknięcie providera. Porównywany jest start natychmiastowy i
+ * odłożony do pierwszego użycia ({@link CacheConstants#PROP_LAZY_INIT}).
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StartupBenchmark {
+
+	/** Liczba regionów, których używa aplikacja */
+	private static final int TOUCHED_REGIONS = 2;
+
+	private static final AtomicInteger providerCounter = new AtomicInteger();
+
+	@Param({ "false", "true" })
+	public boolean lazyInit;
+
+	@Param({ "50" })
+	public int regionCount;
+
+	private BenchmarkSupport support;
+
+	private File configFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		support = new BenchmarkSupport("StartupBenchmark" + providerCounter.incrementAndGet());
+		configFile = File.createTempFile("ehcache-startup", ".xml");
+		writeConfiguration(configFile, regionCount);
+		support.getProps().put(CacheConstants.PROP_CONFIG_PATH, configFile.getAbsolutePath());
+		support.getProps().put(CacheConstants.PROP_LAZY_INIT, Boolean.toString(lazyInit));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		support.stop();
+		if (!configFile.delete()) {
+			configFile.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Sam start managera (np. podczas uruchomienia aplikacji) - bez użycia
+	 * regionów.
+	 */
+	@Benchmark
+	public String startAndClose() {
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(support.getProps());
+		try {
+			return provider.getName();
+		} finally {
+			provider.close();
+		}
+	}
+
+	@Benchmark
+	public Object startTouchAndClose() throws CacheErrorException {
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(support.getProps());
+		try {
+			Object value = null;
+			for (int i = 0; i < TOUCHED_REGIONS; i++) {
+				ITypedObjectCache<String, String> region = provider.getCache(regionName(i), String.class,
+						String.class);
+				region.put("key", BenchmarkSupport.VALUE);
+				value = region.get("key");
+			}
+			return value;
+		} finally {
+			provider.close();
+		}
+	}
+
+	private static String regionName(int i) {
+		return "pl.slawas.entities.Entity" + i;
+	}
+
+	/**
+	 * Zapis konfiguracji z podaną liczbą regionów (heap i off-heap).
+	 */
+	private static void writeConfiguration(File file, int regionCount) throws IOException {
+		try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			out.println("<eh:config xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'"
+					+ " xmlns:eh='http://www.ehcache.org/v3'"
+					+ " xsi:schemaLocation=\"http://www.ehcache.org/v3"
+					+ " http://www.ehcache.org/schema/ehcache-core-3.5.xsd\">");
+			for (int i = 0; i < regionCount; i++) {
+				out.println("  <eh:cache alias=\"" + regionName(i) + "\">");
+				out.println("    <eh:key-type>java.lang.String</eh:key-type>");
+				out.println("    <eh:value-type>java.lang.String</eh:value-type>");
+				out.println("    <eh:expiry><eh:ttl unit=\"seconds\">300</eh:ttl></eh:expiry>");
+				out.println("    <eh:resources>");
+				out.println("      <eh:heap unit=\"entries\">1000</eh:heap>");
+				out.println("      <eh:offheap unit=\"MB\">1</eh:offheap>");
+				out.println("    </eh:resources>");
+				out.println("  </eh:cache>");
+			}
+			out.println("</eh:config>");
+		}
+	}
+
+}
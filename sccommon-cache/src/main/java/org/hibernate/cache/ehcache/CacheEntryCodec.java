@@ -0,0 +1,75 @@
+package org.hibernate.cache.ehcache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import org.hibernate.cache.spi.entry.StandardCacheEntryImpl;
+
+import pl.slawas.common.cache.serialization.CompactCodec;
+import pl.slawas.common.cache.serialization.IValueCodec;
+
+/**
+ *
+ * CacheEntryCodec - zapis encji przechowywanych przez Hibernate'a
+ * ({@link StandardCacheEntryImpl}) w formacie {@link CompactCodec}: stan
+ * encji, nazwa klasy i wersja, bez deskryptorów klas serializacji Java.
+ * Konstruktor odtwarzający encję nie jest publiczny, więc wywoływany jest
+ * refleksją.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class CacheEntryCodec implements IValueCodec<StandardCacheEntryImpl> {
+
+	public static final int ID = 2;
+
+	private static final Constructor<StandardCacheEntryImpl> constructor;
+
+	static {
+		try {
+			constructor = StandardCacheEntryImpl.class.getDeclaredConstructor(Serializable[].class, String.class,
+					Object.class);
+			constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Unsupported Hibernate version", e);
+		}
+	}
+
+	@Override
+	public int getId() {
+		return ID;
+	}
+
+	@Override
+	public Class<StandardCacheEntryImpl> getType() {
+		return StandardCacheEntryImpl.class;
+	}
+
+	@Override
+	public void write(StandardCacheEntryImpl value, DataOutputStream out, CompactCodec codec) throws IOException {
+		codec.writeValue(value.getDisassembledState(), out);
+		codec.writeValue(value.getSubclass(), out);
+		codec.writeValue(value.getVersion(), out);
+	}
+
+	@Override
+	public StandardCacheEntryImpl read(DataInputStream in, CompactCodec codec)
+			throws IOException, ClassNotFoundException {
+		Object[] state = (Object[]) codec.readValue(in);
+		String subclass = (String) codec.readValue(in);
+		Object version = codec.readValue(in);
+		Serializable[] disassembledState = new Serializable[state.length];
+		System.arraycopy(state, 0, disassembledState, 0, state.length);
+		try {
+			return constructor.newInstance(disassembledState, subclass, version);
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new IOException("Can't create cache entry of " + subclass, e);
+		}
+	}
+
+}
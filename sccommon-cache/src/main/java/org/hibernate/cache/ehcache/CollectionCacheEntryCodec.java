@@ -0,0 +1,65 @@
+package org.hibernate.cache.ehcache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import org.hibernate.cache.spi.entry.CollectionCacheEntry;
+
+import pl.slawas.common.cache.serialization.CompactCodec;
+import pl.slawas.common.cache.serialization.IValueCodec;
+
+/**
+ *
+ * CollectionCacheEntryCodec - zapis kolekcji przechowywanych przez
+ * Hibernate'a ({@link CollectionCacheEntry}) w formacie {@link CompactCodec}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class CollectionCacheEntryCodec implements IValueCodec<CollectionCacheEntry> {
+
+	public static final int ID = 3;
+
+	private static final Constructor<CollectionCacheEntry> constructor;
+
+	static {
+		try {
+			constructor = CollectionCacheEntry.class.getDeclaredConstructor(Serializable.class);
+			constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Unsupported Hibernate version", e);
+		}
+	}
+
+	@Override
+	public int getId() {
+		return ID;
+	}
+
+	@Override
+	public Class<CollectionCacheEntry> getType() {
+		return CollectionCacheEntry.class;
+	}
+
+	@Override
+	public void write(CollectionCacheEntry value, DataOutputStream out, CompactCodec codec) throws IOException {
+		codec.writeValue(value.getState(), out);
+	}
+
+	@Override
+	public CollectionCacheEntry read(DataInputStream in, CompactCodec codec)
+			throws IOException, ClassNotFoundException {
+		Object state = codec.readValue(in);
+		try {
+			return constructor.newInstance((Serializable) state);
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new IOException("Can't create collection cache entry", e);
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.hibernate.cache.ehcache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.slawas.common.cache.serialization.CompactCodec;
+import pl.slawas.common.cache.serialization.IValueCodec;
+
+/**
+ *
+ * QueryResultsCodec - zapis wyników zapytań przechowywanych przez Hibernate'a
+ * (prywatna klasa {@code QueryResultsCacheImpl.CacheItem}) w formacie
+ * {@link CompactCodec}: znacznik czasu i lista wyników, zwykle identyfikatorów
+ * encji albo tablic wartości kolumn. Klasa, jej konstruktor i pola nie są
+ * publiczne, więc dostęp do nich odbywa się refleksją.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class QueryResultsCodec implements IValueCodec<Object> {
+
+	public static final int ID = 4;
+
+	private static final String CACHE_ITEM_CLASS = "org.hibernate.cache.internal.QueryResultsCacheImpl$CacheItem";
+
+	private static final Class<Object> cacheItemClass;
+
+	private static final Constructor<Object> constructor;
+
+	private static final Field timestampField;
+
+	private static final Field resultsField;
+
+	static {
+		try {
+			@SuppressWarnings("unchecked")
+			Class<Object> itemClass = (Class<Object>) Class.forName(CACHE_ITEM_CLASS);
+			cacheItemClass = itemClass;
+			constructor = cacheItemClass.getDeclaredConstructor(long.class, List.class);
+			constructor.setAccessible(true);
+			timestampField = cacheItemClass.getDeclaredField("timestamp");
+			timestampField.setAccessible(true);
+			resultsField = cacheItemClass.getDeclaredField("results");
+			resultsField.setAccessible(true);
+		} catch (ClassNotFoundException | NoSuchMethodException | NoSuchFieldException e) {
+			throw new IllegalStateException("Unsupported Hibernate version", e);
+		}
+	}
+
+	@Override
+	public int getId() {
+		return ID;
+	}
+
+	@Override
+	public Class<Object> getType() {
+		return cacheItemClass;
+	}
+
+	@Override
+	public void write(Object value, DataOutputStream out, CompactCodec codec) throws IOException {
+		List<?> results;
+		try {
+			CompactCodec.writeVarLong(timestampField.getLong(value), out);
+			results = (List<?>) resultsField.get(value);
+		} catch (IllegalAccessException e) {
+			throw new IOException("Can't read query results", e);
+		}
+		CompactCodec.writeVarLong(results.size(), out);
+		for (Object result : results) {
+			codec.writeValue(result, out);
+		}
+	}
+
+	@Override
+	public Object read(DataInputStream in, CompactCodec codec) throws IOException, ClassNotFoundException {
+		long timestamp = CompactCodec.readVarLong(in);
+		long size = CompactCodec.readVarLong(in);
+		if (size < 0L || size > Integer.MAX_VALUE) {
+			throw new IOException("Invalid query results size " + size);
+		}
+		List<Object> results = new ArrayList<>((int) size);
+		for (long i = 0; i < size; i++) {
+			results.add(codec.readValue(in));
+		}
+		try {
+			return constructor.newInstance(timestamp, results);
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new IOException("Can't create query results", e);
+		}
+	}
+
+}
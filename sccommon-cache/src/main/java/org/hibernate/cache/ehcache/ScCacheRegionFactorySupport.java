@@ -26,9 +26,12 @@ import org.hibernate.engine.spi.SessionFactoryImplementor;
 import pl.slawas.common.cache.CacheConstants;
 import pl.slawas.common.cache.CacheProviderConfiguration;
 import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.IAsyncObjectCache;
+import pl.slawas.common.cache.IAsyncTypedObjectCache;
 import pl.slawas.common.cache.IObjectCache;
 import pl.slawas.common.cache.IObjectCacheProvider;
 import pl.slawas.common.cache.IObjectCacheStatistics;
+import pl.slawas.common.cache.ITypedObjectCache;
 import pl.slawas.common.cache.ObjectCacheStatisticsList;
 
 public abstract class ScCacheRegionFactorySupport<C> extends RegionFactoryTemplate
@@ -36,9 +39,24 @@ public abstract class ScCacheRegionFactorySupport<C> extends RegionFactoryTempla
 
 	private static final long serialVersionUID = 8498725914796376618L;
 
+	/**
+	 * Sposób przechowywania regionów wyników zapytań i znaczników czasu
+	 * aktualizacji tabel: {@value #QUERY_STORAGE_COMPACT} (domyślnie) albo
+	 * {@value #QUERY_STORAGE_REGION}.
+	 */
+	public static final String QUERY_STORAGE_MODE = "hibernate.cache.sc.query_storage_mode";
+	/**
+	 * Znaczniki czasu w pamięci heap ({@link ScTimestampsStorageAccess}), wyniki
+	 * zapytań w zwartej postaci ({@link ScQueryResultsStorageAccess}).
+	 */
+	public static final String QUERY_STORAGE_COMPACT = "compact";
+	/** Regiony tworzone tak samo jak regiony encji */
+	public static final String QUERY_STORAGE_REGION = "region";
+
 	private final transient CacheKeysFactory cacheKeysFactory;
 	private transient volatile IObjectCacheProvider<C> cacheManager;
 	private transient volatile MissingCacheStrategy missingCacheStrategy;
+	private transient volatile boolean compactQueryStorage = true;
 
 	private Properties properties;
 
@@ -74,7 +92,8 @@ public abstract class ScCacheRegionFactorySupport<C> extends RegionFactoryTempla
 			SessionFactoryImplementor sessionFactory) {
 		String defaultedRegionName = defaultRegionName(regionName, sessionFactory,
 				DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, LEGACY_QUERY_RESULTS_REGION_UNQUALIFIED_NAMES);
-		return new ScStorageAccessImpl(getOrCreateCache(defaultedRegionName, sessionFactory));
+		IObjectCache cache = getOrCreateCache(defaultedRegionName, sessionFactory);
+		return (compactQueryStorage ? new ScQueryResultsStorageAccess(cache) : new ScStorageAccessImpl(cache));
 	}
 
 	@Override
@@ -82,6 +101,11 @@ public abstract class ScCacheRegionFactorySupport<C> extends RegionFactoryTempla
 			SessionFactoryImplementor sessionFactory) {
 		String defaultedRegionName = defaultRegionName(regionName, sessionFactory,
 				DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, LEGACY_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAMES);
+		if (compactQueryStorage) {
+			verifyStarted();
+			return new ScTimestampsStorageAccess(RegionNameQualifier.INSTANCE.qualify(defaultedRegionName,
+					sessionFactory.getSessionFactoryOptions()));
+		}
 		return new ScStorageAccessImpl(getOrCreateCache(defaultedRegionName, sessionFactory));
 	}
 
@@ -154,7 +178,20 @@ public abstract class ScCacheRegionFactorySupport<C> extends RegionFactoryTempla
 			}
 			this.missingCacheStrategy = MissingCacheStrategy
 					.interpretSetting(configValues.get(ConfigSettings.MISSING_CACHE_STRATEGY));
+			this.compactQueryStorage = interpretQueryStorageMode(configValues.get(QUERY_STORAGE_MODE));
+		}
+	}
+
+	private static boolean interpretQueryStorageMode(Object value) {
+		String mode = (value != null ? value.toString().trim() : QUERY_STORAGE_COMPACT);
+		if (QUERY_STORAGE_COMPACT.equalsIgnoreCase(mode)) {
+			return true;
 		}
+		if (QUERY_STORAGE_REGION.equalsIgnoreCase(mode)) {
+			return false;
+		}
+		throw new IllegalArgumentException(
+				String.format("-->prepareForUse: Invalid value %s of parameter %s", value, QUERY_STORAGE_MODE));
 	}
 
 	/**
@@ -208,6 +245,21 @@ public abstract class ScCacheRegionFactorySupport<C> extends RegionFactoryTempla
 		return this.cacheManager.getCache(name);
 	}
 
+	@Override
+	public <K, V> ITypedObjectCache<K, V> getCache(String name, Class<K> keyType, Class<V> valueType) {
+		return this.cacheManager.getCache(name, keyType, valueType);
+	}
+
+	@Override
+	public IAsyncObjectCache getAsyncCache(String name) {
+		return this.cacheManager.getAsyncCache(name);
+	}
+
+	@Override
+	public <K, V> IAsyncTypedObjectCache<K, V> getAsyncCache(String name, Class<K> keyType, Class<V> valueType) {
+		return this.cacheManager.getAsyncCache(name, keyType, valueType);
+	}
+
 	@Override
 	public void removeCache(String name) {
 		this.cacheManager.removeCache(name);
@@ -0,0 +1,65 @@
+package org.hibernate.cache.ehcache;
+
+import java.io.IOException;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.slawas.common.cache.IObjectCache;
+import pl.slawas.common.cache.serialization.CompactCodec;
+
+/**
+ *
+ * ScQueryResultsStorageAccess - przechowywanie wyników zapytań w regionie
+ * w postaci zwartej tablicy bajtów ({@link CompactCodec},
+ * {@link QueryResultsCodec}) zamiast listy obiektów. Lista identyfikatorów
+ * zajmuje kilka bajtów na wiersz również w warstwie heap, a warstwy off-heap
+ * i dysk przechowują tablicę bez ponownej serializacji.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class ScQueryResultsStorageAccess extends ScStorageAccessImpl {
+
+	private static final Logger logger = LoggerFactory.getLogger(ScQueryResultsStorageAccess.class);
+
+	private final CompactCodec codec;
+
+	public ScQueryResultsStorageAccess(IObjectCache cache) {
+		super(cache);
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		this.codec = new CompactCodec(classLoader != null ? classLoader : getClass().getClassLoader());
+	}
+
+	@Override
+	public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+		Object value = super.getFromCache(key, session);
+		if (!(value instanceof byte[])) {
+			return value;
+		}
+		try {
+			return codec.decode((byte[]) value);
+		} catch (IOException | ClassNotFoundException e) {
+			/* wyniki, których nie można odczytać, traktujemy jak ich brak */
+			logger.warn("-->getFromCache: Query results '{}' skipped: {}", key, e.getMessage());
+			evictData(key);
+			return null;
+		}
+	}
+
+	@Override
+	public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+		byte[] encoded;
+		try {
+			encoded = codec.encode(value);
+		} catch (IOException e) {
+			logger.debug("-->putIntoCache: Query results '{}' stored as is: {}", key, e.getMessage());
+			super.putIntoCache(key, value, session);
+			return;
+		}
+		super.putIntoCache(key, encoded, session);
+	}
+
+}
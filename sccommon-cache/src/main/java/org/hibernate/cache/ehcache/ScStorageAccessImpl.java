@@ -1,5 +1,8 @@
 package org.hibernate.cache.ehcache;
 
+import java.util.Map;
+import java.util.Set;
+
 import org.hibernate.cache.CacheException;
 import org.hibernate.cache.spi.support.DomainDataStorageAccess;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
@@ -34,6 +37,56 @@ public class ScStorageAccessImpl implements DomainDataStorageAccess {
 		}
 	}
 
+	/**
+	 * Pobranie wielu elementów jednym wywołaniem regionu - np. podczas wsadowego
+	 * ładowania encji. SPI Hibernate'a ({@link DomainDataStorageAccess}) odwołuje
+	 * się do pamięci pojedynczymi kluczami, metoda przeznaczona jest dla własnych
+	 * strategii dostępu i kodu ładującego encje paczkami.
+	 * 
+	 * @param keys
+	 *            klucze elementów
+	 * @param session
+	 *            sesja
+	 * @return mapa klucz - wartość, klucz nieodnaleziony ma wartość {@code null}
+	 */
+	public Map<Object, Object> getAllFromCache(Set<?> keys, SharedSessionContractImplementor session) {
+		try {
+			return this.cache.getAll(keys);
+		} catch (CacheErrorException e) {
+			throw new CacheException(String.format("-->getAllFromCache(%d keys)", keys.size()), e);
+		}
+	}
+
+	/**
+	 * Wstawienie wielu elementów jednym wywołaniem regionu.
+	 * 
+	 * @param entries
+	 *            mapa klucz - wartość
+	 * @param session
+	 *            sesja
+	 */
+	public void putAllIntoCache(Map<?, ?> entries, SharedSessionContractImplementor session) {
+		try {
+			this.cache.putAll(entries);
+		} catch (CacheErrorException e) {
+			throw new CacheException(String.format("-->putAllIntoCache(%d entries)", entries.size()), e);
+		}
+	}
+
+	/**
+	 * Usunięcie wielu elementów jednym wywołaniem regionu.
+	 * 
+	 * @param keys
+	 *            klucze elementów
+	 */
+	public void evictAllData(Set<?> keys) {
+		try {
+			this.cache.removeAll(keys);
+		} catch (CacheErrorException e) {
+			throw new CacheException(String.format("-->evictAllData(%d keys)", keys.size()), e);
+		}
+	}
+
 	@Override
 	public boolean contains(Object key) {
 		return this.cache.contains(key);
@@ -0,0 +1,92 @@
+package org.hibernate.cache.ehcache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ *
+ * ScTimestampsStorageAccess - przechowywanie znaczników czasu aktualizacji
+ * tabel (region "update timestamps") w pamięci heap, bez regionu EhCache.
+ * Region odczytywany jest przy każdym trafieniu w pamięci wyników zapytań,
+ * dlatego odczyt nie zakłada blokad ani nie deserializuje wartości, a znacznik
+ * tabeli przechowywany jest jako liczba {@code long}. Liczba kluczy jest
+ * ograniczona liczbą tabel, więc region nie wymaga usuwania elementów.
+ * <p>
+ * Znaczniki czasu są lokalne dla JVM - nie są przesyłane szyną unieważnień.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class ScTimestampsStorageAccess implements StorageAccess {
+
+	private final String regionName;
+
+	private final ConcurrentMap<Object, AtomicLong> timestamps = new ConcurrentHashMap<>();
+
+	/**
+	 * @param regionName
+	 *            nazwa regionu - na potrzeby komunikatów
+	 */
+	public ScTimestampsStorageAccess(String regionName) {
+		super();
+		this.regionName = regionName;
+	}
+
+	@Override
+	public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+		AtomicLong timestamp = timestamps.get(key);
+		return (timestamp != null ? Long.valueOf(timestamp.get()) : null);
+	}
+
+	@Override
+	public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+		if (!(value instanceof Long)) {
+			throw new CacheException(String.format("-->putIntoCache('%s'): Region '%s' accepts only Long values, got %s",
+					key, regionName, (value != null ? value.getClass().getName() : null)));
+		}
+		long newTimestamp = ((Long) value).longValue();
+		AtomicLong timestamp = timestamps.get(key);
+		if (timestamp == null) {
+			timestamp = timestamps.putIfAbsent(key, new AtomicLong(newTimestamp));
+			if (timestamp == null) {
+				return;
+			}
+		}
+		timestamp.set(newTimestamp);
+	}
+
+	@Override
+	public boolean contains(Object key) {
+		return timestamps.containsKey(key);
+	}
+
+	@Override
+	public void evictData() {
+		timestamps.clear();
+	}
+
+	@Override
+	public void evictData(Object key) {
+		timestamps.remove(key);
+	}
+
+	@Override
+	public void release() {
+		timestamps.clear();
+	}
+
+	/**
+	 * @return the {@link #regionName}
+	 */
+	public String getRegionName() {
+		return regionName;
+	}
+
+}
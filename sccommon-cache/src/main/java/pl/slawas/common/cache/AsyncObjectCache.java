@@ -0,0 +1,24 @@
+package pl.slawas.common.cache;
+
+import java.util.concurrent.Executor;
+
+/**
+ *
+ * AsyncObjectCache - asynchroniczny widok regionu {@link IObjectCache}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class AsyncObjectCache extends AsyncTypedObjectCache<Object, Object> implements IAsyncObjectCache {
+
+	public AsyncObjectCache(IObjectCache cache, Executor executor) {
+		super(cache, executor);
+	}
+
+	@Override
+	public IObjectCache getSyncCache() {
+		return (IObjectCache) super.getSyncCache();
+	}
+
+}
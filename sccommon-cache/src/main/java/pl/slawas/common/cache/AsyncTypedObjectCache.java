@@ -0,0 +1,97 @@
+package pl.slawas.common.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import pl.slawas.common.cache.exceptions.CacheErrorException;
+
+/**
+ *
+ * AsyncTypedObjectCache - implementacja {@link IAsyncTypedObjectCache}
+ * delegująca operacje do regionu synchronicznego i wykonująca je przez
+ * wskazanego wykonawcę. Widok nie ma własnego stanu, więc może być tworzony
+ * przy każdym pobraniu z providera.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public class AsyncTypedObjectCache<K, V> implements IAsyncTypedObjectCache<K, V> {
+
+	private final ITypedObjectCache<K, V> cache;
+
+	private final Executor executor;
+
+	public AsyncTypedObjectCache(ITypedObjectCache<K, V> cache, Executor executor) {
+		this.cache = cache;
+		this.executor = executor;
+	}
+
+	@Override
+	public CompletableFuture<V> getAsync(final K key) {
+		return submit(() -> cache.get(key));
+	}
+
+	@Override
+	public CompletableFuture<V> getOrLoadAsync(final K key) {
+		return submit(() -> cache.getOrLoad(key));
+	}
+
+	@Override
+	public CompletableFuture<Void> putAsync(final K key, final V value) {
+		return submit(() -> {
+			cache.put(key, value);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> removeAsync(final K key) {
+		return submit(() -> {
+			cache.remove(key);
+			return null;
+		});
+	}
+
+	@Override
+	public ITypedObjectCache<K, V> getSyncCache() {
+		return cache;
+	}
+
+	/**
+	 * Wykonanie operacji regionu przez wykonawcę. Nie używamy
+	 * {@link CompletableFuture#supplyAsync(java.util.function.Supplier, Executor)},
+	 * bo operacje regionu zgłaszają {@link CacheErrorException}, która nie jest
+	 * {@link RuntimeException}.
+	 */
+	private <T> CompletableFuture<T> submit(final CacheCall<T> call) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					result.complete(call.call());
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			/* provider został zamknięty */
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Operacja regionu wykonywana asynchronicznie.
+	 */
+	@FunctionalInterface
+	private interface CacheCall<T> {
+		T call() throws CacheErrorException;
+	}
+
+}
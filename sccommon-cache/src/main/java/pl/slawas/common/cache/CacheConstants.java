@@ -6,7 +6,7 @@ package pl.slawas.common.cache;
  * konfiguracyjnego cache (pamięci podręcznej).
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.5 $
  * 
  */
 public class CacheConstants {
@@ -41,6 +41,48 @@ public class CacheConstants {
 	public static final String PROP_CACHE_MANAGER_REGISTER = "cacheManager.register";
 	public static final String PROP_DISABLE_STATISTICS = "cache.statistics.disable";
 	public static final String DEFAULT_DISABLE_STATISTICS = "false";
+	/**
+	 * Okres odświeżania migawki statystyk wszystkich regionów
+	 * ({@link CacheProviderFactory#getAllStatistics(Integer, Integer)}) [ms].
+	 */
+	public static final String PROP_STATISTICS_REFRESH_MILLIS = "cache.statistics.refreshMillis";
+	public static final String DEFAULT_STATISTICS_REFRESH_MILLIS = "5000";
+	/**
+	 * Liczba wątków wykonujących operacje asynchroniczne managera (zobacz
+	 * {@link CacheExecutors}). Brak parametru albo 0 - wątki wirtualne, o ile są
+	 * dostępne.
+	 */
+	public static final String PROP_ASYNC_THREADS = "cache.async.threads";
+	/**
+	 * Czy manager ma być uruchamiany dopiero przy pierwszym użyciu
+	 * ({@code true}/{@code false}). Konfiguracja XML czytana jest wtedy przy
+	 * pierwszym użyciu, a regiony zadeklarowane w XML tworzone są dopiero przy
+	 * pierwszym odwołaniu do nich.
+	 */
+	public static final String PROP_LAZY_INIT = "cache.lazyInit";
+	public static final String DEFAULT_LAZY_INIT = "false";
+
+	/**
+	 * Nazwa klasy transportu unieważnień pomiędzy węzłami
+	 * ({@link pl.slawas.common.cache.invalidation.IInvalidationTransport}). Brak
+	 * parametru wyłącza rozgłaszanie unieważnień.
+	 */
+	public static final String PROP_INVALIDATION_TRANSPORT = "cache.invalidation.transport";
+	/** Maksymalny czas zbierania unieważnień przed wysłaniem [ms] */
+	public static final String PROP_INVALIDATION_BATCH_MILLIS = "cache.invalidation.batchMillis";
+	public static final String DEFAULT_INVALIDATION_BATCH_MILLIS = "10";
+	/** Maksymalna liczba kluczy w jednym komunikacie unieważnień */
+	public static final String PROP_INVALIDATION_MAX_BATCH_SIZE = "cache.invalidation.maxBatchSize";
+	public static final String DEFAULT_INVALIDATION_MAX_BATCH_SIZE = "1000";
+	/** Kanał transportu wewnątrz JVM */
+	public static final String PROP_INVALIDATION_CHANNEL = "cache.invalidation.channel";
+	public static final String DEFAULT_INVALIDATION_CHANNEL = "default";
+	public static final String PROP_INVALIDATION_MULTICAST_GROUP = "cache.invalidation.multicast.group";
+	public static final String DEFAULT_INVALIDATION_MULTICAST_GROUP = "230.0.0.1";
+	public static final String PROP_INVALIDATION_MULTICAST_PORT = "cache.invalidation.multicast.port";
+	public static final int DEFAULT_INVALIDATION_MULTICAST_PORT = 4446;
+	public static final String PROP_INVALIDATION_MULTICAST_TTL = "cache.invalidation.multicast.timeToLive";
+	public static final int DEFAULT_INVALIDATION_MULTICAST_TTL = 1;
 	
 	/** Czas życia */
 	public static final String PROP_TIME_TO_LIVE = "cache.timeToLive";
@@ -0,0 +1,94 @@
+package pl.slawas.common.cache;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * CacheExecutors - tworzenie wykonawców operacji asynchronicznych pamięci
+ * podręcznej ({@link IAsyncTypedObjectCache}, odświeżanie wartości z
+ * wyprzedzeniem). Liczbę wątków określa parametr managera
+ * {@link CacheConstants#PROP_ASYNC_THREADS}; gdy nie jest ustawiony, to
+ * używane są wątki wirtualne (o ile pozwala na to wersja Java), a w
+ * przeciwnym wypadku pula wątków w liczbie dostępnych procesorów.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class CacheExecutors {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheExecutors.class);
+
+	private CacheExecutors() {
+	}
+
+	/**
+	 * Utworzenie wykonawcy operacji asynchronicznych managera.
+	 *
+	 * @param managerName
+	 *            nazwa managera - używana w nazwach wątków
+	 * @param threads
+	 *            wartość parametru {@link CacheConstants#PROP_ASYNC_THREADS}
+	 *            (może być {@code null})
+	 * @return wykonawca, który należy zamknąć razem z managerem
+	 */
+	public static ExecutorService newAsyncExecutor(String managerName, String threads) {
+		int threadCount = (StringUtils.isBlank(threads) ? 0 : Integer.parseInt(threads.trim()));
+		if (threadCount < 0) {
+			throw new IllegalArgumentException(String.format("-->newAsyncExecutor: Invalid value %s of parameter %s",
+					threads, CacheConstants.PROP_ASYNC_THREADS));
+		}
+		if (threadCount == 0) {
+			ExecutorService virtualThreads = newVirtualThreadExecutor();
+			if (virtualThreads != null) {
+				logger.info("-->newAsyncExecutor: Manager '{}' uses virtual threads.", managerName);
+				return virtualThreads;
+			}
+			threadCount = Runtime.getRuntime().availableProcessors();
+		}
+		logger.info("-->newAsyncExecutor: Manager '{}' uses {} threads.", managerName, threadCount);
+		return Executors.newFixedThreadPool(threadCount, new AsyncThreadFactory(managerName));
+	}
+
+	/**
+	 * @return wykonawca z wątkami wirtualnymi (Java 21+) albo {@code null}
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Wątki demony, aby niezamknięty manager nie blokował zakończenia JVM.
+	 */
+	private static class AsyncThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		AsyncThreadFactory(String managerName) {
+			this.prefix = "sccache-async-" + managerName + '-';
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
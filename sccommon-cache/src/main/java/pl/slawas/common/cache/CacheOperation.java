@@ -0,0 +1,37 @@
+package pl.slawas.common.cache;
+
+/**
+ *
+ * CacheOperation - operacje na regionie pamięci podręcznej, dla których
+ * mierzone są czasy wykonania.
+ *
+ * @see #GET
+ * @see #PUT
+ * @see #REMOVE
+ * @see #FLUSH
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.2 $
+ *
+ */
+public enum CacheOperation {
+
+	/**
+	 * Pobranie elementu (również pobranie wielu elementów jednym wywołaniem).
+	 */
+	GET,
+	/**
+	 * Zapisanie elementu (również zapisanie wielu elementów jednym wywołaniem).
+	 */
+	PUT,
+	/**
+	 * Usunięcie elementu (również usunięcie wielu elementów jednym wywołaniem).
+	 */
+	REMOVE,
+	/**
+	 * Zapis partii zaległych zmian regionu w trybie opóźnionego zapisu
+	 * (write-behind).
+	 */
+	FLUSH;
+
+}
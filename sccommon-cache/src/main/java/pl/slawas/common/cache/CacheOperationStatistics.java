@@ -0,0 +1,57 @@
+package pl.slawas.common.cache;
+
+/**
+ *
+ * CacheOperationStatistics - liczniki i histogramy czasów wykonania operacji
+ * ({@link CacheOperation}) na regionie pamięci podręcznej. Obiekt tworzony jest
+ * tylko wtedy, gdy statystyki nie są wyłączone parametrem
+ * {@link CacheConstants#PROP_DISABLE_STATISTICS} - region bez statystyk
+ * sprawdza jedynie, czy referencja do niego nie jest {@code null}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class CacheOperationStatistics {
+
+	private final LatencyHistogram[] histograms;
+
+	public CacheOperationStatistics() {
+		CacheOperation[] operations = CacheOperation.values();
+		this.histograms = new LatencyHistogram[operations.length];
+		for (CacheOperation operation : operations) {
+			this.histograms[operation.ordinal()] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Zapisanie czasu wykonania operacji.
+	 *
+	 * @param operation
+	 *            operacja
+	 * @param startNanos
+	 *            czas rozpoczęcia operacji, wynik {@link System#nanoTime()}
+	 */
+	public void record(CacheOperation operation, long startNanos) {
+		this.histograms[operation.ordinal()].record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @param operation
+	 *            operacja
+	 * @return histogram czasów wykonania operacji
+	 */
+	public LatencyHistogram getHistogram(CacheOperation operation) {
+		return this.histograms[operation.ordinal()];
+	}
+
+	/**
+	 * Wyzerowanie wszystkich histogramów.
+	 */
+	public void clear() {
+		for (LatencyHistogram histogram : this.histograms) {
+			histogram.reset();
+		}
+	}
+
+}
@@ -1,20 +1,19 @@
 package pl.slawas.common.cache;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.ehcache.xml.XmlConfiguration;
-import org.jdom.Element;
 
 import pl.slawas.common.cache.ehcache.EhCacheProvider;
-import pl.slawas.helpers.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,7 +22,7 @@ import org.slf4j.LoggerFactory;
  * EhCacheProviderFactory obsługa pamięci podręczen opartej o EhCache
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.4 $
  * 
  */
 public class CacheProviderFactory {
@@ -37,14 +36,33 @@ public class CacheProviderFactory {
 	 * Mapa instancji managerów pamięci podręcznej. Kluczem jest nazwa instancji
 	 * managera pamięci.
 	 */
-	private static final Map<String, IObjectCacheProvider<?>> instances = new HashMap<>();
+	private static final Map<String, IObjectCacheProvider<?>> instances = new ConcurrentHashMap<>();
 	private static final Object lockRegistry = new Object();
 
+	/**
+	 * Klasy providerów wskazanych parametrem
+	 * {@link CacheConstants#PROP_PROVIDER_IMPL} wraz z rodzajem providera - aby
+	 * pobranie zarejestrowanej instancji nie wymagało refleksji.
+	 */
+	private static final Map<String, ProviderType> providerTypes = new ConcurrentHashMap<>();
+
+	/**
+	 * Migawka statystyk wszystkich regionów, {@code null} - do utworzenia przy
+	 * kolejnym odczycie (np. po zmianie zarejestrowanych managerów).
+	 */
+	private static volatile CacheStatisticsSnapshot statisticsSnapshot;
+
+	/** Wątek odświeżający migawkę statystyk, dostęp w {@link #lockRegistry} */
+	private static ScheduledExecutorService statisticsRefresher;
+
 	private CacheProviderFactory() {
 	}
 
 	/**
-	 * Pobieranie nowej instancji dostawcy obsługi pamięci podręcznej EhCache
+	 * Pobieranie nowej instancji dostawcy obsługi pamięci podręcznej EhCache.
+	 * Zarejestrowana już instancja zwracana jest bez tworzenia obiektu
+	 * providera, a klasa providera wskazana parametrem
+	 * {@link CacheConstants#PROP_PROVIDER_IMPL} wyszukiwana jest tylko raz.
 	 * 
 	 * @param props
 	 * @return
@@ -56,22 +74,61 @@ public class CacheProviderFactory {
 		IObjectCacheProvider<?> instance = null;
 		if (StringUtils.isNotBlank(customProviderImpl)) {
 			try {
-				Class<?> impl = Class.forName(customProviderImpl);
-				IObjectCacheProvider<?> newInstance = (IObjectCacheProvider<?>) impl.newInstance();
-				instance = loadInstance(newInstance, props);
+				ProviderType providerType = providerTypes.get(customProviderImpl);
+				if (providerType != null) {
+					instance = getRegisteredInstance(providerType.associatedProvider, props);
+				}
+				if (instance == null) {
+					Class<?> impl = (providerType != null ? providerType.impl : Class.forName(customProviderImpl));
+					IObjectCacheProvider<?> newInstance = (IObjectCacheProvider<?>) impl.newInstance();
+					providerTypes.putIfAbsent(customProviderImpl,
+							new ProviderType(impl, newInstance.getAssociatedProvider()));
+					instance = loadInstance(newInstance, props);
+				}
 			} catch (ClassNotFoundException | IllegalAccessException | InstantiationException e) {
 				throw new IllegalArgumentException(e);
 			}
 		} else {
 			/** domyślnie używamy EhCache */
-			IObjectCacheProvider<XmlConfiguration> newInstance = new EhCacheProvider();
-			instance = loadInstance(newInstance, props);
+			instance = getRegisteredInstance(CacheProviderEnum.EhCache, props);
+			if (instance == null) {
+				IObjectCacheProvider<XmlConfiguration> newInstance = new EhCacheProvider();
+				instance = loadInstance(newInstance, props);
+			}
 		}
 		logger.trace("\n***************\n* Pobrałem instancje provider'a: {} o nazwie: {}\n***************",
 				new Object[] { instance.getClass().getName(), instance.getName() });
 		return instance;
 	}
 
+	/**
+	 * @return zarejestrowana instancja providera o nazwie z parametru
+	 *         {@link CacheConstants#PROP_PROVIDER_NAME} albo {@code null}
+	 */
+	private static IObjectCacheProvider<?> getRegisteredInstance(CacheProviderEnum associatedProvider,
+			Properties props) {
+		String providerName = props.getProperty(CacheConstants.PROP_PROVIDER_NAME,
+				CacheConstants.DEFAULT_PROVIDER_NAME);
+		String instanceName = buildInstanceNameBasedOnManagerName(associatedProvider, providerName);
+		return (IObjectCacheProvider<?>) checkRegisteredInstance(
+				associatedProvider.getCacheProviderInterfaceClass(), instanceName);
+	}
+
+	/**
+	 * Klasa providera i rodzaj providera, który implementuje.
+	 */
+	private static final class ProviderType {
+
+		private final Class<?> impl;
+
+		private final CacheProviderEnum associatedProvider;
+
+		private ProviderType(Class<?> impl, CacheProviderEnum associatedProvider) {
+			this.impl = impl;
+			this.associatedProvider = associatedProvider;
+		}
+	}
+
 	/**
 	 * Właściwa implementacja ładowania instancji provider'a
 	 * 
@@ -98,11 +155,22 @@ public class CacheProviderFactory {
 				/* mam nową instancję provider'a */
 				logger.info("\n***************\n* New provider is initializing: {}\n***************",
 						newInstance.getClass().getName());
+				try {
+					/* wpierw inicjalizacja konfiguracji - start */
+					newInstance.initConfiguration(props);
+					/* wpierw inicjalizacja konfiguracji - koniec */
+					newInstance.init();
+				} catch (RuntimeException e) {
+					closeQuietly(newInstance);
+					throw e;
+				}
+				/*
+				 * rejestracja dopiero zainicjalizowanej instancji - getInstance czyta
+				 * rejestr bez blokady
+				 */
 				instances.put(instanceName, newInstance);
-				/* wpierw inicjalizacja konfiguracji - start */
-				newInstance.initConfiguration(props);
-				/* wpierw inicjalizacja konfiguracji - koniec */
-				newInstance.init();
+				startStatisticsRefresher(props);
+				invalidateStatistics();
 				return newInstance;
 			}
 			return existsInstance;
@@ -110,6 +178,17 @@ public class CacheProviderFactory {
 		}
 	}
 
+	/**
+	 * Zamknięcie instancji, której inicjalizacja się nie powiodła.
+	 */
+	private static void closeQuietly(IObjectCacheProvider<?> instance) {
+		try {
+			instance.close();
+		} catch (RuntimeException e) {
+			logger.warn("-->loadInstance: Closing of not initialized provider failed", e);
+		}
+	}
+
 	/**
 	 * Zamykanie/usuwanie instancji pamięci podręcznej.
 	 */
@@ -121,81 +200,94 @@ public class CacheProviderFactory {
 			}
 			instances.clear();
 		}
+		synchronized (lockRegistry) {
+			if (statisticsRefresher != null) {
+				statisticsRefresher.shutdownNow();
+				statisticsRefresher = null;
+			}
+			statisticsSnapshot = null;
+		}
 	}
 
 	/**
-	 * Pobieranie statystyk dla wszystkich regionów pamięci podręcznej.
-	 * 
-	 * @param offset
-	 *            pozycja, od której ma zaczynać się lista statystyk - domyślnie 0
-	 * @param pageSize
-	 *            maksymalna liczba rekordów jaka ma być zwrócona, rozmiar strony -
-	 *            domyślnie {@link CacheConstants#DEFAULT_MAX_RESULT_SIZE}
-	 * @return lista statystyk regionów w postaci {@link Element}
+	 * Uruchomienie okresowego odświeżania migawki statystyk - okres określa
+	 * parametr {@link CacheConstants#PROP_STATISTICS_REFRESH_MILLIS} pierwszego
+	 * zarejestrowanego managera. Metoda wywoływana w {@link #lockRegistry}.
 	 */
-	public static ObjectCacheStatisticsList getAllStatistics(Integer offset, Integer pageSize) {
-		List<IObjectCacheStatistics> result = new ArrayList<>();
-		int lOffset = (offset == null ? 0 : offset.intValue());
-		int lPageSize = (pageSize == null ? CacheConstants.DEFAULT_MAX_RESULT_SIZE : pageSize.intValue());
-		if (instances.size() == 0) {
-			return new ObjectCacheStatisticsList(result, 0, lOffset, lPageSize);
+	private static void startStatisticsRefresher(Properties props) {
+		if (statisticsRefresher != null) {
+			return;
 		}
-		Set<Entry<String, IObjectCacheProvider<?>>> allInstances = instances.entrySet();
-		List<String> allRegions = new ArrayList<>();
-		for (Entry<String, IObjectCacheProvider<?>> instance : allInstances) {
-			String managerName = instance.getKey();
-			IObjectCacheProvider<?> provider = instance.getValue();
-			if (provider.getCacheNames().length != 0) {
-				for (String regionName : provider.getCacheNames()) {
-					allRegions.add(buildRegionName(managerName, regionName));
-				}
-			}
+		String refreshMillis = props.getProperty(CacheConstants.PROP_STATISTICS_REFRESH_MILLIS,
+				CacheConstants.DEFAULT_STATISTICS_REFRESH_MILLIS);
+		long period = Long.parseLong(refreshMillis.trim());
+		if (period < 1L) {
+			throw new IllegalArgumentException(String.format("-->startStatisticsRefresher: Invalid value %s of parameter %s",
+					refreshMillis, CacheConstants.PROP_STATISTICS_REFRESH_MILLIS));
 		}
-		int allRegionsSize = allRegions.size();
-		if (allRegionsSize == 0 || lOffset >= allRegionsSize) {
-			return new ObjectCacheStatisticsList(result, 0, lOffset, lPageSize);
-		}
-		try {
-			Strings.sort(allRegions);
-		} catch (Exception e) {
-			logger.warn("[getAllStatistics] Nieudana próba posortowania nazw regionów.", e);
-		}
-		int rowCounter = -1;
-		int rowCounterOnPage = 0;
-		for (String commonRegionName : allRegions) {
-			rowCounter++;
-			if (rowCounter < offset) {
-				/* pomijam czytanie statystyk */
-				continue;
-			}
-			if (rowCounterOnPage > pageSize) {
-				/* przerywam czytanie statystyk */
-				break;
-			}
-			String managerName = decodeManagerName(commonRegionName);
-			String regionName = decodeRegionName(commonRegionName);
-			IObjectCacheProvider<?> provider = instances.get(managerName);
-			IObjectCacheStatistics stats = provider.getStatistics(regionName);
-			if (stats == null) {
-				stats = new EmptyObjectCacheStatistics(managerName, regionName, provider.getAssociatedProvider());
+		statisticsRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "sccache-statistics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		statisticsRefresher.scheduleWithFixedDelay(() -> {
+			try {
+				refreshStatistics();
+			} catch (RuntimeException e) {
+				logger.error("-->refreshStatistics: Unexpected error", e);
 			}
-			result.add(stats);
-			rowCounterOnPage++;
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
 
-		}
-		return new ObjectCacheStatisticsList(result, allRegionsSize, lOffset, lPageSize);
+	/**
+	 * Utworzenie nowej migawki statystyk wszystkich regionów. Wywoływane
+	 * okresowo; można wywołać jawnie, aby nie czekać na kolejne odświeżenie.
+	 * 
+	 * @return nowa migawka
+	 */
+	public static CacheStatisticsSnapshot refreshStatistics() {
+		CacheStatisticsSnapshot snapshot = CacheStatisticsSnapshot.build(instances);
+		statisticsSnapshot = snapshot;
+		return snapshot;
 	}
 
-	private static String buildRegionName(String managerName, String regionName) {
-		return managerName + "." + (StringUtils.isNotBlank(regionName) ? regionName : EMPTY_REGION_NAME);
+	/**
+	 * Oznaczenie migawki statystyk jako nieaktualnej (np. po utworzeniu albo
+	 * usunięciu regionu) - kolejny odczyt utworzy nową migawkę.
+	 */
+	public static void invalidateStatistics() {
+		statisticsSnapshot = null;
 	}
 
-	private static String decodeManagerName(String commonRegionName) {
-		return commonRegionName.split("\\.")[0];
+	/**
+	 * @return bieżąca migawka statystyk wszystkich regionów - tworzona, jeżeli
+	 *         jeszcze nie istnieje
+	 */
+	public static CacheStatisticsSnapshot getStatisticsSnapshot() {
+		CacheStatisticsSnapshot snapshot = statisticsSnapshot;
+		if (snapshot != null) {
+			return snapshot;
+		}
+		return (instances.isEmpty() ? CacheStatisticsSnapshot.EMPTY : refreshStatistics());
 	}
 
-	private static String decodeRegionName(String commonRegionName) {
-		return commonRegionName.split("\\.", 2)[1];
+	/**
+	 * Pobieranie statystyk dla wszystkich regionów pamięci podręcznej. Statystyki
+	 * pochodzą z okresowo odświeżanej migawki
+	 * ({@link CacheConstants#PROP_STATISTICS_REFRESH_MILLIS}), więc pobranie
+	 * strony nie sięga do regionów.
+	 * 
+	 * @param offset
+	 *            pozycja, od której ma zaczynać się lista statystyk - domyślnie 0
+	 * @param pageSize
+	 *            maksymalna liczba rekordów jaka ma być zwrócona, rozmiar strony -
+	 *            domyślnie {@link CacheConstants#DEFAULT_MAX_RESULT_SIZE}
+	 * @return lista statystyk regionów w postaci {@link IObjectCacheStatistics}
+	 */
+	public static ObjectCacheStatisticsList getAllStatistics(Integer offset, Integer pageSize) {
+		int lOffset = (offset == null ? 0 : offset.intValue());
+		int lPageSize = (pageSize == null ? CacheConstants.DEFAULT_MAX_RESULT_SIZE : pageSize.intValue());
+		return getStatisticsSnapshot().getPage(lOffset, lPageSize);
 	}
 
 	public static String buildInstanceNameBasedOnManagerName(CacheProviderEnum cacheProvider, String manager) {
@@ -229,8 +321,8 @@ public class CacheProviderFactory {
 	public static void unbindInstanceByManagerName(CacheProviderEnum associatedProvider, String manager) {
 		String instanceName = buildInstanceNameBasedOnManagerName(associatedProvider, manager);
 		synchronized (lockRegistry) {
-			if (instances.containsKey(instanceName)) {
-				instances.remove(instanceName);
+			if (instances.remove(instanceName) != null) {
+				invalidateStatistics();
 			}
 		}
 	}
@@ -0,0 +1,309 @@
+package pl.slawas.common.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * CacheRegionStatistics - MBean ze statystykami regionu pamięci podręcznej.
+ * Rejestrowany jest w platformowym {@link MBeanServer} pod nazwą
+ * {@code pl.slawas.common.cache:type=CacheRegion,manager=<manager>,name=<region>}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.3 $
+ *
+ */
+public class CacheRegionStatistics implements CacheRegionStatisticsMBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheRegionStatistics.class);
+
+	public static final String JMX_DOMAIN = "pl.slawas.common.cache";
+
+	private final IObjectCacheStatistics statistics;
+
+	public CacheRegionStatistics(IObjectCacheStatistics statistics) {
+		super();
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Nazwa MBean'a regionu.
+	 *
+	 * @param managerName
+	 *            nazwa managera pamięci podręcznej
+	 * @param regionName
+	 *            nazwa regionu
+	 * @return nazwa obiektu JMX
+	 * @throws MalformedObjectNameException
+	 */
+	public static ObjectName getObjectName(String managerName, String regionName)
+			throws MalformedObjectNameException {
+		return new ObjectName(JMX_DOMAIN + ":type=CacheRegion,manager=" + ObjectName.quote(managerName) + ",name="
+				+ ObjectName.quote(regionName));
+	}
+
+	/**
+	 * Rejestracja MBean'a ze statystykami regionu. Wcześniej zarejestrowany
+	 * MBean o tej samej nazwie jest zastępowany. Błąd rejestracji jest tylko
+	 * logowany - nie może przerwać tworzenia regionu.
+	 *
+	 * @param statistics
+	 *            statystyki regionu
+	 */
+	public static void register(IObjectCacheStatistics statistics) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = getObjectName(statistics.getAssociatedManagerName(),
+					statistics.getAssociatedCacheName());
+			CacheRegionStatistics mbean = new CacheRegionStatistics(statistics);
+			try {
+				server.registerMBean(mbean, name);
+			} catch (InstanceAlreadyExistsException e) {
+				server.unregisterMBean(name);
+				server.registerMBean(mbean, name);
+			}
+		} catch (JMException e) {
+			logger.warn("-->register: Nieudana rejestracja MBean'a dla regionu '{}': {}",
+					statistics.getAssociatedCacheName(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Wyrejestrowanie MBean'a ze statystykami regionu.
+	 *
+	 * @param managerName
+	 *            nazwa managera pamięci podręcznej
+	 * @param regionName
+	 *            nazwa regionu
+	 */
+	public static void unregister(String managerName, String regionName) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(getObjectName(managerName, regionName));
+		} catch (InstanceNotFoundException e) {
+			/* MBean nie był zarejestrowany */
+		} catch (JMException e) {
+			logger.warn("-->unregister: Nieudane wyrejestrowanie MBean'a dla regionu '{}': {}", regionName,
+					e.getMessage());
+		}
+	}
+
+	@Override
+	public String getManagerName() {
+		return statistics.getAssociatedManagerName();
+	}
+
+	@Override
+	public String getRegionName() {
+		return statistics.getAssociatedCacheName();
+	}
+
+	@Override
+	public long getCacheHits() {
+		return statistics.getCacheHits();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return statistics.getCacheMisses();
+	}
+
+	@Override
+	public double getHitsRatio() {
+		return statistics.getHitsRatio();
+	}
+
+	@Override
+	public long getObjectCount() {
+		return statistics.getObjectCount();
+	}
+
+	@Override
+	public long getInMemoryObjectCount() {
+		return statistics.getInMemoryObjectCount();
+	}
+
+	@Override
+	public long getOnDiskObjectCount() {
+		return statistics.getOnDiskObjectCount();
+	}
+
+	@Override
+	public long getHeapSizeInBytes() {
+		return statistics.getHeapSizeInBytes();
+	}
+
+	@Override
+	public long getOffHeapSizeInBytes() {
+		return statistics.getOffHeapSizeInBytes();
+	}
+
+	@Override
+	public long getDiskSizeInBytes() {
+		return statistics.getDiskSizeInBytes();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return statistics.getEvictionCount();
+	}
+
+	@Override
+	public long getExpirationCount() {
+		return statistics.getExpirationCount();
+	}
+
+	@Override
+	public long getGetCount() {
+		return statistics.getOperationCount(CacheOperation.GET);
+	}
+
+	@Override
+	public double getGetLatencyMean() {
+		return statistics.getMeanLatencyNanos(CacheOperation.GET);
+	}
+
+	@Override
+	public long getGetLatency50th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.GET, 50.0);
+	}
+
+	@Override
+	public long getGetLatency95th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.GET, 95.0);
+	}
+
+	@Override
+	public long getGetLatency99th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.GET, 99.0);
+	}
+
+	@Override
+	public long getGetLatencyMax() {
+		return statistics.getMaxLatencyNanos(CacheOperation.GET);
+	}
+
+	@Override
+	public long getPutCount() {
+		return statistics.getOperationCount(CacheOperation.PUT);
+	}
+
+	@Override
+	public double getPutLatencyMean() {
+		return statistics.getMeanLatencyNanos(CacheOperation.PUT);
+	}
+
+	@Override
+	public long getPutLatency50th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.PUT, 50.0);
+	}
+
+	@Override
+	public long getPutLatency95th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.PUT, 95.0);
+	}
+
+	@Override
+	public long getPutLatency99th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.PUT, 99.0);
+	}
+
+	@Override
+	public long getPutLatencyMax() {
+		return statistics.getMaxLatencyNanos(CacheOperation.PUT);
+	}
+
+	@Override
+	public long getRemoveCount() {
+		return statistics.getOperationCount(CacheOperation.REMOVE);
+	}
+
+	@Override
+	public double getRemoveLatencyMean() {
+		return statistics.getMeanLatencyNanos(CacheOperation.REMOVE);
+	}
+
+	@Override
+	public long getRemoveLatency50th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.REMOVE, 50.0);
+	}
+
+	@Override
+	public long getRemoveLatency95th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.REMOVE, 95.0);
+	}
+
+	@Override
+	public long getRemoveLatency99th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.REMOVE, 99.0);
+	}
+
+	@Override
+	public long getRemoveLatencyMax() {
+		return statistics.getMaxLatencyNanos(CacheOperation.REMOVE);
+	}
+
+	@Override
+	public long getWriteBehindQueueSize() {
+		return statistics.getWriteBehindQueueSize();
+	}
+
+	@Override
+	public long getFlushCount() {
+		return statistics.getOperationCount(CacheOperation.FLUSH);
+	}
+
+	@Override
+	public double getFlushLatencyMean() {
+		return statistics.getMeanLatencyNanos(CacheOperation.FLUSH);
+	}
+
+	@Override
+	public long getFlushLatency95th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.FLUSH, 95.0);
+	}
+
+	@Override
+	public long getFlushLatency99th() {
+		return statistics.getLatencyPercentileNanos(CacheOperation.FLUSH, 99.0);
+	}
+
+	@Override
+	public long getFlushLatencyMax() {
+		return statistics.getMaxLatencyNanos(CacheOperation.FLUSH);
+	}
+
+	@Override
+	public String[] getTopHitKeys() {
+		return toStrings(statistics.getTopHitKeys());
+	}
+
+	@Override
+	public String[] getTopMissKeys() {
+		return toStrings(statistics.getTopMissKeys());
+	}
+
+	private static String[] toStrings(List<HotKeyProfiler.HotKey> keys) {
+		String[] result = new String[keys.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = keys.get(i).toString();
+		}
+		return result;
+	}
+
+	@Override
+	public void clearStatistics() {
+		statistics.clearStatistics();
+	}
+
+}
@@ -0,0 +1,104 @@
+package pl.slawas.common.cache;
+
+/**
+ *
+ * CacheRegionStatisticsMBean - interfejs JMX statystyk regionu pamięci
+ * podręcznej, zobacz {@link CacheRegionStatistics}. Czasy wyrażone są w
+ * nanosekundach.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.3 $
+ *
+ */
+public interface CacheRegionStatisticsMBean {
+
+	String getManagerName();
+
+	String getRegionName();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	double getHitsRatio();
+
+	long getObjectCount();
+
+	long getInMemoryObjectCount();
+
+	long getOnDiskObjectCount();
+
+	long getHeapSizeInBytes();
+
+	long getOffHeapSizeInBytes();
+
+	long getDiskSizeInBytes();
+
+	long getEvictionCount();
+
+	long getExpirationCount();
+
+	long getGetCount();
+
+	double getGetLatencyMean();
+
+	long getGetLatency50th();
+
+	long getGetLatency95th();
+
+	long getGetLatency99th();
+
+	long getGetLatencyMax();
+
+	long getPutCount();
+
+	double getPutLatencyMean();
+
+	long getPutLatency50th();
+
+	long getPutLatency95th();
+
+	long getPutLatency99th();
+
+	long getPutLatencyMax();
+
+	long getRemoveCount();
+
+	double getRemoveLatencyMean();
+
+	long getRemoveLatency50th();
+
+	long getRemoveLatency95th();
+
+	long getRemoveLatency99th();
+
+	long getRemoveLatencyMax();
+
+	long getWriteBehindQueueSize();
+
+	long getFlushCount();
+
+	double getFlushLatencyMean();
+
+	long getFlushLatency95th();
+
+	long getFlushLatency99th();
+
+	long getFlushLatencyMax();
+
+	/**
+	 * @return najczęściej trafiane klucze w postaci {@code klucz=liczba}
+	 */
+	String[] getTopHitKeys();
+
+	/**
+	 * @return najczęściej chybiane klucze w postaci {@code klucz=liczba}
+	 */
+	String[] getTopMissKeys();
+
+	/**
+	 * Wyzerowanie statystyk regionu.
+	 */
+	void clearStatistics();
+
+}
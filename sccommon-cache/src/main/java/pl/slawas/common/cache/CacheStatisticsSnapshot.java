@@ -0,0 +1,117 @@
+package pl.slawas.common.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * CacheStatisticsSnapshot - niezmienna migawka statystyk wszystkich regionów
+ * zarejestrowanych managerów, posortowana po nazwie managera i regionu.
+ * Pobranie strony statystyk kopiuje wyłącznie wiersze strony i nie sięga do
+ * regionów.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class CacheStatisticsSnapshot {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheStatisticsSnapshot.class);
+
+	static final CacheStatisticsSnapshot EMPTY = new CacheStatisticsSnapshot(
+			Collections.<IObjectCacheStatistics>emptyList());
+
+	private static final Comparator<IObjectCacheStatistics> ORDER = Comparator
+			.comparing(IObjectCacheStatistics::getAssociatedManagerName,
+					Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+			.thenComparing(IObjectCacheStatistics::getAssociatedCacheName,
+					Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+
+	private final List<IObjectCacheStatistics> rows;
+
+	/** czas utworzenia migawki [ms] */
+	private final long timestamp;
+
+	/**
+	 * @param rows
+	 *            statystyki regionów - kolejność jest dowolna
+	 */
+	public CacheStatisticsSnapshot(List<IObjectCacheStatistics> rows) {
+		List<IObjectCacheStatistics> sorted = new ArrayList<>(rows);
+		sorted.sort(ORDER);
+		this.rows = Collections.unmodifiableList(sorted);
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Utworzenie migawki statystyk regionów zarejestrowanych managerów.
+	 *
+	 * @param instances
+	 *            zarejestrowane instancje managerów (nazwa instancji -&gt;
+	 *            manager)
+	 * @return migawka statystyk
+	 */
+	static CacheStatisticsSnapshot build(Map<String, IObjectCacheProvider<?>> instances) {
+		List<IObjectCacheStatistics> rows = new ArrayList<>();
+		for (Entry<String, IObjectCacheProvider<?>> instance : instances.entrySet()) {
+			IObjectCacheProvider<?> provider = instance.getValue();
+			try {
+				for (String regionName : provider.getCacheNames()) {
+					rows.add(freeze(instance.getKey(), provider,
+							(StringUtils.isNotBlank(regionName) ? regionName : CacheProviderFactory.EMPTY_REGION_NAME)));
+				}
+			} catch (RuntimeException e) {
+				/* np. manager zamykany w trakcie tworzenia migawki */
+				logger.warn("-->build: Statistics of '{}' skipped: {}", instance.getKey(), e.getMessage());
+			}
+		}
+		return new CacheStatisticsSnapshot(rows);
+	}
+
+	private static IObjectCacheStatistics freeze(String instanceName, IObjectCacheProvider<?> provider,
+			String regionName) {
+		IObjectCacheStatistics stats = provider.getStatistics(regionName);
+		if (stats == null) {
+			return new EmptyObjectCacheStatistics(instanceName, regionName, provider.getAssociatedProvider());
+		}
+		return new FrozenObjectCacheStatistics(stats);
+	}
+
+	/**
+	 * Strona statystyk.
+	 *
+	 * @param offset
+	 *            pozycja, od której ma zaczynać się lista statystyk
+	 * @param pageSize
+	 *            maksymalna liczba zwracanych statystyk
+	 * @return lista statystyk regionów
+	 */
+	public ObjectCacheStatisticsList getPage(int offset, int pageSize) {
+		int from = Math.max(0, Math.min(offset, rows.size()));
+		int to = (int) Math.min(rows.size(), (long) from + Math.max(0, pageSize));
+		return new ObjectCacheStatisticsList(new ArrayList<>(rows.subList(from, to)), rows.size(), offset, pageSize);
+	}
+
+	/**
+	 * @return liczba regionów w migawce
+	 */
+	public int getSize() {
+		return rows.size();
+	}
+
+	/**
+	 * @return the {@link #timestamp}
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+}
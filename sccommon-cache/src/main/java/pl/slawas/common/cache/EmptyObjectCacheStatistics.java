@@ -1,11 +1,14 @@
 package pl.slawas.common.cache;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * 
  * EmptyObjectCacheStatistics obiekt z pustymi statystykami.
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.3 $
  *
  */
 public class EmptyObjectCacheStatistics implements IObjectCacheStatistics {
@@ -28,6 +31,76 @@ public class EmptyObjectCacheStatistics implements IObjectCacheStatistics {
 		return 0;
 	}
 
+	@Override
+	public long getInMemoryObjectCount() {
+		return 0;
+	}
+
+	@Override
+	public long getOnDiskObjectCount() {
+		return 0;
+	}
+
+	@Override
+	public long getHeapSizeInBytes() {
+		return 0;
+	}
+
+	@Override
+	public long getOffHeapSizeInBytes() {
+		return 0;
+	}
+
+	@Override
+	public long getDiskSizeInBytes() {
+		return 0;
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return 0;
+	}
+
+	@Override
+	public long getExpirationCount() {
+		return 0;
+	}
+
+	@Override
+	public long getWriteBehindQueueSize() {
+		return 0;
+	}
+
+	@Override
+	public List<HotKeyProfiler.HotKey> getTopHitKeys() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<HotKeyProfiler.HotKey> getTopMissKeys() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public long getOperationCount(CacheOperation operation) {
+		return 0;
+	}
+
+	@Override
+	public double getMeanLatencyNanos(CacheOperation operation) {
+		return 0;
+	}
+
+	@Override
+	public long getLatencyPercentileNanos(CacheOperation operation, double percentile) {
+		return 0;
+	}
+
+	@Override
+	public long getMaxLatencyNanos(CacheOperation operation) {
+		return 0;
+	}
+
 	@Override
 	public long getOnDiskHits() {
 		return 0;
@@ -0,0 +1,142 @@
+package pl.slawas.common.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * FrequencySketch - przybliżona częstość odwołań do kluczy (Count-Min Sketch
+ * z 4-bitowymi licznikami, jak w TinyLFU). Każdy klucz zwiększa po jednym
+ * liczniku w czterech wierszach tablicy, a częstość to minimum tych liczników
+ * (maksymalnie 15). Po {@link #getSampleSize()} odwołaniach wszystkie
+ * liczniki są dzielone na pół, więc dawne odwołania tracą znaczenie.
+ * <p>
+ * Liczniki zwiększane są bez blokad (CAS); równoczesne zwiększenia i
+ * dzielenie liczników mogą zgubić pojedyncze odwołania, co nie zmienia
+ * przybliżonego charakteru wyniku.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class FrequencySketch {
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	private static final int MAX_FREQUENCY = 15;
+
+	private final AtomicLongArray table;
+
+	private final int tableMask;
+
+	private final int sampleSize;
+
+	private final AtomicInteger additions = new AtomicInteger();
+
+	/**
+	 * @param maximumSize
+	 *            oczekiwana liczba elementów regionu
+	 */
+	public FrequencySketch(long maximumSize) {
+		int length = ceilingPowerOfTwo((int) Math.min(Math.max(maximumSize, 16L), 1 << 30));
+		this.table = new AtomicLongArray(length);
+		this.tableMask = length - 1;
+		this.sampleSize = (int) Math.min(10L * Math.max(maximumSize, 16L), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Zapisanie odwołania do klucza.
+	 */
+	public void increment(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && additions.incrementAndGet() >= sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * @return przybliżona liczba odwołań do klucza (0-15)
+	 */
+	public int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = MAX_FREQUENCY;
+		for (int i = 0; i < 4; i++) {
+			int offset = (start + i) << 2;
+			int count = (int) ((table.get(indexOf(hash, i)) >>> offset) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * @return liczba odwołań, po której liczniki są dzielone na pół
+	 */
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		while (true) {
+			long current = table.get(index);
+			if ((current & mask) == mask) {
+				return false;
+			}
+			if (table.compareAndSet(index, current, current + (1L << offset))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Podzielenie wszystkich liczników na pół.
+	 */
+	private void reset() {
+		if (additions.getAndSet(0) < sampleSize) {
+			/* inny wątek właśnie wykonał dzielenie */
+			return;
+		}
+		for (int i = 0; i < table.length(); i++) {
+			long current;
+			do {
+				current = table.get(i);
+			} while (!table.compareAndSet(i, current, (current >>> 1) & RESET_MASK));
+		}
+		onReset();
+	}
+
+	/**
+	 * Wywoływane po podzieleniu liczników na pół.
+	 */
+	protected void onReset() {
+		/* do nadpisania */
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += (h >>> 32);
+		return ((int) h) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+
+}
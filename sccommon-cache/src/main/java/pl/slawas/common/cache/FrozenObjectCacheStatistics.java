@@ -0,0 +1,258 @@
+package pl.slawas.common.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * FrozenObjectCacheStatistics - niezmienna kopia statystyk regionu wykonana w
+ * chwili tworzenia migawki ({@link CacheStatisticsSnapshot}). Odczyt wartości
+ * nie sięga do regionu ani do usługi statystyk. Percentyle czasów wykonania
+ * zapamiętywane są dla wartości {@link #PERCENTILES} - dla innego percentyla
+ * zwracana jest wartość najbliższego większego zapamiętanego percentyla.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.3 $
+ *
+ */
+public class FrozenObjectCacheStatistics implements IObjectCacheStatistics {
+
+	private static final long serialVersionUID = -2771964062915284734L;
+
+	/** Zapamiętywane percentyle czasów wykonania operacji */
+	static final double[] PERCENTILES = { 50.0, 75.0, 90.0, 95.0, 99.0, 99.9, 100.0 };
+
+	private final String managerName;
+	private final String regionName;
+	private final CacheProviderEnum prov;
+	private final boolean active;
+	private final long cacheHits;
+	private final long inMemoryHits;
+	private final long onDiskHits;
+	private final long cacheMisses;
+	private final long objectCount;
+	private final double hitsRatio;
+	private final int size;
+	private final long inMemoryObjectCount;
+	private final long onDiskObjectCount;
+	private final long heapSizeInBytes;
+	private final long offHeapSizeInBytes;
+	private final long diskSizeInBytes;
+	private final long evictionCount;
+	private final long expirationCount;
+	private final long writeBehindQueueSize;
+	private final List<HotKeyProfiler.HotKey> topHitKeys;
+	private final List<HotKeyProfiler.HotKey> topMissKeys;
+	private final Map<CacheOperation, OperationRow> operations = new EnumMap<>(CacheOperation.class);
+
+	/** źródło statystyk - tylko do ich wyzerowania */
+	private final transient IObjectCacheStatistics source;
+
+	/**
+	 * @param source
+	 *            bieżące statystyki regionu
+	 */
+	public FrozenObjectCacheStatistics(IObjectCacheStatistics source) {
+		super();
+		this.source = source;
+		this.managerName = source.getAssociatedManagerName();
+		this.regionName = source.getAssociatedCacheName();
+		this.prov = source.getAssociatedProvider();
+		this.active = source.isActive();
+		this.cacheHits = source.getCacheHits();
+		this.inMemoryHits = source.getInMemoryHits();
+		this.onDiskHits = source.getOnDiskHits();
+		this.cacheMisses = source.getCacheMisses();
+		this.objectCount = source.getObjectCount();
+		this.hitsRatio = source.getHitsRatio();
+		this.size = source.getSize();
+		this.inMemoryObjectCount = source.getInMemoryObjectCount();
+		this.onDiskObjectCount = source.getOnDiskObjectCount();
+		this.heapSizeInBytes = source.getHeapSizeInBytes();
+		this.offHeapSizeInBytes = source.getOffHeapSizeInBytes();
+		this.diskSizeInBytes = source.getDiskSizeInBytes();
+		this.evictionCount = source.getEvictionCount();
+		this.expirationCount = source.getExpirationCount();
+		this.writeBehindQueueSize = source.getWriteBehindQueueSize();
+		this.topHitKeys = Collections.unmodifiableList(new ArrayList<>(source.getTopHitKeys()));
+		this.topMissKeys = Collections.unmodifiableList(new ArrayList<>(source.getTopMissKeys()));
+		for (CacheOperation operation : CacheOperation.values()) {
+			this.operations.put(operation, new OperationRow(source, operation));
+		}
+	}
+
+	@Override
+	public void clearStatistics() {
+		if (source != null) {
+			source.clearStatistics();
+		}
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	@Override
+	public long getInMemoryHits() {
+		return inMemoryHits;
+	}
+
+	@Override
+	public long getOnDiskHits() {
+		return onDiskHits;
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses;
+	}
+
+	@Override
+	public long getObjectCount() {
+		return objectCount;
+	}
+
+	@Override
+	public double getHitsRatio() {
+		return hitsRatio;
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public long getInMemoryObjectCount() {
+		return inMemoryObjectCount;
+	}
+
+	@Override
+	public long getOnDiskObjectCount() {
+		return onDiskObjectCount;
+	}
+
+	@Override
+	public long getHeapSizeInBytes() {
+		return heapSizeInBytes;
+	}
+
+	@Override
+	public long getOffHeapSizeInBytes() {
+		return offHeapSizeInBytes;
+	}
+
+	@Override
+	public long getDiskSizeInBytes() {
+		return diskSizeInBytes;
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	@Override
+	public long getExpirationCount() {
+		return expirationCount;
+	}
+
+	@Override
+	public long getWriteBehindQueueSize() {
+		return writeBehindQueueSize;
+	}
+
+	@Override
+	public List<HotKeyProfiler.HotKey> getTopHitKeys() {
+		return topHitKeys;
+	}
+
+	@Override
+	public List<HotKeyProfiler.HotKey> getTopMissKeys() {
+		return topMissKeys;
+	}
+
+	@Override
+	public long getOperationCount(CacheOperation operation) {
+		return operations.get(operation).count;
+	}
+
+	@Override
+	public double getMeanLatencyNanos(CacheOperation operation) {
+		return operations.get(operation).meanNanos;
+	}
+
+	@Override
+	public long getLatencyPercentileNanos(CacheOperation operation, double percentile) {
+		long[] values = operations.get(operation).percentileNanos;
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			if (percentile <= PERCENTILES[i]) {
+				return values[i];
+			}
+		}
+		return values[PERCENTILES.length - 1];
+	}
+
+	@Override
+	public long getMaxLatencyNanos(CacheOperation operation) {
+		return operations.get(operation).maxNanos;
+	}
+
+	@Override
+	public String getAssociatedCacheName() {
+		return regionName;
+	}
+
+	@Override
+	public String getAssociatedManagerName() {
+		return managerName;
+	}
+
+	@Override
+	public CacheProviderEnum getAssociatedProvider() {
+		return prov;
+	}
+
+	/**
+	 * @return bieżące statystyki regionu, z których wykonano kopię
+	 */
+	@Override
+	public Object getAssociatedStatistics() {
+		return source;
+	}
+
+	@Override
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Kopia statystyk czasów wykonania jednej operacji.
+	 */
+	private static final class OperationRow implements Serializable {
+
+		private static final long serialVersionUID = 8447785961284637510L;
+
+		private final long count;
+		private final double meanNanos;
+		private final long maxNanos;
+		private final long[] percentileNanos = new long[PERCENTILES.length];
+
+		private OperationRow(IObjectCacheStatistics source, CacheOperation operation) {
+			this.count = source.getOperationCount(operation);
+			this.meanNanos = source.getMeanLatencyNanos(operation);
+			this.maxNanos = source.getMaxLatencyNanos(operation);
+			if (count != 0L) {
+				for (int i = 0; i < PERCENTILES.length; i++) {
+					percentileNanos[i] = source.getLatencyPercentileNanos(operation, PERCENTILES[i]);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,260 @@
+package pl.slawas.common.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ *
+ * HotKeyProfiler - próbkujący profiler najczęściej odczytywanych kluczy
+ * regionu, osobno dla trafień i chybień. Rejestrowane jest średnio co
+ * {@code sampleRate}-te odwołanie: częstość klucza szacuje Count-Min Sketch, a
+ * kopiec (min-heap) pamięta {@code topKeys} kluczy o największej częstości.
+ * Po określonej liczbie próbek liczniki szkicu i kopca są dzielone na pół, więc
+ * wynik opisuje bieżący ruch, a nie całą historię regionu.
+ * <p>
+ * Odwołanie niewybrane do próbki kosztuje jedno losowanie; próbka aktualizuje
+ * szkic bez blokad, a kopiec pod blokadą profilera.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class HotKeyProfiler {
+
+	public static final int DEFAULT_TOP_KEYS = 10;
+
+	private static final int DEPTH = 4;
+
+	private static final int WIDTH = 1024;
+
+	/** Liczba próbek, po której liczniki są dzielone na pół */
+	private static final int AGING_SAMPLES = 10 * WIDTH;
+
+	private static final int[] SEEDS = { 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f };
+
+	private final int sampleRate;
+
+	private final int topKeys;
+
+	private final Tracker hits;
+
+	private final Tracker misses;
+
+	/**
+	 * @param sampleRate
+	 *            co które (średnio) odwołanie jest rejestrowane, 1 - każde
+	 * @param topKeys
+	 *            liczba pamiętanych najczęstszych kluczy
+	 */
+	public HotKeyProfiler(int sampleRate, int topKeys) {
+		if (sampleRate <= 0 || topKeys <= 0) {
+			throw new IllegalArgumentException(
+					String.format("Invalid sample rate %d or number of top keys %d", sampleRate, topKeys));
+		}
+		this.sampleRate = sampleRate;
+		this.topKeys = topKeys;
+		this.hits = new Tracker();
+		this.misses = new Tracker();
+	}
+
+	/**
+	 * Rejestracja odczytu klucza (z próbkowaniem).
+	 *
+	 * @param key
+	 *            klucz
+	 * @param hit
+	 *            czy odczyt był trafieniem
+	 */
+	public void record(Object key, boolean hit) {
+		if (key == null || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+			return;
+		}
+		(hit ? hits : misses).add(key);
+	}
+
+	/**
+	 * @return najczęściej trafiane klucze, od najczęstszego
+	 */
+	public List<HotKey> getTopHitKeys() {
+		return hits.top();
+	}
+
+	/**
+	 * @return klucze najczęściej chybiane, od najczęstszego
+	 */
+	public List<HotKey> getTopMissKeys() {
+		return misses.top();
+	}
+
+	/**
+	 * Wyzerowanie profilu (razem ze statystykami regionu).
+	 */
+	public void clear() {
+		hits.clear();
+		misses.clear();
+	}
+
+	private static int indexOf(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * 0x45d9f3b;
+		h ^= (h >>> 16);
+		return row * WIDTH + (h & (WIDTH - 1));
+	}
+
+	/**
+	 * Szkic częstości i kopiec najczęstszych kluczy jednego rodzaju odwołań.
+	 */
+	private class Tracker {
+
+		private final AtomicIntegerArray sketch = new AtomicIntegerArray(DEPTH * WIDTH);
+
+		private final AtomicInteger samples = new AtomicInteger();
+
+		/** kopiec z kluczem o najmniejszej częstości na szczycie */
+		private final PriorityQueue<Candidate> heap = new PriorityQueue<>(topKeys);
+
+		private final Map<Object, Candidate> candidates = new HashMap<>();
+
+		void add(Object key) {
+			int hash = key.hashCode();
+			int frequency = Integer.MAX_VALUE;
+			for (int row = 0; row < DEPTH; row++) {
+				frequency = Math.min(frequency, sketch.incrementAndGet(indexOf(hash, row)));
+			}
+			synchronized (this) {
+				Candidate candidate = candidates.get(key);
+				if (candidate != null) {
+					/* zmiana priorytetu - usunięcie z kopca kosztuje O(topKeys) */
+					heap.remove(candidate);
+					candidate.count = frequency;
+					heap.add(candidate);
+				} else if (heap.size() < topKeys) {
+					candidate = new Candidate(key, frequency);
+					candidates.put(key, candidate);
+					heap.add(candidate);
+				} else if (heap.peek().count < frequency) {
+					candidates.remove(heap.poll().key);
+					candidate = new Candidate(key, frequency);
+					candidates.put(key, candidate);
+					heap.add(candidate);
+				}
+			}
+			if (samples.incrementAndGet() >= AGING_SAMPLES) {
+				age();
+			}
+		}
+
+		private void age() {
+			if (samples.getAndSet(0) < AGING_SAMPLES) {
+				/* inny wątek właśnie podzielił liczniki */
+				return;
+			}
+			for (int i = 0; i < sketch.length(); i++) {
+				int current;
+				do {
+					current = sketch.get(i);
+				} while (!sketch.compareAndSet(i, current, current >>> 1));
+			}
+			synchronized (this) {
+				/* dzielenie na pół nie zmienia porządku kopca */
+				for (Candidate candidate : heap) {
+					candidate.count >>>= 1;
+				}
+			}
+		}
+
+		List<HotKey> top() {
+			List<HotKey> result;
+			synchronized (this) {
+				result = new ArrayList<>(heap.size());
+				for (Candidate candidate : heap) {
+					result.add(new HotKey(String.valueOf(candidate.key), candidate.count * (long) sampleRate));
+				}
+			}
+			Collections.sort(result);
+			return result;
+		}
+
+		void clear() {
+			for (int i = 0; i < sketch.length(); i++) {
+				sketch.set(i, 0);
+			}
+			samples.set(0);
+			synchronized (this) {
+				heap.clear();
+				candidates.clear();
+			}
+		}
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+
+		private final Object key;
+
+		private int count;
+
+		Candidate(Object key, int count) {
+			this.key = key;
+			this.count = count;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			return Integer.compare(count, other.count);
+		}
+	}
+
+	/**
+	 *
+	 * HotKey - klucz regionu z szacowaną liczbą odwołań (uwzględniającą
+	 * próbkowanie i dzielenie liczników na pół).
+	 *
+	 */
+	public static class HotKey implements Serializable, Comparable<HotKey> {
+
+		private static final long serialVersionUID = 4830815372294170361L;
+
+		private final String key;
+
+		private final long count;
+
+		public HotKey(String key, long count) {
+			this.key = key;
+			this.count = count;
+		}
+
+		/**
+		 * @return tekstowa postać klucza
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return szacowana liczba odwołań do klucza
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public int compareTo(HotKey other) {
+			/* od najczęstszego */
+			return Long.compare(other.count, count);
+		}
+
+		@Override
+		public String toString() {
+			return key + '=' + count;
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package pl.slawas.common.cache;
+
+/**
+ *
+ * IAsyncObjectCache - asynchroniczny widok regionu {@link IObjectCache}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public interface IAsyncObjectCache extends IAsyncTypedObjectCache<Object, Object> {
+
+	@Override
+	IObjectCache getSyncCache();
+
+}
@@ -0,0 +1,70 @@
+package pl.slawas.common.cache;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ *
+ * IAsyncTypedObjectCache - asynchroniczny widok regionu pamięci podręcznej
+ * ({@link ITypedObjectCache}). Operacje wykonywane są przez wykonawcę
+ * providera, więc odczyt z wolnych warstw (off-heap, dysk) nie blokuje wątku
+ * wywołującego. Błędy operacji ({@link pl.slawas.common.cache.exceptions.CacheErrorException})
+ * przekazywane są jako wyjątkowe zakończenie zwróconego
+ * {@link CompletableFuture}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public interface IAsyncTypedObjectCache<K, V> {
+
+	/**
+	 * Asynchroniczne pobranie wartości, zobacz {@link ITypedObjectCache#get(Object)}.
+	 *
+	 * @param key
+	 *            klucz
+	 * @return wartość albo {@code null}, jeżeli jej nie ma w regionie
+	 */
+	CompletableFuture<V> getAsync(K key);
+
+	/**
+	 * Asynchroniczne pobranie albo załadowanie wartości przez loader regionu,
+	 * zobacz {@link ITypedObjectCache#getOrLoad(Object)}.
+	 *
+	 * @param key
+	 *            klucz
+	 * @return wartość
+	 */
+	CompletableFuture<V> getOrLoadAsync(K key);
+
+	/**
+	 * Asynchroniczny zapis wartości, zobacz
+	 * {@link ITypedObjectCache#put(Object, Object)}.
+	 *
+	 * @param key
+	 *            klucz
+	 * @param value
+	 *            wartość
+	 * @return zakończenie zapisu
+	 */
+	CompletableFuture<Void> putAsync(K key, V value);
+
+	/**
+	 * Asynchroniczne usunięcie wartości, zobacz
+	 * {@link ITypedObjectCache#remove(Object)}.
+	 *
+	 * @param key
+	 *            klucz
+	 * @return zakończenie usunięcia
+	 */
+	CompletableFuture<Void> removeAsync(K key);
+
+	/**
+	 * @return synchroniczny region, na który nałożony jest widok
+	 */
+	ITypedObjectCache<K, V> getSyncCache();
+
+}
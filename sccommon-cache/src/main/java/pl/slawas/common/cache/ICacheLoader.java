@@ -0,0 +1,35 @@
+package pl.slawas.common.cache;
+
+/**
+ *
+ * ICacheLoader - ładowanie wartości brakującej w regionie pamięci podręcznej,
+ * zobacz {@link ITypedObjectCache#getOrLoad(Object, ICacheLoader)}. Loader
+ * regionu może być też zdefiniowany parametrem
+ * {@code <region>.cache.loader} - wtedy implementacja musi mieć publiczny
+ * konstruktor bezargumentowy.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+@FunctionalInterface
+public interface ICacheLoader<K, V> {
+
+	/**
+	 * Załadowanie wartości, np. z bazy danych albo z LDAP.
+	 *
+	 * @param key
+	 *            klucz
+	 * @return wartość albo {@code null}, jeżeli nie istnieje - wartość
+	 *         {@code null} nie jest zapisywana w regionie
+	 * @throws Exception
+	 *             błąd ładowania, przekazywany wywołującym jako przyczyna
+	 *             {@link pl.slawas.common.cache.exceptions.CacheErrorException}
+	 */
+	V load(K key) throws Exception;
+
+}
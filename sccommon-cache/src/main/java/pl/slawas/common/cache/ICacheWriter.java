@@ -0,0 +1,51 @@
+package pl.slawas.common.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * ICacheWriter - zapis zmian regionu do źródła danych w trybie opóźnionego
+ * zapisu (write-behind, parametr {@code <region>.cache.writeBehind}). Writer
+ * otrzymuje partie zmian z wątku w tle; kolejne zmiany tego samego klucza,
+ * które nie zostały jeszcze zapisane, są łączone i writer otrzymuje tylko
+ * ostatnią z nich. Writer regionu definiowany jest parametrem
+ * {@code <region>.cache.writer} - implementacja musi mieć publiczny
+ * konstruktor bezargumentowy.
+ * <p>
+ * Writer regionu {@link IObjectCache} otrzymuje klucze w postaci tekstowej
+ * ({@link Object#toString()}) i oryginalne wartości.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public interface ICacheWriter<K, V> {
+
+	/**
+	 * Zapis partii zmienionych elementów.
+	 *
+	 * @param entries
+	 *            elementy (klucz, ostatnia wartość)
+	 * @throws Exception
+	 *             błąd zapisu - elementy pozostają w regionie, a błąd jest
+	 *             zapisywany w logu
+	 */
+	void writeAll(Map<K, V> entries) throws Exception;
+
+	/**
+	 * Usunięcie partii elementów.
+	 *
+	 * @param keys
+	 *            klucze usuniętych elementów
+	 * @throws Exception
+	 *             błąd usuwania, zapisywany w logu
+	 */
+	void deleteAll(Set<K> keys) throws Exception;
+
+}
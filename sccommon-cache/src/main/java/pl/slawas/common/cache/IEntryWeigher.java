@@ -0,0 +1,30 @@
+package pl.slawas.common.cache;
+
+/**
+ *
+ * IEntryWeigher - waga elementu regionu, np. szacowany rozmiar w bajtach.
+ * Region z ograniczeniem wagi (zobacz
+ * {@link pl.slawas.common.cache.ehcache.EhCacheConfig#PROP_CACHE_MAX_WEIGHT})
+ * usuwa elementy, gdy suma wag przekroczy limit, więc jeden duży element
+ * zajmuje tyle miejsca, co wiele małych.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public interface IEntryWeigher<K, V> {
+
+	/**
+	 * @param key
+	 *            klucz
+	 * @param value
+	 *            wartość
+	 * @return waga elementu (nieujemna)
+	 */
+	long weigh(K key, V value);
+
+}
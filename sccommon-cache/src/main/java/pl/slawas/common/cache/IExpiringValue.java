@@ -0,0 +1,24 @@
+package pl.slawas.common.cache;
+
+/**
+ *
+ * IExpiringValue - wartość regionu niosąca własny czas życia. Czas życia
+ * wartości ma pierwszeństwo przed czasem życia regionu, dzięki czemu w jednym
+ * regionie mogą być przechowywane zarówno krótko, jak i długo żyjące elementy.
+ * Wartości {@link IObjectCache} są opakowywane automatycznie, zobacz
+ * {@link IObjectCache#put(Object, Object, long)}; wartości regionów typowanych
+ * mogą implementować ten interfejs samodzielnie.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public interface IExpiringValue {
+
+	/**
+	 * @return czas życia wartości w sekundach; wartość mniejsza od 1 oznacza
+	 *         czas życia regionu
+	 */
+	long getTimeToLiveSeconds();
+
+}
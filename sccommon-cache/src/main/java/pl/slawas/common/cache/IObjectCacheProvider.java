@@ -10,7 +10,7 @@ import org.jdom.Element;
  * IObjectCacheProvider
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $ 
+ * @version $Revision: 1.2 $ 
  *
  * @param <Conf>
  */
@@ -46,6 +46,48 @@ public interface IObjectCacheProvider<Conf> {
 
 	IObjectCache getCache(String name);
 
+	/**
+	 * Pobranie regionu pamięci podręcznej przechowującego klucze i wartości w ich
+	 * natywnych typach. Jeżeli region o danej nazwie już istnieje, to typy muszą
+	 * być zgodne z typami, z którymi został utworzony.
+	 * 
+	 * @param name
+	 *            nazwa regionu
+	 * @param keyType
+	 *            typ klucza
+	 * @param valueType
+	 *            typ wartości
+	 * @return region pamięci podręcznej
+	 * @throws IllegalArgumentException
+	 *             gdy region istnieje i został utworzony dla innych typów
+	 */
+	<K, V> ITypedObjectCache<K, V> getCache(String name, Class<K> keyType, Class<V> valueType);
+
+	/**
+	 * Pobranie asynchronicznego widoku regionu {@link #getCache(String)}.
+	 * Operacje wykonywane są przez wykonawcę managera, zobacz
+	 * {@link CacheConstants#PROP_ASYNC_THREADS}.
+	 * 
+	 * @param name
+	 *            nazwa regionu
+	 * @return asynchroniczny widok regionu
+	 */
+	IAsyncObjectCache getAsyncCache(String name);
+
+	/**
+	 * Pobranie asynchronicznego widoku regionu
+	 * {@link #getCache(String, Class, Class)}.
+	 * 
+	 * @param name
+	 *            nazwa regionu
+	 * @param keyType
+	 *            typ klucza
+	 * @param valueType
+	 *            typ wartości
+	 * @return asynchroniczny widok regionu
+	 */
+	<K, V> IAsyncTypedObjectCache<K, V> getAsyncCache(String name, Class<K> keyType, Class<V> valueType);
+
 	void removeCache(String name);
 
 	void close();
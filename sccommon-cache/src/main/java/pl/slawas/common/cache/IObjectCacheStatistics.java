@@ -1,13 +1,14 @@
 package pl.slawas.common.cache;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * 
  * IObjectCacheStatistics
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $ 
+ * @version $Revision: 1.5 $ 
  *
  */
 public interface IObjectCacheStatistics extends Serializable {
@@ -64,6 +65,104 @@ public interface IObjectCacheStatistics extends Serializable {
 
 	int getSize();
 
+	/**
+	 * Liczba elementów przechowywanych w pamięci (heap i off-heap).
+	 * 
+	 * @return liczba elementów w pamięci, -1 jeżeli nie jest znana
+	 */
+	long getInMemoryObjectCount();
+
+	/**
+	 * Liczba elementów przechowywanych na dysku.
+	 * 
+	 * @return liczba elementów na dysku, 0 jeżeli region nie ma warstwy dyskowej,
+	 *         -1 jeżeli nie jest znana
+	 */
+	long getOnDiskObjectCount();
+
+	/**
+	 * Rozmiar [B] zajęty w warstwie heap. Dla warstwy ograniczonej liczbą
+	 * elementów wartość może być szacowana na podstawie próbki elementów.
+	 * 
+	 * @return rozmiar [B], -1 jeżeli nie jest znany
+	 */
+	long getHeapSizeInBytes();
+
+	/**
+	 * Rozmiar [B] zajęty w warstwie off-heap.
+	 * 
+	 * @return rozmiar [B], 0 jeżeli region nie ma warstwy off-heap, -1 jeżeli
+	 *         nie jest znany
+	 */
+	long getOffHeapSizeInBytes();
+
+	/**
+	 * Rozmiar [B] zajęty w warstwie dyskowej.
+	 * 
+	 * @return rozmiar [B], 0 jeżeli region nie ma warstwy dyskowej, -1 jeżeli
+	 *         nie jest znany
+	 */
+	long getDiskSizeInBytes();
+
+	/**
+	 * @return liczba elementów usuniętych z regionu z powodu braku miejsca
+	 */
+	long getEvictionCount();
+
+	/**
+	 * @return liczba elementów usuniętych z regionu z powodu upływu czasu życia
+	 */
+	long getExpirationCount();
+
+	/**
+	 * @return liczba zmian regionu czekających na zapis w trybie opóźnionego
+	 *         zapisu (write-behind), 0 jeżeli region zapisuje zmiany od razu
+	 */
+	long getWriteBehindQueueSize();
+
+	/**
+	 * @return najczęściej trafiane klucze regionu (od najczęstszego), pusta
+	 *         lista jeżeli profiler kluczy regionu jest wyłączony
+	 */
+	List<HotKeyProfiler.HotKey> getTopHitKeys();
+
+	/**
+	 * @return najczęściej chybiane klucze regionu (od najczęstszego), pusta
+	 *         lista jeżeli profiler kluczy regionu jest wyłączony
+	 */
+	List<HotKeyProfiler.HotKey> getTopMissKeys();
+
+	/**
+	 * @param operation
+	 *            operacja
+	 * @return liczba wykonanych operacji
+	 */
+	long getOperationCount(CacheOperation operation);
+
+	/**
+	 * @param operation
+	 *            operacja
+	 * @return średni czas wykonania operacji [ns]
+	 */
+	double getMeanLatencyNanos(CacheOperation operation);
+
+	/**
+	 * @param operation
+	 *            operacja
+	 * @param percentile
+	 *            percentyl z zakresu (0, 100], np. 99.0
+	 * @return czas wykonania operacji [ns], poniżej którego mieści się podany
+	 *         procent wykonań
+	 */
+	long getLatencyPercentileNanos(CacheOperation operation, double percentile);
+
+	/**
+	 * @param operation
+	 *            operacja
+	 * @return maksymalny czas wykonania operacji [ns]
+	 */
+	long getMaxLatencyNanos(CacheOperation operation);
+
 	/**
 	 * Nazwa powiązanego regionu pamięci podręcznej
 	 * 
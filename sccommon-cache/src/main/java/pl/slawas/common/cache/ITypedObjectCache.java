@@ -0,0 +1,228 @@
+package pl.slawas.common.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+import pl.slawas.common.cache.exceptions.CacheErrorException;
+
+/**
+ *
+ * ITypedObjectCache ujednolicone API regionu pamięci podręcznej przechowującego
+ * klucze i wartości w ich natywnych typach (bez konwersji klucza do
+ * {@link String} i bez opakowywania wartości). Typy klucza i wartości są
+ * ustalane w momencie tworzenia regionu, zobacz
+ * {@link IObjectCacheProvider#getCache(String, Class, Class)}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.3 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public interface ITypedObjectCache<K, V> {
+
+	/**
+	 * Gets a value of an element which matches the given key.
+	 *
+	 * @param key
+	 *            the key of the element to return.
+	 * @return The value placed into the cache with an earlier put, or null if not
+	 *         found or expired
+	 * @throws CacheErrorException
+	 */
+	V get(K key) throws CacheErrorException;
+
+	V read(K key) throws CacheErrorException;
+
+	/**
+	 * Puts an object into the cache.
+	 *
+	 * @param key
+	 *            a key
+	 * @param value
+	 *            a value
+	 * @throws CacheErrorException
+	 *             if the {@code CacheManager} is shutdown or another
+	 *             {@link Exception} occurs.
+	 */
+	void update(K key, V value) throws CacheErrorException;
+
+	/**
+	 * Puts an object into the cache.
+	 *
+	 * @param key
+	 *            a key
+	 * @param value
+	 *            a value
+	 * @throws CacheErrorException
+	 *             if the {@code CacheManager} is shutdown or another
+	 *             {@link Exception} occurs.
+	 */
+	void put(K key, V value) throws CacheErrorException;
+
+	/**
+	 * Zapis wartości ze znacznikami (tagami), np. identyfikatorem klienta albo
+	 * jednostki organizacyjnej LDAP, z której pochodzi wartość. Znaczniki
+	 * zastępują poprzednie znaczniki elementu, a zapis bez znaczników je usuwa.
+	 * Elementy usuwane przez region (eviction, wygaśnięcie) tracą znaczniki.
+	 *
+	 * @param key
+	 *            klucz
+	 * @param value
+	 *            wartość
+	 * @param tags
+	 *            znaczniki elementu
+	 * @throws CacheErrorException
+	 * @see #invalidateTag(String)
+	 */
+	void put(K key, V value, String... tags) throws CacheErrorException;
+
+	/**
+	 * Usunięcie wszystkich elementów ze znacznikiem. Koszt zależy od liczby
+	 * elementów ze znacznikiem, a nie od wielkości regionu. Inne węzły
+	 * otrzymują unieważnienie usuniętych kluczy.
+	 *
+	 * @param tag
+	 *            znacznik
+	 * @return liczba usuniętych elementów
+	 * @throws CacheErrorException
+	 */
+	int invalidateTag(String tag) throws CacheErrorException;
+
+	/**
+	 * Pobranie wartości, a w przypadku jej braku załadowanie jej podanym
+	 * loaderem i zapisanie w regionie. Równoczesne chybienia dla tego samego
+	 * klucza współdzielą jedno ładowanie (single-flight) - pozostałe wątki czekają
+	 * na jego wynik. Jeżeli region ma włączone odświeżanie z wyprzedzeniem
+	 * ({@code <region>.cache.refreshAheadFactor}), to wartość załadowana dawniej
+	 * niż podana część czasu życia jest odświeżana w tle, a wywołujący dostaje
+	 * wartość bieżącą.
+	 *
+	 * @param key
+	 *            klucz
+	 * @param loader
+	 *            loader wartości
+	 * @return wartość z regionu albo załadowana, {@code null} jeżeli loader jej
+	 *         nie znalazł
+	 * @throws CacheErrorException
+	 *             błąd regionu albo loadera (przyczyna wyjątku)
+	 */
+	V getOrLoad(K key, ICacheLoader<? super K, ? extends V> loader) throws CacheErrorException;
+
+	/**
+	 * Pobranie wartości z użyciem loadera regionu, zobacz
+	 * {@link #getOrLoad(Object, ICacheLoader)} i
+	 * {@link #setCacheLoader(ICacheLoader)}. Jeżeli region nie ma loadera, to
+	 * metoda działa jak {@link #get(Object)}.
+	 *
+	 * @param key
+	 *            klucz
+	 * @return wartość z regionu albo załadowana
+	 * @throws CacheErrorException
+	 */
+	V getOrLoad(K key) throws CacheErrorException;
+
+	/**
+	 * Ustawienie loadera regionu używanego przez {@link #getOrLoad(Object)}.
+	 *
+	 * @param loader
+	 *            loader regionu, {@code null} usuwa loader
+	 */
+	void setCacheLoader(ICacheLoader<? super K, ? extends V> loader);
+
+	/**
+	 * Gets values of elements which match the given keys. The whole batch is
+	 * passed to the underlying cache at once, which is much cheaper than a
+	 * separate {@link #get(Object)} for every key on off-heap and disk tiers.
+	 *
+	 * @param keys
+	 *            keys of the elements to return
+	 * @return map of the given keys to values, a key that was not found or has
+	 *         expired is mapped to {@code null}
+	 * @throws CacheErrorException
+	 */
+	Map<K, V> getAll(Set<? extends K> keys) throws CacheErrorException;
+
+	/**
+	 * Puts all given entries into the cache in one batch.
+	 *
+	 * @param entries
+	 *            map of keys to values
+	 * @throws CacheErrorException
+	 *             if the {@code CacheManager} is shutdown or another
+	 *             {@link Exception} occurs.
+	 */
+	void putAll(Map<? extends K, ? extends V> entries) throws CacheErrorException;
+
+	/**
+	 * Removes all elements which match the given keys in one batch.
+	 *
+	 * @param keys
+	 *            keys of the elements to remove
+	 * @throws CacheErrorException
+	 */
+	void removeAll(Set<? extends K> keys) throws CacheErrorException;
+
+	/**
+	 * Removes the element which matches the key.
+	 * <p/>
+	 * If no element matches, nothing is removed and no Exception is thrown.
+	 *
+	 * @param key
+	 *            the key of the element to remove
+	 * @throws CacheErrorException
+	 */
+	void remove(K key) throws CacheErrorException;
+
+	/**
+	 * Remove all elements in the cache, but leave the cache in a useable state.
+	 *
+	 * @throws CacheErrorException
+	 */
+	void clear() throws CacheErrorException;
+
+	/**
+	 * Remove the cache and make it unuseable.
+	 *
+	 * @throws CacheErrorException
+	 */
+	void destroy() throws CacheErrorException;
+
+	String getRegionName();
+
+	/**
+	 * Warning: This method can be very expensive to run. Allow approximately 1
+	 * second per 1MB of entries. Running this method could create liveness problems
+	 * because the object lock is held for a long period
+	 * <p/>
+	 *
+	 * @return the approximate size of memory ehcache is using for the MemoryStore
+	 *         for this cache
+	 */
+	long getSizeInMemory();
+
+	long getElementCountInMemory() throws CacheErrorException;
+
+	long getElementCountOnDisk();
+
+	IObjectCacheStatistics getStatistics();
+
+	void setTimeToLiveSeconds(long timeToLiveSeconds);
+
+	long getTimeToLiveSeconds();
+
+	boolean contains(K key);
+
+	/**
+	 * @return typ klucza przechowywanego w regionie
+	 */
+	Class<K> getKeyType();
+
+	/**
+	 * @return typ wartości przechowywanej w regionie
+	 */
+	Class<V> getValueType();
+
+}
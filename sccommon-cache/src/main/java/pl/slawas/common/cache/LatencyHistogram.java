@@ -0,0 +1,140 @@
+package pl.slawas.common.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * LatencyHistogram - histogram czasów wykonania [ns] o budowie zbliżonej do
+ * HdrHistogram: każdy przedział potęgi dwójki dzielony jest na
+ * {@link #SUB_BUCKET_COUNT} równych kubełków, więc błąd względny wartości
+ * percentyla nie przekracza 1/{@link #SUB_BUCKET_COUNT}, a rozmiar histogramu
+ * jest stały niezależnie od zakresu wartości.
+ * <p>
+ * Zapis wartości nie wymaga blokad (liczniki atomowe), odczyt percentyli
+ * operuje na bieżącym stanie liczników, więc przy równoczesnych zapisach jest
+ * przybliżony.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/** Liczba kubełków w jednym przedziale potęgi dwójki */
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Zapisanie czasu wykonania operacji.
+	 *
+	 * @param nanos
+	 *            czas wykonania [ns]
+	 */
+	public void record(long nanos) {
+		final long value = (nanos < 0L ? 0L : nanos);
+		buckets.incrementAndGet(bucketIndex(value));
+		totalNanos.add(value);
+		long max = maxNanos.get();
+		while (value > max && !maxNanos.compareAndSet(max, value)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * @return liczba zapisanych wartości
+	 */
+	public long getCount() {
+		long count = 0L;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return średni czas wykonania [ns]
+	 */
+	public double getMean() {
+		long count = getCount();
+		return (count == 0L ? 0.0 : (double) totalNanos.sum() / count);
+	}
+
+	/**
+	 * @return maksymalny czas wykonania [ns]
+	 */
+	public long getMax() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * Wartość percentyla - górna granica kubełka, w którym znajduje się
+	 * percentyl.
+	 *
+	 * @param percentile
+	 *            percentyl z zakresu (0, 100]
+	 * @return czas wykonania [ns], 0 jeżeli histogram jest pusty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0L;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0L) {
+			return 0L;
+		}
+		double p = Math.min(Math.max(percentile, 0.0), 100.0);
+		long target = Math.max(1L, (long) Math.ceil(p / 100.0 * total));
+		long cumulative = 0L;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += counts[i];
+			if (cumulative >= target) {
+				return Math.min(highestValueInBucket(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Wyzerowanie histogramu.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0L);
+		}
+		totalNanos.reset();
+		maxNanos.set(0L);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+		return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long highestValueInBucket(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+	}
+
+}
@@ -17,7 +17,7 @@ import org.slf4j.LoggerFactory;
  * podręczną.
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.2 $
+ * @version $Revision: 1.4 $
  * 
  */
 @SuppressWarnings("serial")
@@ -38,6 +38,9 @@ public abstract class ObjectWithCacheSupport implements Serializable, IObjectWit
 
 	private long cacheTimeToLive = CacheConstants.DEFAULT_TIME_TO_LIVE;
 
+	/** czy czas życia instancji został ustawiony przez {@link #setCacheTimeToLive(long)} */
+	private volatile boolean customTimeToLive = false;
+
 	/**
 	 * Tworzenie regionu współdzielonego (domyślnie)
 	 * 
@@ -123,18 +126,21 @@ public abstract class ObjectWithCacheSupport implements Serializable, IObjectWit
 
 					/* Utworzenie obiektu pamięci podręcznej */
 					preparedCache = cacheManager.getCache(preparedCacheRegionName);
-					if (customUseDefaultRegion) {
-						/** Wczytuje domyślne parametry pamięci podręcznej */
-						preparedCache.setTimeToLiveSeconds(cacheTimeToLive);
-					} else {
+					/*
+					 * Czasu życia domyślnego (współdzielonego) regionu nie zmieniamy - każda
+					 * nowa instancja nadpisywałaby ustawienia pozostałych. Czas życia
+					 * instancji stosowany jest do elementów zapisywanych przez
+					 * putIntoCache(Object, Object).
+					 */
+					if (!customUseDefaultRegion) {
 						String originalKey = preparedCacheRegionName;
 						String param = (String) props
 								.get(originalKey + Strings.DOTChar + CacheConstants.PROP_TIME_TO_LIVE);
 						if (StringUtils.isNotBlank(param)) {
-							preparedCache.setTimeToLiveSeconds(Integer.parseInt(param));
-						} else {
-							preparedCache.setTimeToLiveSeconds(cacheTimeToLive);
+							this.cacheTimeToLive = Integer.parseInt(param);
 						}
+						/* region własny bez parametru otrzymuje domyślny czas życia */
+						preparedCache.setTimeToLiveSeconds(this.cacheTimeToLive);
 					}
 				} else {
 					if (logger.isTraceEnabled()) {
@@ -177,11 +183,32 @@ public abstract class ObjectWithCacheSupport implements Serializable, IObjectWit
 			logger.debug("[{}] Ustawiam niedomyśny cacheTimeToLive: {}",
 					new Object[] { getClass().getSimpleName(), cacheTimeToLive });
 			this.cacheTimeToLive = cacheTimeToLive;
-			this.cache.setTimeToLiveSeconds(cacheTimeToLive);
+			this.customTimeToLive = true;
+			if (!CacheConstants.DEFAULT_REGION_NAME.equals(this.cacheRegionName)) {
+				this.cache.setTimeToLiveSeconds(cacheTimeToLive);
+			}
 		}
 
 	}
 
+	/**
+	 * Zapis wartości do pamięci podręcznej z czasem życia instancji ustawionym
+	 * przez {@link #setCacheTimeToLive(long)} - również wtedy, gdy region jest
+	 * współdzielony z innymi obiektami. Bez ustawienia obowiązuje czas życia
+	 * regionu.
+	 * 
+	 * @param key
+	 *            klucz
+	 * @param value
+	 *            wartość
+	 * @throws CacheErrorException
+	 */
+	protected void putIntoCache(Object key, Object value) throws CacheErrorException {
+		if (this.cacheIsAllowed()) {
+			this.cache.put(key, value, (this.customTimeToLive ? this.cacheTimeToLive : 0L));
+		}
+	}
+
 	public boolean cacheIsShared() {
 		return this.cacheSharing.isShared();
 	}
@@ -0,0 +1,80 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import org.ehcache.spi.persistence.StateRepository;
+import org.ehcache.spi.serialization.SerializerException;
+import org.ehcache.spi.serialization.StatefulSerializer;
+
+import pl.slawas.common.cache.serialization.CompactCodec;
+
+/**
+ *
+ * CompactSerializer - serializator kluczy i wartości warstw off-heap i dysk w
+ * zwartym formacie {@link CompactCodec}, zamiast serializacji Java. Wybierany
+ * parametrem regionu {@link EhCacheConfig#PROP_CACHE_VALUE_SERIALIZER} (albo
+ * {@link EhCacheConfig#PROP_CACHE_KEY_SERIALIZER}) o wartości
+ * {@link EhCacheConfig#SERIALIZER_COMPACT} lub nazwie tej klasy.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ * @param <T>
+ *            typ klucza albo wartości
+ */
+public class CompactSerializer<T> implements StatefulSerializer<T> {
+
+	private final CompactCodec codec;
+
+	/**
+	 * Konstruktor wymagany przez Ehcache.
+	 *
+	 * @param classLoader
+	 *            ładowarka klas regionu
+	 */
+	public CompactSerializer(ClassLoader classLoader) {
+		this.codec = new CompactCodec(classLoader);
+	}
+
+	@Override
+	public void init(StateRepository stateRepository) {
+		/* format nie wymaga stanu - konstruktor wystarcza również dla warstwy dyskowej */
+	}
+
+	@Override
+	public ByteBuffer serialize(T object) {
+		try {
+			return ByteBuffer.wrap(codec.encode(object));
+		} catch (IOException e) {
+			throw new SerializerException("Value of type " + object.getClass().getName() + " can't be serialized", e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T read(ByteBuffer binary) throws ClassNotFoundException {
+		byte[] bytes = new byte[binary.remaining()];
+		binary.get(bytes);
+		try {
+			return (T) codec.decode(bytes);
+		} catch (IOException e) {
+			throw new SerializerException(e);
+		}
+	}
+
+	@Override
+	public boolean equals(T object, ByteBuffer binary) throws ClassNotFoundException {
+		T other = read(binary);
+		if (object instanceof Element && other instanceof Element) {
+			/* Element nie implementuje equals */
+			Element element = (Element) object;
+			Element otherElement = (Element) other;
+			return element.getTimeToLiveSeconds() == otherElement.getTimeToLiveSeconds()
+					&& Objects.deepEquals(element.getObjectValue(), otherElement.getObjectValue());
+		}
+		return Objects.deepEquals(object, other);
+	}
+
+}
@@ -1,59 +1,189 @@
 package pl.slawas.common.cache.ehcache;
 
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 import org.ehcache.expiry.ExpiryPolicy;
 
+import pl.slawas.common.cache.IExpiringValue;
+
+/**
+ *
+ * CustomExpiry - polityka wygasania elementów regionu. Czasy życia regionu
+ * przechowywane są w niezmiennym obiekcie {@link Settings}, podmienianym
+ * atomowo przy każdej zmianie (z kolejnym numerem wersji), więc wątki
+ * odczytujące nigdy nie widzą połowicznie zmienionej konfiguracji. Zmiana
+ * dotyczy elementów zapisanych po niej - Ehcache wylicza czas wygaśnięcia w
+ * chwili zapisu.
+ * <p>
+ * Wartości implementujące {@link IExpiringValue} mogą mieć własny czas życia.
+ * Gdy czas życia regionu nie jest ustawiony, używana jest polityka bazowa
+ * (np. z szablonu w pliku XML).
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.2 $
+ *
+ */
 public class CustomExpiry<K, V> implements ExpiryPolicy<K, V> {
 
-	private Duration timeToLiveExpiration;
+	private final ExpiryPolicy<? super K, ? super V> basePolicy;
+
+	private final AtomicReference<Settings> settings = new AtomicReference<>(new Settings(null, null, 0L));
+
+	public CustomExpiry() {
+		this(ExpiryPolicy.NO_EXPIRY);
+	}
 
-	private Duration timeToIdleExpiration;
+	/**
+	 * @param basePolicy
+	 *            polityka używana, gdy nie został ustawiony czas życia (ani
+	 *            czas bezczynności) regionu
+	 */
+	public CustomExpiry(ExpiryPolicy<? super K, ? super V> basePolicy) {
+		this.basePolicy = (basePolicy == null ? ExpiryPolicy.NO_EXPIRY : basePolicy);
+	}
 
 	@Override
 	public Duration getExpiryForCreation(K key, V value) {
-		return timeToLiveExpiration;
+		Duration entryTimeToLive = getEntryTimeToLive(value);
+		if (entryTimeToLive != null) {
+			return entryTimeToLive;
+		}
+		Settings current = settings.get();
+		if (current.timeToLive != null) {
+			return current.timeToLive;
+		}
+		if (current.timeToIdle != null) {
+			return current.timeToIdle;
+		}
+		return basePolicy.getExpiryForCreation(key, value);
 	}
 
 	@Override
 	public Duration getExpiryForAccess(K key, Supplier<? extends V> value) {
-		return timeToIdleExpiration;
+		if (getEntryTimeToLive(value.get()) != null) {
+			/* element z własnym czasem życia nie jest przedłużany */
+			return null;
+		}
+		Settings current = settings.get();
+		if (current.timeToLive != null || current.timeToIdle != null) {
+			return current.timeToIdle;
+		}
+		return basePolicy.getExpiryForAccess(key, value);
 	}
 
 	@Override
 	public Duration getExpiryForUpdate(K key, Supplier<? extends V> oldValue, V newValue) {
-		return timeToIdleExpiration;
+		Duration entryTimeToLive = getEntryTimeToLive(newValue);
+		if (entryTimeToLive != null) {
+			return entryTimeToLive;
+		}
+		/* nowa wartość (np. odświeżona przez loader) żyje od nowa pełny czas życia */
+		Settings current = settings.get();
+		if (current.timeToLive != null) {
+			return current.timeToLive;
+		}
+		if (current.timeToIdle != null) {
+			return current.timeToIdle;
+		}
+		return basePolicy.getExpiryForUpdate(key, oldValue, newValue);
+	}
+
+	private static Duration getEntryTimeToLive(Object value) {
+		if (value instanceof IExpiringValue) {
+			long seconds = ((IExpiringValue) value).getTimeToLiveSeconds();
+			if (seconds > 0L) {
+				return Duration.ofSeconds(seconds);
+			}
+		}
+		return null;
 	}
 
 	/**
-	 * @return the {@link #timeToLiveExpiration}
+	 * @return czas życia regionu albo {@code null}, jeżeli nie został ustawiony
 	 */
 	public Duration getTimeToLiveExpiration() {
-		return timeToLiveExpiration;
+		return settings.get().timeToLive;
 	}
 
 	/**
+	 * Atomowa zmiana czasu życia regionu.
+	 *
 	 * @param timeToLiveExpiration
-	 *            the {@link #timeToLiveExpiration} to set
+	 *            nowy czas życia regionu
+	 * @return wersja ustawień po zmianie (bez zmiany, gdy czas życia jest taki
+	 *         sam)
 	 */
-	public void setTimeToLiveExpiration(Duration timeToLiveExpiration) {
-		this.timeToLiveExpiration = timeToLiveExpiration;
+	public long setTimeToLiveExpiration(Duration timeToLiveExpiration) {
+		while (true) {
+			Settings current = settings.get();
+			if (equal(current.timeToLive, timeToLiveExpiration)) {
+				return current.version;
+			}
+			Settings changed = new Settings(timeToLiveExpiration, current.timeToIdle, current.version + 1);
+			if (settings.compareAndSet(current, changed)) {
+				return changed.version;
+			}
+		}
 	}
 
 	/**
-	 * @return the {@link #timeToIdleExpiration}
+	 * @return czas bezczynności regionu albo {@code null}, jeżeli nie został
+	 *         ustawiony
 	 */
 	public Duration getTimeToIdleExpiration() {
-		return timeToIdleExpiration;
+		return settings.get().timeToIdle;
 	}
 
 	/**
+	 * Atomowa zmiana czasu bezczynności regionu.
+	 *
 	 * @param timeToIdleExpiration
-	 *            the {@link #timeToIdleExpiration} to set
+	 *            nowy czas bezczynności regionu
+	 * @return wersja ustawień po zmianie
 	 */
-	public void setTimeToIdleExpiration(Duration timeToIdleExpiration) {
-		this.timeToIdleExpiration = timeToIdleExpiration;
+	public long setTimeToIdleExpiration(Duration timeToIdleExpiration) {
+		while (true) {
+			Settings current = settings.get();
+			if (equal(current.timeToIdle, timeToIdleExpiration)) {
+				return current.version;
+			}
+			Settings changed = new Settings(current.timeToLive, timeToIdleExpiration, current.version + 1);
+			if (settings.compareAndSet(current, changed)) {
+				return changed.version;
+			}
+		}
+	}
+
+	/**
+	 * @return wersja ustawień - zwiększana przy każdej zmianie czasów regionu
+	 */
+	public long getVersion() {
+		return settings.get().version;
+	}
+
+	private static boolean equal(Duration a, Duration b) {
+		return (a == null ? b == null : a.equals(b));
+	}
+
+	/**
+	 * Niezmienne ustawienia czasów regionu.
+	 */
+	private static final class Settings {
+
+		private final Duration timeToLive;
+
+		private final Duration timeToIdle;
+
+		private final long version;
+
+		private Settings(Duration timeToLive, Duration timeToIdle, long version) {
+			this.timeToLive = timeToLive;
+			this.timeToIdle = timeToIdle;
+			this.version = version;
+		}
 	}
 
 }
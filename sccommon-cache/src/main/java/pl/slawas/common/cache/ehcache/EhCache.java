@@ -1,79 +1,58 @@
 package pl.slawas.common.cache.ehcache;
 
 import java.io.Serializable;
-import java.time.Duration;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import org.ehcache.Cache;
 import org.ehcache.Cache.Entry;
-import org.ehcache.CacheManager;
-import org.ehcache.config.CacheConfiguration;
 import org.ehcache.core.spi.service.StatisticsService;
-import org.ehcache.expiry.ExpiryPolicy;
 
+import pl.slawas.common.cache.ICacheLoader;
 import pl.slawas.common.cache.IObjectCache;
 import pl.slawas.common.cache.IObjectCacheStatistics;
 import pl.slawas.common.cache.exceptions.CacheErrorException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
- * 
+ *
  * EHCache - klasa kesza, wzorowana na keszu hibernate-a
- * 
+ *
  * http://www.ehcache.org/documentation/2.7/apis/explicitlocking.html
- * 
+ * <p>
+ * Nakładka na {@link EhTypedCache} z kluczem typu {@link String} i wartością
+ * typu {@link Element} - klucze są konwertowane do {@link String}, a wartości
+ * opakowywane w {@link Element}.
+ * </p>
+ *
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.3 $
- * 
+ * @version $Revision: 1.8 $
+ *
  */
 public class EhCache implements Serializable, IObjectCache {
 
 	private static final long serialVersionUID = 600977337387514385L;
 
-	private static final Logger logger = LoggerFactory.getLogger(EhCache.class);
-
-	private final transient CacheManager cacheManager;
-	private final transient Cache<String, Element> localCache;
-	private final transient ExpiryPolicy<String, Element> expiryPolicy;
-	private final transient StatisticsService statisticsService;
-	private final String associatedCacheName;
-	private final String associatedProviderName;
-
-	@SuppressWarnings("unchecked")
-	public EhCache(String associatedProviderName, String associatedCacheName, final CacheManager cacheManager,
-			final StatisticsService statisticsService, CacheConfiguration<String, Element> cacheConfig,
-			boolean isCreated) {
-		this.associatedProviderName = associatedProviderName;
-		this.associatedCacheName = associatedCacheName;
-		this.cacheManager = cacheManager;
-		this.statisticsService = statisticsService;
-		if (!isCreated) {
-			this.localCache = cacheManager.createCache(associatedCacheName, cacheConfig);
-		} else {
-			this.localCache = cacheManager.getCache(associatedCacheName, String.class, Element.class);
-		}
-		this.expiryPolicy = (ExpiryPolicy<String, Element>) cacheConfig.getExpiryPolicy();
+	private final EhTypedCache<String, Element> typedCache;
+
+	private transient volatile ICacheLoader<? super Object, ? extends Object> cacheLoader;
+
+	public EhCache(EhTypedCache<String, Element> typedCache) {
+		this.typedCache = typedCache;
 	}
 
 	public Object get(Object key) throws CacheErrorException {
-		try {
-			if (key == null) {
-				return null;
-			} else {
-				final Element element = this.localCache.get(key2String(key));
-				if (element == null) {
-					return null;
-				} else {
-					return element.getObjectValue();
-				}
-			}
-		} catch (Exception e) {
-			throw new CacheErrorException(
-					String.format("-->get: Error for key type: %s and value: %s", key.getClass(), key), e);
+		if (key == null) {
+			return null;
+		}
+		final Element element = this.typedCache.get(key2String(key));
+		if (element == null) {
+			return null;
 		}
+		return element.getObjectValue();
 	}
 
 	public Object read(Object key) throws CacheErrorException {
@@ -85,81 +64,144 @@ public class EhCache implements Serializable, IObjectCache {
 	}
 
 	public void put(Object key, Object value) throws CacheErrorException {
+		put(key, value, 0L);
+	}
+
+	public void put(Object key, Object value, long timeToLiveSeconds) throws CacheErrorException {
+		this.typedCache.put(key2String(key), toElement(key, value, timeToLiveSeconds));
+	}
+
+	public void put(Object key, Object value, String... tags) throws CacheErrorException {
+		this.typedCache.put(key2String(key), toElement(key, value, 0L), tags);
+	}
+
+	public int invalidateTag(String tag) throws CacheErrorException {
+		return this.typedCache.invalidateTag(tag);
+	}
+
+	private static Element toElement(Object key, Object value, long timeToLiveSeconds) throws CacheErrorException {
 		try {
-			localCache.put(key2String(key), new Element((Serializable) value));
-		} catch (Exception e) {
+			return new Element((Serializable) value, timeToLiveSeconds);
+		} catch (ClassCastException e) {
 			throw new CacheErrorException(
 					String.format("-->put: Error for key type: %s and value: %s", key.getClass(), key), e);
 		}
+	}
 
+	public Object getOrLoad(final Object key, final ICacheLoader<? super Object, ? extends Object> loader)
+			throws CacheErrorException {
+		if (key == null) {
+			return null;
+		}
+		/* loader regionu otrzymuje oryginalny klucz, a nie jego postać tekstową */
+		final Element element = this.typedCache.getOrLoad(key2String(key), k -> {
+			Object value = loader.load(key);
+			return (value == null ? null : new Element((Serializable) value));
+		});
+		if (element == null) {
+			return null;
+		}
+		return element.getObjectValue();
 	}
 
-	public void remove(Object key) throws CacheErrorException {
-		try {
-			localCache.remove(key2String(key));
-		} catch (Exception e) {
-			throw new CacheErrorException(
-					String.format("-->remove: Error for key type: %s and value: %s", key.getClass(), key), e);
+	public Object getOrLoad(Object key) throws CacheErrorException {
+		ICacheLoader<? super Object, ? extends Object> loader = this.cacheLoader;
+		if (loader == null) {
+			return get(key);
 		}
+		return getOrLoad(key, loader);
 	}
 
-	public void clear() throws CacheErrorException {
-		try {
-			localCache.clear();
-		} catch (Exception e) {
-			throw new CacheErrorException(e);
+	public void setCacheLoader(ICacheLoader<? super Object, ? extends Object> loader) {
+		this.cacheLoader = loader;
+	}
+
+	public Map<Object, Object> getAll(Set<? extends Object> keys) throws CacheErrorException {
+		if (keys == null || keys.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		/* klucz regionu -> oryginalny klucz */
+		Map<String, Object> stringKeys = new HashMap<>(keys.size() * 4 / 3 + 1);
+		for (Object key : keys) {
+			if (key != null) {
+				stringKeys.put(key2String(key), key);
+			}
+		}
+		Map<String, Element> elements = this.typedCache.getAll(stringKeys.keySet());
+		Map<Object, Object> result = new HashMap<>(stringKeys.size() * 4 / 3 + 1);
+		for (Map.Entry<String, Object> entry : stringKeys.entrySet()) {
+			Element element = elements.get(entry.getKey());
+			result.put(entry.getValue(), (element != null ? element.getObjectValue() : null));
 		}
+		return result;
 	}
 
-	public void destroy() throws CacheErrorException {
-		try {
-			this.cacheManager.removeCache(associatedCacheName);
-		} catch (IllegalStateException e) {
-			/*
-			 * When Spring and Hibernate are both involved this will happen in normal
-			 * shutdown operation. Do not throw an exception, simply log this one.
-			 */
-			logger.debug("This can happen if multiple frameworks both try to shutdown ehcache", e);
-		} catch (Exception e) {
-			throw new CacheErrorException(e);
+	public void putAll(Map<? extends Object, ? extends Object> entries) throws CacheErrorException {
+		if (entries == null || entries.isEmpty()) {
+			return;
+		}
+		Map<String, Element> elements = new HashMap<>(entries.size() * 4 / 3 + 1);
+		for (Map.Entry<? extends Object, ? extends Object> entry : entries.entrySet()) {
+			Object key = entry.getKey();
+			try {
+				elements.put(key2String(key), new Element((Serializable) entry.getValue()));
+			} catch (ClassCastException e) {
+				throw new CacheErrorException(
+						String.format("-->putAll: Error for key type: %s and value: %s", key.getClass(), key), e);
+			}
+		}
+		this.typedCache.putAll(elements);
+	}
 
+	public void removeAll(Set<? extends Object> keys) throws CacheErrorException {
+		if (keys == null || keys.isEmpty()) {
+			return;
+		}
+		Set<String> stringKeys = new HashSet<>(keys.size() * 4 / 3 + 1);
+		for (Object key : keys) {
+			stringKeys.add(key2String(key));
 		}
+		this.typedCache.removeAll(stringKeys);
+	}
+
+	public void remove(Object key) throws CacheErrorException {
+		this.typedCache.remove(key2String(key));
+	}
+
+	public void clear() throws CacheErrorException {
+		this.typedCache.clear();
+	}
+
+	public void destroy() throws CacheErrorException {
+		this.typedCache.destroy();
 	}
 
 	public String getRegionName() {
-		return associatedCacheName;
+		return this.typedCache.getRegionName();
 	}
 
 	public long getSizeInMemory() {
-		/* brak implementacji */
-		if (logger.isDebugEnabled()) {
-			logger.warn("-->getSizeInMemory: implementation lack.");
-		}
-		return -1L;
+		return this.typedCache.getSizeInMemory();
 	}
 
 	public long getElementCountInMemory() throws CacheErrorException {
-		/* brak implementacji */
-		if (logger.isDebugEnabled()) {
-			logger.warn("-->getElementCountInMemory: implementation lack.");
-		}
-		return -1L;
+		return this.typedCache.getElementCountInMemory();
 	}
 
 	public long getElementCountOnDisk() {
-		/* brak implementacji */
-		if (logger.isDebugEnabled()) {
-			logger.warn("-->getElementCountOnDisk: implementation lack.");
-		}
-		return -1L;
+		return this.typedCache.getElementCountOnDisk();
 	}
 
 	public Map<String, Object> toMap() throws CacheErrorException {
 		try {
 			Map<String, Object> result = new HashMap<>();
-			Iterator<Entry<String, Element>> iter = localCache.iterator();
+			Iterator<Entry<String, Element>> iter = getEhCache().iterator();
 			while (iter.hasNext()) {
 				Entry<String, Element> entry = iter.next();
+				if (!this.typedCache.isVisible(entry.getKey())) {
+					/* element usunięty logicznie przez wyczyszczenie regionu */
+					continue;
+				}
 				Serializable value = entry.getValue().getObjectValue();
 				result.put(entry.getKey(), value);
 			}
@@ -174,44 +216,55 @@ public class EhCache implements Serializable, IObjectCache {
 	}
 
 	public IObjectCacheStatistics getStatistics() {
-		return new EhCacheStatistics(this.associatedProviderName, this);
+		return this.typedCache.getStatistics();
 	}
 
 	public long getTimeToLiveSeconds() {
-		if (this.expiryPolicy instanceof CustomExpiry) {
-			return ((CustomExpiry<String, Element>) this.expiryPolicy).getTimeToLiveExpiration().getSeconds();
-		}
-		return -1L;
+		return this.typedCache.getTimeToLiveSeconds();
 	}
 
 	public void setTimeToLiveSeconds(long timeToLiveSeconds) {
-		if (this.expiryPolicy instanceof CustomExpiry) {
-			((CustomExpiry<String, Element>) this.expiryPolicy)
-					.setTimeToLiveExpiration(Duration.ofSeconds(timeToLiveSeconds));
-		}
+		this.typedCache.setTimeToLiveSeconds(timeToLiveSeconds);
 	}
 
 	/**
-	 * @return the {@link #localCache}
+	 * @return obiekt regionu EhCache'a
 	 */
 	public Cache<String, Element> getEhCache() {
-		return localCache;
+		return this.typedCache.getEhCache();
 	}
 
 	/**
-	 * @return the {@link #statisticsService}
+	 * @return serwis statystyk powiązany z regionem
 	 */
 	public StatisticsService getStatisticsService() {
-		return statisticsService;
+		return this.typedCache.getStatisticsService();
+	}
+
+	/**
+	 * @return obiekt regionu, na który nałożona jest nakładka
+	 */
+	public EhTypedCache<String, Element> getTypedCache() {
+		return typedCache;
 	}
 
 	@Override
 	public boolean contains(Object key) {
-		return localCache.containsKey(key2String(key));
+		return this.typedCache.contains(key2String(key));
+	}
+
+	@Override
+	public Class<Object> getKeyType() {
+		return Object.class;
+	}
+
+	@Override
+	public Class<Object> getValueType() {
+		return Object.class;
 	}
 
 	private String key2String(Object key) {
-		if (key instanceof String) {
+		if (key == null || key instanceof String) {
 			return (String) key;
 		}
 		return key.toString();
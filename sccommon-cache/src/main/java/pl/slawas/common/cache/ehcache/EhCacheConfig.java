@@ -18,7 +18,7 @@ import org.slf4j.LoggerFactory;
  * podręcznej).
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.7 $
  * 
  */
 public class EhCacheConfig {
@@ -33,6 +33,131 @@ public class EhCacheConfig {
 	public static final String PROP_CACHE_DISK = "resource.diskMBytes";
 	public static final String PROP_CACHE_TIME_TO_IDLE_SECONDS = "cache.timeToIdleSeconds";
 	public static final String PROP_CACHE_TIME_TO_LIVE_SECONDS = "cache.timeToLiveSeconds";
+	/**
+	 * Nazwa klasy implementującej {@link org.ehcache.spi.serialization.Serializer}
+	 * dla kluczy regionu (wymagane przez warstwy off-heap i dysk)
+	 */
+	public static final String PROP_CACHE_KEY_SERIALIZER = "cache.keySerializer";
+	/**
+	 * Nazwa klasy implementującej {@link org.ehcache.spi.serialization.Serializer}
+	 * dla wartości regionu (wymagane przez warstwy off-heap i dysk) albo
+	 * {@link #SERIALIZER_COMPACT}
+	 */
+	public static final String PROP_CACHE_VALUE_SERIALIZER = "cache.valueSerializer";
+	/**
+	 * Wartość parametrów {@link #PROP_CACHE_KEY_SERIALIZER} i
+	 * {@link #PROP_CACHE_VALUE_SERIALIZER} wybierająca {@link CompactSerializer}
+	 */
+	public static final String SERIALIZER_COMPACT = "compact";
+	/** Nazwa klasy implementującej {@link org.ehcache.spi.copy.Copier} dla kluczy */
+	public static final String PROP_CACHE_KEY_COPIER = "cache.keyCopier";
+	/** Nazwa klasy implementującej {@link org.ehcache.spi.copy.Copier} dla wartości */
+	public static final String PROP_CACHE_VALUE_COPIER = "cache.valueCopier";
+	/**
+	 * Co który (średnio) zapisywany element jest mierzony na potrzeby szacowania
+	 * rozmiaru [B] warstwy heap ograniczonej liczbą elementów. Brak parametru
+	 * albo 0 wyłącza szacowanie.
+	 */
+	public static final String PROP_CACHE_SIZE_SAMPLE_RATE = "cache.statistics.sizeSampleRate";
+	/**
+	 * Co które (średnio) odwołanie do regionu jest rejestrowane przez profiler
+	 * najczęściej trafianych i chybianych kluczy. Brak parametru albo 0
+	 * wyłącza profilowanie.
+	 */
+	public static final String PROP_CACHE_HOT_KEY_SAMPLE_RATE = "cache.statistics.hotKeySampleRate";
+	/** Liczba najczęstszych kluczy pamiętanych przez profiler (domyślnie 10). */
+	public static final String PROP_CACHE_HOT_KEYS = "cache.statistics.hotKeys";
+	/**
+	 * Katalog warstwy dyskowej regionów tworzonych na podstawie parametrów (np.
+	 * {@link #PROP_CACHE_DISK}). Parametr managera, używany tylko wtedy, gdy
+	 * katalog nie został zdefiniowany w pliku XML.
+	 */
+	public static final String PROP_PERSISTENCE_DIRECTORY = "cache.persistence.directory";
+	/**
+	 * Nazwa klasy implementującej {@link pl.slawas.common.cache.ICacheLoader} -
+	 * loader regionu używany przez
+	 * {@link pl.slawas.common.cache.ITypedObjectCache#getOrLoad(Object)}.
+	 */
+	public static final String PROP_CACHE_LOADER = "cache.loader";
+	/**
+	 * Część czasu życia elementu (z zakresu (0, 1)), po której wartość
+	 * załadowana przez loader jest odświeżana w tle przy kolejnym odczycie.
+	 * Wymaga {@link #PROP_CACHE_TIME_TO_LIVE_SECONDS}. Brak parametru wyłącza
+	 * odświeżanie.
+	 */
+	public static final String PROP_CACHE_REFRESH_AHEAD_FACTOR = "cache.refreshAheadFactor";
+
+	/**
+	 * Czy zawartość regionu ma być zapisywana do migawki podczas zamykania
+	 * managera i ładowana z niej podczas jego uruchomienia ({@code true}/
+	 * {@code false}, domyślnie {@code false}). Wymaga
+	 * {@link #PROP_SNAPSHOT_DIRECTORY}.
+	 */
+	public static final String PROP_CACHE_SNAPSHOT = "cache.snapshot";
+
+	/**
+	 * Katalog migawek regionów ({@link #PROP_CACHE_SNAPSHOT}). Parametr
+	 * managera.
+	 */
+	public static final String PROP_SNAPSHOT_DIRECTORY = "cache.snapshot.directory";
+
+	/**
+	 * Filtr przyjmowania nowych elementów regionu. Wartość
+	 * {@link TinyLfuPolicy#ADMISSION_TINYLFU} włącza filtr oparty na częstości
+	 * odwołań - nowy element zapisywany jest tylko wtedy, gdy jest używany
+	 * częściej niż element ostatnio usunięty z regionu. Brak parametru wyłącza
+	 * filtr.
+	 */
+	public static final String PROP_CACHE_ADMISSION = "cache.admission";
+
+	/**
+	 * Limit sumy wag elementów regionu (domyślnie wagą jest szacowany rozmiar
+	 * [B] klucza i wartości na stercie). Po przekroczeniu limitu usuwane są
+	 * elementy najrzadziej używane. Brak parametru wyłącza limit.
+	 */
+	public static final String PROP_CACHE_MAX_WEIGHT = "cache.maxWeight";
+
+	/**
+	 * Nazwa klasy implementującej {@link pl.slawas.common.cache.IEntryWeigher}
+	 * - waga elementów regionu z {@link #PROP_CACHE_MAX_WEIGHT}.
+	 */
+	public static final String PROP_CACHE_WEIGHER = "cache.weigher";
+
+	/**
+	 * Czy zapisy i usunięcia elementów regionu mają trafiać do kolejki
+	 * opóźnionego zapisu (write-behind), z której zapisuje je wątek w tle
+	 * ({@code true}/{@code false}, domyślnie {@code false}).
+	 */
+	public static final String PROP_CACHE_WRITE_BEHIND = "cache.writeBehind";
+
+	/**
+	 * Maksymalna liczba zmian w kolejce opóźnionego zapisu, po której wątek
+	 * zapisujący sam zapisuje partię zmian.
+	 */
+	public static final String PROP_CACHE_WRITE_BEHIND_MAX_QUEUE_SIZE = "cache.writeBehind.maxQueueSize";
+
+	/** Maksymalna liczba zmian zapisywanych jedną partią. */
+	public static final String PROP_CACHE_WRITE_BEHIND_BATCH_SIZE = "cache.writeBehind.batchSize";
+
+	/** Odstęp [ms] między kolejnymi zapisami zaległych zmian. */
+	public static final String PROP_CACHE_WRITE_BEHIND_DELAY_MILLIS = "cache.writeBehind.delayMillis";
+
+	/**
+	 * Nazwa klasy implementującej {@link pl.slawas.common.cache.ICacheWriter}
+	 * - writer źródła danych regionu z {@link #PROP_CACHE_WRITE_BEHIND}.
+	 */
+	public static final String PROP_CACHE_WRITER = "cache.writer";
+
+	/**
+	 * Czy wyczyszczenie regionu ma być logiczne ({@code true}/{@code false},
+	 * domyślnie {@code false}) - elementy stają się od razu niewidoczne, a są
+	 * usuwane w tle partiami, bez blokowania regionu na czas
+	 * {@link org.ehcache.Cache#clear()}.
+	 */
+	public static final String PROP_CACHE_INCREMENTAL_CLEAR = "cache.incrementalClear";
+
+	/** Maksymalna liczba elementów przetwarzanych jednym zadaniem usuwania. */
+	public static final String PROP_CACHE_INCREMENTAL_CLEAR_BATCH_SIZE = "cache.incrementalClear.batchSize";
 	public static final String PROP_CACHE_CLUSTER_RESOURCE_DEDICATED_POOL = "cache.cluster.resource.dedicated";
 	public static final String PROP_CACHE_CLUSTER_RESOURCE_SHARED_POOL = "cache.cluster.resource.shared";
 	
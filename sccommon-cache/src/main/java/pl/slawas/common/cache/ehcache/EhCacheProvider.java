@@ -1,40 +1,68 @@
 package pl.slawas.common.cache.ehcache;
 
 import java.io.File;
+import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.commons.lang.StringUtils;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
 import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.Configuration;
 import org.ehcache.config.ResourcePools;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
-import org.ehcache.config.builders.CacheManagerBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.config.units.EntryUnit;
 import org.ehcache.config.units.MemoryUnit;
 import org.ehcache.core.EhcacheManager;
+import org.ehcache.core.config.DefaultConfiguration;
 import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.expiry.ExpiryPolicy;
+import org.ehcache.impl.config.persistence.DefaultPersistenceConfiguration;
+import org.ehcache.impl.serialization.PlainJavaSerializer;
+import org.ehcache.spi.copy.Copier;
+import org.ehcache.spi.serialization.Serializer;
 import org.ehcache.spi.service.Service;
+import org.ehcache.spi.service.ServiceCreationConfiguration;
 import org.ehcache.xml.XmlConfiguration;
 
+import pl.slawas.common.cache.AsyncObjectCache;
+import pl.slawas.common.cache.AsyncTypedObjectCache;
 import pl.slawas.common.cache.CacheConstants;
+import pl.slawas.common.cache.CacheExecutors;
 import pl.slawas.common.cache.CacheProviderConfiguration;
 import pl.slawas.common.cache.CacheProviderEnum;
 import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.CacheRegionStatistics;
 import pl.slawas.common.cache.EmptyObjectCacheStatistics;
+import pl.slawas.common.cache.HotKeyProfiler;
+import pl.slawas.common.cache.IAsyncObjectCache;
+import pl.slawas.common.cache.IAsyncTypedObjectCache;
+import pl.slawas.common.cache.ICacheLoader;
+import pl.slawas.common.cache.ICacheWriter;
+import pl.slawas.common.cache.IEntryWeigher;
 import pl.slawas.common.cache.IObjectCache;
 import pl.slawas.common.cache.IObjectCacheStatistics;
+import pl.slawas.common.cache.ITypedObjectCache;
 import pl.slawas.common.cache.ObjectCacheStatisticsList;
 import pl.slawas.common.cache.exceptions.CacheErrorException;
+import pl.slawas.common.cache.invalidation.InvalidationBus;
 import pl.slawas.helpers.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +72,7 @@ import org.slf4j.LoggerFactory;
  * EhCacheProvider - utworzenie instancji CacheManager-a
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.3 $
+ * @version $Revision: 1.18 $
  * 
  */
 public class EhCacheProvider implements EhCacheInstance {
@@ -58,7 +86,13 @@ public class EhCacheProvider implements EhCacheInstance {
 
 	private URL configurationFileURL;
 
-	private transient CacheManager manager;
+	private transient volatile CacheManager manager;
+
+	/**
+	 * Czy manager uruchamiany jest przy pierwszym użyciu
+	 * ({@link CacheConstants#PROP_LAZY_INIT}).
+	 */
+	private transient boolean lazyInit;
 
 	/**
 	 * Dodatkowe parametry dotyczące nowo tworzonych regionów pamięci podręcznej
@@ -69,7 +103,48 @@ public class EhCacheProvider implements EhCacheInstance {
 
 	private transient StatisticsService statisticsService;
 
-	private final transient Map<String, IObjectCache> caches = new HashMap<>();
+	/**
+	 * Wykonawca operacji asynchronicznych regionów i odświeżania wartości z
+	 * wyprzedzeniem.
+	 */
+	private transient ExecutorService asyncExecutor;
+
+	/**
+	 * Szyna unieważnień pomiędzy węzłami, {@code null} gdy nie został
+	 * zdefiniowany transport.
+	 */
+	private transient InvalidationBus invalidationBus;
+
+	/**
+	 * Migawki regionów, {@code null} gdy nie został zdefiniowany katalog
+	 * migawek ({@link EhCacheConfig#PROP_SNAPSHOT_DIRECTORY}).
+	 */
+	private transient EhCacheSnapshot snapshot;
+
+	/**
+	 * Wątek zapisu zaległych zmian regionów z opóźnionym zapisem, tworzony
+	 * razem z pierwszym takim regionem.
+	 */
+	private transient volatile ScheduledExecutorService writeBehindExecutor;
+
+	/**
+	 * Regiony pamięci podręcznej z nazwą regionu jako kluczem. Odczyt nie wymaga
+	 * blokady, tworzenie (i usuwanie) regionów odbywa się pod
+	 * {@link #regionsLock}.
+	 */
+	private final transient ConcurrentMap<String, EhTypedCache<?, ?>> regions = new ConcurrentHashMap<>();
+
+	/**
+	 * Nakładki {@link IObjectCache} na regiony z kluczem typu {@link String} i
+	 * wartością typu {@link Element}. Odczyt nie wymaga blokady, tworzenie (i
+	 * usuwanie) nakładek odbywa się pod {@link #regionsLock}.
+	 */
+	private final transient ConcurrentMap<String, EhCache> caches = new ConcurrentHashMap<>();
+
+	/**
+	 * Blokada tworzenia i usuwania regionów.
+	 */
+	private final transient Object regionsLock = new Object();
 
 	/* Overridden (non-Javadoc) */
 	@Override
@@ -82,32 +157,172 @@ public class EhCacheProvider implements EhCacheInstance {
 				logger.warn("[init] {} is inicjalized!", EhCacheProvider.class.getSimpleName());
 				return false;
 			}
-			/* tworzę manager'a */
-			CacheManager newManager;
-			String disableStatistics = additionalProps.getProperty(CacheConstants.PROP_DISABLE_STATISTICS,
-					CacheConstants.DEFAULT_DISABLE_STATISTICS);
+			if (this.lazyInit) {
+				logger.info("[init] Manager '{}' will be started on first use.", getName());
+				return true;
+			}
+			start();
+			return true;
+		}
+	}
+
+	/**
+	 * Uruchomienie managera przy pierwszym użyciu, jeżeli jego start został
+	 * odłożony ({@link CacheConstants#PROP_LAZY_INIT}).
+	 */
+	private void ensureStarted() {
+		if (this.manager == null) {
+			synchronized (initLock) {
+				if (this.manager == null) {
+					start();
+				}
+			}
+		}
+	}
 
-			XmlConfiguration xmlConfiguration = this.configuration.getConfiguration();
-			newManager = createSingleManager(disableStatistics, xmlConfiguration);
+	/**
+	 * Utworzenie i uruchomienie managera. Wywoływane w {@link #initLock}.
+	 */
+	private void start() {
+		long startTime = System.currentTimeMillis();
+		if (this.configuration.getConfiguration() == null) {
+			/* konfiguracja XML odłożona do pierwszego użycia */
+			this.configuration = new CacheProviderConfiguration<>(parseConfiguration(getConfigurationFileURL()),
+					additionalProps);
+		}
+		/* tworzę manager'a */
+		CacheManager newManager;
+		String disableStatistics = additionalProps.getProperty(CacheConstants.PROP_DISABLE_STATISTICS,
+				CacheConstants.DEFAULT_DISABLE_STATISTICS);
 
-			this.manager = newManager;
-			this.manager.init();
-			return true;
+		XmlConfiguration xmlConfiguration = this.configuration.getConfiguration();
+		newManager = createSingleManager(disableStatistics, xmlConfiguration);
+
+		this.asyncExecutor = CacheExecutors.newAsyncExecutor(getName(),
+				additionalProps.getProperty(CacheConstants.PROP_ASYNC_THREADS));
+		this.invalidationBus = InvalidationBus.create(getName(), additionalProps, new InvalidationTarget());
+		newManager.init();
+		this.snapshot = EhCacheSnapshot.create(getName(), additionalProps);
+		loadSnapshots(newManager);
+		/* manager udostępniany innym wątkom dopiero po inicjalizacji i załadowaniu migawek */
+		this.manager = newManager;
+		logger.info("[init] Manager '{}' started in {} ms.", getName(), System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * Równoległe załadowanie migawek regionów z parametrem
+	 * {@link EhCacheConfig#PROP_CACHE_SNAPSHOT} - przed udostępnieniem
+	 * managera. Regiony tworzone są w managerze jeszcze niewidocznym dla innych
+	 * wątków, które do końca ładowania czekają w {@link #ensureStarted()}.
+	 * 
+	 * @param newManager
+	 *            uruchamiany manager
+	 */
+	private void loadSnapshots(CacheManager newManager) {
+		if (this.snapshot == null) {
+			return;
+		}
+		List<CompletableFuture<Void>> loads = new ArrayList<>();
+		String suffix = '.' + EhCacheConfig.PROP_CACHE_SNAPSHOT;
+		for (String propertyName : additionalProps.stringPropertyNames()) {
+			if (propertyName.endsWith(suffix) && Boolean.parseBoolean(additionalProps.getProperty(propertyName))) {
+				String regionName = propertyName.substring(0, propertyName.length() - suffix.length());
+				loads.add(CompletableFuture.runAsync(() -> loadSnapshot(newManager, regionName), this.asyncExecutor));
+			}
+		}
+		CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[loads.size()])).join();
+	}
+
+	private void loadSnapshot(CacheManager newManager, String regionName) {
+		long start = System.currentTimeMillis();
+		try {
+			int loaded = this.snapshot.read(regionName,
+					(name, keyType, valueType) -> getTypedCache(newManager, name, keyType, valueType));
+			if (loaded >= 0) {
+				logger.info("[init] Region '{}': {} entries loaded from snapshot in {} ms.",
+						new Object[] { regionName, loaded, System.currentTimeMillis() - start });
+			}
+		} catch (Exception e) {
+			/* region startuje pusty */
+			logger.warn(String.format("[init] Can't load snapshot of region '%s'", regionName), e);
+		}
+	}
+
+	/**
+	 * Równoległy zapis migawek regionów z parametrem
+	 * {@link EhCacheConfig#PROP_CACHE_SNAPSHOT} - przed zamknięciem managera.
+	 */
+	private void writeSnapshots() {
+		if (this.snapshot == null) {
+			return;
+		}
+		List<CompletableFuture<Void>> writes = new ArrayList<>();
+		for (EhTypedCache<?, ?> region : regions.values()) {
+			if (Boolean.parseBoolean(getProperty(region.getRegionName(), EhCacheConfig.PROP_CACHE_SNAPSHOT))) {
+				writes.add(CompletableFuture.runAsync(() -> writeSnapshot(region), this.asyncExecutor));
+			}
+		}
+		CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[writes.size()])).join();
+	}
+
+	private void writeSnapshot(EhTypedCache<?, ?> region) {
+		long start = System.currentTimeMillis();
+		try {
+			int written = this.snapshot.write(region);
+			logger.info("[close] Region '{}': {} entries written to snapshot in {} ms.",
+					new Object[] { region.getRegionName(), written, System.currentTimeMillis() - start });
+		} catch (Exception e) {
+			logger.warn(String.format("[close] Can't write snapshot of region '%s'", region.getRegionName()), e);
 		}
 	}
 
 	private CacheManager createSingleManager(String disableStatistics, XmlConfiguration xmlConfiguration) {
-		CacheManager newManager;
-		if (Boolean.parseBoolean(disableStatistics)) {
-			/* statystyki są wyłączone */
-			newManager = CacheManagerBuilder.newCacheManager(xmlConfiguration);
-		} else {
+		Set<Service> services = new HashSet<>();
+		if (!Boolean.parseBoolean(disableStatistics)) {
 			this.statisticsService = new EhCacheStatisticsService();
-			Set<Service> services = new HashSet<>();
 			services.add(this.statisticsService);
-			newManager = new EhcacheManager(xmlConfiguration, services);
 		}
-		return newManager;
+		/* statystyki są wyłączone, gdy lista serwisów jest pusta */
+		return new EhcacheManager(withPersistence(xmlConfiguration), services);
+	}
+
+	/**
+	 * Uzupełnienie konfiguracji o katalog warstwy dyskowej
+	 * ({@link EhCacheConfig#PROP_PERSISTENCE_DIRECTORY}), o ile nie został
+	 * zdefiniowany w pliku XML. Bez niego regiony z parametrem
+	 * {@link EhCacheConfig#PROP_CACHE_DISK} nie mogą zostać utworzone. Przy
+	 * odłożonym starcie ({@link CacheConstants#PROP_LAZY_INIT}) manager
+	 * startuje bez regionów zadeklarowanych w XML - każdy z nich tworzony jest
+	 * przy pierwszym odwołaniu ({@link #createCache(CacheManager, String, Class, Class)}).
+	 */
+	private Configuration withPersistence(XmlConfiguration xmlConfiguration) {
+		List<ServiceCreationConfiguration<?>> serviceConfigs = new ArrayList<>(
+				xmlConfiguration.getServiceCreationConfigurations());
+		boolean changed = false;
+		String directory = additionalProps.getProperty(EhCacheConfig.PROP_PERSISTENCE_DIRECTORY);
+		if (StringUtils.isNotBlank(directory)) {
+			boolean declared = false;
+			for (ServiceCreationConfiguration<?> serviceConfig : serviceConfigs) {
+				declared |= (serviceConfig instanceof DefaultPersistenceConfiguration);
+			}
+			if (declared) {
+				logger.warn("[init] Persistence directory is defined in XML, parameter {} is ignored.",
+						EhCacheConfig.PROP_PERSISTENCE_DIRECTORY);
+			} else {
+				serviceConfigs.add(new DefaultPersistenceConfiguration(new File(directory)));
+				changed = true;
+			}
+		}
+		Map<String, CacheConfiguration<?, ?>> cacheConfigs = xmlConfiguration.getCacheConfigurations();
+		if (this.lazyInit) {
+			cacheConfigs = Collections.emptyMap();
+			changed = true;
+		}
+		if (!changed) {
+			return xmlConfiguration;
+		}
+		return new DefaultConfiguration(cacheConfigs, xmlConfiguration.getClassLoader(),
+				serviceConfigs.toArray(new ServiceCreationConfiguration<?>[serviceConfigs.size()]));
 	}
 
 	/* Overridden (non-Javadoc) */
@@ -115,7 +330,8 @@ public class EhCacheProvider implements EhCacheInstance {
 	public CacheProviderConfiguration<XmlConfiguration> initConfiguration(Properties additionalProperties) {
 		synchronized (initLock) {
 			setAdditionalProps(additionalProperties);
-			XmlConfiguration config;
+			this.lazyInit = Boolean.parseBoolean(additionalProperties.getProperty(CacheConstants.PROP_LAZY_INIT,
+					CacheConstants.DEFAULT_LAZY_INIT));
 			String configurationPath = additionalProperties.getProperty(CacheConstants.PROP_CONFIG_PATH);
 			URL url = null;
 			if (configurationPath != null) {
@@ -138,90 +354,421 @@ public class EhCacheProvider implements EhCacheInstance {
 			} else {
 				setConfigurationFileURL(url);
 			}
-			logger.info("[initConfiguration] Loading configuration from : {}", new Object[] { url });
-			config = new XmlConfiguration(url);
+			/* przy odłożonym starcie plik XML czytany jest przy pierwszym użyciu */
+			XmlConfiguration config = (this.lazyInit ? null : parseConfiguration(url));
 			this.configuration = new CacheProviderConfiguration<>(config, additionalProperties);
 			return this.configuration;
 		}
 	}
 
+	private static XmlConfiguration parseConfiguration(URL url) {
+		logger.info("[initConfiguration] Loading configuration from : {}", new Object[] { url });
+		return new XmlConfiguration(url);
+	}
+
 	public String[] getCacheNames() {
-		if (!caches.isEmpty()) {
-			String[] result = new String[caches.size()];
-			int i = 0;
-			for (String cacheName : caches.keySet()) {
-				result[i] = cacheName;
-				i++;
+		return regions.keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * Pobranie nakładki na region. Nakładka jest ważna tylko dla regionu, dla
+	 * którego została utworzona - po usunięciu i ponownym utworzeniu regionu
+	 * ({@link #removeCache(String)}) tworzona jest nowa nakładka.
+	 */
+	public IObjectCache getCache(final String name) {
+		EhCache cache = caches.get(name);
+		if (cache != null && cache.getTypedCache() == regions.get(name)) {
+			return cache;
+		}
+		/* start managera tworzy regiony pod initLock - przed regionsLock */
+		ensureStarted();
+		synchronized (regionsLock) {
+			EhTypedCache<String, Element> region = getTypedCache(name, String.class, Element.class);
+			cache = caches.get(name);
+			if (cache == null || cache.getTypedCache() != region) {
+				cache = new EhCache(region);
+				cache.setCacheLoader(createCacheLoader(name));
+				caches.put(name, cache);
 			}
-			return result;
+			return cache;
 		}
-		return new String[] {};
 	}
 
-	public IObjectCache getCache(final String name) {
-		Object lock = ("EhCacheProvider[" + getName() + "].getCache." + name).intern();
-		synchronized (lock) {
-			return caches.computeIfAbsent(name, k -> {
-				try {
-					return createCache(name);
-				} catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
-					throw new IllegalArgumentException(String.format("-->getCache: Error for cache %s.", name));
+	/* Overridden (non-Javadoc) */
+	@Override
+	public <K, V> ITypedObjectCache<K, V> getCache(final String name, final Class<K> keyType,
+			final Class<V> valueType) {
+		return getTypedCache(name, keyType, valueType);
+	}
+
+	/* Overridden (non-Javadoc) */
+	@Override
+	public IAsyncObjectCache getAsyncCache(String name) {
+		return new AsyncObjectCache(getCache(name), this.asyncExecutor);
+	}
+
+	/* Overridden (non-Javadoc) */
+	@Override
+	public <K, V> IAsyncTypedObjectCache<K, V> getAsyncCache(String name, Class<K> keyType, Class<V> valueType) {
+		return new AsyncTypedObjectCache<>(getTypedCache(name, keyType, valueType), this.asyncExecutor);
+	}
+
+	/**
+	 * Pobranie regionu. Istniejący region odczytywany jest bez blokady, tylko
+	 * utworzenie nowego regionu jest serializowane. Nie używamy
+	 * {@link ConcurrentHashMap#computeIfAbsent(Object, java.util.function.Function)},
+	 * bo w Java 8 blokuje ona kubełek mapy również dla istniejących kluczy, a
+	 * tworzenie regionu w EhCache może trwać długo. Regiony utworzone przy
+	 * ładowaniu migawek nie są udostępniane przed uruchomieniem managera.
+	 */
+	@SuppressWarnings("unchecked")
+	private <K, V> EhTypedCache<K, V> getTypedCache(final String name, final Class<K> keyType,
+			final Class<V> valueType) {
+		EhTypedCache<?, ?> region = regions.get(name);
+		if (region == null || this.manager == null) {
+			ensureStarted();
+			return getTypedCache(this.manager, name, keyType, valueType);
+		}
+		checkRegionTypes(name, region.getKeyType(), region.getValueType(), keyType, valueType);
+		return (EhTypedCache<K, V>) region;
+	}
+
+	/**
+	 * Pobranie lub utworzenie regionu w podanym managerze - również w managerze
+	 * jeszcze nieudostępnionym ({@link #loadSnapshots(CacheManager)}).
+	 */
+	@SuppressWarnings("unchecked")
+	private <K, V> EhTypedCache<K, V> getTypedCache(final CacheManager cacheManager, final String name,
+			final Class<K> keyType, final Class<V> valueType) {
+		EhTypedCache<?, ?> region = regions.get(name);
+		if (region == null) {
+			synchronized (regionsLock) {
+				region = regions.get(name);
+				if (region == null) {
+					try {
+						region = createCache(cacheManager, name, keyType, valueType);
+					} catch (InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+						throw new IllegalArgumentException(String.format("-->getCache: Error for cache %s.", name),
+								e);
+					}
+					regions.put(name, region);
+					if (this.statisticsService != null) {
+						CacheRegionStatistics.register(region.getStatistics());
+					}
+					CacheProviderFactory.invalidateStatistics();
+					return (EhTypedCache<K, V>) region;
 				}
-			});
+			}
 		}
+		checkRegionTypes(name, region.getKeyType(), region.getValueType(), keyType, valueType);
+		return (EhTypedCache<K, V>) region;
 	}
 
 	@SuppressWarnings({ "unchecked" })
-	private IObjectCache createCache(String name)
-			throws InstantiationException, IllegalAccessException, ClassNotFoundException {
+	private <K, V> EhTypedCache<K, V> createCache(CacheManager cacheManager, String name, Class<K> keyType,
+			Class<V> valueType) throws InstantiationException, IllegalAccessException, ClassNotFoundException {
 		/** Uzupełnienie konfiguracji */
 		XmlConfiguration xmlConfiguration = this.configuration.getConfiguration();
-		CacheConfiguration<String, Element> cacheConfig = (CacheConfiguration<String, Element>) xmlConfiguration
-				.getCacheConfigurations().get(name);
-		if (cacheConfig == null) {
-			CacheConfigurationBuilder<String, Element> configurationBuilder;
-			configurationBuilder = createConfigurationBuilder(name, xmlConfiguration);
+		CacheConfiguration<?, ?> declaredConfig = xmlConfiguration.getCacheConfigurations().get(name);
+		CacheConfiguration<K, V> cacheConfig;
+		TinyLfuPolicy<K, V> admissionPolicy = createAdmissionPolicy(name);
+		Cache<K, V> localCache = cacheManager.getCache(name, keyType, valueType);
+		if (declaredConfig != null) {
+			checkRegionTypes(name, declaredConfig.getKeyType(), declaredConfig.getValueType(), keyType, valueType);
+			cacheConfig = (CacheConfiguration<K, V>) declaredConfig;
+			if (admissionPolicy != null) {
+				if (localCache == null) {
+					/*
+					 * region z pliku XML tworzony przy pierwszym użyciu (start odłożony
+					 * albo region usunięty) - konfiguracja uzupełniana o politykę
+					 */
+					cacheConfig = CacheConfigurationBuilder.newCacheConfigurationBuilder(cacheConfig)
+							.withEvictionAdvisor(admissionPolicy).build();
+				} else {
+					/* region z pliku XML jest już utworzony, jego konfiguracji nie można zmienić */
+					logger.info("-->createCache: Region '{}' is already created from XML, eviction advisor is not applied.",
+							name);
+				}
+			}
+		} else {
+			CacheConfigurationBuilder<K, V> configurationBuilder;
+			configurationBuilder = createConfigurationBuilder(name, xmlConfiguration, keyType, valueType);
+			if (admissionPolicy != null) {
+				configurationBuilder = configurationBuilder.withEvictionAdvisor(admissionPolicy);
+			}
 			cacheConfig = configurationBuilder.build();
 		}
-		Cache<String, Element> localCache = this.manager.getCache(name, String.class, Element.class);
-		return new EhCache(getName(), name, this.manager, this.statisticsService, cacheConfig, (localCache != null));
+		EhTypedCache<K, V> region = new EhTypedCache<>(getName(), name, cacheManager, this.statisticsService,
+				cacheConfig, (localCache != null));
+		region.setSizeSampleRate(
+				Integer.parseInt(getProperty(name, EhCacheConfig.PROP_CACHE_SIZE_SAMPLE_RATE, "0")));
+		int hotKeySampleRate = Integer.parseInt(getProperty(name, EhCacheConfig.PROP_CACHE_HOT_KEY_SAMPLE_RATE, "0"));
+		if (hotKeySampleRate > 0) {
+			region.setHotKeyProfiler(new HotKeyProfiler(hotKeySampleRate, Integer.parseInt(getProperty(name,
+					EhCacheConfig.PROP_CACHE_HOT_KEYS, Integer.toString(HotKeyProfiler.DEFAULT_TOP_KEYS)))));
+		}
+		if (!String.class.equals(keyType) || !Element.class.equals(valueType)) {
+			/* loader regionów String/Element ustawiany jest na nakładce EhCache */
+			region.setCacheLoader((ICacheLoader<? super K, ? extends V>) createCacheLoader(name));
+		}
+		region.setInvalidationBus(this.invalidationBus);
+		if (admissionPolicy != null) {
+			region.setAdmissionPolicy(admissionPolicy);
+		}
+		if (Boolean.parseBoolean(getProperty(name, EhCacheConfig.PROP_CACHE_WRITE_BEHIND, "false"))) {
+			setUpWriteBehind(name, region);
+		}
+		if (Boolean.parseBoolean(getProperty(name, EhCacheConfig.PROP_CACHE_INCREMENTAL_CLEAR, "false"))) {
+			region.setIncrementalClear(this.asyncExecutor,
+					Integer.parseInt(getProperty(name, EhCacheConfig.PROP_CACHE_INCREMENTAL_CLEAR_BATCH_SIZE,
+							Integer.toString(IncrementalClear.DEFAULT_BATCH_SIZE))));
+		}
+		String refreshAheadFactor = getProperty(name, EhCacheConfig.PROP_CACHE_REFRESH_AHEAD_FACTOR);
+		if (StringUtils.isNotBlank(refreshAheadFactor)) {
+			region.setRefreshAhead(Double.parseDouble(refreshAheadFactor), this.asyncExecutor);
+		}
+		return region;
+	}
+
+	/**
+	 * Włączenie opóźnionego zapisu regionu
+	 * ({@link EhCacheConfig#PROP_CACHE_WRITE_BEHIND}). Writer regionów
+	 * String/Element (nakładka {@link EhCache}) otrzymuje oryginalne wartości
+	 * zamiast obiektów {@link Element}.
+	 */
+	@SuppressWarnings("unchecked")
+	private <K, V> void setUpWriteBehind(String name, EhTypedCache<K, V> region) {
+		ICacheWriter<Object, Object> writer = null;
+		String writerClass = getProperty(name, EhCacheConfig.PROP_CACHE_WRITER);
+		if (StringUtils.isNotBlank(writerClass)) {
+			try {
+				writer = (ICacheWriter<Object, Object>) Class.forName(writerClass.trim()).newInstance();
+			} catch (InstantiationException | IllegalAccessException | ClassNotFoundException
+					| ClassCastException e) {
+				throw new IllegalArgumentException(String.format(
+						"-->setUpWriteBehind: Can't create writer %s for cache %s.", writerClass, name), e);
+			}
+			if (String.class.equals(region.getKeyType()) && Element.class.equals(region.getValueType())) {
+				writer = new ElementValueWriter(writer);
+			}
+		}
+		int maxQueueSize = Integer.parseInt(getProperty(name, EhCacheConfig.PROP_CACHE_WRITE_BEHIND_MAX_QUEUE_SIZE,
+				Integer.toString(WriteBehindQueue.DEFAULT_MAX_QUEUE_SIZE)));
+		int batchSize = Integer.parseInt(getProperty(name, EhCacheConfig.PROP_CACHE_WRITE_BEHIND_BATCH_SIZE,
+				Integer.toString(WriteBehindQueue.DEFAULT_BATCH_SIZE)));
+		long delayMillis = Long.parseLong(getProperty(name, EhCacheConfig.PROP_CACHE_WRITE_BEHIND_DELAY_MILLIS,
+				Long.toString(WriteBehindQueue.DEFAULT_DELAY_MILLIS)));
+		WriteBehindQueue<K, V> queue = new WriteBehindQueue<>(region, (ICacheWriter<K, V>) writer, maxQueueSize,
+				batchSize);
+		queue.start(getWriteBehindExecutor(), delayMillis);
+		region.setWriteBehind(queue);
+	}
+
+	private ScheduledExecutorService getWriteBehindExecutor() {
+		ScheduledExecutorService executor = this.writeBehindExecutor;
+		if (executor == null) {
+			/* wywoływane podczas tworzenia regionu, pod blokadą regionsLock */
+			final String threadName = "sccache-write-behind-" + getName();
+			executor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, threadName);
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.writeBehindExecutor = executor;
+		}
+		return executor;
+	}
+
+	/**
+	 * Writer regionu {@link IObjectCache} - wartości zapisywane są w regionie
+	 * jako {@link Element}, a writer otrzymuje wartości oryginalne.
+	 */
+	private static class ElementValueWriter implements ICacheWriter<Object, Object> {
+
+		private final ICacheWriter<Object, Object> writer;
+
+		private ElementValueWriter(ICacheWriter<Object, Object> writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void writeAll(Map<Object, Object> entries) throws Exception {
+			Map<Object, Object> values = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+			for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+				values.put(entry.getKey(), ((Element) entry.getValue()).getObjectValue());
+			}
+			writer.writeAll(values);
+		}
+
+		@Override
+		public void deleteAll(Set<Object> keys) throws Exception {
+			writer.deleteAll(keys);
+		}
+	}
+
+	/**
+	 * Utworzenie polityki przyjmowania i usuwania elementów na podstawie
+	 * parametrów {@link EhCacheConfig#PROP_CACHE_ADMISSION} i
+	 * {@link EhCacheConfig#PROP_CACHE_MAX_WEIGHT}.
+	 * 
+	 * @return polityka albo {@code null}, jeżeli region jej nie używa
+	 */
+	@SuppressWarnings("unchecked")
+	private <K, V> TinyLfuPolicy<K, V> createAdmissionPolicy(String name) {
+		String admission = getProperty(name, EhCacheConfig.PROP_CACHE_ADMISSION);
+		String maxWeight = getProperty(name, EhCacheConfig.PROP_CACHE_MAX_WEIGHT);
+		boolean tinyLfu = false;
+		if (StringUtils.isNotBlank(admission)) {
+			if (!TinyLfuPolicy.ADMISSION_TINYLFU.equalsIgnoreCase(admission.trim())) {
+				throw new IllegalArgumentException(String.format(
+						"-->createAdmissionPolicy: Unknown admission policy '%s' for cache %s.", admission, name));
+			}
+			tinyLfu = true;
+		}
+		if (!tinyLfu && StringUtils.isBlank(maxWeight)) {
+			return null;
+		}
+		IEntryWeigher<Object, Object> weigher = null;
+		long weightLimit = Long.MAX_VALUE;
+		if (StringUtils.isNotBlank(maxWeight)) {
+			weightLimit = Long.parseLong(maxWeight.trim());
+			String weigherClass = getProperty(name, EhCacheConfig.PROP_CACHE_WEIGHER);
+			if (StringUtils.isBlank(weigherClass)) {
+				weigher = new TinyLfuPolicy.ObjectSizeWeigher();
+			} else {
+				try {
+					weigher = (IEntryWeigher<Object, Object>) Class.forName(weigherClass.trim()).newInstance();
+				} catch (InstantiationException | IllegalAccessException | ClassNotFoundException
+						| ClassCastException e) {
+					throw new IllegalArgumentException(String.format(
+							"-->createAdmissionPolicy: Can't create weigher %s for cache %s.", weigherClass, name), e);
+				}
+			}
+		}
+		long maximumSize = Long.parseLong(
+				getProperty(name, EhCacheConfig.PROP_CACHE_HEAP, Integer.toString(EhCacheConfig.DEFAULT_HEAP)));
+		return new TinyLfuPolicy<>(maximumSize, tinyLfu, (IEntryWeigher<? super K, ? super V>) weigher,
+				weightLimit);
+	}
+
+	/**
+	 * Utworzenie loadera regionu na podstawie parametru
+	 * {@link EhCacheConfig#PROP_CACHE_LOADER}.
+	 * 
+	 * @return loader albo {@code null}, jeżeli nie został zdefiniowany
+	 */
+	@SuppressWarnings("unchecked")
+	private ICacheLoader<Object, Object> createCacheLoader(String name) {
+		String loaderClass = getProperty(name, EhCacheConfig.PROP_CACHE_LOADER);
+		if (StringUtils.isBlank(loaderClass)) {
+			return null;
+		}
+		try {
+			return (ICacheLoader<Object, Object>) Class.forName(loaderClass).newInstance();
+		} catch (InstantiationException | IllegalAccessException | ClassNotFoundException | ClassCastException e) {
+			throw new IllegalArgumentException(
+					String.format("-->createCacheLoader: Can't create loader %s for cache %s.", loaderClass, name), e);
+		}
 	}
 
-	private CacheConfigurationBuilder<String, Element> createConfigurationBuilder(String name,
-			XmlConfiguration xmlConfiguration)
+	private static void checkRegionTypes(String name, Class<?> regionKeyType, Class<?> regionValueType,
+			Class<?> keyType, Class<?> valueType) {
+		if (!regionKeyType.equals(keyType) || !regionValueType.equals(valueType)) {
+			throw new IllegalArgumentException(
+					String.format("-->getCache: Region '%s' is defined with types <%s, %s> but requested <%s, %s>.",
+							name, regionKeyType.getName(), regionValueType.getName(), keyType.getName(),
+							valueType.getName()));
+		}
+	}
+
+	private <K, V> CacheConfigurationBuilder<K, V> createConfigurationBuilder(String name,
+			XmlConfiguration xmlConfiguration, Class<K> keyType, Class<V> valueType)
 			throws InstantiationException, IllegalAccessException, ClassNotFoundException {
 		final String defaultTemplate = DEFAULT_TEMPLATE_NAME;
-		CacheConfigurationBuilder<String, Element> configurationBuilder;
-		configurationBuilder = xmlConfiguration.newCacheConfigurationBuilderFromTemplate(defaultTemplate, String.class,
-				Element.class);
+		CacheConfigurationBuilder<K, V> configurationBuilder;
+		try {
+			configurationBuilder = xmlConfiguration.newCacheConfigurationBuilderFromTemplate(defaultTemplate,
+					keyType, valueType);
+		} catch (IllegalArgumentException e) {
+			/* szablon zadeklarowany jest dla innych typów klucza albo wartości */
+			logger.debug("-->createConfigurationBuilder: Template '{}' skipped for region '{}': {}",
+					new Object[] { defaultTemplate, name, e.getMessage() });
+			configurationBuilder = null;
+		}
 		if (configurationBuilder == null) {
-			CustomExpiry<String, Element> expiryPolicy = createExpiryPolicy(name);
 			ResourcePoolsBuilder rBuilder = createResourcePoolBuilder(name);
 			ResourcePools rPool = rBuilder.build();
-			if (expiryPolicy != null) {
-				configurationBuilder = CacheConfigurationBuilder
-						.newCacheConfigurationBuilder(String.class, Element.class, rPool).withExpiry(expiryPolicy);
-			} else {
-				configurationBuilder = CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class,
-						Element.class, rPool);
-			}
+			configurationBuilder = CacheConfigurationBuilder.newCacheConfigurationBuilder(keyType, valueType, rPool)
+					.withExpiry(createExpiryPolicy(name, ExpiryPolicy.NO_EXPIRY));
+		} else {
+			/*
+			 * polityka szablonu staje się polityką bazową, aby działały czasy życia
+			 * elementów i zmiana czasu życia regionu
+			 */
+			ExpiryPolicy<? super K, ? super V> templatePolicy = configurationBuilder.build().getExpiryPolicy();
+			configurationBuilder = configurationBuilder.withExpiry(createExpiryPolicy(name, templatePolicy));
 		}
-		return configurationBuilder;
+		return withSerializersAndCopiers(name, configurationBuilder, keyType, valueType);
 	}
 
-	private CustomExpiry<String, Element> createExpiryPolicy(String name) {
+	/**
+	 * Ustawianie serializatorów i obiektów kopiujących klucze i wartości regionu.
+	 * Jeżeli serializator nie został wskazany w parametrach regionu, a typ nie
+	 * implementuje {@link Serializable} (np. {@link Object}), to używany jest
+	 * {@link PlainJavaSerializer} - bez niego warstwy off-heap i dysk nie mogłyby
+	 * przechowywać elementów regionu.
+	 */
+	@SuppressWarnings("unchecked")
+	private <K, V> CacheConfigurationBuilder<K, V> withSerializersAndCopiers(String name,
+			CacheConfigurationBuilder<K, V> configurationBuilder, Class<K> keyType, Class<V> valueType)
+			throws ClassNotFoundException {
+		CacheConfigurationBuilder<K, V> builder = configurationBuilder;
+		String keySerializer = getProperty(name, EhCacheConfig.PROP_CACHE_KEY_SERIALIZER);
+		if (StringUtils.isNotBlank(keySerializer)) {
+			builder = builder.withKeySerializer((Class<? extends Serializer<K>>) serializerClass(keySerializer));
+		} else if (!Serializable.class.isAssignableFrom(keyType)) {
+			builder = builder.withKeySerializer((Class<? extends Serializer<K>>) (Class<?>) PlainJavaSerializer.class);
+		}
+		String valueSerializer = getProperty(name, EhCacheConfig.PROP_CACHE_VALUE_SERIALIZER);
+		if (StringUtils.isNotBlank(valueSerializer)) {
+			builder = builder.withValueSerializer((Class<? extends Serializer<V>>) serializerClass(valueSerializer));
+		} else if (!Serializable.class.isAssignableFrom(valueType)) {
+			builder = builder
+					.withValueSerializer((Class<? extends Serializer<V>>) (Class<?>) PlainJavaSerializer.class);
+		}
+		String keyCopier = getProperty(name, EhCacheConfig.PROP_CACHE_KEY_COPIER);
+		if (StringUtils.isNotBlank(keyCopier)) {
+			builder = builder.withKeyCopier((Class<? extends Copier<K>>) Class.forName(keyCopier));
+		}
+		String valueCopier = getProperty(name, EhCacheConfig.PROP_CACHE_VALUE_COPIER);
+		if (StringUtils.isNotBlank(valueCopier)) {
+			builder = builder.withValueCopier((Class<? extends Copier<V>>) Class.forName(valueCopier));
+		}
+		return builder;
+	}
+
+	/**
+	 * @param serializer
+	 *            nazwa klasy serializatora albo
+	 *            {@link EhCacheConfig#SERIALIZER_COMPACT}
+	 * @return klasa serializatora
+	 */
+	private static Class<?> serializerClass(String serializer) throws ClassNotFoundException {
+		if (EhCacheConfig.SERIALIZER_COMPACT.equals(serializer.trim())) {
+			return CompactSerializer.class;
+		}
+		return Class.forName(serializer.trim());
+	}
+
+	private <K, V> CustomExpiry<K, V> createExpiryPolicy(String name, ExpiryPolicy<? super K, ? super V> basePolicy) {
 		/* Expiry Policy - start */
-		CustomExpiry<String, Element> expiryPolicy = null;
+		CustomExpiry<K, V> expiryPolicy = new CustomExpiry<>(basePolicy);
 		if (getProperty(name, EhCacheConfig.PROP_CACHE_TIME_TO_LIVE_SECONDS) != null) {
 			long value = Long.parseLong(getProperty(name, EhCacheConfig.PROP_CACHE_TIME_TO_LIVE_SECONDS));
-			expiryPolicy = new CustomExpiry<>();
 			expiryPolicy.setTimeToLiveExpiration(java.time.Duration.ofSeconds(value));
 		}
 		if (getProperty(name, EhCacheConfig.PROP_CACHE_TIME_TO_IDLE_SECONDS) != null) {
 			long value = Long.parseLong(getProperty(name, EhCacheConfig.PROP_CACHE_TIME_TO_IDLE_SECONDS));
-			if (expiryPolicy == null) {
-				expiryPolicy = new CustomExpiry<>();
-			}
 			expiryPolicy.setTimeToIdleExpiration(java.time.Duration.ofSeconds(value));
 		}
 		/* Expiry Policy - end */
@@ -259,16 +806,46 @@ public class EhCacheProvider implements EhCacheInstance {
 	}
 
 	public void close() {
+		if (this.manager == null) {
+			/* manager nie został uruchomiony - nie ma czego zamykać */
+			CacheProviderFactory.unbindInstanceByManagerName(getAssociatedProvider(), getName());
+			return;
+		}
+		if (this.statisticsService != null) {
+			for (String regionName : regions.keySet()) {
+				CacheRegionStatistics.unregister(getName(), regionName);
+			}
+		}
+		if (this.invalidationBus != null) {
+			/* zaległe unieważnienia wysyłamy przed zamknięciem regionów */
+			this.invalidationBus.close();
+		}
+		/* zaległe zmiany trafiają do regionów przed zapisem migawek */
+		for (EhTypedCache<?, ?> region : regions.values()) {
+			region.closeWriteBehind();
+		}
+		if (this.writeBehindExecutor != null) {
+			this.writeBehindExecutor.shutdown();
+		}
+		writeSnapshots();
 		manager.close();
+		if (this.asyncExecutor != null) {
+			this.asyncExecutor.shutdown();
+		}
 		CacheProviderFactory.unbindInstanceByManagerName(getAssociatedProvider(), getName());
 	}
 
 	public void removeCache(String name) {
-		IObjectCache cache = caches.get(name);
-		if (cache != null) {
-			logger.debug("Usuwam region o nazwie '{}'", name);
-			manager.removeCache(name);
-			caches.remove(name);
+		synchronized (regionsLock) {
+			EhTypedCache<?, ?> region = regions.remove(name);
+			if (region != null) {
+				logger.debug("Usuwam region o nazwie '{}'", name);
+				caches.remove(name);
+				region.closeWriteBehind();
+				manager.removeCache(name);
+				CacheRegionStatistics.unregister(getName(), name);
+				CacheProviderFactory.invalidateStatistics();
+			}
 		}
 	}
 
@@ -303,9 +880,9 @@ public class EhCacheProvider implements EhCacheInstance {
 	/* Overridden (non-Javadoc) */
 	@Override
 	public IObjectCacheStatistics getStatistics(final String regionName) {
-		IObjectCache cache = caches.get(regionName);
-		if (cache != null) {
-			return cache.getStatistics();
+		EhTypedCache<?, ?> region = regions.get(regionName);
+		if (region != null) {
+			return region.getStatistics();
 		}
 		return new EmptyObjectCacheStatistics(getName(), regionName, getAssociatedProvider());
 	}
@@ -313,10 +890,10 @@ public class EhCacheProvider implements EhCacheInstance {
 	/* Overridden (non-Javadoc) */
 	@Override
 	public void clearCache(final String cacheName) {
-		IObjectCache cache = caches.get(cacheName);
-		if (cache != null) {
+		EhTypedCache<?, ?> region = regions.get(cacheName);
+		if (region != null) {
 			try {
-				cache.clear();
+				region.clear();
 			} catch (CacheErrorException e) {
 				logger.error(String.format("-->clearCache: Cache '%s' clear error!", cacheName), e);
 			}
@@ -327,6 +904,7 @@ public class EhCacheProvider implements EhCacheInstance {
 	 * @return the {@link #manager}
 	 */
 	public CacheManager getManager() {
+		ensureStarted();
 		return manager;
 	}
 
@@ -445,4 +1023,27 @@ public class EhCacheProvider implements EhCacheInstance {
 		this.additionalProps = additionalProps;
 	}
 
+	/**
+	 * Stosowanie unieważnień otrzymanych z innych węzłów - tylko w istniejących
+	 * regionach, brakujące regiony nie są tworzone.
+	 */
+	private class InvalidationTarget implements InvalidationBus.Target {
+
+		@Override
+		public void invalidateLocal(String regionName, Collection<Object> keys) {
+			EhTypedCache<?, ?> region = regions.get(regionName);
+			if (region != null) {
+				region.invalidateLocal(keys);
+			}
+		}
+
+		@Override
+		public void clearLocal(String regionName) {
+			EhTypedCache<?, ?> region = regions.get(regionName);
+			if (region != null) {
+				region.clearLocal();
+			}
+		}
+	}
+
 }
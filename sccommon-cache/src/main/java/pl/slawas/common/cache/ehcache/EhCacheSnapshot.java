@@ -0,0 +1,327 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+import org.ehcache.Cache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.slawas.common.cache.serialization.CompactCodec;
+
+/**
+ *
+ * EhCacheSnapshot - migawki zawartości regionów zapisywane podczas zamykania
+ * managera i ładowane podczas jego uruchomienia, aby po restarcie regiony nie
+ * startowały puste ({@link EhCacheConfig#PROP_CACHE_SNAPSHOT}). Klucze i
+ * wartości zapisywane są w formacie {@link CompactCodec} do pliku
+ * odwzorowanego w pamięci ({@link FileChannel#map}).
+ * <p>
+ * Migawka nie przechowuje czasu wygaśnięcia elementów - załadowane elementy
+ * otrzymują pełny czas życia regionu, dlatego migawka starsza niż czas życia
+ * regionu jest pomijana, a plik usuwany po załadowaniu.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.2 $
+ *
+ */
+public class EhCacheSnapshot {
+
+	private static final Logger logger = LoggerFactory.getLogger(EhCacheSnapshot.class);
+
+	private static final int MAGIC = 0x53435350;
+	private static final byte VERSION = 1;
+	private static final byte ENTRY = 1;
+	private static final byte END = 0;
+	private static final String SUFFIX = ".snapshot";
+
+	/** Rozmiar fragmentu pliku odwzorowywanego w pamięci podczas zapisu */
+	private static final int WINDOW_SIZE = 8 * 1024 * 1024;
+
+	/** Liczba elementów wstawianych do regionu jednym wywołaniem */
+	private static final int LOAD_BATCH_SIZE = 1000;
+
+	private final File directory;
+
+	private final CompactCodec codec;
+
+	private final ClassLoader classLoader;
+
+	/**
+	 * Utworzenie obsługi migawek managera.
+	 *
+	 * @param managerName
+	 *            nazwa managera - podkatalog katalogu migawek
+	 * @param props
+	 *            parametry managera
+	 * @return obsługa migawek albo {@code null}, gdy nie zdefiniowano katalogu
+	 *         ({@link EhCacheConfig#PROP_SNAPSHOT_DIRECTORY})
+	 */
+	public static EhCacheSnapshot create(String managerName, Properties props) {
+		String directory = props.getProperty(EhCacheConfig.PROP_SNAPSHOT_DIRECTORY);
+		if (StringUtils.isBlank(directory)) {
+			return null;
+		}
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		return new EhCacheSnapshot(new File(directory.trim(), fileName(managerName)),
+				(classLoader != null ? classLoader : EhCacheSnapshot.class.getClassLoader()));
+	}
+
+	EhCacheSnapshot(File directory, ClassLoader classLoader) {
+		this.directory = directory;
+		this.classLoader = classLoader;
+		this.codec = new CompactCodec(classLoader);
+	}
+
+	/**
+	 * Typy regionu odczytane z nagłówka migawki.
+	 */
+	public interface RegionResolver {
+
+		/**
+		 * @return region o podanej nazwie i typach (tworzony, jeżeli nie
+		 *         istnieje)
+		 */
+		EhTypedCache<?, ?> resolve(String regionName, Class<?> keyType, Class<?> valueType);
+	}
+
+	/**
+	 * @return plik migawki regionu
+	 */
+	public File getFile(String regionName) {
+		return new File(directory, fileName(regionName) + SUFFIX);
+	}
+
+	/**
+	 * Zapis zawartości regionu do migawki. Plik zapisywany jest pod nazwą
+	 * tymczasową i podmieniany dopiero po zapisaniu wszystkich elementów.
+	 *
+	 * @return liczba zapisanych elementów
+	 */
+	public <K, V> int write(EhTypedCache<K, V> region) throws IOException {
+		File file = getFile(region.getRegionName());
+		File tmpFile = new File(directory, file.getName() + ".tmp");
+		Files.createDirectories(directory.toPath());
+		int written = 0;
+		int skipped = 0;
+		try (MappedOutput mapped = new MappedOutput(tmpFile)) {
+			DataOutputStream out = new DataOutputStream(mapped);
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			CompactCodec.writeString(region.getRegionName(), out);
+			CompactCodec.writeString(region.getKeyType().getName(), out);
+			CompactCodec.writeString(region.getValueType().getName(), out);
+			CompactCodec.writeVarLong(System.currentTimeMillis(), out);
+			ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(256);
+			DataOutputStream entryOut = new DataOutputStream(entryBytes);
+			for (Cache.Entry<K, V> entry : region.getEhCache()) {
+				if (!region.isVisible(entry.getKey())) {
+					continue;
+				}
+				entryBytes.reset();
+				try {
+					entryOut.writeByte(ENTRY);
+					codec.writeValue(entry.getKey(), entryOut);
+					codec.writeValue(entry.getValue(), entryOut);
+				} catch (IOException e) {
+					/* np. wartość, której nie można serializować */
+					skipped++;
+					continue;
+				}
+				entryBytes.writeTo(out);
+				written++;
+			}
+			out.writeByte(END);
+			out.flush();
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		if (skipped != 0) {
+			logger.warn("-->write: Region '{}': {} entries can't be written to snapshot.", region.getRegionName(),
+					skipped);
+		}
+		return written;
+	}
+
+	/**
+	 * Załadowanie migawki regionu i usunięcie jej pliku.
+	 *
+	 * @param regionName
+	 *            nazwa regionu
+	 * @param resolver
+	 *            dostęp do regionu
+	 * @return liczba załadowanych elementów, -1 jeżeli migawki nie ma albo
+	 *         jest nieaktualna
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public int read(String regionName, RegionResolver resolver) throws IOException, ClassNotFoundException {
+		File file = getFile(regionName);
+		if (!file.isFile()) {
+			return -1;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot is too large: " + channel.size());
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+			DataInputStream in = new DataInputStream(new ByteBufferInput(buffer));
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				throw new IOException("Unsupported snapshot format");
+			}
+			String storedRegionName = CompactCodec.readString(in);
+			if (!regionName.equals(storedRegionName)) {
+				throw new IOException("Snapshot of region " + storedRegionName);
+			}
+			Class<?> keyType = Class.forName(CompactCodec.readString(in), false, classLoader);
+			Class<?> valueType = Class.forName(CompactCodec.readString(in), false, classLoader);
+			long createdAt = CompactCodec.readVarLong(in);
+			EhTypedCache region = resolver.resolve(regionName, keyType, valueType);
+			long timeToLiveSeconds = region.getTimeToLiveSeconds();
+			if (timeToLiveSeconds > 0L && System.currentTimeMillis() - createdAt > timeToLiveSeconds * 1000L) {
+				logger.info("-->read: Snapshot of region '{}' is older than time to live of region.", regionName);
+				return -1;
+			}
+			Cache<Object, Object> cache = region.getEhCache();
+			Map<Object, Object> batch = new HashMap<>();
+			int loaded = 0;
+			while (in.readByte() == ENTRY) {
+				Object key = codec.readValue(in);
+				Object value = codec.readValue(in);
+				if (!keyType.isInstance(key) || !valueType.isInstance(value)) {
+					continue;
+				}
+				batch.put(key, value);
+				if (batch.size() == LOAD_BATCH_SIZE) {
+					cache.putAll(batch);
+					loaded += batch.size();
+					batch.clear();
+				}
+			}
+			cache.putAll(batch);
+			return loaded + batch.size();
+		} finally {
+			/* migawka jest jednorazowa - po awarii nie ładujemy ponownie starych danych */
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	/**
+	 * @return nazwa pliku bez znaków niedozwolonych w nazwach plików
+	 */
+	static String fileName(String name) {
+		StringBuilder fileName = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			fileName.append((Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_') ? c : '_');
+		}
+		return fileName.toString();
+	}
+
+	/**
+	 * Zapis do pliku kolejnymi fragmentami odwzorowanymi w pamięci. Plik jest
+	 * na końcu przycinany do zapisanej długości.
+	 */
+	private static final class MappedOutput extends OutputStream {
+
+		private final FileChannel channel;
+
+		private long windowStart = 0L;
+
+		private MappedByteBuffer window;
+
+		private MappedOutput(File file) throws IOException {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0L, WINDOW_SIZE);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (!window.hasRemaining()) {
+				nextWindow();
+			}
+			window.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!window.hasRemaining()) {
+					nextWindow();
+				}
+				int count = Math.min(len, window.remaining());
+				window.put(b, off, count);
+				off += count;
+				len -= count;
+			}
+		}
+
+		private void nextWindow() throws IOException {
+			window.force();
+			windowStart += window.position();
+			window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, WINDOW_SIZE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				window.force();
+				long length = windowStart + window.position();
+				try {
+					channel.truncate(length);
+				} catch (IOException e) {
+					/* np. Windows nie pozwala przyciąć odwzorowanego pliku - koniec wyznacza znacznik */
+					logger.debug("-->close: Snapshot not truncated: {}", e.getMessage());
+				}
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Odczyt z bufora odwzorowanego w pamięci.
+	 */
+	private static final class ByteBufferInput extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		private ByteBufferInput(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return (buffer.hasRemaining() ? buffer.get() & 0xFF : -1);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+	}
+
+}
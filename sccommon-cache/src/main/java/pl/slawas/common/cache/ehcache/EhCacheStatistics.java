@@ -1,19 +1,25 @@
 package pl.slawas.common.cache.ehcache;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 import org.ehcache.core.Ehcache;
 import org.ehcache.core.spi.service.StatisticsService;
 
+import pl.slawas.common.cache.CacheOperation;
+import pl.slawas.common.cache.CacheOperationStatistics;
 import pl.slawas.common.cache.CacheProviderEnum;
+import pl.slawas.common.cache.HotKeyProfiler;
 import pl.slawas.common.cache.IObjectCacheStatistics;
+import pl.slawas.common.cache.LatencyHistogram;
 
 /**
  * 
  * EhCacheStatistics
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.2 $
+ * @version $Revision: 1.6 $
  * 
  */
 public class EhCacheStatistics implements Serializable, IObjectCacheStatistics {
@@ -22,6 +28,8 @@ public class EhCacheStatistics implements Serializable, IObjectCacheStatistics {
 
 	private final transient EhCacheStatisticsService statisticsService;
 
+	private final transient EhTypedCache<?, ?> cache;
+
 	private final String associatedCacheName;
 
 	private final String associatedProviderName;
@@ -31,16 +39,18 @@ public class EhCacheStatistics implements Serializable, IObjectCacheStatistics {
 		this.associatedProviderName = associatedProviderName;
 		this.associatedCacheName = associatedCacheName;
 		this.statisticsService = null;
+		this.cache = null;
 	}
 
 	/**
 	 * 
 	 * @param cache
 	 */
-	EhCacheStatistics(String associatedProviderName, EhCache cache) {
+	EhCacheStatistics(String associatedProviderName, EhTypedCache<?, ?> cache) {
 		super();
 		this.associatedProviderName = associatedProviderName;
 		this.associatedCacheName = cache.getRegionName();
+		this.cache = cache;
 		StatisticsService ss = cache.getStatisticsService();
 		if (ss instanceof EhCacheStatisticsService) {
 			this.statisticsService = (EhCacheStatisticsService) ss;
@@ -50,17 +60,25 @@ public class EhCacheStatistics implements Serializable, IObjectCacheStatistics {
 	}
 
 	public void clearStatistics() {
+		HotKeyProfiler profiler = (cache != null ? cache.getHotKeyProfiler() : null);
+		if (profiler != null) {
+			profiler.clear();
+		}
 		if (statisticsService == null) {
 			return;
 		}
 		statisticsService.clearStatistics(associatedCacheName);
+		CacheOperationStatistics operationStatistics = (cache != null ? cache.getOperationStatistics() : null);
+		if (operationStatistics != null) {
+			operationStatistics.clear();
+		}
 	}
 
 	public long getCacheHits() {
 		if (statisticsService == null) {
 			return 0L;
 		}
-		return statisticsService.getCacheStatistics(associatedCacheName).getCacheHits();
+		return statisticsService.getCacheHits(associatedCacheName);
 	}
 
 	public long getInMemoryHits() {
@@ -81,7 +99,7 @@ public class EhCacheStatistics implements Serializable, IObjectCacheStatistics {
 		if (statisticsService == null) {
 			return 0L;
 		}
-		return statisticsService.getCacheStatistics(associatedCacheName).getCacheMisses();
+		return statisticsService.getCacheMisses(associatedCacheName);
 
 	}
 
@@ -92,6 +110,94 @@ public class EhCacheStatistics implements Serializable, IObjectCacheStatistics {
 		return statisticsService.getObjectCount(associatedCacheName);
 	}
 
+	public long getInMemoryObjectCount() {
+		if (statisticsService == null) {
+			return -1L;
+		}
+		return statisticsService.getInMemoryObjectCount(associatedCacheName);
+	}
+
+	public long getOnDiskObjectCount() {
+		if (statisticsService == null) {
+			return -1L;
+		}
+		return statisticsService.getOnDiskObjectCount(associatedCacheName);
+	}
+
+	public long getHeapSizeInBytes() {
+		if (cache == null) {
+			return -1L;
+		}
+		return cache.getHeapSizeInBytes();
+	}
+
+	public long getOffHeapSizeInBytes() {
+		if (statisticsService == null) {
+			return -1L;
+		}
+		return statisticsService.getOffHeapSizeInBytes(associatedCacheName);
+	}
+
+	public long getDiskSizeInBytes() {
+		if (statisticsService == null) {
+			return -1L;
+		}
+		return statisticsService.getDiskSizeInBytes(associatedCacheName);
+	}
+
+	public long getEvictionCount() {
+		if (statisticsService == null) {
+			return 0L;
+		}
+		return statisticsService.getCacheStatistics(associatedCacheName).getCacheEvictions();
+	}
+
+	public long getExpirationCount() {
+		if (statisticsService == null) {
+			return 0L;
+		}
+		return statisticsService.getCacheStatistics(associatedCacheName).getCacheExpirations();
+	}
+
+	public long getWriteBehindQueueSize() {
+		return (cache != null ? cache.getWriteBehindQueueSize() : 0L);
+	}
+
+	public List<HotKeyProfiler.HotKey> getTopHitKeys() {
+		HotKeyProfiler profiler = (cache != null ? cache.getHotKeyProfiler() : null);
+		return (profiler != null ? profiler.getTopHitKeys() : Collections.<HotKeyProfiler.HotKey> emptyList());
+	}
+
+	public List<HotKeyProfiler.HotKey> getTopMissKeys() {
+		HotKeyProfiler profiler = (cache != null ? cache.getHotKeyProfiler() : null);
+		return (profiler != null ? profiler.getTopMissKeys() : Collections.<HotKeyProfiler.HotKey> emptyList());
+	}
+
+	public long getOperationCount(CacheOperation operation) {
+		LatencyHistogram histogram = getHistogram(operation);
+		return (histogram != null ? histogram.getCount() : 0L);
+	}
+
+	public double getMeanLatencyNanos(CacheOperation operation) {
+		LatencyHistogram histogram = getHistogram(operation);
+		return (histogram != null ? histogram.getMean() : 0.0);
+	}
+
+	public long getLatencyPercentileNanos(CacheOperation operation, double percentile) {
+		LatencyHistogram histogram = getHistogram(operation);
+		return (histogram != null ? histogram.getValueAtPercentile(percentile) : 0L);
+	}
+
+	public long getMaxLatencyNanos(CacheOperation operation) {
+		LatencyHistogram histogram = getHistogram(operation);
+		return (histogram != null ? histogram.getMax() : 0L);
+	}
+
+	private LatencyHistogram getHistogram(CacheOperation operation) {
+		CacheOperationStatistics operationStatistics = (cache != null ? cache.getOperationStatistics() : null);
+		return (operationStatistics != null ? operationStatistics.getHistogram(operation) : null);
+	}
+
 	public String getAssociatedCacheName() {
 		return this.associatedCacheName;
 	}
@@ -104,7 +210,19 @@ public class EhCacheStatistics implements Serializable, IObjectCacheStatistics {
 		dump.append("[ ").append(" name = ").append(getAssociatedCacheName()).append(" cacheHits = ")
 				.append(getCacheHits()).append(" onDiskHits = ").append(getOnDiskHits()).append(" inMemoryHits = ")
 				.append(getInMemoryHits()).append(" misses = ").append(getCacheMisses()).append(" size = ")
-				.append(getSize()).append(" ]");
+				.append(getSize()).append(" inMemory = ").append(getInMemoryObjectCount()).append(" onDisk = ")
+				.append(getOnDiskObjectCount()).append(" heapBytes = ").append(getHeapSizeInBytes())
+				.append(" offHeapBytes = ").append(getOffHeapSizeInBytes()).append(" diskBytes = ")
+				.append(getDiskSizeInBytes()).append(" evictions = ").append(getEvictionCount())
+				.append(" expirations = ").append(getExpirationCount()).append(" writeBehindQueue = ")
+				.append(getWriteBehindQueueSize()).append(" topHitKeys = ").append(getTopHitKeys())
+				.append(" topMissKeys = ").append(getTopMissKeys());
+		for (CacheOperation operation : CacheOperation.values()) {
+			dump.append(' ').append(operation.name().toLowerCase()).append(" = ")
+					.append(getOperationCount(operation)).append('/')
+					.append(getLatencyPercentileNanos(operation, 99.0)).append("ns(p99)");
+		}
+		dump.append(" ]");
 
 		return dump.toString();
 	}
@@ -123,8 +241,7 @@ public class EhCacheStatistics implements Serializable, IObjectCacheStatistics {
 		if (statisticsService == null) {
 			return 0.0;
 		}
-		Float hits = statisticsService.getCacheStatistics(associatedCacheName).getCacheHitPercentage();
-		return round(hits.doubleValue(), 2);
+		return round(statisticsService.getCacheHitPercentage(associatedCacheName), 2);
 	}
 
 	/* Overridden (non-Javadoc) */
@@ -1,21 +1,38 @@
 package pl.slawas.common.cache.ehcache;
 
-import org.ehcache.impl.internal.statistics.DefaultStatisticsService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.core.statistics.TierStatistics;
+import org.ehcache.impl.internal.statistics.DefaultStatisticsService;
 
 /**
  * 
  * EhCacheStatisticsService
+ * <p>
+ * Trafienia i chybienia zwracane przez usługę nie obejmują operacji
+ * wykonanych na potrzeby utrzymania regionu (np. {@link IncrementalClear}) -
+ * zobacz {@link #recordMaintenance(String, long, long, long, long)}.
+ * </p>
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.3 $
  *
  */
 public class EhCacheStatisticsService extends DefaultStatisticsService {
 
-	private static final Logger logger = LoggerFactory.getLogger(EhCacheStatisticsService.class);
+	/** Nazwa warstwy heap w statystykach EhCache */
+	public static final String TIER_HEAP = "OnHeap";
+	/** Nazwa warstwy off-heap w statystykach EhCache */
+	public static final String TIER_OFFHEAP = "OffHeap";
+	/** Nazwa warstwy dyskowej w statystykach EhCache */
+	public static final String TIER_DISK = "Disk";
+
+	/** Operacje utrzymania regionów z nazwą regionu jako kluczem */
+	private final ConcurrentMap<String, MaintenanceCounters> maintenance = new ConcurrentHashMap<>();
 
 	public EhCacheStatisticsService() {
 		super();
@@ -27,45 +44,217 @@ public class EhCacheStatisticsService extends DefaultStatisticsService {
 	 */
 	public void clearStatistics(String cacheName) {
 		getCacheStatistics(cacheName).clear();
+		maintenance.remove(cacheName);
+	}
+
+	/**
+	 * Zapamiętanie operacji wykonanych na potrzeby utrzymania regionu (np.
+	 * {@link IncrementalClear}) - EhCache liczy je jako trafienia i chybienia
+	 * regionu, a usługa odejmuje je od statystyk regionu i jego warstwy
+	 * nadrzędnej.
+	 * 
+	 * @param cacheName
+	 *            nazwa regionu
+	 * @param iterated
+	 *            liczba elementów odczytanych iteratorem regionu
+	 * @param removed
+	 *            liczba elementów usuniętych warunkowo
+	 *            ({@link org.ehcache.Cache#remove(Object, Object)})
+	 * @param notRemoved
+	 *            liczba nieudanych warunkowych usunięć elementów, które są w
+	 *            regionie
+	 * @param missing
+	 *            liczba nieudanych warunkowych usunięć elementów, których nie ma
+	 *            w regionie
+	 */
+	public void recordMaintenance(String cacheName, long iterated, long removed, long notRemoved, long missing) {
+		MaintenanceCounters counters = maintenance.get(cacheName);
+		if (counters == null) {
+			MaintenanceCounters newCounters = new MaintenanceCounters();
+			counters = maintenance.putIfAbsent(cacheName, newCounters);
+			if (counters == null) {
+				counters = newCounters;
+			}
+		}
+		counters.cacheHits.add(2 * iterated + removed + notRemoved);
+		counters.cacheMisses.add(missing);
+		counters.tierHits.add(iterated + removed);
+	}
+
+	/**
+	 * @param cacheName
+	 * @return liczba trafień regionu (bez operacji utrzymania regionu)
+	 */
+	public long getCacheHits(String cacheName) {
+		return cacheHits(cacheName, getCacheStatistics(cacheName));
+	}
+
+	/**
+	 * @param cacheName
+	 * @return liczba chybień regionu (bez operacji utrzymania regionu)
+	 */
+	public long getCacheMisses(String cacheName) {
+		return cacheMisses(cacheName, getCacheStatistics(cacheName));
+	}
+
+	/**
+	 * @param cacheName
+	 * @return procent trafień regionu (bez operacji utrzymania regionu)
+	 */
+	public double getCacheHitPercentage(String cacheName) {
+		CacheStatistics statistics = getCacheStatistics(cacheName);
+		long hits = cacheHits(cacheName, statistics);
+		long gets = hits + cacheMisses(cacheName, statistics);
+		return (gets > 0L ? hits * 100.0 / gets : 0.0);
+	}
+
+	private long cacheHits(String cacheName, CacheStatistics statistics) {
+		MaintenanceCounters counters = maintenance.get(cacheName);
+		long hits = statistics.getCacheHits();
+		return (counters != null ? Math.max(0L, hits - counters.cacheHits.sum()) : hits);
+	}
+
+	private long cacheMisses(String cacheName, CacheStatistics statistics) {
+		MaintenanceCounters counters = maintenance.get(cacheName);
+		long misses = statistics.getCacheMisses();
+		return (counters != null ? Math.max(0L, misses - counters.cacheMisses.sum()) : misses);
+	}
+
+	/**
+	 * Trafienia warstwy z pominięciem operacji utrzymania regionu, które
+	 * trafiają do warstwy nadrzędnej (ostatniej).
+	 */
+	private long tierHits(String cacheName, Map<String, TierStatistics> tiers, String tierName) {
+		TierStatistics tier = tiers.get(tierName);
+		if (tier == null) {
+			return 0L;
+		}
+		String authoritative = (tiers.containsKey(TIER_DISK) ? TIER_DISK
+				: (tiers.containsKey(TIER_OFFHEAP) ? TIER_OFFHEAP : TIER_HEAP));
+		MaintenanceCounters counters = maintenance.get(cacheName);
+		if (counters == null || !authoritative.equals(tierName)) {
+			return tier.getHits();
+		}
+		return Math.max(0L, tier.getHits() - counters.tierHits.sum());
+	}
+
+	/**
+	 * Statystyki warstwy regionu.
+	 * 
+	 * @param cacheName
+	 *            nazwa regionu
+	 * @param tierName
+	 *            nazwa warstwy: {@link #TIER_HEAP}, {@link #TIER_OFFHEAP} albo
+	 *            {@link #TIER_DISK}
+	 * @return statystyki warstwy albo {@code null}, jeżeli region nie ma takiej
+	 *         warstwy
+	 */
+	public TierStatistics getTierStatistics(String cacheName, String tierName) {
+		return getCacheStatistics(cacheName).getTierStatistics().get(tierName);
 	}
 
 	/**
 	 * 
 	 * @param cacheName
-	 * @return
+	 * @return liczba trafień w warstwach pamięci (heap i off-heap)
 	 */
 	public long getInMemoryHits(String cacheName) {
-		if (logger.isDebugEnabled()) {
-			logger.warn("-->getInMemoryHits: implementation lack.");
+		CacheStatistics statistics = getCacheStatistics(cacheName);
+		Map<String, TierStatistics> tiers = statistics.getTierStatistics();
+		if (tiers.size() == 1 && tiers.containsKey(TIER_HEAP)) {
+			/* pojedyncza warstwa heap nie liczy trafień w statystykach warstwy */
+			return cacheHits(cacheName, statistics);
 		}
-		/* TODO implementation lack */
-		return -1L;
+		return tierHits(cacheName, tiers, TIER_HEAP) + tierHits(cacheName, tiers, TIER_OFFHEAP);
 	}
 
 	/**
 	 * 
 	 * @param cacheName
-	 * @return
+	 * @return liczba trafień w warstwie dyskowej, 0 jeżeli region nie ma warstwy
+	 *         dyskowej
 	 */
 	public long getOnDiskHits(String cacheName) {
-		if (logger.isDebugEnabled()) {
-			logger.warn("-->getOnDiskHits: implementation lack.");
-		}
-		/* TODO implementation lack */
-		return -1L;
+		return tierHits(cacheName, getCacheStatistics(cacheName).getTierStatistics(), TIER_DISK);
 	}
 
 	/**
+	 * Liczba elementów regionu, czyli liczba elementów w warstwie nadrzędnej
+	 * (ostatniej) - w EhCache 3 przechowuje ona wszystkie elementy regionu.
 	 * 
 	 * @param cacheName
-	 * @return
+	 * @return liczba elementów regionu
 	 */
 	public long getObjectCount(String cacheName) {
-		if (logger.isDebugEnabled()) {
-			logger.warn("-->getObjectCount: implementation lack.");
+		Map<String, TierStatistics> tiers = getCacheStatistics(cacheName).getTierStatistics();
+		for (String tierName : new String[] { TIER_DISK, TIER_OFFHEAP, TIER_HEAP }) {
+			TierStatistics tier = tiers.get(tierName);
+			if (tier != null) {
+				return tier.getMappings();
+			}
 		}
-		/* TODO implementation lack */
-		return -1L;
+		return 0L;
+	}
+
+	/**
+	 * Liczba elementów przechowywanych w pamięci (heap i off-heap). Warstwa heap
+	 * jest kopią części elementów warstwy niższej, z wyjątkiem konfiguracji
+	 * heap+off-heap+dysk, w której heap i off-heap tworzą wspólną warstwę
+	 * pośrednią i elementy nie powtarzają się.
+	 * 
+	 * @param cacheName
+	 * @return liczba elementów w pamięci
+	 */
+	public long getInMemoryObjectCount(String cacheName) {
+		Map<String, TierStatistics> tiers = getCacheStatistics(cacheName).getTierStatistics();
+		TierStatistics heap = tiers.get(TIER_HEAP);
+		TierStatistics offHeap = tiers.get(TIER_OFFHEAP);
+		if (offHeap == null) {
+			return mappings(heap);
+		}
+		if (tiers.containsKey(TIER_DISK)) {
+			return mappings(heap) + mappings(offHeap);
+		}
+		return mappings(offHeap);
+	}
+
+	/**
+	 * 
+	 * @param cacheName
+	 * @return liczba elementów w warstwie dyskowej, 0 jeżeli region nie ma
+	 *         warstwy dyskowej
+	 */
+	public long getOnDiskObjectCount(String cacheName) {
+		return mappings(getTierStatistics(cacheName, TIER_DISK));
+	}
+
+	/**
+	 * @param cacheName
+	 * @return rozmiar [B] zajęty w warstwie heap; -1 jeżeli warstwa jest
+	 *         ograniczona liczbą elementów (EhCache nie liczy wtedy rozmiaru)
+	 */
+	public long getHeapSizeInBytes(String cacheName) {
+		return occupiedBytes(getTierStatistics(cacheName, TIER_HEAP));
+	}
+
+	/**
+	 * @param cacheName
+	 * @return rozmiar [B] zajęty w warstwie off-heap, 0 jeżeli region nie ma
+	 *         takiej warstwy
+	 */
+	public long getOffHeapSizeInBytes(String cacheName) {
+		TierStatistics tier = getTierStatistics(cacheName, TIER_OFFHEAP);
+		return (tier != null ? tier.getOccupiedByteSize() : 0L);
+	}
+
+	/**
+	 * @param cacheName
+	 * @return rozmiar [B] zajęty w warstwie dyskowej, 0 jeżeli region nie ma
+	 *         takiej warstwy
+	 */
+	public long getDiskSizeInBytes(String cacheName) {
+		TierStatistics tier = getTierStatistics(cacheName, TIER_DISK);
+		return (tier != null ? tier.getOccupiedByteSize() : 0L);
 	}
 
 	/**
@@ -73,11 +262,33 @@ public class EhCacheStatisticsService extends DefaultStatisticsService {
 	 * @return the size
 	 */
 	public int getSize(String cacheName) {
-		if (logger.isDebugEnabled()) {
-			logger.warn("-->getSize: implementation lack.");
-		}
-		/* TODO implementation lack */
-		return -1;
+		long count = getObjectCount(cacheName);
+		return (count > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) count);
+	}
+
+	private static long mappings(TierStatistics tier) {
+		return (tier != null ? tier.getMappings() : 0L);
+	}
+
+	private static long occupiedBytes(TierStatistics tier) {
+		return (tier != null ? tier.getOccupiedByteSize() : -1L);
+	}
+
+	/**
+	 * Operacje utrzymania regionu liczone przez EhCache (3.6) w statystykach:
+	 * element zwrócony przez iterator regionu to dwa trafienia regionu
+	 * ({@code next()} i odczyt kolejnego elementu) i trafienie warstwy
+	 * nadrzędnej, warunkowe usunięcie elementu, który jest w regionie -
+	 * trafienie regionu (i warstwy nadrzędnej, gdy element został usunięty),
+	 * a elementu, którego nie ma - chybienie regionu.
+	 */
+	private static final class MaintenanceCounters {
+
+		private final LongAdder cacheHits = new LongAdder();
+
+		private final LongAdder cacheMisses = new LongAdder();
+
+		private final LongAdder tierHits = new LongAdder();
 	}
 
 }
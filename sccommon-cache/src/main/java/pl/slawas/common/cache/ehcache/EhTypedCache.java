@@ -0,0 +1,1026 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.statistics.TierStatistics;
+import org.ehcache.event.EventFiring;
+import org.ehcache.event.EventOrdering;
+import org.ehcache.event.EventType;
+import org.ehcache.expiry.ExpiryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.slawas.common.cache.CacheOperation;
+import pl.slawas.common.cache.CacheOperationStatistics;
+import pl.slawas.common.cache.HotKeyProfiler;
+import pl.slawas.common.cache.ICacheLoader;
+import pl.slawas.common.cache.IExpiringValue;
+import pl.slawas.common.cache.IObjectCacheStatistics;
+import pl.slawas.common.cache.ITypedObjectCache;
+import pl.slawas.common.cache.exceptions.CacheErrorException;
+import pl.slawas.common.cache.invalidation.InvalidationBus;
+
+/**
+ *
+ * EhTypedCache - region pamięci podręcznej przechowujący klucze i wartości w
+ * ich natywnych typach bezpośrednio w {@link Cache} EhCache'a.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.14 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public class EhTypedCache<K, V> implements Serializable, ITypedObjectCache<K, V> {
+
+	private static final long serialVersionUID = -3316395367470129014L;
+
+	private static final Logger logger = LoggerFactory.getLogger(EhTypedCache.class);
+
+	/** Liczba próbek, po której starsze próbki tracą połowę wagi */
+	private static final long MAX_SIZE_SAMPLES = 1024L;
+
+	private final transient CacheManager cacheManager;
+	private final transient Cache<K, V> localCache;
+	private final transient ExpiryPolicy<? super K, ? super V> expiryPolicy;
+	private final transient StatisticsService statisticsService;
+	/** Statystyki operacji, {@code null} gdy statystyki są wyłączone */
+	private final transient CacheOperationStatistics operationStatistics;
+	private final String associatedCacheName;
+	private final String associatedProviderName;
+	private final Class<K> keyType;
+	private final Class<V> valueType;
+	private volatile int sizeSampleRate = 0;
+	/** Trwające ładowania wartości - {@link #getOrLoad(Object, ICacheLoader)} */
+	private final transient ConcurrentMap<K, CompletableFuture<V>> inFlightLoads = new ConcurrentHashMap<>();
+	private transient volatile ICacheLoader<? super K, ? extends V> cacheLoader;
+	/** Czasy ładowania wartości, {@code null} gdy odświeżanie jest wyłączone */
+	private transient volatile Map<K, Long> loadTimes;
+	private volatile long refreshAheadNanos;
+	private transient volatile Executor refreshExecutor;
+	/** Szyna unieważnień, {@code null} gdy unieważnienia nie są rozgłaszane */
+	private transient volatile InvalidationBus invalidationBus;
+	/** Polityka przyjmowania i usuwania elementów, {@code null} - brak */
+	private transient volatile TinyLfuPolicy<K, V> admissionPolicy;
+	/** Kolejka opóźnionego zapisu, {@code null} - zmiany zapisywane od razu */
+	private transient volatile WriteBehindQueue<K, V> writeBehind;
+	/** Logiczne czyszczenie regionu, {@code null} - region czyszczony od razu */
+	private transient volatile IncrementalClear<K, V> incrementalClear;
+	/** Indeks znaczników elementów, {@code null} - żaden element nie ma znaczników */
+	private transient volatile TagIndex<K, V> tagIndex;
+	/** Profiler najczęstszych kluczy, {@code null} - profilowanie wyłączone */
+	private transient volatile HotKeyProfiler hotKeyProfiler;
+	private long sampledBytes = 0L;
+	private long sampledEntries = 0L;
+
+	public EhTypedCache(String associatedProviderName, String associatedCacheName, final CacheManager cacheManager,
+			final StatisticsService statisticsService, CacheConfiguration<K, V> cacheConfig, boolean isCreated) {
+		this.associatedProviderName = associatedProviderName;
+		this.associatedCacheName = associatedCacheName;
+		this.cacheManager = cacheManager;
+		this.statisticsService = statisticsService;
+		this.operationStatistics = (statisticsService != null ? new CacheOperationStatistics() : null);
+		this.keyType = cacheConfig.getKeyType();
+		this.valueType = cacheConfig.getValueType();
+		if (!isCreated) {
+			this.localCache = cacheManager.createCache(associatedCacheName, cacheConfig);
+		} else {
+			this.localCache = cacheManager.getCache(associatedCacheName, this.keyType, this.valueType);
+		}
+		this.expiryPolicy = cacheConfig.getExpiryPolicy();
+	}
+
+	@Override
+	public V get(K key) throws CacheErrorException {
+		if (key == null) {
+			return null;
+		}
+		final long start = startTime();
+		try {
+			V value = readVisible(key);
+			record(CacheOperation.GET, start);
+			profile(key, value != null);
+			TinyLfuPolicy<K, V> policy = this.admissionPolicy;
+			if (policy != null) {
+				policy.recordAccess(key);
+			}
+			return value;
+		} catch (Exception e) {
+			throw new CacheErrorException(
+					String.format("-->get: Error for key type: %s and value: %s", key.getClass(), key), e);
+		}
+	}
+
+	@Override
+	public V read(K key) throws CacheErrorException {
+		return get(key);
+	}
+
+	@Override
+	public void update(K key, V value) throws CacheErrorException {
+		put(key, value);
+	}
+
+	@Override
+	public void put(K key, V value) throws CacheErrorException {
+		put(key, value, (String[]) null);
+	}
+
+	@Override
+	public void put(K key, V value, String... tags) throws CacheErrorException {
+		TagIndex<K, V> index = (tags != null && tags.length != 0 ? getTagIndex() : this.tagIndex);
+		WriteBehindQueue<K, V> queue = this.writeBehind;
+		if (queue != null) {
+			final long start = startTime();
+			queue.put(key, value);
+			record(CacheOperation.PUT, start);
+			if (index != null) {
+				index.tag(key, tags);
+			}
+		} else if (putLocal(key, value) && index != null) {
+			/* zapis bez znaczników usuwa znaczniki poprzedniej wartości */
+			index.tag(key, tags);
+		}
+		InvalidationBus bus = this.invalidationBus;
+		if (bus != null) {
+			bus.invalidate(associatedCacheName, key);
+		}
+	}
+
+	/**
+	 * Zapis bez rozgłaszania unieważnienia - wartość załadowana ze źródła nie
+	 * zmienia danych widzianych przez inne węzły. Nowy element odrzucony przez
+	 * politykę przyjmowania nie jest zapisywany, zmiana istniejącego elementu
+	 * jest zawsze zapisywana.
+	 *
+	 * @return czy element został zapisany
+	 */
+	private boolean putLocal(K key, V value) throws CacheErrorException {
+		final long start = startTime();
+		try {
+			TinyLfuPolicy<K, V> policy = this.admissionPolicy;
+			if (policy != null) {
+				policy.recordAccess(key);
+				if (!policy.admit(key) && !containsLocal(key)) {
+					record(CacheOperation.PUT, start);
+					return false;
+				}
+			}
+			/* klucz zapamiętany przed zapisem - inaczej usuwanie w tle mogłoby go usunąć */
+			written(key);
+			this.localCache.put(key, value);
+			record(CacheOperation.PUT, start);
+			sampleSize(key, value);
+			if (policy != null) {
+				policy.evictOverweight(this.localCache);
+			}
+			return true;
+		} catch (Exception e) {
+			throw new CacheErrorException(
+					String.format("-->put: Error for key type: %s and value: %s", typeOf(key), key), e);
+		}
+	}
+
+	@Override
+	public V getOrLoad(K key, ICacheLoader<? super K, ? extends V> loader) throws CacheErrorException {
+		if (key == null) {
+			return null;
+		}
+		V value = get(key);
+		if (value != null) {
+			refreshAheadIfNeeded(key, loader);
+			return value;
+		}
+		CompletableFuture<V> load = new CompletableFuture<>();
+		CompletableFuture<V> inFlightLoad = this.inFlightLoads.putIfAbsent(key, load);
+		if (inFlightLoad != null) {
+			/* ten klucz jest już ładowany przez inny wątek */
+			return await(key, inFlightLoad);
+		}
+		try {
+			/* wartość mogła zostać załadowana zanim zarejestrowaliśmy ładowanie */
+			value = readVisible(key);
+			if (value == null) {
+				value = loadAndPut(key, loader);
+			}
+			load.complete(value);
+			return value;
+		} catch (Exception e) {
+			load.completeExceptionally(e);
+			throw new CacheErrorException(
+					String.format("-->getOrLoad: Error for key type: %s and value: %s", key.getClass(), key), e);
+		} finally {
+			this.inFlightLoads.remove(key, load);
+		}
+	}
+
+	@Override
+	public V getOrLoad(K key) throws CacheErrorException {
+		ICacheLoader<? super K, ? extends V> loader = this.cacheLoader;
+		if (loader == null) {
+			return get(key);
+		}
+		return getOrLoad(key, loader);
+	}
+
+	@Override
+	public void setCacheLoader(ICacheLoader<? super K, ? extends V> loader) {
+		this.cacheLoader = loader;
+	}
+
+	/**
+	 * Odczyt elementu widocznego dla klienta - najpierw zaległej zmiany kolejki
+	 * opóźnionego zapisu, potem regionu EhCache z pominięciem elementów
+	 * logicznie usuniętych przez wyczyszczenie regionu ({@link IncrementalClear}).
+	 * Odczyt nie jest rejestrowany w statystykach.
+	 */
+	@SuppressWarnings("unchecked")
+	private V readVisible(K key) {
+		WriteBehindQueue<K, V> queue = this.writeBehind;
+		if (queue != null) {
+			Object change = queue.getPending(key);
+			if (change != null) {
+				return (WriteBehindQueue.isRemoved(change) ? null : (V) change);
+			}
+		}
+		V value = this.localCache.get(key);
+		return (value != null && isVisible(key) ? value : null);
+	}
+
+	private V loadAndPut(K key, ICacheLoader<? super K, ? extends V> loader) throws Exception, CacheErrorException {
+		V value = loader.load(key);
+		if (value != null) {
+			putLocal(key, value);
+			Map<K, Long> times = this.loadTimes;
+			if (times != null) {
+				times.put(key, System.nanoTime());
+			}
+		}
+		return value;
+	}
+
+	private V await(K key, CompletableFuture<V> load) throws CacheErrorException {
+		try {
+			return load.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CacheErrorException(String.format("-->getOrLoad: Interrupted while loading key %s", key), e);
+		} catch (ExecutionException e) {
+			throw new CacheErrorException(
+					String.format("-->getOrLoad: Error for key type: %s and value: %s", key.getClass(), key),
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Odświeżenie z wyprzedzeniem - jeżeli wartość została załadowana dawniej niż
+	 * {@link #refreshAheadNanos} temu, to ładujemy ją ponownie w tle. Odświeżanie
+	 * również rejestrowane jest jako ładowanie klucza, więc dla jednego klucza
+	 * wykonywane jest co najwyżej jedno.
+	 */
+	private void refreshAheadIfNeeded(final K key, final ICacheLoader<? super K, ? extends V> loader) {
+		final Map<K, Long> times = this.loadTimes;
+		if (times == null) {
+			return;
+		}
+		Long loadTime = times.get(key);
+		if (loadTime == null || System.nanoTime() - loadTime.longValue() < this.refreshAheadNanos) {
+			return;
+		}
+		final CompletableFuture<V> refresh = new CompletableFuture<>();
+		if (this.inFlightLoads.putIfAbsent(key, refresh) != null) {
+			return;
+		}
+		try {
+			this.refreshExecutor.execute(() -> {
+				try {
+					refresh.complete(loadAndPut(key, loader));
+				} catch (Exception | CacheErrorException e) {
+					logger.warn("-->refreshAhead: Refresh of key '{}' in region '{}' failed: {}",
+							new Object[] { key, associatedCacheName, e.getMessage() });
+					refresh.completeExceptionally(e);
+				} finally {
+					this.inFlightLoads.remove(key, refresh);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.inFlightLoads.remove(key, refresh);
+			refresh.complete(null);
+		}
+	}
+
+	/**
+	 * Włączenie odświeżania z wyprzedzeniem wartości ładowanych przez
+	 * {@link #getOrLoad(Object, ICacheLoader)}.
+	 *
+	 * @param factor
+	 *            część czasu życia (TTL) elementu z zakresu (0, 1), po której
+	 *            wartość jest odświeżana w tle
+	 * @param executor
+	 *            wykonawca odświeżania
+	 */
+	void setRefreshAhead(double factor, Executor executor) {
+		if (factor <= 0.0 || factor >= 1.0) {
+			throw new IllegalArgumentException(
+					String.format("-->setRefreshAhead: Factor %s for region '%s' is out of range (0, 1)", factor,
+							associatedCacheName));
+		}
+		long ttl = getTimeToLiveSeconds();
+		if (ttl <= 0L) {
+			logger.warn("-->setRefreshAhead: Region '{}' has no time to live, refresh ahead is disabled.",
+					associatedCacheName);
+			return;
+		}
+		this.refreshExecutor = executor;
+		this.refreshAheadNanos = (long) (TimeUnit.SECONDS.toNanos(ttl) * factor);
+		if (this.loadTimes == null) {
+			final Map<K, Long> times = new ConcurrentHashMap<>();
+			/*
+			 * czasy ładowania usuwamy razem z elementami regionu - synchronicznie,
+			 * aby spóźnione zdarzenie starego elementu nie usunęło czasu
+			 * ponownego załadowania
+			 */
+			this.localCache.getRuntimeConfiguration().registerCacheEventListener(
+					event -> times.remove(event.getKey()), EventOrdering.UNORDERED, EventFiring.SYNCHRONOUS,
+					EnumSet.of(EventType.EVICTED, EventType.EXPIRED, EventType.REMOVED));
+			this.loadTimes = times;
+		}
+	}
+
+	@Override
+	public Map<K, V> getAll(Set<? extends K> keys) throws CacheErrorException {
+		if (keys == null || keys.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		final long start = startTime();
+		try {
+			WriteBehindQueue<K, V> queue = this.writeBehind;
+			Map<K, V> values;
+			if (queue == null) {
+				values = visible(this.localCache.getAll(keys));
+			} else {
+				values = getAllWithPending(queue, keys);
+			}
+			record(CacheOperation.GET, start);
+			HotKeyProfiler profiler = this.hotKeyProfiler;
+			if (profiler != null) {
+				for (Map.Entry<K, V> entry : values.entrySet()) {
+					profiler.record(entry.getKey(), entry.getValue() != null);
+				}
+			}
+			return values;
+		} catch (Exception e) {
+			throw new CacheErrorException(String.format("-->getAll: Error for %d keys", keys.size()), e);
+		}
+	}
+
+	/**
+	 * Odczyt wielu elementów z uwzględnieniem zaległych zmian - z regionu
+	 * odczytywane są tylko klucze bez zaległej zmiany.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<K, V> getAllWithPending(WriteBehindQueue<K, V> queue, Set<? extends K> keys) {
+		Map<K, V> values = new HashMap<>(keys.size() * 4 / 3 + 1);
+		Set<K> regionKeys = new HashSet<>(keys.size() * 4 / 3 + 1);
+		for (K key : keys) {
+			Object change = queue.getPending(key);
+			if (change == null) {
+				regionKeys.add(key);
+			} else {
+				values.put(key, (WriteBehindQueue.isRemoved(change) ? null : (V) change));
+			}
+		}
+		if (!regionKeys.isEmpty()) {
+			values.putAll(visible(this.localCache.getAll(regionKeys)));
+		}
+		return values;
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> entries) throws CacheErrorException {
+		if (entries == null || entries.isEmpty()) {
+			return;
+		}
+		final long start = startTime();
+		WriteBehindQueue<K, V> queue = this.writeBehind;
+		if (queue != null) {
+			for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+				queue.put(entry.getKey(), entry.getValue());
+			}
+			untagAll(entries.keySet());
+			record(CacheOperation.PUT, start);
+			InvalidationBus bus = this.invalidationBus;
+			if (bus != null) {
+				bus.invalidateAll(associatedCacheName, entries.keySet());
+			}
+			return;
+		}
+		try {
+			IncrementalClear<K, V> clearing = this.incrementalClear;
+			if (clearing != null) {
+				clearing.writtenAll(entries.keySet());
+			}
+			this.localCache.putAll(entries);
+			untagAll(entries.keySet());
+			record(CacheOperation.PUT, start);
+			TinyLfuPolicy<K, V> policy = this.admissionPolicy;
+			if (policy != null) {
+				/* zapis wielu elementów (np. ładowanie migawki) omija filtr przyjmowania */
+				for (K key : entries.keySet()) {
+					policy.recordAccess(key);
+				}
+				policy.evictOverweight(this.localCache);
+			}
+			InvalidationBus bus = this.invalidationBus;
+			if (bus != null) {
+				bus.invalidateAll(associatedCacheName, entries.keySet());
+			}
+			if (this.sizeSampleRate > 0) {
+				for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+					sampleSize(entry.getKey(), entry.getValue());
+				}
+			}
+		} catch (Exception e) {
+			throw new CacheErrorException(String.format("-->putAll: Error for %d entries", entries.size()), e);
+		}
+	}
+
+	@Override
+	public void removeAll(Set<? extends K> keys) throws CacheErrorException {
+		if (keys == null || keys.isEmpty()) {
+			return;
+		}
+		final long start = startTime();
+		try {
+			WriteBehindQueue<K, V> queue = this.writeBehind;
+			if (queue != null) {
+				for (K key : keys) {
+					queue.remove(key);
+				}
+			} else {
+				this.localCache.removeAll(keys);
+			}
+			untagAll(keys);
+			record(CacheOperation.REMOVE, start);
+			InvalidationBus bus = this.invalidationBus;
+			if (bus != null) {
+				bus.invalidateAll(associatedCacheName, keys);
+			}
+		} catch (Exception e) {
+			throw new CacheErrorException(String.format("-->removeAll: Error for %d keys", keys.size()), e);
+		}
+	}
+
+	@Override
+	public void remove(K key) throws CacheErrorException {
+		final long start = startTime();
+		try {
+			WriteBehindQueue<K, V> queue = this.writeBehind;
+			if (queue != null) {
+				queue.remove(key);
+			} else {
+				this.localCache.remove(key);
+			}
+			untag(key);
+			record(CacheOperation.REMOVE, start);
+			InvalidationBus bus = this.invalidationBus;
+			if (bus != null) {
+				bus.invalidate(associatedCacheName, key);
+			}
+		} catch (Exception e) {
+			throw new CacheErrorException(
+					String.format("-->remove: Error for key type: %s and value: %s", typeOf(key), key), e);
+		}
+	}
+
+	@Override
+	public void clear() throws CacheErrorException {
+		try {
+			clearLocal();
+		} catch (Exception e) {
+			throw new CacheErrorException(e);
+		}
+		InvalidationBus bus = this.invalidationBus;
+		if (bus != null) {
+			bus.invalidateRegion(associatedCacheName);
+		}
+	}
+
+	@Override
+	public int invalidateTag(String tag) throws CacheErrorException {
+		TagIndex<K, V> index = this.tagIndex;
+		if (tag == null || index == null) {
+			return 0;
+		}
+		Set<K> keys = index.keysOf(tag);
+		if (!keys.isEmpty()) {
+			/* usunięcie rozgłaszane jest jako unieważnienie kluczy */
+			removeAll(keys);
+		}
+		return keys.size();
+	}
+
+	/**
+	 * Wyczyszczenie regionu bez rozgłaszania - unieważnienie otrzymane z innego
+	 * węzła.
+	 */
+	void clearLocal() {
+		WriteBehindQueue<K, V> queue = this.writeBehind;
+		if (queue != null) {
+			queue.clear();
+		}
+		IncrementalClear<K, V> clearing = this.incrementalClear;
+		if (clearing != null) {
+			/* suma wag polityki maleje wraz z usuwaniem starych elementów */
+			clearing.clear();
+		} else {
+			this.localCache.clear();
+			TinyLfuPolicy<K, V> policy = this.admissionPolicy;
+			if (policy != null) {
+				policy.clear();
+			}
+		}
+		Map<K, Long> times = this.loadTimes;
+		if (times != null) {
+			times.clear();
+		}
+		TagIndex<K, V> index = this.tagIndex;
+		if (index != null) {
+			index.clear();
+		}
+	}
+
+	/**
+	 * Usunięcie kluczy bez rozgłaszania - unieważnienie otrzymane z innego
+	 * węzła. Klucze innego typu niż klucz regionu są pomijane.
+	 */
+	void invalidateLocal(Collection<Object> keys) {
+		Set<K> regionKeys = new HashSet<>(keys.size() * 4 / 3 + 1);
+		for (Object key : keys) {
+			if (this.keyType.isInstance(key)) {
+				regionKeys.add(this.keyType.cast(key));
+			}
+		}
+		if (!regionKeys.isEmpty()) {
+			this.localCache.removeAll(regionKeys);
+			untagAll(regionKeys);
+		}
+	}
+
+	/**
+	 * @param invalidationBus
+	 *            szyna, do której zgłaszane są zmiany regionu, {@code null} -
+	 *            bez rozgłaszania
+	 */
+	void setInvalidationBus(InvalidationBus invalidationBus) {
+		this.invalidationBus = invalidationBus;
+	}
+
+	/**
+	 * Włączenie opóźnionego zapisu (write-behind) - zapisy i usunięcia
+	 * elementów trafiają do kolejki, z której zapisuje je wątek w tle.
+	 *
+	 * @param queue
+	 *            kolejka opóźnionego zapisu regionu
+	 */
+	void setWriteBehind(WriteBehindQueue<K, V> queue) {
+		this.writeBehind = queue;
+	}
+
+	/**
+	 * Zapisanie zaległych zmian i wyłączenie opóźnionego zapisu, np. przed
+	 * zamknięciem managera.
+	 */
+	void closeWriteBehind() {
+		WriteBehindQueue<K, V> queue = this.writeBehind;
+		if (queue != null) {
+			queue.close();
+			this.writeBehind = null;
+		}
+	}
+
+	/**
+	 * Zapis partii zmian z kolejki opóźnionego zapisu do regionu EhCache.
+	 * Filtr przyjmowania nie jest stosowany - zapis jest jawną zmianą danych,
+	 * ale limit wagi regionu obowiązuje.
+	 */
+	void flushLocal(Map<K, V> puts, Set<K> removes) {
+		if (!puts.isEmpty()) {
+			IncrementalClear<K, V> clearing = this.incrementalClear;
+			if (clearing != null) {
+				clearing.writtenAll(puts.keySet());
+			}
+			this.localCache.putAll(puts);
+			TinyLfuPolicy<K, V> policy = this.admissionPolicy;
+			if (policy != null) {
+				for (K key : puts.keySet()) {
+					policy.recordAccess(key);
+				}
+				policy.evictOverweight(this.localCache);
+			}
+			if (this.sizeSampleRate > 0) {
+				for (Map.Entry<K, V> entry : puts.entrySet()) {
+					sampleSize(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		if (!removes.isEmpty()) {
+			this.localCache.removeAll(removes);
+		}
+	}
+
+	/**
+	 * @return liczba zmian czekających na zapis, 0 jeżeli region zapisuje
+	 *         zmiany od razu
+	 */
+	long getWriteBehindQueueSize() {
+		WriteBehindQueue<K, V> queue = this.writeBehind;
+		return (queue != null ? queue.size() : 0L);
+	}
+
+	/**
+	 * Indeks znaczników tworzony przy pierwszym zapisie ze znacznikami. Indeks
+	 * otrzymuje synchronicznie zdarzenia usunięcia elementów przez EhCache.
+	 */
+	private TagIndex<K, V> getTagIndex() {
+		TagIndex<K, V> index = this.tagIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = this.tagIndex;
+				if (index == null) {
+					index = new TagIndex<>();
+					this.localCache.getRuntimeConfiguration().registerCacheEventListener(index,
+							EventOrdering.UNORDERED, EventFiring.SYNCHRONOUS,
+							EnumSet.of(EventType.EVICTED, EventType.EXPIRED));
+					this.tagIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	private void untag(K key) {
+		TagIndex<K, V> index = this.tagIndex;
+		if (index != null) {
+			index.untag(key);
+		}
+	}
+
+	private void untagAll(Collection<? extends K> keys) {
+		TagIndex<K, V> index = this.tagIndex;
+		if (index != null) {
+			for (K key : keys) {
+				index.untag(key);
+			}
+		}
+	}
+
+	/**
+	 * Włączenie logicznego czyszczenia regionu - wyczyszczenie regionu ukrywa
+	 * od razu wszystkie elementy, a usuwa je w tle, partiami.
+	 *
+	 * @param executor
+	 *            wykonawca zadań usuwania starych elementów
+	 * @param batchSize
+	 *            maksymalna liczba elementów przetwarzanych jednym zadaniem
+	 */
+	void setIncrementalClear(Executor executor, int batchSize) {
+		this.incrementalClear = new IncrementalClear<>(this.localCache, executor, batchSize,
+				getTierStatisticsService(), this.associatedCacheName);
+	}
+
+	/**
+	 * Ustawienie polityki przyjmowania i usuwania elementów. Polityka
+	 * otrzymuje synchronicznie zdarzenia regionu, aby śledzić sumę wag
+	 * elementów i częstość elementów usuwanych przez EhCache.
+	 *
+	 * @param policy
+	 *            polityka regionu
+	 */
+	void setAdmissionPolicy(TinyLfuPolicy<K, V> policy) {
+		this.localCache.getRuntimeConfiguration().registerCacheEventListener(policy, EventOrdering.UNORDERED,
+				EventFiring.SYNCHRONOUS, EnumSet.of(EventType.CREATED, EventType.UPDATED, EventType.REMOVED,
+						EventType.EVICTED, EventType.EXPIRED));
+		this.admissionPolicy = policy;
+	}
+
+	@Override
+	public void destroy() throws CacheErrorException {
+		try {
+			/* zaległe zmiany trafiają jeszcze do writera, region i tak jest usuwany */
+			closeWriteBehind();
+			this.cacheManager.removeCache(associatedCacheName);
+		} catch (IllegalStateException e) {
+			/*
+			 * When Spring and Hibernate are both involved this will happen in normal
+			 * shutdown operation. Do not throw an exception, simply log this one.
+			 */
+			logger.debug("This can happen if multiple frameworks both try to shutdown ehcache", e);
+		} catch (Exception e) {
+			throw new CacheErrorException(e);
+		}
+	}
+
+	@Override
+	public String getRegionName() {
+		return associatedCacheName;
+	}
+
+	/**
+	 * Rozmiar [B] zajęty przez region w pamięci (heap i off-heap). Jeżeli warstwa
+	 * heap ograniczona jest liczbą elementów, to jej rozmiar jest szacowany na
+	 * podstawie próbki elementów, zobacz {@link #getHeapSizeInBytes()}.
+	 */
+	@Override
+	public long getSizeInMemory() {
+		EhCacheStatisticsService tierStatistics = getTierStatisticsService();
+		if (tierStatistics == null) {
+			return -1L;
+		}
+		long heap = getHeapSizeInBytes();
+		long offHeap = tierStatistics.getOffHeapSizeInBytes(associatedCacheName);
+		if (heap < 0L) {
+			return (offHeap > 0L ? offHeap : -1L);
+		}
+		return heap + offHeap;
+	}
+
+	@Override
+	public long getElementCountInMemory() throws CacheErrorException {
+		EhCacheStatisticsService tierStatistics = getTierStatisticsService();
+		if (tierStatistics == null) {
+			return -1L;
+		}
+		return tierStatistics.getInMemoryObjectCount(associatedCacheName);
+	}
+
+	@Override
+	public long getElementCountOnDisk() {
+		EhCacheStatisticsService tierStatistics = getTierStatisticsService();
+		if (tierStatistics == null) {
+			return -1L;
+		}
+		return tierStatistics.getOnDiskObjectCount(associatedCacheName);
+	}
+
+	/**
+	 * Rozmiar [B] warstwy heap. Jeżeli warstwa ograniczona jest rozmiarem, to
+	 * zwracany jest rozmiar wyliczony przez EhCache. W przeciwnym wypadku, o ile
+	 * włączono próbkowanie ({@link EhCacheConfig#PROP_CACHE_SIZE_SAMPLE_RATE}),
+	 * rozmiar szacowany jest jako średni rozmiar próbkowanych elementów
+	 * pomnożony przez liczbę elementów w warstwie heap.
+	 *
+	 * @return rozmiar [B] warstwy heap albo -1, jeżeli nie można go ustalić
+	 */
+	public long getHeapSizeInBytes() {
+		EhCacheStatisticsService tierStatistics = getTierStatisticsService();
+		if (tierStatistics == null) {
+			return -1L;
+		}
+		long bytes = tierStatistics.getHeapSizeInBytes(associatedCacheName);
+		if (bytes >= 0L) {
+			return bytes;
+		}
+		TierStatistics heap = tierStatistics.getTierStatistics(associatedCacheName,
+				EhCacheStatisticsService.TIER_HEAP);
+		if (heap == null) {
+			return -1L;
+		}
+		synchronized (this) {
+			if (this.sampledEntries == 0L) {
+				return -1L;
+			}
+			return this.sampledBytes * heap.getMappings() / this.sampledEntries;
+		}
+	}
+
+	/**
+	 * Próbkowanie rozmiaru zapisywanego elementu. Mierzony jest średnio co
+	 * {@link #sizeSampleRate}-ty element, a losowanie nie wymaga współdzielonego
+	 * licznika, więc przy wyłączonym próbkowaniu koszt jest pomijalny.
+	 */
+	private void sampleSize(K key, V value) {
+		final int rate = this.sizeSampleRate;
+		if (rate <= 0 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0)) {
+			return;
+		}
+		long bytes = ObjectSizeEstimator.deepSizeOf(key) + ObjectSizeEstimator.deepSizeOf(value);
+		synchronized (this) {
+			if (this.sampledEntries >= MAX_SIZE_SAMPLES) {
+				/* starsze próbki tracą na znaczeniu */
+				this.sampledBytes /= 2;
+				this.sampledEntries /= 2;
+			}
+			this.sampledBytes += bytes;
+			this.sampledEntries++;
+		}
+	}
+
+	/**
+	 * @param sizeSampleRate
+	 *            co który (średnio) zapisywany element jest mierzony na potrzeby
+	 *            szacowania rozmiaru warstwy heap, 0 wyłącza szacowanie
+	 */
+	void setSizeSampleRate(int sizeSampleRate) {
+		this.sizeSampleRate = sizeSampleRate;
+	}
+
+	private EhCacheStatisticsService getTierStatisticsService() {
+		if (this.statisticsService instanceof EhCacheStatisticsService) {
+			return (EhCacheStatisticsService) this.statisticsService;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("-->getTierStatisticsService: statistics of region '{}' are disabled.",
+					associatedCacheName);
+		}
+		return null;
+	}
+
+	@Override
+	public IObjectCacheStatistics getStatistics() {
+		return new EhCacheStatistics(this.associatedProviderName, this);
+	}
+
+	@Override
+	public long getTimeToLiveSeconds() {
+		if (this.expiryPolicy instanceof CustomExpiry) {
+			Duration timeToLive = ((CustomExpiry<?, ?>) this.expiryPolicy).getTimeToLiveExpiration();
+			if (timeToLive != null) {
+				return timeToLive.getSeconds();
+			}
+		}
+		return -1L;
+	}
+
+	/**
+	 * Atomowa zmiana czasu życia regionu. Dotyczy elementów zapisanych po
+	 * zmianie; elementy z własnym czasem życia ({@link IExpiringValue}) nie są
+	 * nią objęte.
+	 */
+	@Override
+	public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+		if (this.expiryPolicy instanceof CustomExpiry) {
+			long version = ((CustomExpiry<?, ?>) this.expiryPolicy)
+					.setTimeToLiveExpiration(Duration.ofSeconds(timeToLiveSeconds));
+			logger.trace("-->setTimeToLiveSeconds: Region '{}' time to live {}s (version {})",
+					new Object[] { associatedCacheName, timeToLiveSeconds, version });
+		} else {
+			logger.warn("-->setTimeToLiveSeconds: Region '{}' has expiry policy {}, time to live is not changed.",
+					associatedCacheName, this.expiryPolicy);
+		}
+	}
+
+	/**
+	 * @return wersja ustawień czasu życia regionu, -1 gdy region nie używa
+	 *         {@link CustomExpiry}
+	 */
+	public long getExpiryVersion() {
+		if (this.expiryPolicy instanceof CustomExpiry) {
+			return ((CustomExpiry<?, ?>) this.expiryPolicy).getVersion();
+		}
+		return -1L;
+	}
+
+	@Override
+	public boolean contains(K key) {
+		WriteBehindQueue<K, V> queue = this.writeBehind;
+		if (queue != null) {
+			Object change = queue.getPending(key);
+			if (change != null) {
+				return !WriteBehindQueue.isRemoved(change);
+			}
+		}
+		return containsLocal(key);
+	}
+
+	private boolean containsLocal(K key) {
+		return this.localCache.containsKey(key) && isVisible(key);
+	}
+
+	/**
+	 * Czy element regionu EhCache jest widoczny - nie został logicznie usunięty
+	 * przez wyczyszczenie regionu ({@link IncrementalClear}).
+	 */
+	boolean isVisible(K key) {
+		IncrementalClear<K, V> clearing = this.incrementalClear;
+		return (clearing == null || clearing.isVisible(key));
+	}
+
+	private void written(K key) {
+		IncrementalClear<K, V> clearing = this.incrementalClear;
+		if (clearing != null) {
+			clearing.written(key);
+		}
+	}
+
+	private Map<K, V> visible(Map<K, V> values) {
+		IncrementalClear<K, V> clearing = this.incrementalClear;
+		if (clearing == null || !clearing.isInProgress()) {
+			return values;
+		}
+		Map<K, V> result = new HashMap<>(values.size() * 4 / 3 + 1);
+		for (Map.Entry<K, V> entry : values.entrySet()) {
+			/* brak elementu zwracany jest jak w Cache#getAll - kluczem z wartością null */
+			result.put(entry.getKey(),
+					(entry.getValue() != null && clearing.isVisible(entry.getKey()) ? entry.getValue() : null));
+		}
+		return result;
+	}
+
+	@Override
+	public Class<K> getKeyType() {
+		return keyType;
+	}
+
+	@Override
+	public Class<V> getValueType() {
+		return valueType;
+	}
+
+	/**
+	 * @return the {@link #localCache}
+	 */
+	public Cache<K, V> getEhCache() {
+		return localCache;
+	}
+
+	/**
+	 * @return the {@link #operationStatistics}, {@code null} gdy statystyki są
+	 *         wyłączone
+	 */
+	public CacheOperationStatistics getOperationStatistics() {
+		return operationStatistics;
+	}
+
+	/**
+	 * @return the {@link #statisticsService}
+	 */
+	public StatisticsService getStatisticsService() {
+		return statisticsService;
+	}
+
+	public String toString() {
+		return "EhTypedCache(" + getRegionName() + ')';
+	}
+
+	private void profile(K key, boolean hit) {
+		HotKeyProfiler profiler = this.hotKeyProfiler;
+		if (profiler != null) {
+			profiler.record(key, hit);
+		}
+	}
+
+	/**
+	 * @param profiler
+	 *            profiler najczęstszych kluczy regionu, {@code null} wyłącza
+	 *            profilowanie
+	 */
+	void setHotKeyProfiler(HotKeyProfiler profiler) {
+		this.hotKeyProfiler = profiler;
+	}
+
+	/**
+	 * @return profiler najczęstszych kluczy, {@code null} gdy profilowanie jest
+	 *         wyłączone
+	 */
+	HotKeyProfiler getHotKeyProfiler() {
+		return hotKeyProfiler;
+	}
+
+	private long startTime() {
+		return (this.operationStatistics != null ? System.nanoTime() : 0L);
+	}
+
+	void record(CacheOperation operation, long start) {
+		if (this.operationStatistics != null) {
+			this.operationStatistics.record(operation, start);
+		}
+	}
+
+	private static Class<?> typeOf(Object key) {
+		return (key != null ? key.getClass() : null);
+	}
+
+}
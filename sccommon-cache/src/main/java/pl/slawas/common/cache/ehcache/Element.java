@@ -2,15 +2,18 @@ package pl.slawas.common.cache.ehcache;
 
 import java.io.Serializable;
 
+import pl.slawas.common.cache.IExpiringValue;
+
 /**
  * 
- * Element
+ * Element - opakowanie wartości regionu {@link EhCache}, opcjonalnie z
+ * własnym czasem życia.
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.2 $
  *
  */
-public class Element implements Serializable {
+public class Element implements Serializable, IExpiringValue {
 
 	/**
 	 * 
@@ -19,9 +22,17 @@ public class Element implements Serializable {
 
 	private final Serializable value;
 
+	/** czas życia elementu [s], 0 - czas życia regionu */
+	private final long timeToLiveSeconds;
+
 	public Element(Serializable value) {
+		this(value, 0L);
+	}
+
+	public Element(Serializable value, long timeToLiveSeconds) {
 		super();
 		this.value = value;
+		this.timeToLiveSeconds = timeToLiveSeconds;
 	}
 
 	/**
@@ -31,4 +42,9 @@ public class Element implements Serializable {
 		return value;
 	}
 
+	@Override
+	public long getTimeToLiveSeconds() {
+		return timeToLiveSeconds;
+	}
+
 }
@@ -0,0 +1,46 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+import pl.slawas.common.cache.serialization.CompactCodec;
+import pl.slawas.common.cache.serialization.IValueCodec;
+
+/**
+ *
+ * ElementCodec - zapis {@link Element} w formacie {@link CompactCodec}: czas
+ * życia elementu i opakowana wartość.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class ElementCodec implements IValueCodec<Element> {
+
+	public static final int ID = 1;
+
+	@Override
+	public int getId() {
+		return ID;
+	}
+
+	@Override
+	public Class<Element> getType() {
+		return Element.class;
+	}
+
+	@Override
+	public void write(Element value, DataOutputStream out, CompactCodec codec) throws IOException {
+		CompactCodec.writeVarLong(value.getTimeToLiveSeconds(), out);
+		codec.writeValue(value.getObjectValue(), out);
+	}
+
+	@Override
+	public Element read(DataInputStream in, CompactCodec codec) throws IOException, ClassNotFoundException {
+		long timeToLiveSeconds = CompactCodec.readVarLong(in);
+		return new Element((Serializable) codec.readValue(in), timeToLiveSeconds);
+	}
+
+}
@@ -0,0 +1,259 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.ehcache.Cache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * IncrementalClear - logiczne czyszczenie regionu bez blokowania odczytów.
+ * Wyczyszczenie zwiększa numer generacji regionu i od tej chwili widoczne są
+ * tylko elementy zapisane w nowej generacji. Elementy starszych generacji
+ * usuwane są w tle, partiami, przez zadania wykonawcy managera - region nie
+ * jest blokowany na czas {@link Cache#clear()} całego regionu.
+ * <p>
+ * Do zakończenia usuwania starych elementów region pamięta klucze zapisane po
+ * ostatnim wyczyszczeniu. Statystyki liczby elementów w pamięci obejmują do
+ * tego czasu również elementy niewidoczne. Odczyty i usunięcia wykonane przy
+ * usuwaniu starych elementów zgłaszane są jako operacje utrzymania regionu, aby
+ * nie zawyżały statystyk trafień (zobacz
+ * {@link EhCacheStatisticsService#recordMaintenance(String, long, long, long, long)}).
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.3 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public class IncrementalClear<K, V> {
+
+	private static final Logger logger = LoggerFactory.getLogger(IncrementalClear.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final Cache<K, V> cache;
+
+	private final Executor executor;
+
+	private final int batchSize;
+
+	/** Usługa statystyk regionu, {@code null} - statystyki wyłączone */
+	private final EhCacheStatisticsService statisticsService;
+
+	private final String cacheName;
+
+	/** Numer generacji - zwiększany przy każdym wyczyszczeniu regionu */
+	private long generation = 0L;
+
+	/**
+	 * Klucze zapisane w bieżącej generacji, {@code null} gdy usuwanie starych
+	 * elementów jest zakończone i wszystkie elementy regionu są widoczne
+	 */
+	private volatile Set<K> currentKeys;
+
+	/** Czy zadanie usuwania starych elementów jest w toku */
+	private boolean reclaiming = false;
+
+	/**
+	 * @param cache
+	 *            region EhCache
+	 * @param executor
+	 *            wykonawca zadań usuwania starych elementów
+	 * @param batchSize
+	 *            maksymalna liczba elementów usuwanych jednym zadaniem
+	 * @param statisticsService
+	 *            usługa statystyk regionu, {@code null} - statystyki wyłączone
+	 * @param cacheName
+	 *            nazwa regionu
+	 */
+	public IncrementalClear(Cache<K, V> cache, Executor executor, int batchSize,
+			EhCacheStatisticsService statisticsService, String cacheName) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be greater than 0: " + batchSize);
+		}
+		this.cache = cache;
+		this.executor = executor;
+		this.batchSize = batchSize;
+		this.statisticsService = statisticsService;
+		this.cacheName = cacheName;
+	}
+
+	/**
+	 * Logiczne wyczyszczenie regionu - elementy zapisane do tej chwili stają się
+	 * niewidoczne i są usuwane w tle.
+	 */
+	public void clear() {
+		synchronized (this) {
+			generation++;
+			currentKeys = ConcurrentHashMap.newKeySet();
+			if (reclaiming) {
+				/* trwające zadanie zauważy nową generację i przejdzie region ponownie */
+				return;
+			}
+			reclaiming = true;
+		}
+		submit(new Reclaim());
+	}
+
+	/**
+	 * Czy element jest widoczny - zapisany po ostatnim wyczyszczeniu regionu.
+	 * Wywoływane dla kluczy, które są w regionie EhCache.
+	 */
+	public boolean isVisible(K key) {
+		Set<K> keys = currentKeys;
+		return (keys == null || keys.contains(key));
+	}
+
+	/**
+	 * Zapamiętanie klucza zapisywanego w regionie - wywoływane przed zapisem
+	 * elementu.
+	 */
+	public void written(K key) {
+		Set<K> keys = currentKeys;
+		if (keys != null) {
+			keys.add(key);
+		}
+	}
+
+	/**
+	 * Zapamiętanie kluczy zapisywanych w regionie - wywoływane przed zapisem
+	 * elementów.
+	 */
+	public void writtenAll(Set<? extends K> written) {
+		Set<K> keys = currentKeys;
+		if (keys != null) {
+			keys.addAll(written);
+		}
+	}
+
+	/**
+	 * @return czy usuwanie starych elementów jest w toku
+	 */
+	public boolean isInProgress() {
+		return (currentKeys != null);
+	}
+
+	private void submit(Reclaim task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			/* manager jest zamykany - stare elementy i tak przestaną istnieć */
+			logger.debug("-->submit: Reclaim of old entries is rejected.", e);
+			synchronized (this) {
+				reclaiming = false;
+			}
+		}
+	}
+
+	/**
+	 * Zadanie przejścia jednej partii elementów regionu i usunięcia elementów
+	 * starszych generacji. Po partii zadanie przekazuje kontynuację do wykonawcy,
+	 * aby nie zajmować wątku na czas przejścia całego regionu.
+	 */
+	private class Reclaim implements Runnable {
+
+		private long passGeneration;
+
+		private Iterator<Cache.Entry<K, V>> entries;
+
+		private int removed = 0;
+
+		private int removedInPass = 0;
+
+		@Override
+		public void run() {
+			try {
+				if (entries == null) {
+					synchronized (IncrementalClear.this) {
+						passGeneration = generation;
+					}
+					entries = cache.iterator();
+					removedInPass = 0;
+				}
+				Set<K> keys = currentKeys;
+				List<Cache.Entry<K, V>> batch = new ArrayList<>(batchSize);
+				int read = 0;
+				for (; read < batchSize && entries.hasNext(); read++) {
+					Cache.Entry<K, V> entry = entries.next();
+					if (keys == null || !keys.contains(entry.getKey())) {
+						batch.add(entry);
+					}
+				}
+				int conditionallyRemoved = 0;
+				int notRemoved = 0;
+				int missing = 0;
+				for (Cache.Entry<K, V> entry : batch) {
+					K key = entry.getKey();
+					/*
+					 * usuwana jest tylko stara wartość - klucz zapisany w bieżącej
+					 * generacji po sprawdzeniu ma już inną wartość
+					 */
+					if (cache.remove(key, entry.getValue())) {
+						conditionallyRemoved++;
+						removedInPass++;
+						continue;
+					}
+					if (!cache.containsKey(key)) {
+						missing++;
+						continue;
+					}
+					notRemoved++;
+					if (keys != null && !keys.contains(key)) {
+						/*
+						 * kopie wartości z off-heap (bez equals) nie są sobie równe, a klucz
+						 * wciąż nie jest zapisany w bieżącej generacji - wartość jest stara;
+						 * tylko dla takich wartości zostaje okno między sprawdzeniem a
+						 * usunięciem
+						 */
+						cache.remove(key);
+						removedInPass++;
+					}
+				}
+				if (statisticsService != null) {
+					statisticsService.recordMaintenance(cacheName, read, conditionallyRemoved, notRemoved, missing);
+				}
+				if (entries.hasNext()) {
+					submit(this);
+					return;
+				}
+				synchronized (IncrementalClear.this) {
+					removed += removedInPass;
+					if (passGeneration != generation || removedInPass > 0) {
+						/*
+						 * region wyczyszczono ponownie w trakcie przejścia albo iterator
+						 * (słabo spójny) mógł pominąć elementy przesunięte przez usuwanie -
+						 * kończy dopiero przejście bez starych elementów
+						 */
+						entries = null;
+					} else {
+						currentKeys = null;
+						reclaiming = false;
+					}
+				}
+				if (entries == null) {
+					submit(this);
+				} else {
+					logger.debug("-->run: Removed {} old entries.", removed);
+				}
+			} catch (IllegalStateException e) {
+				/* region został zamknięty lub usunięty */
+				logger.debug("-->run: Reclaim of old entries is stopped.", e);
+				synchronized (IncrementalClear.this) {
+					reclaiming = false;
+				}
+			}
+		}
+	}
+
+}
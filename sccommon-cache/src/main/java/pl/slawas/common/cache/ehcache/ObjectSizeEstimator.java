@@ -0,0 +1,191 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * ObjectSizeEstimator - szacowanie rozmiaru [B] grafu obiektów na stercie
+ * (deep size). Rozmiar wyliczany jest na podstawie pól obiektów (refleksja) z
+ * założeniem typowego układu obiektów w 64-bitowej maszynie wirtualnej ze
+ * skompresowanymi wskaźnikami, gdy sterta nie przekracza 32GB. Wynik jest
+ * przybliżony - służy do planowania pojemności regionów, których warstwa heap
+ * ograniczona jest liczbą elementów.
+ * <p>
+ * Obiekty współdzielone (klasy, wyliczenia, ładowacze klas) nie są liczone.
+ * Pola, do których nie ma dostępu, liczone są tylko jako referencja.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public final class ObjectSizeEstimator {
+
+	/** Domyślne ograniczenie liczby obiektów odwiedzanych w jednym grafie */
+	public static final int DEFAULT_MAX_OBJECTS = 10000;
+
+	private static final boolean IS_64_BIT = !"32".equals(System.getProperty("sun.arch.data.model"));
+
+	private static final boolean COMPRESSED_OOPS = !IS_64_BIT
+			|| Runtime.getRuntime().maxMemory() < 32L * 1024L * 1024L * 1024L;
+
+	private static final int REFERENCE_SIZE = (IS_64_BIT && !COMPRESSED_OOPS ? 8 : 4);
+
+	private static final int OBJECT_HEADER_SIZE = (!IS_64_BIT ? 8 : (COMPRESSED_OOPS ? 12 : 16));
+
+	private static final int ARRAY_HEADER_SIZE = OBJECT_HEADER_SIZE + 4;
+
+	private static final int ALIGNMENT = 8;
+
+	/** Opis klasy: rozmiar płytki i pola referencyjne */
+	private static final Map<Class<?>, ClassLayout> layouts = new ConcurrentHashMap<>();
+
+	private ObjectSizeEstimator() {
+	}
+
+	/**
+	 * Szacowany rozmiar grafu obiektów z domyślnym ograniczeniem
+	 * {@link #DEFAULT_MAX_OBJECTS}.
+	 *
+	 * @param root
+	 *            korzeń grafu obiektów
+	 * @return szacowany rozmiar [B]
+	 */
+	public static long deepSizeOf(Object root) {
+		return deepSizeOf(root, DEFAULT_MAX_OBJECTS);
+	}
+
+	/**
+	 * Szacowany rozmiar grafu obiektów.
+	 *
+	 * @param root
+	 *            korzeń grafu obiektów
+	 * @param maxObjects
+	 *            maksymalna liczba odwiedzonych obiektów, po jej przekroczeniu
+	 *            zwracany jest rozmiar dotychczas policzonej części grafu
+	 * @return szacowany rozmiar [B]
+	 */
+	public static long deepSizeOf(Object root, int maxObjects) {
+		if (root == null) {
+			return 0L;
+		}
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		Deque<Object> toVisit = new ArrayDeque<>();
+		toVisit.push(root);
+		long size = 0L;
+		while (!toVisit.isEmpty() && visited.size() < maxObjects) {
+			Object obj = toVisit.pop();
+			if (isShared(obj) || !visited.add(obj)) {
+				continue;
+			}
+			Class<?> clazz = obj.getClass();
+			if (clazz.isArray()) {
+				int length = Array.getLength(obj);
+				Class<?> componentType = clazz.getComponentType();
+				size += align(ARRAY_HEADER_SIZE + (long) length * sizeOfType(componentType));
+				if (!componentType.isPrimitive()) {
+					for (int i = 0; i < length; i++) {
+						Object element = Array.get(obj, i);
+						if (element != null) {
+							toVisit.push(element);
+						}
+					}
+				}
+			} else {
+				ClassLayout layout = layoutOf(clazz);
+				size += layout.shallowSize;
+				for (Field field : layout.referenceFields) {
+					Object value;
+					try {
+						value = field.get(obj);
+					} catch (IllegalAccessException e) {
+						value = null;
+					}
+					if (value != null) {
+						toVisit.push(value);
+					}
+				}
+			}
+		}
+		return size;
+	}
+
+	private static boolean isShared(Object obj) {
+		return obj instanceof Class || obj instanceof Enum || obj instanceof ClassLoader || obj instanceof Thread;
+	}
+
+	private static ClassLayout layoutOf(Class<?> clazz) {
+		ClassLayout layout = layouts.get(clazz);
+		if (layout == null) {
+			layout = new ClassLayout(clazz);
+			layouts.put(clazz, layout);
+		}
+		return layout;
+	}
+
+	private static int sizeOfType(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return REFERENCE_SIZE;
+		}
+		if (type == long.class || type == double.class) {
+			return 8;
+		}
+		if (type == int.class || type == float.class) {
+			return 4;
+		}
+		if (type == short.class || type == char.class) {
+			return 2;
+		}
+		return 1;
+	}
+
+	private static long align(long size) {
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	/**
+	 * Opis układu pól klasy.
+	 */
+	private static class ClassLayout {
+
+		private final long shallowSize;
+
+		private final List<Field> referenceFields;
+
+		ClassLayout(Class<?> clazz) {
+			long fieldsSize = 0L;
+			List<Field> references = new ArrayList<>();
+			for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers())) {
+						continue;
+					}
+					Class<?> type = field.getType();
+					fieldsSize += sizeOfType(type);
+					if (!type.isPrimitive()) {
+						try {
+							field.setAccessible(true);
+							references.add(field);
+						} catch (RuntimeException e) {
+							/* brak dostępu (np. moduły Java 9+) - liczymy tylko referencję */
+						}
+					}
+				}
+			}
+			this.shallowSize = align(OBJECT_HEADER_SIZE + fieldsSize);
+			this.referenceFields = references;
+		}
+	}
+
+}
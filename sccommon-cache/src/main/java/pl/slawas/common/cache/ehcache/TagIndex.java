@@ -0,0 +1,135 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+
+/**
+ *
+ * TagIndex - odwrotny indeks znaczników (tagów) elementów regionu. Dla każdego
+ * znacznika pamiętany jest zbiór kluczy, a dla każdego klucza tablica jego
+ * znaczników, dzięki czemu usunięcie elementów znacznika kosztuje tyle, ile
+ * jest elementów z tym znacznikiem, bez przeglądania regionu.
+ * <p>
+ * Usunięcia jawne (remove, unieważnienia, wyczyszczenie) aktualizują indeks
+ * bezpośrednio. Elementy usuwane przez EhCache (eviction, wygaśnięcie) usuwane
+ * są z indeksu na podstawie zdarzeń regionu.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public class TagIndex<K, V> implements CacheEventListener<K, V> {
+
+	private static final String[] NO_TAGS = new String[0];
+
+	/** znacznik -> klucze elementów ze znacznikiem */
+	private final ConcurrentMap<String, Set<K>> keysByTag = new ConcurrentHashMap<>();
+
+	/** klucz -> znaczniki elementu */
+	private final ConcurrentMap<K, String[]> tagsByKey = new ConcurrentHashMap<>();
+
+	/**
+	 * Ustawienie znaczników elementu - zastępuje poprzednie znaczniki klucza.
+	 *
+	 * @param key
+	 *            klucz elementu
+	 * @param tags
+	 *            znaczniki, pusta tablica usuwa znaczniki elementu
+	 */
+	public void tag(K key, String... tags) {
+		String[] newTags = distinct(tags);
+		String[] oldTags = (newTags.length == 0 ? tagsByKey.remove(key) : tagsByKey.put(key, newTags));
+		if (oldTags != null) {
+			for (String tag : oldTags) {
+				if (!contains(newTags, tag)) {
+					removeFromTag(tag, key);
+				}
+			}
+		}
+		for (String tag : newTags) {
+			keysByTag.compute(tag, (t, keys) -> {
+				Set<K> result = (keys != null ? keys : ConcurrentHashMap.<K> newKeySet());
+				result.add(key);
+				return result;
+			});
+		}
+	}
+
+	/**
+	 * Usunięcie elementu z indeksu.
+	 *
+	 * @param key
+	 *            klucz elementu
+	 */
+	public void untag(K key) {
+		String[] oldTags = tagsByKey.remove(key);
+		if (oldTags != null) {
+			for (String tag : oldTags) {
+				removeFromTag(tag, key);
+			}
+		}
+	}
+
+	/**
+	 * @param tag
+	 *            znacznik
+	 * @return kopia zbioru kluczy elementów ze znacznikiem
+	 */
+	public Set<K> keysOf(String tag) {
+		Set<K> keys = keysByTag.get(tag);
+		return (keys != null ? new HashSet<>(keys) : Collections.<K> emptySet());
+	}
+
+	/**
+	 * Wyczyszczenie indeksu razem z regionem.
+	 */
+	public void clear() {
+		tagsByKey.clear();
+		keysByTag.clear();
+	}
+
+	@Override
+	public void onEvent(CacheEvent<? extends K, ? extends V> event) {
+		/* rejestrowany tylko dla zdarzeń EVICTED i EXPIRED */
+		untag(event.getKey());
+	}
+
+	private void removeFromTag(String tag, K key) {
+		/* pusty zbiór jest usuwany atomowo, aby nie zgubić równoległego dodania */
+		keysByTag.computeIfPresent(tag, (t, keys) -> {
+			keys.remove(key);
+			return (keys.isEmpty() ? null : keys);
+		});
+	}
+
+	private static String[] distinct(String[] tags) {
+		if (tags == null || tags.length == 0) {
+			return NO_TAGS;
+		}
+		Set<String> unique = new HashSet<>(Arrays.asList(tags));
+		unique.remove(null);
+		return unique.toArray(new String[unique.size()]);
+	}
+
+	private static boolean contains(String[] tags, String tag) {
+		for (String t : tags) {
+			if (t.equals(tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
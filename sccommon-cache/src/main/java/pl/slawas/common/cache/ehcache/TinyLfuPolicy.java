@@ -0,0 +1,278 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.ehcache.Cache;
+import org.ehcache.config.EvictionAdvisor;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventType;
+
+import pl.slawas.common.cache.FrequencySketch;
+import pl.slawas.common.cache.IEntryWeigher;
+
+/**
+ *
+ * TinyLfuPolicy - polityka przyjmowania i usuwania elementów regionu oparta na
+ * częstości odwołań (TinyLFU). Nowy element trafia do regionu tylko wtedy,
+ * gdy jest używany częściej niż element ostatnio usunięty z regionu, więc
+ * jednorazowe odczyty (np. przeglądanie dużej tabeli) nie wypychają elementów
+ * często używanych. Ta sama częstość podpowiada EhCache, których elementów
+ * nie usuwać ({@link EvictionAdvisor}).
+ * <p>
+ * Opcjonalnie region ograniczany jest sumą wag elementów
+ * ({@link IEntryWeigher}): po przekroczeniu limitu usuwany jest najrzadziej
+ * używany z kilku losowo wybranych elementów. Klucze do losowania polityka
+ * śledzi sama, na podstawie zdarzeń regionu - wybór ofiary nie przegląda
+ * regionu, więc nie zawyża statystyk trafień.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.2 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public class TinyLfuPolicy<K, V> implements EvictionAdvisor<K, V>, CacheEventListener<K, V> {
+
+	/**
+	 * Wartość parametru {@link EhCacheConfig#PROP_CACHE_ADMISSION} włączająca
+	 * filtr przyjmowania elementów.
+	 */
+	public static final String ADMISSION_TINYLFU = "tinylfu";
+
+	/** Liczba elementów porównywanych przy wyborze elementu do usunięcia */
+	private static final int EVICTION_SAMPLE_SIZE = 8;
+
+	/**
+	 * Częstość, od której element może zostać losowo przyjęty mimo przegranej z
+	 * ofiarą - chroni przed atakiem utrzymującym sztucznie wysoką częstość
+	 * ofiary.
+	 */
+	private static final int ADMIT_HASHDOS_THRESHOLD = 6;
+
+	private final FrequencySketch sketch;
+
+	private final boolean admission;
+
+	private final IEntryWeigher<? super K, ? super V> weigher;
+
+	private final long maxWeight;
+
+	private final AtomicLong totalWeight = new AtomicLong();
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * Klucze regionu do losowania ofiar (tylko z limitem wagi), dostęp pod
+	 * blokadą {@link #keyIndex}
+	 */
+	private final List<K> keys = new ArrayList<>();
+
+	/** Pozycje kluczy na liście {@link #keys} */
+	private final Map<K, Integer> keyIndex = new HashMap<>();
+
+	/** Częstość ostatnio usuniętego elementu */
+	private volatile int victimFrequency = 0;
+
+	/**
+	 * @param maximumSize
+	 *            oczekiwana liczba elementów regionu (rozmiar szkicu częstości)
+	 * @param admission
+	 *            czy nowe elementy mają być filtrowane według częstości
+	 * @param weigher
+	 *            waga elementów, {@code null} - region bez limitu wagi
+	 * @param maxWeight
+	 *            limit sumy wag elementów, używany, gdy zdefiniowano wagę
+	 */
+	public TinyLfuPolicy(long maximumSize, boolean admission, IEntryWeigher<? super K, ? super V> weigher,
+			long maxWeight) {
+		this.sketch = new FrequencySketch(maximumSize) {
+			@Override
+			protected void onReset() {
+				/* częstość ofiary starzeje się razem z licznikami */
+				victimFrequency >>>= 1;
+			}
+		};
+		this.admission = admission;
+		this.weigher = weigher;
+		this.maxWeight = (weigher != null ? maxWeight : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Zapisanie odwołania do klucza (odczyt albo zapis).
+	 */
+	public void recordAccess(K key) {
+		sketch.increment(key);
+	}
+
+	/**
+	 * @return {@code true}, jeżeli nowy element ma zostać zapisany w regionie
+	 */
+	public boolean admit(K key) {
+		if (!admission) {
+			return true;
+		}
+		int frequency = sketch.frequency(key);
+		if (frequency > victimFrequency) {
+			return true;
+		}
+		return frequency >= ADMIT_HASHDOS_THRESHOLD && ThreadLocalRandom.current().nextInt(128) == 0;
+	}
+
+	/* Overridden (non-Javadoc) */
+	@Override
+	public boolean adviseAgainstEviction(K key, V value) {
+		return sketch.frequency(key) > victimFrequency;
+	}
+
+	/* Overridden (non-Javadoc) */
+	@Override
+	public void onEvent(CacheEvent<? extends K, ? extends V> event) {
+		EventType type = event.getType();
+		if (type == EventType.EVICTED) {
+			victimFrequency = sketch.frequency(event.getKey());
+		}
+		if (weigher == null) {
+			return;
+		}
+		if (type == EventType.CREATED) {
+			track(event.getKey());
+		} else if (type != EventType.UPDATED) {
+			untrack(event.getKey());
+		}
+		long delta = 0L;
+		if (event.getOldValue() != null) {
+			delta -= weigher.weigh(event.getKey(), event.getOldValue());
+		}
+		if (event.getNewValue() != null && (type == EventType.CREATED || type == EventType.UPDATED)) {
+			delta += weigher.weigh(event.getKey(), event.getNewValue());
+		}
+		totalWeight.addAndGet(delta);
+	}
+
+	private void track(K key) {
+		synchronized (keyIndex) {
+			if (!keyIndex.containsKey(key)) {
+				keyIndex.put(key, keys.size());
+				keys.add(key);
+			}
+		}
+	}
+
+	private void untrack(K key) {
+		synchronized (keyIndex) {
+			Integer index = keyIndex.remove(key);
+			if (index == null) {
+				return;
+			}
+			/* na miejsce usuniętego klucza trafia ostatni */
+			K last = keys.remove(keys.size() - 1);
+			if (index < keys.size()) {
+				keys.set(index, last);
+				keyIndex.put(last, index);
+			}
+		}
+	}
+
+	/**
+	 * @return najrzadziej używany z {@link #EVICTION_SAMPLE_SIZE} losowo
+	 *         wybranych kluczy, {@code null} - brak kluczy
+	 */
+	private K sampleVictim() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		synchronized (keyIndex) {
+			if (keys.isEmpty()) {
+				return null;
+			}
+			K victim = null;
+			int minFrequency = Integer.MAX_VALUE;
+			for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+				K key = keys.get(random.nextInt(keys.size()));
+				int frequency = sketch.frequency(key);
+				if (frequency < minFrequency) {
+					minFrequency = frequency;
+					victim = key;
+				}
+			}
+			return victim;
+		}
+	}
+
+	/**
+	 * Usuwanie elementów, dopóki suma wag przekracza limit. Spośród kilku
+	 * losowo wybranych elementów regionu usuwany jest element najrzadziej
+	 * używany. Usuwanie wykonuje jeden wątek naraz, pozostałe nie czekają.
+	 *
+	 * @param cache
+	 *            region EhCache
+	 */
+	public void evictOverweight(Cache<K, V> cache) {
+		if (totalWeight.get() <= maxWeight || !evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			while (totalWeight.get() > maxWeight) {
+				K victim = sampleVictim();
+				if (victim == null) {
+					/* brak śledzonych kluczy - waga mogła się rozjechać */
+					totalWeight.set(0L);
+					return;
+				}
+				victimFrequency = sketch.frequency(victim);
+				cache.remove(victim);
+				/* klucza mogło już nie być w regionie - wtedy nie było zdarzenia */
+				untrack(victim);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Wyzerowanie sumy wag i śledzonych kluczy po wyczyszczeniu regionu, które nie generuje zdarzeń.
+	 */
+	public void clear() {
+		totalWeight.set(0L);
+		synchronized (keyIndex) {
+			keys.clear();
+			keyIndex.clear();
+		}
+	}
+
+	/**
+	 * @return suma wag elementów regionu
+	 */
+	public long getTotalWeight() {
+		return totalWeight.get();
+	}
+
+	/**
+	 * @return limit sumy wag, {@link Long#MAX_VALUE} - bez limitu
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Domyślna waga elementu - szacowany rozmiar [B] klucza i wartości na
+	 * stercie ({@link ObjectSizeEstimator}).
+	 */
+	public static class ObjectSizeWeigher implements IEntryWeigher<Object, Object> {
+
+		/* Overridden (non-Javadoc) */
+		@Override
+		public long weigh(Object key, Object value) {
+			return ObjectSizeEstimator.deepSizeOf(key) + ObjectSizeEstimator.deepSizeOf(value);
+		}
+	}
+
+}
@@ -0,0 +1,411 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.slawas.common.cache.CacheOperation;
+import pl.slawas.common.cache.ICacheWriter;
+
+/**
+ *
+ * WriteBehindQueue - kolejka opóźnionego zapisu (write-behind) regionu.
+ * Zapis i usunięcie elementu trafiają najpierw do mapy zaległych zmian i
+ * kolejki kluczy (bez blokad), a wątek w tle zapisuje je partiami do regionu
+ * EhCache i do {@link ICacheWriter}. Kolejne zmiany tego samego klucza
+ * zastępują się w mapie, więc klucz występuje w kolejce najwyżej raz, a do
+ * zapisu trafia tylko ostatnia zmiana.
+ * <p>
+ * Odczyt regionu sprawdza najpierw zaległe zmiany, więc wątek widzi swoje
+ * zapisy przed ich zapisaniem w regionie. Gdy kolejka jest pełna, wątek
+ * zapisujący sam zapisuje jedną partię zmian.
+ * </p>
+ * <p>
+ * Zmiany, których {@link ICacheWriter} nie zapisał (wyjątek writera), są już
+ * w regionie i czekają na ponowienie zapisu - kolejne próby co
+ * {@link #RETRY_DELAY_MILLIS}, z podwajanym odstępem (najwyżej
+ * {@link #MAX_RETRY_DELAY_MILLIS}). Nowsza zmiana klucza zastępuje czekającą
+ * na ponowienie. Po {@link #DEFAULT_MAX_RETRIES} nieudanych ponowieniach (lub
+ * jednym ponowieniu przy zamykaniu kolejki) zmiana jest porzucana i zapisywana
+ * w logu jako utracona - źródło danych nie otrzyma jej, choć region ją ma.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.2 $
+ *
+ * @param <K>
+ *            typ klucza
+ * @param <V>
+ *            typ wartości
+ */
+public class WriteBehindQueue<K, V> {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+	/** Znacznik usunięcia elementu w mapie zaległych zmian */
+	private static final Object REMOVED = new Object();
+
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 10000;
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	public static final long DEFAULT_DELAY_MILLIS = 100L;
+
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	/** Odstęp [ms] przed pierwszym ponowieniem zapisu zmian writera */
+	public static final long RETRY_DELAY_MILLIS = 1000L;
+
+	/** Maksymalny odstęp [ms] między ponowieniami zapisu zmian writera */
+	public static final long MAX_RETRY_DELAY_MILLIS = 60000L;
+
+	private final EhTypedCache<K, V> region;
+
+	private final ICacheWriter<K, V> writer;
+
+	private final int maxQueueSize;
+
+	private final int batchSize;
+
+	private final ConcurrentHashMap<K, Object> pending = new ConcurrentHashMap<>();
+
+	private final ConcurrentLinkedQueue<K> keys = new ConcurrentLinkedQueue<>();
+
+	/** Liczba kluczy w kolejce (rozmiar kolejki bez jej przeglądania) */
+	private final AtomicInteger queueSize = new AtomicInteger();
+
+	/** Zmiany, których writer nie zapisał, czekające na ponowienie zapisu */
+	private final ConcurrentHashMap<K, FailedChange> failed = new ConcurrentHashMap<>();
+
+	/** Czas [ms], od którego można ponowić zapis, dostęp pod blokadą {@link #failed} */
+	private long retryAt = 0L;
+
+	/** Liczba kolejnych nieudanych ponowień, dostęp pod blokadą {@link #failed} */
+	private int retryRound = 0;
+
+	private volatile ScheduledFuture<?> flushTask;
+
+	/**
+	 * @param region
+	 *            region, do którego zapisywane są zmiany
+	 * @param writer
+	 *            writer źródła danych, {@code null} - zmiany zapisywane są
+	 *            tylko w regionie
+	 * @param maxQueueSize
+	 *            maksymalna liczba zaległych zmian
+	 * @param batchSize
+	 *            maksymalna liczba zmian zapisywanych jedną partią
+	 */
+	WriteBehindQueue(EhTypedCache<K, V> region, ICacheWriter<K, V> writer, int maxQueueSize, int batchSize) {
+		if (maxQueueSize < 1 || batchSize < 1) {
+			throw new IllegalArgumentException(
+					String.format("-->WriteBehindQueue: Invalid queue size %d or batch size %d for region '%s'",
+							maxQueueSize, batchSize, region.getRegionName()));
+		}
+		this.region = region;
+		this.writer = writer;
+		this.maxQueueSize = maxQueueSize;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Uruchomienie zapisu zaległych zmian w tle.
+	 *
+	 * @param scheduler
+	 *            wykonawca zapisu
+	 * @param delayMillis
+	 *            odstęp między kolejnymi zapisami [ms]
+	 */
+	void start(ScheduledExecutorService scheduler, long delayMillis) {
+		this.flushTask = scheduler.scheduleWithFixedDelay(this::flushSafely, delayMillis, delayMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Dodanie zapisu elementu.
+	 */
+	void put(K key, V value) {
+		enqueue(key, value);
+	}
+
+	/**
+	 * Dodanie usunięcia elementu.
+	 */
+	void remove(K key) {
+		enqueue(key, REMOVED);
+	}
+
+	private void enqueue(K key, Object change) {
+		if (queueSize.get() >= maxQueueSize && !pending.containsKey(key)) {
+			/* kolejka pełna - wątek zapisujący płaci za zapis jednej partii */
+			flushBatch();
+		}
+		if (pending.put(key, change) == null) {
+			keys.add(key);
+			queueSize.incrementAndGet();
+		}
+		/* nowsza zmiana zastępuje zmianę czekającą na ponowienie zapisu */
+		failed.remove(key);
+	}
+
+	/**
+	 * @return zaległa zmiana klucza - wartość albo znacznik usunięcia
+	 *         ({@link #isRemoved(Object)}), {@code null} jeżeli klucz nie ma
+	 *         zaległej zmiany
+	 */
+	Object getPending(K key) {
+		return pending.get(key);
+	}
+
+	/**
+	 * @return {@code true}, jeżeli zaległą zmianą jest usunięcie elementu
+	 */
+	static boolean isRemoved(Object change) {
+		return change == REMOVED;
+	}
+
+	/**
+	 * Porzucenie zaległych zmian, np. po wyczyszczeniu regionu. Klucze
+	 * pozostałe w kolejce są pomijane podczas zapisu.
+	 */
+	void clear() {
+		pending.clear();
+	}
+
+	/**
+	 * @return liczba zaległych zmian
+	 */
+	int size() {
+		return pending.size();
+	}
+
+	/**
+	 * @return liczba zmian czekających na ponowienie zapisu przez writer
+	 */
+	int failedSize() {
+		return failed.size();
+	}
+
+	/**
+	 * Zapis wszystkich zaległych zmian i ponowienie zapisu zmian, których
+	 * writer nie zapisał, jeżeli minął odstęp między ponowieniami.
+	 */
+	void flush() {
+		retryFailed(false);
+		while (flushBatch() > 0) {
+			/* kolejne partie */
+		}
+	}
+
+	/**
+	 * Zatrzymanie zapisu w tle i zapisanie zaległych zmian.
+	 */
+	void close() {
+		ScheduledFuture<?> task = this.flushTask;
+		if (task != null) {
+			task.cancel(false);
+		}
+		flush();
+		/* ostatnia próba - po zamknięciu nie będzie kolejnych */
+		retryFailed(true);
+		if (!failed.isEmpty()) {
+			logger.error("-->close: {} changes of region '{}' are lost - writer failed",
+					failed.size(), region.getRegionName());
+			failed.clear();
+		}
+	}
+
+	private void flushSafely() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			/* wyjątek zatrzymałby zadanie cykliczne */
+			logger.error(String.format("-->flush: Error for region '%s'", region.getRegionName()), e);
+		}
+	}
+
+	/**
+	 * Zapis jednej partii zmian. Zmiana usuwana jest z mapy dopiero po jej
+	 * zapisaniu i tylko wtedy, gdy nie została w międzyczasie zastąpiona -
+	 * nowsza zmiana wraca do kolejki.
+	 *
+	 * @return liczba kluczy pobranych z kolejki
+	 */
+	@SuppressWarnings("unchecked")
+	private int flushBatch() {
+		final long start = System.nanoTime();
+		Map<K, Object> batch = new LinkedHashMap<>();
+		Map<K, V> puts = new LinkedHashMap<>();
+		Set<K> removes = new LinkedHashSet<>();
+		int polled = 0;
+		K key;
+		while (polled < batchSize && (key = keys.poll()) != null) {
+			queueSize.decrementAndGet();
+			polled++;
+			Object change = pending.get(key);
+			if (change == null) {
+				/* zmiana porzucona przez clear() */
+				continue;
+			}
+			batch.put(key, change);
+			if (change == REMOVED) {
+				removes.add(key);
+			} else {
+				puts.put(key, (V) change);
+			}
+		}
+		if (batch.isEmpty()) {
+			return polled;
+		}
+		try {
+			region.flushLocal(puts, removes);
+			write(puts, removes);
+		} finally {
+			for (Map.Entry<K, Object> entry : batch.entrySet()) {
+				if (!pending.remove(entry.getKey(), entry.getValue())) {
+					keys.add(entry.getKey());
+					queueSize.incrementAndGet();
+				}
+			}
+			region.record(CacheOperation.FLUSH, start);
+		}
+		return polled;
+	}
+
+	private void write(Map<K, V> puts, Set<K> removes) {
+		if (writer == null) {
+			return;
+		}
+		if (!writeAll(puts)) {
+			for (Map.Entry<K, V> entry : puts.entrySet()) {
+				failed.put(entry.getKey(), new FailedChange(entry.getValue(), 0));
+			}
+			scheduleRetry();
+		}
+		if (!deleteAll(removes)) {
+			for (K key : removes) {
+				failed.put(key, new FailedChange(REMOVED, 0));
+			}
+			scheduleRetry();
+		}
+	}
+
+	private boolean writeAll(Map<K, V> puts) {
+		if (puts.isEmpty()) {
+			return true;
+		}
+		try {
+			writer.writeAll(puts);
+			return true;
+		} catch (Exception e) {
+			logger.error(String.format("-->write: Writer of region '%s' failed for %d entries, will retry",
+					region.getRegionName(), puts.size()), e);
+			return false;
+		}
+	}
+
+	private boolean deleteAll(Set<K> removes) {
+		if (removes.isEmpty()) {
+			return true;
+		}
+		try {
+			writer.deleteAll(removes);
+			return true;
+		} catch (Exception e) {
+			logger.error(String.format("-->write: Writer of region '%s' failed for %d deletions, will retry",
+					region.getRegionName(), removes.size()), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Ustalenie czasu pierwszego ponowienia po nowym błędzie writera - nie
+	 * przesuwa ponowienia już zaplanowanego.
+	 */
+	private void scheduleRetry() {
+		synchronized (failed) {
+			if (retryRound == 0) {
+				retryAt = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+			}
+		}
+	}
+
+	/**
+	 * Ponowienie zapisu zmian, których writer nie zapisał. Zmiana, która nie
+	 * została zapisana po {@link #DEFAULT_MAX_RETRIES} ponowieniach, jest
+	 * porzucana.
+	 *
+	 * @param force
+	 *            czy ponowić bez względu na odstęp między ponowieniami
+	 */
+	@SuppressWarnings("unchecked")
+	private void retryFailed(boolean force) {
+		if (failed.isEmpty()) {
+			return;
+		}
+		synchronized (failed) {
+			long now = System.currentTimeMillis();
+			if (!force && now < retryAt) {
+				return;
+			}
+			Map<K, FailedChange> round = new LinkedHashMap<>(failed);
+			Map<K, V> puts = new LinkedHashMap<>();
+			Set<K> removes = new LinkedHashSet<>();
+			for (Map.Entry<K, FailedChange> entry : round.entrySet()) {
+				if (entry.getValue().change == REMOVED) {
+					removes.add(entry.getKey());
+				} else {
+					puts.put(entry.getKey(), (V) entry.getValue().change);
+				}
+			}
+			boolean putsWritten = writeAll(puts);
+			boolean removesWritten = deleteAll(removes);
+			int lost = 0;
+			for (Map.Entry<K, FailedChange> entry : round.entrySet()) {
+				FailedChange change = entry.getValue();
+				boolean written = (change.change == REMOVED ? removesWritten : putsWritten);
+				if (written) {
+					failed.remove(entry.getKey(), change);
+				} else if (change.retries + 1 >= DEFAULT_MAX_RETRIES) {
+					if (failed.remove(entry.getKey(), change)) {
+						lost++;
+					}
+				} else {
+					failed.replace(entry.getKey(), change, new FailedChange(change.change, change.retries + 1));
+				}
+			}
+			if (lost > 0) {
+				logger.error("-->retryFailed: {} changes of region '{}' are lost after {} retries",
+						new Object[] { lost, region.getRegionName(), DEFAULT_MAX_RETRIES });
+			}
+			retryRound = (failed.isEmpty() ? 0 : retryRound + 1);
+			retryAt = now + Math.min(RETRY_DELAY_MILLIS << Math.min(retryRound, 16), MAX_RETRY_DELAY_MILLIS);
+		}
+	}
+
+	/**
+	 * Zmiana czekająca na ponowienie zapisu z liczbą wykonanych ponowień.
+	 */
+	private static final class FailedChange {
+
+		private final Object change;
+
+		private final int retries;
+
+		private FailedChange(Object change, int retries) {
+			this.change = change;
+			this.retries = retries;
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package pl.slawas.common.cache.invalidation;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ *
+ * IInvalidationTransport - transport komunikatów unieważnień pomiędzy
+ * węzłami (JVM) używającymi tych samych regionów pamięci podręcznej, zobacz
+ * {@link InvalidationBus}. Implementacja wskazywana jest parametrem
+ * {@link pl.slawas.common.cache.CacheConstants#PROP_INVALIDATION_TRANSPORT} i
+ * musi mieć publiczny konstruktor bezargumentowy.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public interface IInvalidationTransport {
+
+	/**
+	 * Otwarcie transportu.
+	 *
+	 * @param props
+	 *            parametry managera pamięci podręcznej
+	 * @param receiver
+	 *            odbiorca komunikatów otrzymanych z innych węzłów (również
+	 *            własnych - są one odrzucane przez {@link InvalidationBus})
+	 * @throws IOException
+	 */
+	void open(Properties props, Consumer<byte[]> receiver) throws IOException;
+
+	/**
+	 * Wysłanie komunikatu do wszystkich węzłów.
+	 *
+	 * @param message
+	 *            zakodowany komunikat
+	 * @throws IOException
+	 */
+	void send(byte[] message) throws IOException;
+
+	/**
+	 * @return maksymalny rozmiar komunikatu [B]
+	 */
+	int getMaxMessageSize();
+
+	/**
+	 * Zamknięcie transportu.
+	 */
+	void close();
+
+}
@@ -0,0 +1,61 @@
+package pl.slawas.common.cache.invalidation;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import pl.slawas.common.cache.CacheConstants;
+
+/**
+ *
+ * InProcessInvalidationTransport - transport unieważnień w obrębie jednej JVM,
+ * np. do testów kilku managerów udających osobne węzły. Transporty z tym samym
+ * kanałem ({@link CacheConstants#PROP_INVALIDATION_CHANNEL}) otrzymują
+ * wszystkie wysłane komunikaty, synchronicznie w wątku wysyłającym.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class InProcessInvalidationTransport implements IInvalidationTransport {
+
+	private static final ConcurrentMap<String, CopyOnWriteArrayList<Consumer<byte[]>>> channels = new ConcurrentHashMap<>();
+
+	private String channel;
+
+	private Consumer<byte[]> receiver;
+
+	@Override
+	public void open(Properties props, Consumer<byte[]> receiver) {
+		this.channel = props.getProperty(CacheConstants.PROP_INVALIDATION_CHANNEL,
+				CacheConstants.DEFAULT_INVALIDATION_CHANNEL);
+		this.receiver = receiver;
+		channels.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(receiver);
+	}
+
+	@Override
+	public void send(byte[] message) {
+		CopyOnWriteArrayList<Consumer<byte[]>> receivers = channels.get(channel);
+		if (receivers != null) {
+			for (Consumer<byte[]> r : receivers) {
+				r.accept(message.clone());
+			}
+		}
+	}
+
+	@Override
+	public int getMaxMessageSize() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void close() {
+		CopyOnWriteArrayList<Consumer<byte[]>> receivers = channels.get(channel);
+		if (receivers != null) {
+			receivers.remove(receiver);
+		}
+	}
+
+}
@@ -0,0 +1,337 @@
+package pl.slawas.common.cache.invalidation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.slawas.common.cache.CacheConstants;
+
+/**
+ *
+ * InvalidationBus - szyna unieważnień regionów pamięci podręcznej pomiędzy
+ * węzłami (JVM). Zmiany lokalnych regionów (zapis, usunięcie, wyczyszczenie)
+ * zgłaszane są do szyny, która co
+ * {@link CacheConstants#PROP_INVALIDATION_BATCH_MILLIS} milisekund (albo po
+ * zebraniu {@link CacheConstants#PROP_INVALIDATION_MAX_BATCH_SIZE} kluczy)
+ * wysyła jeden komunikat na region - masowa aktualizacja nie generuje tysięcy
+ * komunikatów. Pozostałe węzły usuwają unieważnione klucze ze swoich regionów,
+ * więc przy kolejnym odczycie pobierają aktualną wartość ze źródła.
+ * <p>
+ * Klucze, których nie można przesłać (zobacz
+ * {@link InvalidationMessage#isSupportedKey(Object)}), unieważniają cały
+ * region.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class InvalidationBus {
+
+	private static final Logger logger = LoggerFactory.getLogger(InvalidationBus.class);
+
+	/** Znacznik unieważnienia całego regionu w kolejce */
+	private static final Object ALL_KEYS = new Object();
+
+	/**
+	 * Regiony lokalnego węzła, w których stosowane są unieważnienia otrzymane z
+	 * innych węzłów.
+	 */
+	public interface Target {
+
+		/**
+		 * Usunięcie kluczy z lokalnego regionu (bez ponownego rozgłaszania).
+		 */
+		void invalidateLocal(String regionName, Collection<Object> keys);
+
+		/**
+		 * Wyczyszczenie lokalnego regionu (bez ponownego rozgłaszania).
+		 */
+		void clearLocal(String regionName);
+	}
+
+	private final String nodeId = UUID.randomUUID().toString();
+
+	private final IInvalidationTransport transport;
+
+	private final Target target;
+
+	private final int maxBatchSize;
+
+	private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	private final ScheduledExecutorService flusher;
+
+	private final Object flushLock = new Object();
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Utworzenie szyny na podstawie parametrów managera.
+	 *
+	 * @param managerName
+	 *            nazwa managera
+	 * @param props
+	 *            parametry managera
+	 * @param target
+	 *            regiony lokalnego węzła
+	 * @return szyna albo {@code null}, jeżeli transport nie został
+	 *         zdefiniowany ({@link CacheConstants#PROP_INVALIDATION_TRANSPORT})
+	 */
+	public static InvalidationBus create(String managerName, Properties props, Target target) {
+		String transportClass = props.getProperty(CacheConstants.PROP_INVALIDATION_TRANSPORT);
+		if (StringUtils.isBlank(transportClass)) {
+			return null;
+		}
+		IInvalidationTransport transport;
+		try {
+			transport = (IInvalidationTransport) Class.forName(transportClass.trim()).newInstance();
+		} catch (InstantiationException | IllegalAccessException | ClassNotFoundException | ClassCastException e) {
+			throw new IllegalArgumentException(
+					String.format("-->create: Can't create invalidation transport %s.", transportClass), e);
+		}
+		long batchMillis = Long.parseLong(props.getProperty(CacheConstants.PROP_INVALIDATION_BATCH_MILLIS,
+				CacheConstants.DEFAULT_INVALIDATION_BATCH_MILLIS));
+		int maxBatchSize = Integer.parseInt(props.getProperty(CacheConstants.PROP_INVALIDATION_MAX_BATCH_SIZE,
+				CacheConstants.DEFAULT_INVALIDATION_MAX_BATCH_SIZE));
+		InvalidationBus bus = new InvalidationBus(managerName, transport, target, batchMillis, maxBatchSize);
+		try {
+			transport.open(props, bus::receive);
+		} catch (IOException e) {
+			bus.flusher.shutdownNow();
+			throw new IllegalArgumentException(
+					String.format("-->create: Can't open invalidation transport %s.", transportClass), e);
+		}
+		logger.info("-->create: Manager '{}' uses invalidation transport {} (node {}).",
+				new Object[] { managerName, transportClass, bus.nodeId });
+		return bus;
+	}
+
+	InvalidationBus(String managerName, IInvalidationTransport transport, Target target, long batchMillis,
+			int maxBatchSize) {
+		if (batchMillis < 1L || maxBatchSize < 1) {
+			throw new IllegalArgumentException(String.format(
+					"-->InvalidationBus: Invalid batch parameters: %s ms, %s keys", batchMillis, maxBatchSize));
+		}
+		this.transport = transport;
+		this.target = target;
+		this.maxBatchSize = maxBatchSize;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "sccache-invalidation-" + managerName);
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.flusher.scheduleWithFixedDelay(this::flushQuietly, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Zgłoszenie zmiany klucza w lokalnym regionie.
+	 */
+	public void invalidate(String regionName, Object key) {
+		enqueue(new Pending(regionName, (InvalidationMessage.isSupportedKey(key) ? key : ALL_KEYS)), 1);
+	}
+
+	/**
+	 * Zgłoszenie zmiany kluczy w lokalnym regionie (operacje masowe).
+	 */
+	public void invalidateAll(String regionName, Collection<?> keys) {
+		for (Object key : keys) {
+			if (!InvalidationMessage.isSupportedKey(key)) {
+				invalidateRegion(regionName);
+				return;
+			}
+		}
+		for (Object key : keys) {
+			pending.add(new Pending(regionName, key));
+		}
+		afterEnqueue(keys.size());
+	}
+
+	/**
+	 * Zgłoszenie wyczyszczenia lokalnego regionu.
+	 */
+	public void invalidateRegion(String regionName) {
+		enqueue(new Pending(regionName, ALL_KEYS), 1);
+	}
+
+	private void enqueue(Pending invalidation, int count) {
+		pending.add(invalidation);
+		afterEnqueue(count);
+	}
+
+	private void afterEnqueue(int count) {
+		if (pendingCount.addAndGet(count) >= maxBatchSize && !closed && flushScheduled.compareAndSet(false, true)) {
+			/* pełna paczka - wysyłamy nie czekając na kolejny cykl */
+			flusher.execute(this::flushQuietly);
+		}
+	}
+
+	/**
+	 * Wysłanie zebranych unieważnień - jeden komunikat na region (albo kilka,
+	 * jeżeli kluczy jest więcej niż
+	 * {@link CacheConstants#PROP_INVALIDATION_MAX_BATCH_SIZE}).
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			flushScheduled.set(false);
+			Map<String, Set<Object>> byRegion = new LinkedHashMap<>();
+			Set<String> clearedRegions = new HashSet<>();
+			Pending invalidation;
+			int drained = 0;
+			while ((invalidation = pending.poll()) != null) {
+				drained++;
+				if (invalidation.key == ALL_KEYS) {
+					clearedRegions.add(invalidation.regionName);
+					byRegion.remove(invalidation.regionName);
+				} else if (!clearedRegions.contains(invalidation.regionName)) {
+					byRegion.computeIfAbsent(invalidation.regionName, r -> new HashSet<>()).add(invalidation.key);
+				}
+			}
+			pendingCount.addAndGet(-drained);
+			for (String regionName : clearedRegions) {
+				send(new InvalidationMessage(nodeId, regionName, null));
+			}
+			for (Map.Entry<String, Set<Object>> entry : byRegion.entrySet()) {
+				List<Object> keys = new ArrayList<>(entry.getValue());
+				for (int from = 0; from < keys.size(); from += maxBatchSize) {
+					sendKeys(entry.getKey(), keys.subList(from, Math.min(keys.size(), from + maxBatchSize)));
+				}
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			logger.error("-->flush: Unexpected error", e);
+		}
+	}
+
+	/**
+	 * Wysłanie kluczy; komunikat większy od dopuszczalnego przez transport jest
+	 * dzielony, a pojedynczy zbyt duży klucz unieważnia cały region.
+	 */
+	private void sendKeys(String regionName, List<Object> keys) {
+		InvalidationMessage message = new InvalidationMessage(nodeId, regionName, new ArrayList<>(keys));
+		byte[] encoded;
+		try {
+			encoded = message.encode();
+		} catch (IOException e) {
+			logger.debug("-->sendKeys: Region '{}' invalidated as a whole: {}", regionName, e.getMessage());
+			send(new InvalidationMessage(nodeId, regionName, null));
+			return;
+		}
+		if (encoded.length <= transport.getMaxMessageSize()) {
+			send(regionName, encoded);
+		} else if (keys.size() > 1) {
+			int half = keys.size() / 2;
+			sendKeys(regionName, keys.subList(0, half));
+			sendKeys(regionName, keys.subList(half, keys.size()));
+		} else {
+			send(new InvalidationMessage(nodeId, regionName, null));
+		}
+	}
+
+	private void send(InvalidationMessage message) {
+		try {
+			send(message.getRegionName(), message.encode());
+		} catch (IOException e) {
+			logger.error(String.format("-->send: Can't encode invalidation of region '%s'", message.getRegionName()),
+					e);
+		}
+	}
+
+	private void send(String regionName, byte[] encoded) {
+		try {
+			transport.send(encoded);
+		} catch (IOException e) {
+			logger.error(String.format("-->send: Can't send invalidation of region '%s'", regionName), e);
+		}
+	}
+
+	/**
+	 * Odbiór komunikatu z transportu.
+	 */
+	void receive(byte[] encoded) {
+		InvalidationMessage message;
+		try {
+			message = InvalidationMessage.decode(encoded);
+		} catch (IOException e) {
+			logger.warn("-->receive: Invalid message skipped: {}", e.getMessage());
+			return;
+		}
+		if (nodeId.equals(message.getNodeId())) {
+			return;
+		}
+		try {
+			if (message.isRegionInvalidation()) {
+				target.clearLocal(message.getRegionName());
+			} else {
+				target.invalidateLocal(message.getRegionName(), message.getKeys());
+			}
+		} catch (RuntimeException e) {
+			logger.error(String.format("-->receive: Can't invalidate region '%s'", message.getRegionName()), e);
+		}
+	}
+
+	/**
+	 * Wysłanie zaległych unieważnień i zamknięcie transportu.
+	 */
+	public void close() {
+		closed = true;
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(1L, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		transport.close();
+	}
+
+	/**
+	 * @return identyfikator węzła - komunikaty z tym identyfikatorem są
+	 *         odrzucane
+	 */
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Unieważnienie oczekujące na wysłanie.
+	 */
+	private static final class Pending {
+
+		private final String regionName;
+
+		private final Object key;
+
+		private Pending(String regionName, Object key) {
+			this.regionName = regionName;
+			this.key = key;
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package pl.slawas.common.cache.invalidation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * InvalidationMessage - komunikat unieważnienia kluczy albo całego regionu.
+ * Komunikaty kodowane są w prostym formacie binarnym (bez serializacji Java,
+ * aby odbiór z sieci nie deserializował dowolnych klas), dlatego klucze mogą
+ * być tylko typu {@link String}, {@link Long} albo {@link Integer} - zobacz
+ * {@link #isSupportedKey(Object)}. Klucze regionów {@link pl.slawas.common.cache.IObjectCache}
+ * są zawsze typu {@link String}.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class InvalidationMessage {
+
+	private static final int MAGIC = 0x5343494E;
+	private static final byte VERSION = 1;
+	private static final byte KEY_STRING = 'S';
+	private static final byte KEY_LONG = 'L';
+	private static final byte KEY_INTEGER = 'I';
+
+	private final String nodeId;
+
+	private final String regionName;
+
+	/** unieważniane klucze, {@code null} - unieważnienie całego regionu */
+	private final List<Object> keys;
+
+	public InvalidationMessage(String nodeId, String regionName, List<Object> keys) {
+		this.nodeId = nodeId;
+		this.regionName = regionName;
+		this.keys = (keys == null ? null : Collections.unmodifiableList(keys));
+	}
+
+	/**
+	 * @param key
+	 *            klucz regionu
+	 * @return czy klucz może zostać przesłany w komunikacie
+	 */
+	public static boolean isSupportedKey(Object key) {
+		return key instanceof String || key instanceof Long || key instanceof Integer;
+	}
+
+	public byte[] encode() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (keys == null ? 0 : keys.size() * 24));
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeUTF(nodeId);
+		out.writeUTF(regionName);
+		out.writeInt(keys == null ? -1 : keys.size());
+		if (keys != null) {
+			for (Object key : keys) {
+				if (key instanceof String) {
+					out.writeByte(KEY_STRING);
+					out.writeUTF((String) key);
+				} else if (key instanceof Long) {
+					out.writeByte(KEY_LONG);
+					out.writeLong((Long) key);
+				} else if (key instanceof Integer) {
+					out.writeByte(KEY_INTEGER);
+					out.writeInt((Integer) key);
+				} else {
+					throw new IOException("Unsupported key type " + (key == null ? null : key.getClass()));
+				}
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	public static InvalidationMessage decode(byte[] message) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+		if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+			throw new IOException("Unknown message format");
+		}
+		String nodeId = in.readUTF();
+		String regionName = in.readUTF();
+		int count = in.readInt();
+		if (count < 0) {
+			return new InvalidationMessage(nodeId, regionName, null);
+		}
+		if (count > message.length) {
+			throw new IOException("Corrupted message: " + count + " keys");
+		}
+		List<Object> keys = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			byte type = in.readByte();
+			switch (type) {
+			case KEY_STRING:
+				keys.add(in.readUTF());
+				break;
+			case KEY_LONG:
+				keys.add(in.readLong());
+				break;
+			case KEY_INTEGER:
+				keys.add(in.readInt());
+				break;
+			default:
+				throw new IOException("Unknown key type " + type);
+			}
+		}
+		return new InvalidationMessage(nodeId, regionName, keys);
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public String getRegionName() {
+		return regionName;
+	}
+
+	/**
+	 * @return unieważniane klucze, {@code null} oznacza unieważnienie całego
+	 *         regionu
+	 */
+	public List<Object> getKeys() {
+		return keys;
+	}
+
+	public boolean isRegionInvalidation() {
+		return keys == null;
+	}
+
+}
@@ -0,0 +1,111 @@
+package pl.slawas.common.cache.invalidation;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.slawas.common.cache.CacheConstants;
+
+/**
+ *
+ * MulticastInvalidationTransport - transport unieważnień przez UDP multicast.
+ * Parametry managera:
+ * <ul>
+ * <li>{@link CacheConstants#PROP_INVALIDATION_MULTICAST_GROUP} - adres grupy,
+ * domyślnie {@value CacheConstants#DEFAULT_INVALIDATION_MULTICAST_GROUP}</li>
+ * <li>{@link CacheConstants#PROP_INVALIDATION_MULTICAST_PORT} - port, domyślnie
+ * {@value CacheConstants#DEFAULT_INVALIDATION_MULTICAST_PORT}</li>
+ * <li>{@link CacheConstants#PROP_INVALIDATION_MULTICAST_TTL} - liczba
+ * przeskoków pakietu, domyślnie
+ * {@value CacheConstants#DEFAULT_INVALIDATION_MULTICAST_TTL} (tylko sieć
+ * lokalna)</li>
+ * </ul>
+ * Pakiety wysyłane są również do węzłów na tym samym hoście (loopback). UDP
+ * nie gwarantuje dostarczenia - transport nadaje się dla regionów, w których
+ * krótkotrwała nieaktualność jest dopuszczalna i ograniczona czasem życia
+ * elementów.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class MulticastInvalidationTransport implements IInvalidationTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(MulticastInvalidationTransport.class);
+
+	/** Maksymalny rozmiar danych pakietu UDP (IPv4) */
+	private static final int MAX_DATAGRAM_SIZE = 65507;
+
+	private MulticastSocket socket;
+
+	private InetAddress group;
+
+	private int port;
+
+	private Thread receiverThread;
+
+	private volatile boolean closed = false;
+
+	@Override
+	public void open(Properties props, final Consumer<byte[]> receiver) throws IOException {
+		this.group = InetAddress.getByName(props.getProperty(CacheConstants.PROP_INVALIDATION_MULTICAST_GROUP,
+				CacheConstants.DEFAULT_INVALIDATION_MULTICAST_GROUP));
+		this.port = Integer.parseInt(props.getProperty(CacheConstants.PROP_INVALIDATION_MULTICAST_PORT,
+				Integer.toString(CacheConstants.DEFAULT_INVALIDATION_MULTICAST_PORT)));
+		int ttl = Integer.parseInt(props.getProperty(CacheConstants.PROP_INVALIDATION_MULTICAST_TTL,
+				Integer.toString(CacheConstants.DEFAULT_INVALIDATION_MULTICAST_TTL)));
+		this.socket = new MulticastSocket(port);
+		this.socket.setTimeToLive(ttl);
+		/* false włącza odbiór pakietów wysłanych z tego samego hosta */
+		this.socket.setLoopbackMode(false);
+		this.socket.joinGroup(group);
+		this.receiverThread = new Thread(() -> receiveLoop(receiver), "sccache-invalidation-multicast-" + port);
+		this.receiverThread.setDaemon(true);
+		this.receiverThread.start();
+	}
+
+	private void receiveLoop(Consumer<byte[]> receiver) {
+		byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+		while (!closed && !socket.isClosed()) {
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+			try {
+				socket.receive(packet);
+				receiver.accept(Arrays.copyOfRange(packet.getData(), packet.getOffset(),
+						packet.getOffset() + packet.getLength()));
+			} catch (IOException e) {
+				if (!closed) {
+					logger.warn("-->receive: Multicast receive failed: {}", e.getMessage());
+				}
+			}
+		}
+	}
+
+	@Override
+	public void send(byte[] message) throws IOException {
+		socket.send(new DatagramPacket(message, message.length, group, port));
+	}
+
+	@Override
+	public int getMaxMessageSize() {
+		return MAX_DATAGRAM_SIZE;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			socket.leaveGroup(group);
+		} catch (IOException e) {
+			logger.debug("-->close: Leave group failed: {}", e.getMessage());
+		}
+		socket.close();
+	}
+
+}
@@ -0,0 +1,348 @@
+package pl.slawas.common.cache.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * CompactCodec - zwarty format binarny wartości przechowywanych w warstwach
+ * off-heap i dysk. Typy proste, daty, tablice i typy obsługiwane przez kodeki
+ * {@link IValueCodec} zapisywane są bez deskryptorów klas, a liczby całkowite
+ * jako liczby o zmiennej długości. Pozostałe wartości zapisywane są
+ * serializacją Java.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class CompactCodec {
+
+	private static final Logger logger = LoggerFactory.getLogger(CompactCodec.class);
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte TRUE = 4;
+	private static final byte FALSE = 5;
+	private static final byte DOUBLE = 6;
+	private static final byte FLOAT = 7;
+	private static final byte SHORT = 8;
+	private static final byte BYTE = 9;
+	private static final byte CHARACTER = 10;
+	private static final byte BYTE_ARRAY = 11;
+	private static final byte DATE = 12;
+	private static final byte TIMESTAMP = 13;
+	private static final byte BIG_DECIMAL = 14;
+	private static final byte BIG_INTEGER = 15;
+	private static final byte OBJECT_ARRAY = 16;
+	private static final byte SERIALIZABLE_ARRAY = 17;
+	private static final byte CODEC = 18;
+	private static final byte JAVA = 19;
+
+	/** Kodeki zarejestrowane przez {@link ServiceLoader} - typ -> kodek */
+	private static final Map<Class<?>, IValueCodec<?>> codecsByType;
+
+	/** Kodeki zarejestrowane przez {@link ServiceLoader} - identyfikator -> kodek */
+	private static final Map<Integer, IValueCodec<?>> codecsById;
+
+	static {
+		Map<Class<?>, IValueCodec<?>> byType = new HashMap<>();
+		Map<Integer, IValueCodec<?>> byId = new HashMap<>();
+		loadCodecs(byType, byId);
+		codecsByType = Collections.unmodifiableMap(byType);
+		codecsById = Collections.unmodifiableMap(byId);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static void loadCodecs(Map<Class<?>, IValueCodec<?>> byType, Map<Integer, IValueCodec<?>> byId) {
+		Iterator<IValueCodec> iterator = ServiceLoader.load(IValueCodec.class, CompactCodec.class.getClassLoader())
+				.iterator();
+		while (true) {
+			IValueCodec<?> codec;
+			try {
+				if (!iterator.hasNext()) {
+					return;
+				}
+				codec = iterator.next();
+			} catch (ServiceConfigurationError | LinkageError e) {
+				/* np. kodek encji Hibernate'a, gdy Hibernate nie jest dostępny */
+				logger.debug("-->loadCodecs: Codec skipped: {}", e.getMessage());
+				continue;
+			}
+			if (byId.containsKey(codec.getId())) {
+				logger.warn("-->loadCodecs: Codec {} skipped, id {} is used by {}",
+						new Object[] { codec.getClass().getName(), codec.getId(), byId.get(codec.getId()).getClass() });
+				continue;
+			}
+			byId.put(codec.getId(), codec);
+			byType.put(codec.getType(), codec);
+		}
+	}
+
+	private final ClassLoader classLoader;
+
+	/**
+	 * @param classLoader
+	 *            ładowarka klas wartości zapisanych serializacją Java
+	 */
+	public CompactCodec(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	public byte[] encode(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeValue(value, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	public Object decode(InputStream in) throws IOException, ClassNotFoundException {
+		return readValue(new DataInputStream(in));
+	}
+
+	public Object decode(byte[] bytes) throws IOException, ClassNotFoundException {
+		return decode(new ByteArrayInputStream(bytes));
+	}
+
+	@SuppressWarnings("unchecked")
+	public void writeValue(Object value, DataOutputStream out) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		Class<?> type = value.getClass();
+		if (type == String.class) {
+			out.writeByte(STRING);
+			writeString((String) value, out);
+		} else if (type == Integer.class) {
+			out.writeByte(INTEGER);
+			writeVarLong((Integer) value, out);
+		} else if (type == Long.class) {
+			out.writeByte(LONG);
+			writeVarLong((Long) value, out);
+		} else if (type == Boolean.class) {
+			out.writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+		} else if (type == Double.class) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (type == Float.class) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (type == Short.class) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		} else if (type == Byte.class) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		} else if (type == Character.class) {
+			out.writeByte(CHARACTER);
+			out.writeChar((Character) value);
+		} else if (type == byte[].class) {
+			byte[] array = (byte[]) value;
+			out.writeByte(BYTE_ARRAY);
+			writeVarLong(array.length, out);
+			out.write(array);
+		} else if (type == Date.class) {
+			out.writeByte(DATE);
+			writeVarLong(((Date) value).getTime(), out);
+		} else if (type == Timestamp.class) {
+			out.writeByte(TIMESTAMP);
+			writeVarLong(((Timestamp) value).getTime(), out);
+			writeVarLong(((Timestamp) value).getNanos(), out);
+		} else if (type == BigDecimal.class) {
+			out.writeByte(BIG_DECIMAL);
+			writeString(value.toString(), out);
+		} else if (type == BigInteger.class) {
+			out.writeByte(BIG_INTEGER);
+			writeString(value.toString(), out);
+		} else if (type == Object[].class || type == Serializable[].class) {
+			Object[] array = (Object[]) value;
+			out.writeByte(type == Object[].class ? OBJECT_ARRAY : SERIALIZABLE_ARRAY);
+			writeVarLong(array.length, out);
+			for (Object element : array) {
+				writeValue(element, out);
+			}
+		} else {
+			IValueCodec<Object> codec = (IValueCodec<Object>) codecsByType.get(type);
+			if (codec != null) {
+				out.writeByte(CODEC);
+				writeVarLong(codec.getId(), out);
+				codec.write(value, out, this);
+			} else {
+				out.writeByte(JAVA);
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+					objectOut.writeObject(value);
+				}
+				writeVarLong(bytes.size(), out);
+				bytes.writeTo(out);
+			}
+		}
+	}
+
+	public Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(in);
+		case INTEGER:
+			return (int) readVarLong(in);
+		case LONG:
+			return readVarLong(in);
+		case TRUE:
+			return Boolean.TRUE;
+		case FALSE:
+			return Boolean.FALSE;
+		case DOUBLE:
+			return in.readDouble();
+		case FLOAT:
+			return in.readFloat();
+		case SHORT:
+			return in.readShort();
+		case BYTE:
+			return in.readByte();
+		case CHARACTER:
+			return in.readChar();
+		case BYTE_ARRAY: {
+			byte[] array = new byte[readLength(in)];
+			in.readFully(array);
+			return array;
+		}
+		case DATE:
+			return new Date(readVarLong(in));
+		case TIMESTAMP: {
+			Timestamp timestamp = new Timestamp(readVarLong(in));
+			timestamp.setNanos((int) readVarLong(in));
+			return timestamp;
+		}
+		case BIG_DECIMAL:
+			return new BigDecimal(readString(in));
+		case BIG_INTEGER:
+			return new BigInteger(readString(in));
+		case OBJECT_ARRAY:
+		case SERIALIZABLE_ARRAY: {
+			int length = readLength(in);
+			Object[] array = (tag == OBJECT_ARRAY ? new Object[length] : new Serializable[length]);
+			for (int i = 0; i < length; i++) {
+				array[i] = readValue(in);
+			}
+			return array;
+		}
+		case CODEC: {
+			int id = (int) readVarLong(in);
+			IValueCodec<?> codec = codecsById.get(id);
+			if (codec == null) {
+				throw new IOException("Unknown codec id " + id);
+			}
+			return codec.read(in, this);
+		}
+		case JAVA: {
+			byte[] bytes = new byte[readLength(in)];
+			in.readFully(bytes);
+			try (ObjectInputStream objectIn = new ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes),
+					classLoader)) {
+				return objectIn.readObject();
+			}
+		}
+		default:
+			throw new IOException("Unknown value tag " + tag);
+		}
+	}
+
+	public static void writeString(String value, DataOutputStream out) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(bytes.length, out);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Zapis liczby w kodowaniu zig-zag o zmiennej długości - małe liczby (również
+	 * ujemne) zajmują jeden bajt.
+	 */
+	public static void writeVarLong(long value, DataOutputStream out) throws IOException {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7FL) != 0L) {
+			out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+			zigZag >>>= 7;
+		}
+		out.writeByte((int) zigZag);
+	}
+
+	public static long readVarLong(DataInputStream in) throws IOException {
+		long zigZag = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			zigZag |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (zigZag >>> 1) ^ -(zigZag & 1);
+			}
+		}
+		throw new IOException("Malformed variable length number");
+	}
+
+	private static int readLength(DataInputStream in) throws IOException {
+		long length = readVarLong(in);
+		if (length < 0L || length > Integer.MAX_VALUE) {
+			throw new IOException("Invalid length " + length);
+		}
+		return (int) length;
+	}
+
+	/**
+	 * Odczyt serializacji Java klasami z ładowarki regionu.
+	 */
+	private static class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+		private final ClassLoader classLoader;
+
+		ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+			super(in);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if (classLoader == null) {
+				return super.resolveClass(desc);
+			}
+			try {
+				return Class.forName(desc.getName(), false, classLoader);
+			} catch (ClassNotFoundException e) {
+				return super.resolveClass(desc);
+			}
+		}
+	}
+
+}
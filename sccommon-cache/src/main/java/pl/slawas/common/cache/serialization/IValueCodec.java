@@ -0,0 +1,49 @@
+package pl.slawas.common.cache.serialization;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ *
+ * IValueCodec - kodek zwartego formatu binarnego ({@link CompactCodec}) dla
+ * jednego typu wartości. Kodeki rejestrowane są przez
+ * {@link java.util.ServiceLoader} w pliku
+ * {@code META-INF/services/pl.slawas.common.cache.serialization.IValueCodec};
+ * kodek, którego klasy nie da się załadować (np. brak Hibernate'a w
+ * środowisku), jest pomijany. Kodek obsługuje dokładnie wskazany typ - nie
+ * jest używany dla podklas.
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ * @param <T>
+ *            typ wartości
+ */
+public interface IValueCodec<T> {
+
+	/**
+	 * @return identyfikator kodeka zapisywany w danych - nie może się zmieniać
+	 *         pomiędzy wersjami; identyfikatory 1-99 zarezerwowane są dla
+	 *         biblioteki
+	 */
+	int getId();
+
+	/**
+	 * @return obsługiwany typ wartości
+	 */
+	Class<T> getType();
+
+	/**
+	 * Zapis wartości. Wartości zagnieżdżone zapisywane są przez
+	 * {@link CompactCodec#writeValue(Object, DataOutputStream)}.
+	 */
+	void write(T value, DataOutputStream out, CompactCodec codec) throws IOException;
+
+	/**
+	 * Odczyt wartości zapisanej przez
+	 * {@link #write(Object, DataOutputStream, CompactCodec)}.
+	 */
+	T read(DataInputStream in, CompactCodec codec) throws IOException, ClassNotFoundException;
+
+}
@@ -0,0 +1,33 @@
+package pl.slawas.common.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class CacheStatisticsSnapshotTest extends TestCase {
+
+	public void testPages() {
+		List<IObjectCacheStatistics> rows = new ArrayList<>();
+		for (int i = 24; i >= 0; i--) {
+			rows.add(new EmptyObjectCacheStatistics("manager" + (i % 2), String.format("region%02d", i),
+					CacheProviderEnum.EhCache));
+		}
+		CacheStatisticsSnapshot snapshot = new CacheStatisticsSnapshot(rows);
+
+		ObjectCacheStatisticsList page = snapshot.getPage(0, 10);
+		assertEquals("Liczba wszystkich regionów", 25, page.getSize());
+		assertEquals("Rozmiar strony", 10, page.getList().size());
+		assertEquals("Pierwszy region", "region00", page.getList().get(0).getAssociatedCacheName());
+		assertEquals("Następna pozycja", 10, page.getNextOffset());
+
+		page = snapshot.getPage(20, 10);
+		assertEquals("Rozmiar ostatniej strony", 5, page.getList().size());
+		assertEquals("Ostatni region", "manager1", page.getList().get(4).getAssociatedManagerName());
+		assertEquals("Ostatni region", "region23", page.getList().get(4).getAssociatedCacheName());
+
+		assertTrue("Strona poza zakresem", snapshot.getPage(30, 10).getList().isEmpty());
+		assertEquals("Maksymalny rozmiar strony", 25, snapshot.getPage(0, Integer.MAX_VALUE).getList().size());
+	}
+
+}
@@ -45,6 +45,22 @@ public class CommonCacheProviderTstSupport extends TestCase {
 		this.provider = provider;
 	}
 
+	/**
+	 * Parametry providera EhCache z konfiguracji testowej. Każdy test podaje
+	 * własną nazwę providera, aby nie współdzielić zarejestrowanej instancji z
+	 * innymi testami.
+	 * 
+	 * @param providerName
+	 *            nazwa providera
+	 * @return parametry, które test uzupełnia o parametry regionów
+	 */
+	public static Properties getProviderProperties(String providerName) {
+		Properties providerProps = new Properties();
+		providerProps.putAll(EhCacheConfig.getInstance().getPropertyList());
+		providerProps.put(CacheConstants.PROP_PROVIDER_NAME, providerName);
+		return providerProps;
+	}
+
 	private List<CachedElement> readTestData(String csvFile) {
 		List<CachedElement> list = new ArrayList<CachedElement>();
 		BufferedReader br = null;
@@ -1,6 +1,11 @@
 package pl.slawas.common.cache;
 
+import java.util.Properties;
+
+import pl.slawas.common.cache.ehcache.EhCacheConfig;
 import pl.slawas.common.cache.ehcache.EhCacheProvider;
+import pl.slawas.common.cache.ehcache.Element;
+import pl.slawas.common.cache.ehcache.TinyLfuPolicy;
 
 /**
  * Unit test for simple App.
@@ -11,4 +16,44 @@ public class EhCacheProviderTest extends CommonCacheProviderTstSupport {
 		super(EhCacheProvider.class);
 	}
 
+	public void testLazyInit() throws Throwable {
+		Properties lazyProps = getProviderProperties("lazyInitTest");
+		lazyProps.put(CacheConstants.PROP_LAZY_INIT, "true");
+		lazyProps.put("CachedObjectFactory." + EhCacheConfig.PROP_CACHE_ADMISSION, TinyLfuPolicy.ADMISSION_TINYLFU);
+
+		EhCacheProvider lazyProvider = (EhCacheProvider) CacheProviderFactory.getInstance(lazyProps);
+		try {
+			assertSame("Zarejestrowana instancja", lazyProvider, CacheProviderFactory.getInstance(lazyProps));
+			IObjectCache cache = lazyProvider.getCache("CachedObjectFactory");
+			cache.put("key", "value");
+			assertEquals("Region zadeklarowany w XML tworzony przy pierwszym użyciu", "value", cache.get("key"));
+			assertTrue("Region zadeklarowany w XML ma politykę przyjmowania elementów",
+					lazyProvider.getManager().getCache("CachedObjectFactory", String.class, Element.class)
+							.getRuntimeConfiguration().getEvictionAdvisor() instanceof TinyLfuPolicy);
+			assertNull("Nieużywany region nie jest tworzony",
+					lazyProvider.getManager().getCache("UserSynchronizationCache", String.class, Element.class));
+		} finally {
+			lazyProvider.close();
+		}
+	}
+
+	public void testRecreatedRegion() throws Throwable {
+		Properties recreateProps = getProviderProperties("recreatedRegionTest");
+
+		EhCacheProvider recreateProvider = (EhCacheProvider) CacheProviderFactory.getInstance(recreateProps);
+		try {
+			IObjectCache oldCache = recreateProvider.getCache("recreated");
+			oldCache.put("key", "old");
+			recreateProvider.removeCache("recreated");
+			IObjectCache cache = recreateProvider.getCache("recreated");
+			assertNotSame("Nowa nakładka na nowy region", oldCache, cache);
+			assertNull("Nowy region jest pusty", cache.get("key"));
+			cache.put("key", "new");
+			assertSame("Nakładka nowego regionu jest zapamiętana", cache, recreateProvider.getCache("recreated"));
+			assertEquals("Wartość w nowym regionie", "new", cache.get("key"));
+		} finally {
+			recreateProvider.close();
+		}
+	}
+
 }
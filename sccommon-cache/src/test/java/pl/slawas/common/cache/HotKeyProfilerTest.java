@@ -0,0 +1,38 @@
+package pl.slawas.common.cache;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class HotKeyProfilerTest extends TestCase {
+
+	public void testTopKeys() {
+		HotKeyProfiler profiler = new HotKeyProfiler(1, 3);
+		for (int round = 0; round < 100; round++) {
+			profiler.record("hot", true);
+			if (round % 2 == 0) {
+				profiler.record("warm", true);
+			}
+			if (round % 10 == 0) {
+				profiler.record("cool", true);
+			}
+			/* klucze odczytywane jednokrotnie nie mogą wyprzeć najczęstszych */
+			profiler.record("scan" + round, true);
+			profiler.record("missing", false);
+		}
+		List<HotKeyProfiler.HotKey> hits = profiler.getTopHitKeys();
+		assertEquals("Liczba najczęstszych kluczy", 3, hits.size());
+		assertEquals("Najczęstszy klucz", "hot", hits.get(0).getKey());
+		assertEquals("Drugi klucz", "warm", hits.get(1).getKey());
+		assertEquals("Trzeci klucz", "cool", hits.get(2).getKey());
+		assertTrue("Szacowana liczba odwołań", hits.get(0).getCount() >= 100L);
+
+		List<HotKeyProfiler.HotKey> misses = profiler.getTopMissKeys();
+		assertEquals("Chybienia liczone osobno", 1, misses.size());
+		assertEquals("Najczęściej chybiany klucz", "missing", misses.get(0).getKey());
+
+		profiler.clear();
+		assertTrue("Profil po wyzerowaniu", profiler.getTopHitKeys().isEmpty());
+	}
+
+}
@@ -0,0 +1,41 @@
+package pl.slawas.common.cache;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals("Pusty histogram", 0L, histogram.getValueAtPercentile(99.0));
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals("Liczba wartości", 1000L, histogram.getCount());
+		assertEquals("Wartość maksymalna", 1000000L, histogram.getMax());
+		assertEquals("Wartość średnia", 500500.0, histogram.getMean(), 0.001);
+		assertPercentile(histogram, 50.0, 500000L);
+		assertPercentile(histogram, 99.0, 990000L);
+		assertEquals("Percentyl 100 nie może przekroczyć maksimum", 1000000L, histogram.getValueAtPercentile(100.0));
+
+		histogram.reset();
+		assertEquals("Liczba wartości po wyzerowaniu", 0L, histogram.getCount());
+		assertEquals("Wartość maksymalna po wyzerowaniu", 0L, histogram.getMax());
+	}
+
+	public void testBuckets() {
+		for (long value : new long[] { 0L, 1L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L, Long.MAX_VALUE }) {
+			int index = LatencyHistogram.bucketIndex(value);
+			long highest = LatencyHistogram.highestValueInBucket(index);
+			assertTrue("Wartość " + value + " poza kubełkiem", value <= highest);
+			assertTrue("Zbyt szeroki kubełek dla " + value,
+					highest - value <= value / LatencyHistogram.SUB_BUCKET_COUNT);
+		}
+	}
+
+	private static void assertPercentile(LatencyHistogram histogram, double percentile, long expected) {
+		long value = histogram.getValueAtPercentile(percentile);
+		assertTrue("Percentyl " + percentile + ": " + value, value >= expected
+				&& value <= expected + expected / LatencyHistogram.SUB_BUCKET_COUNT);
+	}
+
+}
@@ -0,0 +1,33 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.time.Duration;
+
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+
+import junit.framework.TestCase;
+
+public class CustomExpiryTest extends TestCase {
+
+	public void testEntryTimeToLive() {
+		CustomExpiry<String, Element> expiry = new CustomExpiry<>();
+		expiry.setTimeToLiveExpiration(Duration.ofSeconds(300L));
+		final Element shortLived = new Element("a", 5L);
+		final Element regionLived = new Element("b");
+		assertEquals("Czas życia elementu", Duration.ofSeconds(5L), expiry.getExpiryForCreation("a", shortLived));
+		assertEquals("Czas życia regionu", Duration.ofSeconds(300L), expiry.getExpiryForCreation("b", regionLived));
+		assertEquals("Aktualizacja elementu", Duration.ofSeconds(5L),
+				expiry.getExpiryForUpdate("a", () -> regionLived, shortLived));
+		assertNull("Odczyt nie przedłuża elementu", expiry.getExpiryForAccess("a", () -> shortLived));
+	}
+
+	public void testVersionAndBasePolicy() {
+		CustomExpiry<String, Element> expiry = new CustomExpiry<>(
+				ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(60L)));
+		assertEquals("Polityka bazowa", Duration.ofSeconds(60L), expiry.getExpiryForCreation("a", new Element("a")));
+		assertEquals("Wersja początkowa", 0L, expiry.getVersion());
+		assertEquals("Zmiana czasu życia", 1L, expiry.setTimeToLiveExpiration(Duration.ofSeconds(10L)));
+		assertEquals("Ten sam czas życia", 1L, expiry.setTimeToLiveExpiration(Duration.ofSeconds(10L)));
+		assertEquals("Czas życia regionu", Duration.ofSeconds(10L), expiry.getExpiryForCreation("a", new Element("a")));
+	}
+
+}
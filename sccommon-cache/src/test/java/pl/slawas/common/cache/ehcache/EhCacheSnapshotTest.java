@@ -0,0 +1,42 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.CommonCacheProviderTstSupport;
+import pl.slawas.common.cache.IObjectCacheProvider;
+import pl.slawas.common.cache.ITypedObjectCache;
+
+public class EhCacheSnapshotTest extends TestCase {
+
+	public void testRestart() throws Throwable {
+		File directory = Files.createTempDirectory("sccache-snapshot").toFile();
+		Properties props = CommonCacheProviderTstSupport.getProviderProperties("snapshotTest");
+		props.put(EhCacheConfig.PROP_SNAPSHOT_DIRECTORY, directory.getAbsolutePath());
+		props.put("groups." + EhCacheConfig.PROP_CACHE_SNAPSHOT, "true");
+
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(props);
+		ITypedObjectCache<Long, String> groups = provider.getCache("groups", Long.class, String.class);
+		for (long i = 0; i < 100; i++) {
+			groups.put(i, "group" + i);
+		}
+		provider.getCache("other", Long.class, String.class).put(1L, "other");
+		provider.close();
+
+		provider = CacheProviderFactory.getInstance(props);
+		try {
+			groups = provider.getCache("groups", Long.class, String.class);
+			assertEquals("Element załadowany z migawki", "group42", groups.get(42L));
+			assertEquals("Element załadowany z migawki", "group99", groups.get(99L));
+			assertNull("Region bez migawki startuje pusty",
+					provider.getCache("other", Long.class, String.class).get(1L));
+			assertEquals("Migawka usuwana po załadowaniu", 0, new File(directory, "snapshotTest").list().length);
+		} finally {
+			provider.close();
+		}
+	}
+
+}
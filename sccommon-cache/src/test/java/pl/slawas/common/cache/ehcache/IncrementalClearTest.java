@@ -0,0 +1,72 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.util.ArrayDeque;
+import java.util.Properties;
+import java.util.Queue;
+
+import org.ehcache.Cache;
+
+import junit.framework.TestCase;
+import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.CommonCacheProviderTstSupport;
+import pl.slawas.common.cache.IObjectCacheProvider;
+import pl.slawas.common.cache.ITypedObjectCache;
+
+public class IncrementalClearTest extends TestCase {
+
+	public void testIncrementalClear() throws Throwable {
+		Properties props = CommonCacheProviderTstSupport.getProviderProperties("incrementalClearTest");
+		props.put("sessions." + EhCacheConfig.PROP_CACHE_INCREMENTAL_CLEAR, "true");
+		props.put("sessions." + EhCacheConfig.PROP_CACHE_INCREMENTAL_CLEAR_BATCH_SIZE, "10");
+
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(props);
+		try {
+			ITypedObjectCache<Long, String> sessions = provider.getCache("sessions", Long.class, String.class);
+			/* zadania usuwania starych elementów wykonywane są przez test */
+			Queue<Runnable> tasks = new ArrayDeque<>();
+			((EhTypedCache<Long, String>) sessions).setIncrementalClear(tasks::add, 10);
+			for (long i = 0; i < 500; i++) {
+				sessions.put(i, "session" + i);
+			}
+			sessions.clear();
+			sessions.put(7L, "new");
+			for (long i = 0; i < 500; i++) {
+				if (i != 7L) {
+					assertNull("Element sprzed wyczyszczenia jest niewidoczny", sessions.get(i));
+					assertFalse("Element sprzed wyczyszczenia jest niewidoczny", sessions.contains(i));
+				}
+			}
+			assertEquals("Element zapisany po wyczyszczeniu", "new", sessions.get(7L));
+
+			long hits = sessions.getStatistics().getCacheHits();
+			tasks.poll().run();
+			/* zapis w trakcie usuwania starych elementów */
+			for (long i = 100; i < 110; i++) {
+				sessions.put(i, "again" + i);
+			}
+			while (!tasks.isEmpty()) {
+				tasks.poll().run();
+			}
+			assertEquals("Usuwanie starych elementów nie zawyża trafień", hits,
+					sessions.getStatistics().getCacheHits());
+			Cache<Long, String> ehCache = ((EhTypedCache<Long, String>) sessions).getEhCache();
+			assertEquals("Stare elementy usunięte w tle", 11, count(ehCache));
+			assertEquals("Element zapisany po wyczyszczeniu", "new", sessions.get(7L));
+			for (long i = 100; i < 110; i++) {
+				assertEquals("Element zapisany w trakcie usuwania", "again" + i, sessions.get(i));
+			}
+		} finally {
+			provider.close();
+		}
+	}
+
+	private static int count(Cache<Long, String> cache) {
+		int count = 0;
+		for (@SuppressWarnings("unused")
+		Cache.Entry<Long, String> entry : cache) {
+			count++;
+		}
+		return count;
+	}
+
+}
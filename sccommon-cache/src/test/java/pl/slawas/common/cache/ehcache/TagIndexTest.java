@@ -0,0 +1,47 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.CommonCacheProviderTstSupport;
+import pl.slawas.common.cache.IObjectCache;
+import pl.slawas.common.cache.IObjectCacheProvider;
+import pl.slawas.common.cache.ITypedObjectCache;
+
+public class TagIndexTest extends TestCase {
+
+	public void testInvalidateTag() throws Throwable {
+		Properties props = CommonCacheProviderTstSupport.getProviderProperties("tagIndexTest");
+
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(props);
+		try {
+			ITypedObjectCache<Long, String> users = provider.getCache("users", Long.class, String.class);
+			for (long i = 0; i < 100; i++) {
+				users.put(i, "user" + i, (i % 2 == 0 ? "tenantA" : "tenantB"), "ou=People");
+			}
+			users.put(1L, "user1", "tenantA");
+			users.put(3L, "user3");
+			users.remove(5L);
+
+			assertEquals("Usunięte elementy znacznika", 51, users.invalidateTag("tenantA"));
+			assertNull("Element ze znacznikiem usunięty", users.get(0L));
+			assertNull("Element ze zmienionym znacznikiem usunięty", users.get(1L));
+			assertEquals("Element bez znacznika pozostaje", "user3", users.get(3L));
+			assertEquals("Element innego znacznika pozostaje", "user7", users.get(7L));
+			assertEquals("Znacznik bez elementów", 0, users.invalidateTag("tenantA"));
+			assertEquals("Usunięte elementy drugiego znacznika", 47, users.invalidateTag("ou=People"));
+			assertEquals("Zapis bez znacznika usuwa znaczniki", "user3", users.get(3L));
+
+			IObjectCache objects = provider.getCache("objects");
+			objects.put("a", "valueA", "group");
+			objects.put("b", "valueB");
+			assertEquals("Usunięte elementy znacznika", 1, objects.invalidateTag("group"));
+			assertNull("Element ze znacznikiem usunięty", objects.get("a"));
+			assertEquals("Element bez znacznika pozostaje", "valueB", objects.get("b"));
+		} finally {
+			provider.close();
+		}
+	}
+
+}
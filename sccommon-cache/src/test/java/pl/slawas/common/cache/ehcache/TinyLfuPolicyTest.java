@@ -0,0 +1,85 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.CommonCacheProviderTstSupport;
+import pl.slawas.common.cache.IEntryWeigher;
+import pl.slawas.common.cache.IObjectCacheProvider;
+import pl.slawas.common.cache.ITypedObjectCache;
+
+public class TinyLfuPolicyTest extends TestCase {
+
+	public void testScanResistance() throws Throwable {
+		Properties props = CommonCacheProviderTstSupport.getProviderProperties("tinyLfuTest");
+		props.put("hot." + EhCacheConfig.PROP_CACHE_HEAP, "100");
+		props.put("hot." + EhCacheConfig.PROP_CACHE_ADMISSION, TinyLfuPolicy.ADMISSION_TINYLFU);
+
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(props);
+		try {
+			ITypedObjectCache<Long, String> hot = provider.getCache("hot", Long.class, String.class);
+			for (int round = 0; round < 5; round++) {
+				for (long i = 0; i < 50; i++) {
+					if (hot.get(i) == null) {
+						hot.put(i, "hot" + i);
+					}
+				}
+			}
+			/* jednorazowy odczyt wielu elementów nie może wypchnąć często używanych */
+			for (long i = 1000; i < 1500; i++) {
+				if (hot.get(i) == null) {
+					hot.put(i, "scan" + i);
+				}
+			}
+			int hits = 0;
+			for (long i = 0; i < 50; i++) {
+				if (hot.get(i) != null) {
+					hits++;
+				}
+			}
+			assertTrue("Często używane elementy zostały w regionie: " + hits, hits >= 45);
+		} finally {
+			provider.close();
+		}
+	}
+
+	public void testMaxWeight() throws Throwable {
+		Properties props = CommonCacheProviderTstSupport.getProviderProperties("weightTest");
+		props.put("weighted." + EhCacheConfig.PROP_CACHE_MAX_WEIGHT, "1000");
+		props.put("weighted." + EhCacheConfig.PROP_CACHE_WEIGHER, LengthWeigher.class.getName());
+
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(props);
+		try {
+			ITypedObjectCache<Long, String> weighted = provider.getCache("weighted", Long.class, String.class);
+			StringBuilder value = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				value.append('x');
+			}
+			for (long i = 0; i < 50; i++) {
+				weighted.put(i, value.toString());
+			}
+			assertEquals("Wybór ofiar nie zawyża trafień", 0L, weighted.getStatistics().getCacheHits());
+			assertEquals("Wybór ofiar nie zawyża trafień w pamięci", 0L,
+					weighted.getStatistics().getInMemoryHits());
+			int size = 0;
+			for (long i = 0; i < 50; i++) {
+				if (weighted.get(i) != null) {
+					size++;
+				}
+			}
+			assertEquals("Liczba elementów mieszczących się w limicie wagi", 10, size);
+		} finally {
+			provider.close();
+		}
+	}
+
+	public static class LengthWeigher implements IEntryWeigher<Long, String> {
+
+		@Override
+		public long weigh(Long key, String value) {
+			return value.length();
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package pl.slawas.common.cache.ehcache;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import pl.slawas.common.cache.CacheOperation;
+import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.CommonCacheProviderTstSupport;
+import pl.slawas.common.cache.ICacheWriter;
+import pl.slawas.common.cache.IObjectCacheProvider;
+import pl.slawas.common.cache.ITypedObjectCache;
+
+public class WriteBehindQueueTest extends TestCase {
+
+	private static final Map<Object, Object> store = new ConcurrentHashMap<>();
+
+	private static final AtomicInteger writes = new AtomicInteger();
+
+	/** Liczba kolejnych wywołań writera, które zakończą się błędem */
+	private static final AtomicInteger failures = new AtomicInteger();
+
+	public void testWriteBehind() throws Throwable {
+		store.clear();
+		writes.set(0);
+		failures.set(0);
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(getWriteBehindProperties("writeBehindTest"));
+		ITypedObjectCache<Long, String> orders = provider.getCache("orders", Long.class, String.class);
+		for (int i = 0; i < 10; i++) {
+			orders.put(1L, "order" + i);
+		}
+		orders.put(2L, "order2");
+		orders.remove(2L);
+		assertEquals("Odczyt zaległego zapisu", "order9", orders.get(1L));
+		assertNull("Odczyt zaległego usunięcia", orders.get(2L));
+		assertEquals("Zapisy jednego klucza są łączone", 2L, orders.getStatistics().getWriteBehindQueueSize());
+		assertTrue("Writer nie otrzymał jeszcze zmian", store.isEmpty());
+
+		provider.close();
+		assertEquals("Writer otrzymał ostatnią wartość", "order9", store.get(1L));
+		assertFalse("Writer otrzymał usunięcie", store.containsKey(2L));
+		assertEquals("Jeden zapis po połączeniu zmian", 1, writes.get());
+		assertEquals("Kolejka opróżniona", 0L, orders.getStatistics().getWriteBehindQueueSize());
+		assertEquals("Zapis jedną partią", 1L, orders.getStatistics().getOperationCount(CacheOperation.FLUSH));
+	}
+
+	public void testRetryFailedWrite() throws Throwable {
+		store.clear();
+		writes.set(0);
+		failures.set(1);
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(getWriteBehindProperties("writeBehindRetryTest"));
+		ITypedObjectCache<Long, String> orders = provider.getCache("orders", Long.class, String.class);
+		orders.put(1L, "order1");
+		provider.close();
+		assertEquals("Writer otrzymał zmianę przy ponowieniu zapisu", "order1", store.get(1L));
+		assertEquals("Błąd writera został wykorzystany", 0, failures.get());
+	}
+
+	public void testLostFailedWrite() throws Throwable {
+		store.clear();
+		writes.set(0);
+		failures.set(Integer.MAX_VALUE);
+		IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(getWriteBehindProperties("writeBehindLostTest"));
+		ITypedObjectCache<Long, String> orders = provider.getCache("orders", Long.class, String.class);
+		orders.put(1L, "order1");
+		assertEquals("Wartość w regionie mimo błędu writera", "order1", orders.get(1L));
+		provider.close();
+		failures.set(0);
+		assertTrue("Writer nie otrzymał zmiany", store.isEmpty());
+	}
+
+	/**
+	 * Parametry providera z regionem {@code orders} zapisywanym w tle przez
+	 * {@link StoreWriter} - zapis w tle tylko przy zamknięciu managera.
+	 */
+	private static Properties getWriteBehindProperties(String providerName) {
+		Properties props = CommonCacheProviderTstSupport.getProviderProperties(providerName);
+		props.put("orders." + EhCacheConfig.PROP_CACHE_WRITE_BEHIND, "true");
+		props.put("orders." + EhCacheConfig.PROP_CACHE_WRITER, StoreWriter.class.getName());
+		props.put("orders." + EhCacheConfig.PROP_CACHE_WRITE_BEHIND_DELAY_MILLIS, "3600000");
+		return props;
+	}
+
+	public static class StoreWriter implements ICacheWriter<Long, String> {
+
+		@Override
+		public void writeAll(Map<Long, String> entries) throws Exception {
+			if (failures.getAndUpdate(n -> (n > 0 ? n - 1 : 0)) > 0) {
+				throw new IllegalStateException("Źródło danych niedostępne");
+			}
+			writes.addAndGet(entries.size());
+			store.putAll(entries);
+		}
+
+		@Override
+		public void deleteAll(Set<Long> keys) throws Exception {
+			store.keySet().removeAll(keys);
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package pl.slawas.common.cache.invalidation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+import pl.slawas.common.cache.CacheConstants;
+
+public class InvalidationBusTest extends TestCase {
+
+	public void testBatchedInvalidation() throws Exception {
+		Properties props = new Properties();
+		props.setProperty(CacheConstants.PROP_INVALIDATION_CHANNEL, "InvalidationBusTest");
+		RecordingTarget sourceTarget = new RecordingTarget();
+		RecordingTarget remoteTarget = new RecordingTarget();
+		CountingTransport transport = new CountingTransport();
+		InvalidationBus source = new InvalidationBus("source", transport, sourceTarget, 60000L, 1000);
+		transport.open(props, source::receive);
+		InProcessInvalidationTransport remoteTransport = new InProcessInvalidationTransport();
+		InvalidationBus remote = new InvalidationBus("remote", remoteTransport, remoteTarget, 60000L, 1000);
+		remoteTransport.open(props, remote::receive);
+		try {
+			List<String> keys = new ArrayList<>();
+			for (int i = 0; i < 2500; i++) {
+				keys.add("key" + i);
+			}
+			source.invalidate("region", "key0");
+			source.invalidate("other", 1L);
+			source.invalidate("cleared", "a");
+			source.invalidateRegion("cleared");
+			/*
+			 * pełna paczka na końcu - wysyłka w tle obejmie wszystkie zgłoszenia, więc
+			 * liczba komunikatów nie zależy od kolejności wątków
+			 */
+			source.invalidateAll("region", keys);
+			source.flush();
+
+			assertEquals("Liczba komunikatów", 5, transport.sent);
+			assertEquals("Unieważnione klucze", new HashSet<Object>(keys), remoteTarget.keys.get("region"));
+			assertEquals("Klucz typu Long", new HashSet<Object>(Arrays.asList(1L)), remoteTarget.keys.get("other"));
+			assertEquals("Wyczyszczone regiony", Arrays.asList("cleared"), remoteTarget.cleared);
+			assertTrue("Własne komunikaty są pomijane", sourceTarget.keys.isEmpty() && sourceTarget.cleared.isEmpty());
+
+			source.invalidate("object", new Object());
+			source.flush();
+			assertTrue("Klucz, którego nie można przesłać, czyści region", remoteTarget.cleared.contains("object"));
+		} finally {
+			source.close();
+			remote.close();
+		}
+	}
+
+	private static class RecordingTarget implements InvalidationBus.Target {
+
+		private final Map<String, Set<Object>> keys = new ConcurrentHashMap<>();
+
+		private final List<String> cleared = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void invalidateLocal(String regionName, Collection<Object> regionKeys) {
+			keys.computeIfAbsent(regionName, r -> new HashSet<>()).addAll(regionKeys);
+		}
+
+		@Override
+		public void clearLocal(String regionName) {
+			cleared.add(regionName);
+		}
+	}
+
+	private static class CountingTransport extends InProcessInvalidationTransport {
+
+		private int sent = 0;
+
+		@Override
+		public void send(byte[] message) {
+			sent++;
+			super.send(message);
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package pl.slawas.common.cache.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+import org.hibernate.cache.spi.entry.StandardCacheEntryImpl;
+
+import junit.framework.TestCase;
+import pl.slawas.common.cache.ehcache.Element;
+
+public class CompactCodecTest extends TestCase {
+
+	private final CompactCodec codec = new CompactCodec(getClass().getClassLoader());
+
+	public void testRoundTrip() throws Exception {
+		Timestamp timestamp = new Timestamp(1500000000123L);
+		timestamp.setNanos(123456789);
+		Object[] values = { null, "zażółć", 1, -1L, Long.MIN_VALUE, Boolean.TRUE, 1.5d, 2.5f, (short) 3, (byte) 4,
+				'x', new Date(1500000000000L), timestamp, new BigDecimal("12.340"), new byte[] { 1, 2 },
+				new Serializable[] { "a", 2L }, Arrays.asList("java", "serialization") };
+		for (Object value : values) {
+			Object copy = codec.decode(codec.encode(value));
+			assertTrue("Wartość " + value, Objects.deepEquals(value, copy));
+		}
+		assertEquals("Typ tablicy", Serializable[].class,
+				codec.decode(codec.encode(new Serializable[] { "a" })).getClass());
+	}
+
+	public void testHibernateEntry() throws Exception {
+		Constructor<StandardCacheEntryImpl> constructor = StandardCacheEntryImpl.class
+				.getDeclaredConstructor(Serializable[].class, String.class, Object.class);
+		constructor.setAccessible(true);
+		StandardCacheEntryImpl entry = constructor.newInstance(
+				new Serializable[] { "Jan", "Kowalski", 42, new Date(1500000000000L), null }, "pl.slawas.User", 3);
+		Element element = new Element(entry, 60L);
+
+		byte[] compact = codec.encode(element);
+		Element copy = (Element) codec.decode(compact);
+		StandardCacheEntryImpl entryCopy = (StandardCacheEntryImpl) copy.getObjectValue();
+		assertEquals("Czas życia", 60L, copy.getTimeToLiveSeconds());
+		assertTrue("Stan encji", Arrays.equals(entry.getDisassembledState(), entryCopy.getDisassembledState()));
+		assertEquals("Klasa encji", entry.getSubclass(), entryCopy.getSubclass());
+		assertEquals("Wersja", entry.getVersion(), entryCopy.getVersion());
+		assertTrue("Format zwarty jest mniejszy od serializacji Java", compact.length * 4 < javaSize(element));
+	}
+
+	public void testQueryResults() throws Exception {
+		Class<?> itemClass = Class.forName("org.hibernate.cache.internal.QueryResultsCacheImpl$CacheItem");
+		Constructor<?> constructor = itemClass.getDeclaredConstructor(long.class, List.class);
+		constructor.setAccessible(true);
+		List<Object> results = Arrays.<Object>asList(1L, 2L, 3L, new Serializable[] { 4L, "Kowalski" });
+		Object item = constructor.newInstance(1500000000000L, results);
+
+		byte[] compact = codec.encode(item);
+		Object copy = codec.decode(compact);
+		assertEquals("Typ wyników", itemClass, copy.getClass());
+		assertEquals("Znacznik czasu", 1500000000000L, field(itemClass, "timestamp").getLong(copy));
+		assertTrue("Wyniki", Objects.deepEquals(results.toArray(),
+				((List<?>) field(itemClass, "results").get(copy)).toArray()));
+		assertTrue("Format zwarty jest mniejszy od serializacji Java", compact.length * 4 < javaSize(item));
+	}
+
+	private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+		Field field = type.getDeclaredField(name);
+		field.setAccessible(true);
+		return field;
+	}
+
+	private static int javaSize(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(value);
+		}
+		return bytes.size();
+	}
+
+}
@@ -0,0 +1,143 @@
+package pl.slawas.common.cache.threads;
+
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.slawas.common.cache.CacheConstants;
+import pl.slawas.common.cache.CacheProviderFactory;
+import pl.slawas.common.cache.IObjectCache;
+import pl.slawas.common.cache.IObjectCacheProvider;
+import pl.slawas.common.cache.ehcache.EhCacheConfig;
+import pl.slawas.common.cache.ehcache.EhCacheProvider;
+import pl.slawas.common.cache.ehcache._TstProperties;
+
+/**
+ *
+ * RegionRegistryContentionBenchmark - porównanie przepustowości pobierania
+ * istniejących regionów przez {@link EhCacheProvider#getCache(String)} z
+ * poprzednią implementacją (blokada na internowanym {@link String} +
+ * {@link HashMap}) przy dużej liczbie wątków.
+ * <p>
+ * Nie jest to test jednostkowy - uruchamiany ręcznie metodą
+ * {@link #main(String[])}, argumenty (opcjonalne): liczba wątków (domyślnie
+ * 64), liczba pobrań na wątek (domyślnie 200000), liczba regionów (domyślnie
+ * 8).
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public class RegionRegistryContentionBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(RegionRegistryContentionBenchmark.class);
+
+	private static final String REGION_PREFIX = "RegionRegistryContentionBenchmark.";
+
+	public static void main(String[] args) throws InterruptedException {
+		final int threads = (args.length > 0 ? Integer.parseInt(args[0]) : 64);
+		final int iterations = (args.length > 1 ? Integer.parseInt(args[1]) : 200000);
+		final int regionCount = (args.length > 2 ? Integer.parseInt(args[2]) : 8);
+
+		Hashtable<String, String> testProperties = _TstProperties.loadProperties();
+		Properties props = EhCacheConfig.getInstance().getPropertyList();
+		props.putAll(testProperties);
+		props.put(CacheConstants.PROP_PROVIDER_IMPL, EhCacheProvider.class.getName());
+		final IObjectCacheProvider<?> provider = CacheProviderFactory.getInstance(props);
+		try {
+			final String[] regionNames = new String[regionCount];
+			for (int i = 0; i < regionCount; i++) {
+				regionNames[i] = REGION_PREFIX + i;
+				provider.getCache(regionNames[i]);
+			}
+			final LegacyRegistry legacy = new LegacyRegistry(provider.getName(), provider::getCache);
+
+			/* rozgrzewka */
+			run("warmup-current", threads, iterations / 10, regionNames, provider::getCache);
+			run("warmup-legacy", threads, iterations / 10, regionNames, legacy::getCache);
+
+			long legacyOps = run("legacy (intern + HashMap)", threads, iterations, regionNames, legacy::getCache);
+			long currentOps = run("current (ConcurrentHashMap)", threads, iterations, regionNames,
+					provider::getCache);
+			logger.info("-->main: threads={}, speedup={}", threads,
+					String.format("%.2f", (double) currentOps / (legacyOps == 0 ? 1 : legacyOps)));
+		} finally {
+			for (int i = 0; i < regionCount; i++) {
+				provider.removeCache(REGION_PREFIX + i);
+			}
+			provider.close();
+		}
+	}
+
+	/**
+	 * Uruchomienie pomiaru.
+	 *
+	 * @return liczba pobrań na sekundę
+	 */
+	private static long run(final String label, final int threads, final int iterations,
+			final String[] regionNames, final Function<String, IObjectCache> lookup) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicLong blackhole = new AtomicLong();
+		for (int t = 0; t < threads; t++) {
+			final int offset = t;
+			Thread worker = new Thread(() -> {
+				long local = 0L;
+				try {
+					start.await();
+					for (int i = 0; i < iterations; i++) {
+						local += lookup.apply(regionNames[(offset + i) % regionNames.length]).hashCode();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					blackhole.addAndGet(local);
+					done.countDown();
+				}
+			}, "contention-" + t);
+			worker.setDaemon(true);
+			worker.start();
+		}
+		long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - startTime;
+		long ops = (long) threads * iterations * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsed, 1L);
+		logger.info("-->run: {}: threads={}, lookups={}, time={} ms, {} lookups/s [{}]", new Object[] { label, threads,
+				(long) threads * iterations, TimeUnit.NANOSECONDS.toMillis(elapsed), ops, blackhole.get() & 1 });
+		return ops;
+	}
+
+	/**
+	 * Odtworzenie poprzedniego sposobu rejestracji regionów w
+	 * {@link EhCacheProvider}.
+	 */
+	private static class LegacyRegistry {
+
+		private final String providerName;
+		private final Function<String, IObjectCache> factory;
+		private final Map<String, IObjectCache> caches = new HashMap<>();
+
+		LegacyRegistry(String providerName, Function<String, IObjectCache> factory) {
+			this.providerName = providerName;
+			this.factory = factory;
+		}
+
+		IObjectCache getCache(String name) {
+			String lock = ("EhCacheProvider[" + providerName + "].getCache." + name).intern();
+			synchronized (lock) {
+				return caches.computeIfAbsent(name, factory);
+			}
+		}
+	}
+
+}
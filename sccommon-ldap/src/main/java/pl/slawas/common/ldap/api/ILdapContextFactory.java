@@ -29,7 +29,7 @@ import pl.slawas.common.ldap.provider.ProviderOptions;
  * LdapContextFactory
  *
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.2 $
  *
  */
 public interface ILdapContextFactory {
@@ -46,6 +46,20 @@ public interface ILdapContextFactory {
 
 	List<LdapResult> manyEntrySearch(String[] attrs, String searchFilter) throws NamingException;
 
+	/**
+	 * Wyszukiwanie wielu entry bez gromadzenia wyników - każdy wynik jest
+	 * przekazywany do obiektu {@code visitor} zaraz po odczytaniu z LDAP.
+	 * 
+	 * @param attrs
+	 *            lista pobieranych atrybutów
+	 * @param searchFilter
+	 *            filtr wyszukiwania
+	 * @param visitor
+	 *            odbiorca wyników
+	 * @throws NamingException
+	 */
+	void manyEntrySearch(String[] attrs, String searchFilter, ILdapResultVisitor visitor) throws NamingException;
+
 	/**
 	 * Dodawanie nowego entry do LDAP, przed dodaniem zostanie zweryfikowana
 	 * unikalność nazwy entry.
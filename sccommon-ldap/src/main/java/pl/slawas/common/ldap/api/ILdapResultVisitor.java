@@ -0,0 +1,53 @@
+/*
+ * Slawas.pl Copyright &copy; 2011-2012 
+ * http://slawas.pl 
+ * All rights reserved.
+ * 
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN
+ * NO EVENT SHALL SŁAWOMIR CICHY BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package pl.slawas.common.ldap.api;
+
+import javax.naming.NamingException;
+
+import pl.slawas.common.ldap.provider.LdapResult;
+
+/**
+ * 
+ * ILdapResultVisitor - odbiorca kolejnych wyników wyszukiwania
+ * {@link ILdapContextFactory#manyEntrySearch(String[], String, ILdapResultVisitor)}.
+ * Wyniki przekazywane są w trakcie odczytu stron wyniku z LDAP, a kolejna
+ * strona jest pobierana dopiero po obsłużeniu poprzedniej, więc wyniki nie
+ * muszą być przechowywane w pamięci do zakończenia wyszukiwania.
+ * <p>
+ * Metoda {@link #visit(LdapResult)} jest wywoływana w trakcie trwania
+ * wyszukiwania - nie powinna korzystać z tej samej fabryki kontekstu LDAP.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
+ * @version $Revision: 1.1 $
+ *
+ */
+public interface ILdapResultVisitor {
+
+	/**
+	 * Obsługa kolejnego wyniku wyszukiwania.
+	 * 
+	 * @param result
+	 *            wynik wyszukiwania
+	 * @return {@code true} - wyszukiwanie ma być kontynuowane, {@code false} -
+	 *         wyszukiwanie ma zostać przerwane
+	 * @throws NamingException
+	 */
+	boolean visit(LdapResult result) throws NamingException;
+
+}
@@ -16,15 +16,19 @@
 package pl.slawas.common.ldap.api;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.naming.NamingException;
 
+import pl.slawas.common.ldap.provider.ProviderOptions;
+
 /**
  * 
  * _LdapUserGroupAO
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.4 $
  *
  * @param <T>
  */
@@ -33,4 +37,59 @@ public interface ILdapUserGroupAO<T extends ILdapEntry> extends ILdapAO<T> {
 	T loadPrimaryUserGroup(String[] userArgs) throws NamingException;
 
 	List<T> loadUserGroups(String[] userArgs) throws NamingException;
+
+	/**
+	 * Wyszukiwanie grup wielu użytkowników. Filtry grup użytkowników łączone są w
+	 * zapytania {@code (|...)} obejmujące partie użytkowników, a grupy
+	 * przypisywane są użytkownikom na podstawie listy członków grupy.
+	 * 
+	 * @param usersArgs
+	 *            lista argumentów filtrów użytkowników: {nazwa, DN}
+	 * @return mapa DN użytkownika (w postaci z argumentów) - lista grup
+	 *         użytkownika
+	 * @throws NamingException
+	 */
+	Map<String, List<T>> loadUsersGroups(List<String[]> usersArgs) throws NamingException;
+
+	/**
+	 * Wyszukiwanie domyślnych grup wielu użytkowników - odpowiednik
+	 * {@link #loadPrimaryUserGroup(String[])} realizowany jak
+	 * {@link #loadUsersGroups(List)}.
+	 * 
+	 * @param usersArgs
+	 *            lista argumentów filtrów użytkowników: {nazwa, DN}
+	 * @return mapa DN użytkownika (w postaci z argumentów) - domyślna grupa
+	 *         użytkownika
+	 * @throws NamingException
+	 */
+	Map<String, T> loadPrimaryUsersGroups(List<String[]> usersArgs) throws NamingException;
+
+	/**
+	 * Załadowanie grup zmienionych od ostatniej synchronizacji - grup, których
+	 * atrybut {@link ProviderOptions#getGroupChangeAttribute()} ma wartość nie
+	 * mniejszą niż {@code changeMarker} - i dodanie ich do mapy jak w
+	 * {@link #mergeAllAsMap(Map)}. Wartości atrybutu zmiany (np.
+	 * {@code uSNChanged} w AD) są lokalne dla serwera LDAP - {@code changeMarker}
+	 * ma sens tylko dla serwera, z którego został odczytany (zobacz
+	 * {@link ProviderOptions#isSingleServer()}).
+	 * 
+	 * @param target
+	 *            istniejąca mapa elementów
+	 * @param changeMarker
+	 *            największa wartość atrybutu zmiany z poprzedniej synchronizacji,
+	 *            {@code null} - ładowane są wszystkie grupy
+	 * @return największa wartość atrybutu zmiany wśród załadowanych grup albo
+	 *         {@code changeMarker}, gdy żadna grupa się nie zmieniła
+	 * @throws NamingException
+	 */
+	String mergeChangedAsMap(Map<String, T> target, String changeMarker) throws NamingException;
+
+	/**
+	 * Pobranie DN wszystkich grup jednostki (bez pozostałych atrybutów) - do
+	 * wykrywania grup usuniętych z LDAP.
+	 * 
+	 * @return zbiór DN grup zapisanych wielkimi literami
+	 * @throws NamingException
+	 */
+	Set<String> loadAllDNs() throws NamingException;
 }
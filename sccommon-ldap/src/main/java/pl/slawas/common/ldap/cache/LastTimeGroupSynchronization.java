@@ -4,10 +4,14 @@ import java.io.Serializable;
 
 /**
  * 
- * LastTimeGroupSynchronization klasa pomocnicza
+ * LastTimeGroupSynchronization klasa pomocnicza - stan synchronizacji grup
+ * jednostki organizacyjnej: czas ostatniej synchronizacji, czas ostatniego
+ * wyszukiwania grup usuniętych oraz największa wartość atrybutu zmiany
+ * ({@code ProviderOptions#getGroupChangeAttribute()}) wśród pobranych grup
+ * wraz z adresem serwera, z którego ją odczytano.
  * 
  * @author Sławomir Cichy &lt;scichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.3 $
  * 
  */
 public class LastTimeGroupSynchronization implements Serializable {
@@ -16,6 +20,22 @@ public class LastTimeGroupSynchronization implements Serializable {
 
 	private Long value = 0L;
 
+	/** Czas ostatniego wyszukiwania grup usuniętych z LDAP */
+	private Long sweepValue = 0L;
+
+	/**
+	 * Największa wartość atrybutu zmiany pobranych grup, {@code null} - następna
+	 * synchronizacja pobierze wszystkie grupy
+	 */
+	private String changeMarker;
+
+	/**
+	 * Adres serwera LDAP ({@code ProviderOptions#getProviderUrl()}), z którego
+	 * odczytano {@link #changeMarker} - wartości atrybutu zmiany są lokalne dla
+	 * serwera
+	 */
+	private String changeMarkerServer;
+
 	/**
 	 * @return the {@link #value}
 	 */
@@ -31,4 +51,49 @@ public class LastTimeGroupSynchronization implements Serializable {
 		this.value = value;
 	}
 
+	/**
+	 * @return the {@link #sweepValue}
+	 */
+	public Long getSweepValue() {
+		return sweepValue;
+	}
+
+	/**
+	 * @param sweepValue
+	 *            the {@link #sweepValue} to set
+	 */
+	public void setSweepValue(Long sweepValue) {
+		this.sweepValue = sweepValue;
+	}
+
+	/**
+	 * @return the {@link #changeMarker}
+	 */
+	public String getChangeMarker() {
+		return changeMarker;
+	}
+
+	/**
+	 * @param changeMarker
+	 *            the {@link #changeMarker} to set
+	 */
+	public void setChangeMarker(String changeMarker) {
+		this.changeMarker = changeMarker;
+	}
+
+	/**
+	 * @return the {@link #changeMarkerServer}
+	 */
+	public String getChangeMarkerServer() {
+		return changeMarkerServer;
+	}
+
+	/**
+	 * @param changeMarkerServer
+	 *            the {@link #changeMarkerServer} to set
+	 */
+	public void setChangeMarkerServer(String changeMarkerServer) {
+		this.changeMarkerServer = changeMarkerServer;
+	}
+
 }
@@ -16,9 +16,12 @@
  */
 package pl.slawas.common.ldap.cache;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.naming.NamingException;
 
@@ -29,6 +32,8 @@ import pl.slawas.common.ldap.api.ILdapUserGroup;
 import pl.slawas.common.ldap.api.ILdapUserGroupAO;
 import pl.slawas.common.ldap.dao.LdapAOHelper;
 import pl.slawas.common.ldap.provider.LdapObjectFactorySupport;
+import pl.slawas.common.ldap.provider.LdapUnitsSearch;
+import pl.slawas.common.ldap.provider.LdapUnitsSearch.IUnitSearch;
 import pl.slawas.common.ldap.provider.ProviderOptions;
 import pl.slawas.common.ldap.provider.beans.GroupCacheHashTable;
 import org.slf4j.Logger;
@@ -41,7 +46,7 @@ import org.slf4j.LoggerFactory;
  * managerów.
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.4 $
  * 
  */
 public class LdapGroupsCache<G extends ILdapUserGroup> {
@@ -178,7 +183,17 @@ public class LdapGroupsCache<G extends ILdapUserGroup> {
 	}
 
 	/**
-	 * Odświeżenie/synchronizacja regionu pamięci z listami grup.
+	 * Odświeżenie/synchronizacja regionu pamięci z listami grup. Ładowanie grup z
+	 * LDAP blokuje tylko region jednostki organizacyjnej, więc regiony różnych
+	 * jednostek mogą być ładowane równolegle.
+	 * <p>
+	 * Gdy {@link ProviderOptions#getGroupSweepPeriod()} jest większe od 0,
+	 * przebudowa istniejącego regionu pobiera tylko grupy zmienione od ostatniej
+	 * synchronizacji (wg {@link ProviderOptions#getGroupChangeAttribute()}), a
+	 * grupy usunięte z LDAP wyszukiwane są najwyżej raz na ten okres. Wszystkie
+	 * grupy pobierane są przy pierwszym ładowaniu regionu oraz gdy synchronizacja
+	 * zmian się nie powiedzie.
+	 * </p>
 	 * 
 	 * @param laoObject
 	 *            PAMIETAJ!.... Obiekt nie jest zamykany! po wyjściu zadbaj by był
@@ -197,33 +212,89 @@ public class LdapGroupsCache<G extends ILdapUserGroup> {
 			logger.debug("-->loadRegionUserGroupCacheList: {}", organizationalUnitName);
 		}
 
-		synchronized (groupsCacheByName) {
+		Object regionLock = (getClass().getSimpleName() + ".loadRegionUserGroupCacheList." + organizationalUnitName)
+				.intern();
+		synchronized (regionLock) {
 
-			GroupCacheHashTable<G> oCacheByName = groupsCacheByName.get(organizationalUnitName);
+			GroupCacheHashTable<G> oCacheByName;
+			synchronized (groupsCacheByName) {
+				oCacheByName = groupsCacheByName.get(organizationalUnitName);
+			}
 			if (oCacheByName == null) {
 				oCacheByName = new GroupCacheHashTable<>();
 			}
 			if (oCacheByName.isEmpty() || rebuild) {
-				// przebudowuję obiekty pamięci podręcznej.
-				/* na początek z nazwą grupy jako klucz */
-				try {
-					laoObject.mergeAllAsMap(oCacheByName);
-				} catch (NamingException e) {
-					logger.error("listAllGroups", e);
-					oCacheByName.clear();
+				GroupCacheHashTable<G> oCacheByDN;
+				synchronized (groupsCacheByDN) {
+					oCacheByDN = groupsCacheByDN.get(organizationalUnitName);
+				}
+				ProviderOptions ldapOptions = laoObject.getLo();
+				long sweepPeriod = ldapOptions.getGroupSweepPeriod();
+				LastTimeGroupSynchronization lastSync = getLastTimeGroupSynchronization(organizationalUnitName);
+				long now = System.currentTimeMillis();
+				String server = ldapOptions.getProviderUrl();
+				boolean changesMerged = false;
+				if (sweepPeriod > 0 && !ldapOptions.isSingleServer()) {
+					/* wartości atrybutu zmiany różnych serwerów nie są porównywalne */
+					logger.debug("-->loadRegionUserGroupCacheList: {} is not a single server, loading all groups of {}",
+							server, organizationalUnitName);
+				} else if (sweepPeriod > 0 && !oCacheByName.isEmpty() && oCacheByDN != null
+						&& lastSync.getChangeMarker() != null && server.equals(lastSync.getChangeMarkerServer())) {
+					/* synchronizacja tylko grup zmienionych od ostatniej synchronizacji */
+					try {
+						mergeChangedGroups(laoObject, lastSync, oCacheByName, oCacheByDN);
+						if (now - lastSync.getSweepValue() >= sweepPeriod) {
+							removeDeletedGroups(laoObject, oCacheByName, oCacheByDN);
+							lastSync.setSweepValue(now);
+						}
+						changesMerged = true;
+					} catch (NamingException e) {
+						logger.warn(String.format("Synchronizacja zmienionych grup jednostki %s nie powiodła się, "
+								+ "pobieram wszystkie grupy", organizationalUnitName), e);
+					}
 				}
-				/* zapisuję wynik do pamięci podręcznej */
-				groupsCacheByName.put(organizationalUnitName, oCacheByName);
+				if (!changesMerged) {
+					// przebudowuję obiekty pamięci podręcznej.
+					/* na początek z nazwą grupy jako klucz */
+					if (sweepPeriod > 0) {
+						/* nowa tablica - grupy usunięte z LDAP znikają z regionu */
+						GroupCacheHashTable<G> loaded = new GroupCacheHashTable<>();
+						try {
+							lastSync.setChangeMarker(laoObject.mergeChangedAsMap(loaded, null));
+							lastSync.setChangeMarkerServer(server);
+							lastSync.setSweepValue(now);
+						} catch (NamingException e) {
+							logger.error("listAllGroups", e);
+							loaded.clear();
+							lastSync.setChangeMarker(null);
+						}
+						oCacheByName = loaded;
+					} else {
+						try {
+							laoObject.mergeAllAsMap(oCacheByName);
+						} catch (NamingException e) {
+							logger.error("listAllGroups", e);
+							oCacheByName.clear();
+						}
+					}
+					/* zapisuję wynik do pamięci podręcznej */
+					synchronized (groupsCacheByName) {
+						groupsCacheByName.put(organizationalUnitName, oCacheByName);
+					}
 
-				/* teraz z DN grupy jako klucz */
-				GroupCacheHashTable<G> oCacheByDN = new GroupCacheHashTable<>();
-				for (G g : oCacheByName.values()) {
-					if (g.getDn() != null) {
-						oCacheByDN.put(g.getDn(), g);
+					/* teraz z DN grupy jako klucz */
+					oCacheByDN = new GroupCacheHashTable<>();
+					for (G g : oCacheByName.values()) {
+						if (g.getDn() != null) {
+							oCacheByDN.put(g.getDn(), g);
+						}
+					}
+					/* zapisuję wynik do pamięci podręcznej */
+					synchronized (groupsCacheByDN) {
+						groupsCacheByDN.put(organizationalUnitName, oCacheByDN);
 					}
 				}
-				/* zapisuję wynik do pamięci podręcznej */
-				groupsCacheByDN.put(organizationalUnitName, oCacheByDN);
+				lastSync.setValue(now);
 
 				if (logger.isTraceEnabled()) {
 					StringBuilder sb = new StringBuilder();
@@ -254,7 +325,61 @@ public class LdapGroupsCache<G extends ILdapUserGroup> {
 	}
 
 	/**
-	 * Metoda podręczna pobierania grup z LDAP'a
+	 * Aktualizacja regionu grupami zmienionymi od ostatniej synchronizacji - w
+	 * obu tablicach: po nazwie i po DN.
+	 */
+	private void mergeChangedGroups(ILdapUserGroupAO<G> laoObject, LastTimeGroupSynchronization lastSync,
+			GroupCacheHashTable<G> oCacheByName, GroupCacheHashTable<G> oCacheByDN) throws NamingException {
+		Map<String, G> changed = new HashMap<>();
+		String changeMarker = laoObject.mergeChangedAsMap(changed, lastSync.getChangeMarker());
+		for (G group : changed.values()) {
+			if (group.getDn() != null) {
+				G oldGroup = oCacheByDN.put(group.getDn(), group);
+				if (oldGroup != null && oldGroup.getName() != null
+						&& !oldGroup.getName().equalsIgnoreCase(group.getName())) {
+					/* zmiana nazwy grupy */
+					oCacheByName.remove(oldGroup.getName());
+				}
+			}
+			oCacheByName.put(group.getName(), group);
+		}
+		lastSync.setChangeMarker(changeMarker);
+		if (logger.isDebugEnabled()) {
+			logger.debug("-->mergeChangedGroups: {} changed groups in {}, change marker: {}",
+					new Object[] { changed.size(), laoObject.getOrganizationalUnitName(), changeMarker });
+		}
+	}
+
+	/**
+	 * Usunięcie z regionu grup, których nie ma już w LDAP.
+	 */
+	private void removeDeletedGroups(ILdapUserGroupAO<G> laoObject, GroupCacheHashTable<G> oCacheByName,
+			GroupCacheHashTable<G> oCacheByDN) throws NamingException {
+		Set<String> dns = laoObject.loadAllDNs();
+		int removed = 0;
+		for (String dn : new ArrayList<>(oCacheByDN.keySet())) {
+			if (dns.contains(dn)) {
+				continue;
+			}
+			G group = oCacheByDN.remove(dn);
+			if (group != null && group.getName() != null) {
+				G byName = oCacheByName.get(group.getName());
+				if (byName != null && dn.equalsIgnoreCase(byName.getDn())) {
+					oCacheByName.remove(group.getName());
+				}
+			}
+			removed++;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("-->removeDeletedGroups: {} deleted groups in {}",
+					new Object[] { removed, laoObject.getOrganizationalUnitName() });
+		}
+	}
+
+	/**
+	 * Metoda podręczna pobierania grup z LDAP'a. Regiony jednostek
+	 * organizacyjnych ładowane są równolegle ({@link LdapUnitsSearch}) i scalane w
+	 * kolejności jednostek z konfiguracji.
 	 * 
 	 * @param objectFactory
 	 *            implementacja fabryki obiektów dostępu do repozytorium
@@ -267,23 +392,31 @@ public class LdapGroupsCache<G extends ILdapUserGroup> {
 	 */
 	@SuppressWarnings("deprecation")
 	public <L extends ILdapUser<G>> GroupCacheHashTable<G> loadUserGroupCacheList(
-			LdapObjectFactorySupport<L, G> objectFactory, ProviderOptions ldapOptions, boolean rebuild) {
+			final LdapObjectFactorySupport<L, G> objectFactory, final ProviderOptions ldapOptions,
+			final boolean rebuild) {
 		String[] organizationalUnitArray = ldapOptions.getGroupsOrganizationalUnitNames();
 
-		GroupCacheHashTable<G> result = new GroupCacheHashTable<>();
+		List<GroupCacheHashTable<G>> regions = LdapUnitsSearch.searchAll(ldapOptions, organizationalUnitArray,
+				new IUnitSearch<GroupCacheHashTable<G>>() {
 
-		for (String organizationalUnit : organizationalUnitArray) {
-			/** modyfikacja/aktualizacja/pobieranie regionu groupsCacheByName */
-			ILdapUserGroupAO<G> laoObject = null;
-			try {
-				laoObject = objectFactory.getNewInstanceUserGroupAO(ldapOptions, organizationalUnit);
-				GroupCacheHashTable<G> regionOfCache = loadRegionUserGroupCacheList(laoObject, rebuild);
-				result.putAll(regionOfCache);
-			} finally {
-				if (laoObject != null) {
-					laoObject.close();
-				}
-			}
+					@Override
+					public GroupCacheHashTable<G> search(String organizationalUnit) {
+						/** modyfikacja/aktualizacja/pobieranie regionu groupsCacheByName */
+						ILdapUserGroupAO<G> laoObject = null;
+						try {
+							laoObject = objectFactory.getNewInstanceUserGroupAO(ldapOptions, organizationalUnit);
+							return loadRegionUserGroupCacheList(laoObject, rebuild);
+						} finally {
+							if (laoObject != null) {
+								laoObject.close();
+							}
+						}
+					}
+				});
+
+		GroupCacheHashTable<G> result = new GroupCacheHashTable<>();
+		for (GroupCacheHashTable<G> regionOfCache : regions) {
+			result.putAll(regionOfCache);
 		}
 		return result;
 	}
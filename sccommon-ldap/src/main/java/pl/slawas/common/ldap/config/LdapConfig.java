@@ -20,7 +20,7 @@ import pl.slawas.security.PasswordEncoder;
  * LdapConfig - klasa zarządzająca parametrami konfiguracji provider'a LDAP'a.
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.4 $
+ * @version $Revision: 1.8 $
  * 
  */
 @XmlRootElement(name = "ldap-options")
@@ -325,6 +325,34 @@ public class LdapConfig extends LdapConfigOptions implements Serializable {
 	 * Rozmiar strony dla wyniku wyszukiwania w LDAP.
 	 */
 	private String ldapResultPageSize;
+	/**
+	 * Maksymalna liczba połączeń w puli połączeń LDAP.
+	 */
+	private String ldapPoolMaxSize;
+	/**
+	 * Maksymalny czas oczekiwania [ms] na wolne połączenie z puli.
+	 */
+	private String ldapPoolMaxWait;
+	/**
+	 * Czas bezczynności [ms], po którym połączenie z puli jest zamykane.
+	 */
+	private String ldapPoolMaxIdleTime;
+	/**
+	 * Liczba użytkowników, których grupy wyszukiwane są jednym zapytaniem.
+	 */
+	private String groupBatchSize;
+	/**
+	 * Liczba jednostek organizacyjnych przeszukiwanych równolegle.
+	 */
+	private String unitSearchParallelism;
+	/**
+	 * Nazwa atrybutu grupy zmienianego przy każdej modyfikacji entry.
+	 */
+	private String groupChangeAttribute;
+	/**
+	 * Okres [ms] wyszukiwania grup usuniętych z LDAP.
+	 */
+	private String groupSweepPeriod;
 	/**
 	 * Nazwa opcji dla: Czy nadpisać ustawienia użytkownika ustawieniami domyślnymi?
 	 * Dotyczy tylko parametru {@link ProviderOptions#getDefaultTaskNotification()}.
@@ -408,6 +436,13 @@ public class LdapConfig extends LdapConfigOptions implements Serializable {
 		defaultAlertOnAssignAndRun = (String) options.get(option_defaultAlertOnAssignAndRun);
 		userGroupOptionsAreDefinded = (String) options.get(option_userGroupOptionsAreDefinded);
 		ldapResultPageSize = (String) options.get(option_ldapResultPageSize);
+		ldapPoolMaxSize = (String) options.get(option_ldapPoolMaxSize);
+		ldapPoolMaxWait = (String) options.get(option_ldapPoolMaxWait);
+		ldapPoolMaxIdleTime = (String) options.get(option_ldapPoolMaxIdleTime);
+		groupBatchSize = (String) options.get(option_groupBatchSize);
+		unitSearchParallelism = (String) options.get(option_unitSearchParallelism);
+		groupChangeAttribute = (String) options.get(option_groupChangeAttribute);
+		groupSweepPeriod = (String) options.get(option_groupSweepPeriod);
 
 		/* Ustawianie jednostek organizacyjnych użytkowników */
 		String uOrganizationalUnitNames = (String) options.get(option_usersOrganizationalUnitNames);
@@ -511,6 +546,13 @@ public class LdapConfig extends LdapConfigOptions implements Serializable {
 		out.put(option_defaultAlertOnAssignAndRun, defaultAlertOnAssignAndRun);
 		out.put(option_userGroupOptionsAreDefinded, userGroupOptionsAreDefinded);
 		out.put(option_ldapResultPageSize, ldapResultPageSize);
+		out.put(option_ldapPoolMaxSize, ldapPoolMaxSize);
+		out.put(option_ldapPoolMaxWait, ldapPoolMaxWait);
+		out.put(option_ldapPoolMaxIdleTime, ldapPoolMaxIdleTime);
+		out.put(option_groupBatchSize, groupBatchSize);
+		out.put(option_unitSearchParallelism, unitSearchParallelism);
+		out.put(option_groupChangeAttribute, groupChangeAttribute);
+		out.put(option_groupSweepPeriod, groupSweepPeriod);
 
 		String uOrganizationalUnitNames = null;
 		if (usersOrganizationalUnitNamesOptions != null) {
@@ -1064,6 +1106,111 @@ public class LdapConfig extends LdapConfigOptions implements Serializable {
 		this.ldapResultPageSize = ldapResultPageSize;
 	}
 
+	/**
+	 * @return the {@link #ldapPoolMaxSize}
+	 */
+	public String getLdapPoolMaxSize() {
+		return ldapPoolMaxSize;
+	}
+
+	/**
+	 * @param ldapPoolMaxSize
+	 *            the {@link #ldapPoolMaxSize} to set
+	 */
+	public void setLdapPoolMaxSize(String ldapPoolMaxSize) {
+		this.ldapPoolMaxSize = ldapPoolMaxSize;
+	}
+
+	/**
+	 * @return the {@link #ldapPoolMaxWait}
+	 */
+	public String getLdapPoolMaxWait() {
+		return ldapPoolMaxWait;
+	}
+
+	/**
+	 * @param ldapPoolMaxWait
+	 *            the {@link #ldapPoolMaxWait} to set
+	 */
+	public void setLdapPoolMaxWait(String ldapPoolMaxWait) {
+		this.ldapPoolMaxWait = ldapPoolMaxWait;
+	}
+
+	/**
+	 * @return the {@link #ldapPoolMaxIdleTime}
+	 */
+	public String getLdapPoolMaxIdleTime() {
+		return ldapPoolMaxIdleTime;
+	}
+
+	/**
+	 * @param ldapPoolMaxIdleTime
+	 *            the {@link #ldapPoolMaxIdleTime} to set
+	 */
+	public void setLdapPoolMaxIdleTime(String ldapPoolMaxIdleTime) {
+		this.ldapPoolMaxIdleTime = ldapPoolMaxIdleTime;
+	}
+
+	/**
+	 * @return the {@link #groupBatchSize}
+	 */
+	public String getGroupBatchSize() {
+		return groupBatchSize;
+	}
+
+	/**
+	 * @param groupBatchSize
+	 *            the {@link #groupBatchSize} to set
+	 */
+	public void setGroupBatchSize(String groupBatchSize) {
+		this.groupBatchSize = groupBatchSize;
+	}
+
+	/**
+	 * @return the {@link #unitSearchParallelism}
+	 */
+	public String getUnitSearchParallelism() {
+		return unitSearchParallelism;
+	}
+
+	/**
+	 * @param unitSearchParallelism
+	 *            the {@link #unitSearchParallelism} to set
+	 */
+	public void setUnitSearchParallelism(String unitSearchParallelism) {
+		this.unitSearchParallelism = unitSearchParallelism;
+	}
+
+	/**
+	 * @return the {@link #groupChangeAttribute}
+	 */
+	public String getGroupChangeAttribute() {
+		return groupChangeAttribute;
+	}
+
+	/**
+	 * @param groupChangeAttribute
+	 *            the {@link #groupChangeAttribute} to set
+	 */
+	public void setGroupChangeAttribute(String groupChangeAttribute) {
+		this.groupChangeAttribute = groupChangeAttribute;
+	}
+
+	/**
+	 * @return the {@link #groupSweepPeriod}
+	 */
+	public String getGroupSweepPeriod() {
+		return groupSweepPeriod;
+	}
+
+	/**
+	 * @param groupSweepPeriod
+	 *            the {@link #groupSweepPeriod} to set
+	 */
+	public void setGroupSweepPeriod(String groupSweepPeriod) {
+		this.groupSweepPeriod = groupSweepPeriod;
+	}
+
 	/**
 	 * @return the {@link #usersOrganizationalUnitNames}
 	 * @deprecated Metoda powstała ze względu na możliwość obsługi wielu
@@ -28,7 +28,7 @@ import pl.slawas.security.PasswordEncoder;
  * kontekstu LDAP oraz synchronizacji informacji pomiędzy LDAP a IBM BPM.
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.7 $
  * 
  */
 public class LdapConfigOptions {
@@ -105,6 +105,28 @@ public class LdapConfigOptions {
 	 */
 	public static final long DEFAULT_SYNC_PRIOD = 1000 * 60 * 60 * 24 * 7L;
 
+	/**
+	 * Domyślna liczba użytkowników, których grupy wyszukiwane są jednym
+	 * zapytaniem do LDAP.
+	 */
+	public static final int DEFAULT_GROUP_BATCH_SIZE = 100;
+
+	/**
+	 * Domyślna liczba jednostek organizacyjnych przeszukiwanych równolegle na
+	 * jednym serwerze LDAP.
+	 */
+	public static final int DEFAULT_UNIT_SEARCH_PARALLELISM = 4;
+
+	/**
+	 * Domyślna nazwa atrybutu grupy zmienianego przy każdej modyfikacji entry.
+	 */
+	public static final String DEFAULT_GROUP_CHANGE_ATTRIBUTE = "modifyTimestamp";
+
+	/**
+	 * Domyślny okres [ms] wyszukiwania grup usuniętych z LDAP (1 godzina).
+	 */
+	public static final long DEFAULT_GROUP_SWEEP_PERIOD = 1000 * 60 * 60L;
+
 	/**
 	 * Domyślna nazwa klasy obiektu użytkownika w LDAP/AD
 	 */
@@ -365,6 +387,57 @@ public class LdapConfigOptions {
 	 */
 	public static final String option_ldapResultPageSize = "ldapResultPageSize";
 
+	/**
+	 * Nazwa opcji dla: Maksymalna liczba połączeń w puli połączeń LDAP (0 -
+	 * połączenia nie są współdzielone).
+	 */
+	public static final String option_ldapPoolMaxSize = "ldapPoolMaxSize";
+
+	/**
+	 * Nazwa opcji dla: Maksymalny czas oczekiwania [ms] na wolne połączenie z
+	 * puli połączeń LDAP.
+	 */
+	public static final String option_ldapPoolMaxWait = "ldapPoolMaxWait";
+
+	/**
+	 * Nazwa opcji dla: Czas bezczynności [ms], po którym połączenie z puli
+	 * połączeń LDAP jest zamykane.
+	 */
+	public static final String option_ldapPoolMaxIdleTime = "ldapPoolMaxIdleTime";
+
+	/**
+	 * Nazwa opcji dla: Liczba użytkowników, których grupy wyszukiwane są jednym
+	 * zapytaniem do LDAP podczas ładowania wielu użytkowników (0 - osobne
+	 * zapytania dla każdego użytkownika). Partie stosowane są tylko dla filtrów
+	 * grup dopasowujących członków wprost, np. {@code (member={1})} - filtr z
+	 * członkostwem zagnieżdżonym albo grupą domyślną AD wykonywany jest osobno
+	 * dla każdego użytkownika.
+	 */
+	public static final String option_groupBatchSize = "groupBatchSize";
+
+	/**
+	 * Nazwa opcji dla: Liczba jednostek organizacyjnych przeszukiwanych
+	 * równolegle na jednym serwerze LDAP (1 - jednostki przeszukiwane są po
+	 * kolei).
+	 */
+	public static final String option_unitSearchParallelism = "unitSearchParallelism";
+
+	/**
+	 * Nazwa opcji dla: Nazwa atrybutu grupy zmienianego przy każdej modyfikacji
+	 * entry, np. {@code modifyTimestamp} albo {@code uSNChanged} (AD) - po nim
+	 * wyszukiwane są grupy zmienione od ostatniej synchronizacji. Wartości
+	 * atrybutu są lokalne dla serwera LDAP, dlatego synchronizacja tylko grup
+	 * zmienionych wymaga, aby {@code providerUrl} wskazywał jeden serwer.
+	 */
+	public static final String option_groupChangeAttribute = "groupChangeAttribute";
+
+	/**
+	 * Nazwa opcji dla: Okres [ms], co który synchronizacja grup zmienionych
+	 * wyszukuje również grupy usunięte z LDAP (0 - każda synchronizacja pobiera
+	 * wszystkie grupy).
+	 */
+	public static final String option_groupSweepPeriod = "groupSweepPeriod";
+
 	/**
 	 * Nazwa opcji dla: Rozmiar strony dla wyniku wyszukiwania w LDAP.
 	 */
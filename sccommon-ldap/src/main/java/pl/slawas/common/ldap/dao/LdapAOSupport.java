@@ -9,6 +9,7 @@ import javax.naming.NamingException;
 import pl.slawas.common.ldap.api.ILdapContextFactory;
 import pl.slawas.common.ldap.api.ILdapEntry;
 import pl.slawas.common.ldap.api.ILdapEntry4Changes;
+import pl.slawas.common.ldap.api.ILdapResultVisitor;
 import pl.slawas.common.ldap.provider.LdapResult;
 import org.slf4j.Logger;
 
@@ -38,6 +39,23 @@ public abstract class LdapAOSupport<T extends ILdapEntry> {
 		return factory.manyEntrySearch(attrs, searchFilter);
 	}
 
+	/**
+	 * Wyszukiwanie entry na podstawie zadanego filtru LDAP bez gromadzenia
+	 * wyników - wyniki przekazywane są do odbiorcy zaraz po odczytaniu z LDAP.
+	 * 
+	 * @param factory
+	 *            fabryka kontekstu LDAP
+	 * @param searchFilter
+	 *            filtr wyszukiwania
+	 * @param visitor
+	 *            odbiorca wyników
+	 * @throws NamingException
+	 */
+	protected void loadByFilter(ILdapContextFactory factory, String[] attrs, String searchFilter,
+			ILdapResultVisitor visitor) throws NamingException {
+		factory.manyEntrySearch(attrs, searchFilter, visitor);
+	}
+
 	/**
 	 * Dodawanie obiektu do LDAP.
 	 * 
@@ -1,6 +1,7 @@
 package pl.slawas.common.ldap.dao;
 
 import java.sql.Types;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -20,6 +21,7 @@ import pl.slawas.common.ldap.api.ILdapConnectionFactory;
 import pl.slawas.common.ldap.api.ILdapContextFactory;
 import pl.slawas.common.ldap.api.ILdapEntry;
 import pl.slawas.common.ldap.api.ILdapEntry4Changes;
+import pl.slawas.common.ldap.api.ILdapResultVisitor;
 import pl.slawas.common.ldap.api.ILdapUser;
 import pl.slawas.common.ldap.api.ILdapUserAO;
 import pl.slawas.common.ldap.api.ILdapUserGroup;
@@ -39,7 +41,7 @@ import org.slf4j.LoggerFactory;
  * LdapUserAOSupport
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.4 $
  *
  * @param <E>
  *            implementacja obiektu entry użytkownika
@@ -177,6 +179,68 @@ public abstract class LdapUserAOSupport<E extends ILdapUser<G>, G extends ILdapU
 		if (result == null) {
 			return null;
 		}
+		E single = transform2LdapUserEntry(result);
+		if (lo.isUserGroupOptionsAreDefinded()) {
+			setUserGroups(single, result, loadWithGroup, null);
+		}
+		return single;
+
+	}
+
+	/**
+	 * Transformacja wielu wyników wyszukiwania do obiektów użytkowników. Grupy
+	 * użytkowników wyszukiwane są wspólnymi zapytaniami dla partii
+	 * {@link ProviderOptions#getGroupBatchSize()} użytkowników (zobacz
+	 * {@link ILdapUserGroupAO#loadUsersGroups(List)}), zamiast osobnymi
+	 * zapytaniami dla każdego użytkownika i każdej jednostki grup.
+	 * 
+	 * @param results
+	 *            lista wyników zapytania do LDAP
+	 * @param loadWithGroup
+	 *            czy do obiektów użytkowników mają zostać dołączone obiekty grup
+	 *            domyślnych
+	 * @return lista obiektów użytkowników
+	 * @throws NamingException
+	 */
+	protected List<E> transform2LdapUsers(List<LdapResult> results, boolean loadWithGroup) throws NamingException {
+		List<E> users = new ArrayList<>(results.size());
+		if (!lo.isUserGroupOptionsAreDefinded() || lo.getGroupBatchSize() <= 0 || results.size() < 2) {
+			for (LdapResult result : results) {
+				E user = transform2LdapUser(result, loadWithGroup);
+				if (user != null) {
+					users.add(user);
+				}
+			}
+			return users;
+		}
+		List<String[]> usersArgs = new ArrayList<>(results.size());
+		for (LdapResult result : results) {
+			E user = transform2LdapUserEntry(result);
+			users.add(user);
+			usersArgs.add(new String[] { user.getName(), user.getDn() });
+		}
+		boolean withPrimaryGroupFilter = StringUtils.isNotBlank(lo.getUserPrimaryGroupFilter(null));
+		List<UsersGroups<G>> usersGroups = new ArrayList<>(groupLdapAO.size());
+		for (ILdapUserGroupAO<G> gLAO : groupLdapAO) {
+			usersGroups.add(new UsersGroups<>(gLAO.loadUsersGroups(usersArgs),
+					withPrimaryGroupFilter ? gLAO.loadPrimaryUsersGroups(usersArgs) : null));
+		}
+		for (int i = 0; i < users.size(); i++) {
+			setUserGroups(users.get(i), results.get(i), loadWithGroup, usersGroups);
+		}
+		return users;
+	}
+
+	/**
+	 * Transformacja wyniku wyszukiwania (entry) do obiektu użytkownika bez
+	 * informacji o grupach.
+	 * 
+	 * @param result
+	 *            obiekt wyniku zapytania do LDAP
+	 * @return obiekt użytkownika
+	 * @throws NamingException
+	 */
+	private E transform2LdapUserEntry(LdapResult result) throws NamingException {
 
 		String login = LdapAOHelper.readValue(result, lo.getUserNameAttribute());
 		E single = createNewInstance(login);
@@ -219,68 +283,87 @@ public abstract class LdapUserAOSupport<E extends ILdapUser<G>, G extends ILdapU
 			}
 			single.setLocale(userLocale);
 		}
+		return single;
+	}
 
-		if (lo.isUserGroupOptionsAreDefinded()) {
-			String[] userArgs = new String[] { single.getName(), single.getDn() };
-			String primaryGroupFilter = lo.getUserPrimaryGroupFilter(userArgs);
-			List<G> baseGroups = new ArrayList<>();
-			G primaryGroup = null;
-			String primaryGroupDN = LdapAOHelper.readValue(result, lo.getUserPrimaryGroupAttribute());
-
-			/* ustawianie grup/ról przypisanych bezpośrednio - START */
-			for (ILdapUserGroupAO<G> gLAO : groupLdapAO) {
-				List<G> groups = gLAO.loadUserGroups(userArgs);
-				if (groups != null && !groups.isEmpty()) {
-					/*
-					 * to ma tylko wtedy sens gdy użytkownik jest przypisany do jakiejkolwiek grupy
-					 */
-					/* ustawianie domyślnej grupy/roli - START */
-
-					if (StringUtils.isNotBlank(primaryGroupFilter) && primaryGroup == null) {
-						primaryGroup = gLAO.loadPrimaryUserGroup(userArgs);
-					}
-					/* ustawianie domyślnej grupy/roli - KONIEC */
-					baseGroups.addAll(groups);
-				}
+	/**
+	 * Ustawienie grup użytkownika.
+	 * 
+	 * @param single
+	 *            obiekt użytkownika
+	 * @param result
+	 *            obiekt wyniku zapytania do LDAP, z którego powstał użytkownik
+	 * @param loadWithGroup
+	 *            czy do obiektu użytkownika ma zostać dołączony obiekt grupy
+	 *            domyślnej
+	 * @param usersGroups
+	 *            grupy wyszukane dla wielu użytkowników, po jednym elemencie dla
+	 *            każdego obiektu {@link #groupLdapAO}, {@code null} - grupy
+	 *            wyszukiwane są osobnymi zapytaniami
+	 * @throws NamingException
+	 */
+	private void setUserGroups(E single, LdapResult result, boolean loadWithGroup, List<UsersGroups<G>> usersGroups)
+			throws NamingException {
+		String[] userArgs = new String[] { single.getName(), single.getDn() };
+		String primaryGroupFilter = lo.getUserPrimaryGroupFilter(userArgs);
+		List<G> baseGroups = new ArrayList<>();
+		G primaryGroup = null;
+		String primaryGroupDN = LdapAOHelper.readValue(result, lo.getUserPrimaryGroupAttribute());
+
+		/* ustawianie grup/ról przypisanych bezpośrednio - START */
+		for (int i = 0; i < groupLdapAO.size(); i++) {
+			ILdapUserGroupAO<G> gLAO = groupLdapAO.get(i);
+			UsersGroups<G> batch = (usersGroups != null ? usersGroups.get(i) : null);
+			List<G> groups = (batch != null ? batch.groups.get(single.getDn()) : gLAO.loadUserGroups(userArgs));
+			if (groups != null && !groups.isEmpty()) {
+				/*
+				 * to ma tylko wtedy sens gdy użytkownik jest przypisany do jakiejkolwiek grupy
+				 */
+				/* ustawianie domyślnej grupy/roli - START */
 
+				if (StringUtils.isNotBlank(primaryGroupFilter) && primaryGroup == null) {
+					primaryGroup = (batch != null ? batch.primaryGroups.get(single.getDn())
+							: gLAO.loadPrimaryUserGroup(userArgs));
+				}
+				/* ustawianie domyślnej grupy/roli - KONIEC */
+				baseGroups.addAll(groups);
 			}
 
-			if (primaryGroup != null) {
-				single.setPrimaryGroupDN(primaryGroup.getDn());
-				if (loadWithGroup) {
-					single.setPrimaryGroup(primaryGroup);
-				}
-			} else if (StringUtils.isBlank(primaryGroupFilter) && lo.getUserPrimaryGroupAttribute() != null
-					&& StringUtils.isNotBlank(primaryGroupDN)) {
-				// user primary role, jeżeli jest zdefiniowana jako atrybut
-				/* ustawianie domyślnej grupy/roli - START */
-				single.setPrimaryGroupDN(primaryGroupDN);
-				if (loadWithGroup) {
-					for (G baseGroup : baseGroups) {
-						if (baseGroup.getDn().equalsIgnoreCase(primaryGroupDN)) {
-							single.setPrimaryGroup(baseGroup);
-							break;
-						}
+		}
+
+		if (primaryGroup != null) {
+			single.setPrimaryGroupDN(primaryGroup.getDn());
+			if (loadWithGroup) {
+				single.setPrimaryGroup(primaryGroup);
+			}
+		} else if (StringUtils.isBlank(primaryGroupFilter) && lo.getUserPrimaryGroupAttribute() != null
+				&& StringUtils.isNotBlank(primaryGroupDN)) {
+			// user primary role, jeżeli jest zdefiniowana jako atrybut
+			/* ustawianie domyślnej grupy/roli - START */
+			single.setPrimaryGroupDN(primaryGroupDN);
+			if (loadWithGroup) {
+				for (G baseGroup : baseGroups) {
+					if (baseGroup.getDn().equalsIgnoreCase(primaryGroupDN)) {
+						single.setPrimaryGroup(baseGroup);
+						break;
 					}
 				}
-				/* ustawianie domyślnej grupy/roli - KONIEC */
 			}
+			/* ustawianie domyślnej grupy/roli - KONIEC */
+		}
 
-			if (primaryGroup == null && StringUtils.isBlank(primaryGroupDN)) {
-				log.warn("Uzytkownik {} ({}) nie ma zdefiniowanej grupy domyslnej ",
-						new Object[] { single.getDisplayName(), single.getName() });
-			}
+		if (primaryGroup == null && StringUtils.isBlank(primaryGroupDN)) {
+			log.warn("Uzytkownik {} ({}) nie ma zdefiniowanej grupy domyslnej ",
+					new Object[] { single.getDisplayName(), single.getName() });
+		}
 
-			single.setBaseGroups(baseGroups);
-			/* ustawianie grup/ról przypisanych bezposrednio - KONIEC */
+		single.setBaseGroups(baseGroups);
+		/* ustawianie grup/ról przypisanych bezposrednio - KONIEC */
 
-			if (baseGroups == null || baseGroups.isEmpty()) {
-				log.warn("Uzytkownik {} ({}) nie nalezy do zadnej z grup",
-						new Object[] { single.getDisplayName(), single.getName() });
-			}
+		if (baseGroups == null || baseGroups.isEmpty()) {
+			log.warn("Uzytkownik {} ({}) nie nalezy do zadnej z grup",
+					new Object[] { single.getDisplayName(), single.getName() });
 		}
-		return single;
-
 	}
 
 	public E load(Object id) throws NamingException {
@@ -333,29 +416,24 @@ public abstract class LdapUserAOSupport<E extends ILdapUser<G>, G extends ILdapU
 		return prepareAllAsMap(searchFilter, target, true);
 	}
 
-	protected Map<String, E> prepareAllAsMap(String searchFilter, Map<String, E> target, boolean checkOldElement)
-			throws NamingException {
-		List<LdapResult> resultsList = getFactory().manyEntrySearch(attrs, searchFilter);
-		if (!checkOldElement) {
-			for (LdapResult result : resultsList) {
-				E user = transform2LdapUser(result, true);
-				if (user != null) {
-					String key = user.getName().toLowerCase();
-					target.put(key, user);
-				}
-			}
-		} else {
-			for (LdapResult result : resultsList) {
-				E user = transform2LdapUser(result, true);
-				if (user != null) {
-					String key = user.getName().toLowerCase();
+	protected Map<String, E> prepareAllAsMap(String searchFilter, final Map<String, E> target,
+			final boolean checkOldElement) throws NamingException {
+		UsersVisitor visitor = new UsersVisitor() {
+
+			@Override
+			void accept(E user) {
+				String key = user.getName().toLowerCase();
+				if (checkOldElement) {
 					ILdapEntry oldUser = target.get(key);
-					if (!user.equals(oldUser)) {
-						target.put(key, user);
+					if (user.equals(oldUser)) {
+						return;
 					}
 				}
+				target.put(key, user);
 			}
-		}
+		};
+		getFactory().manyEntrySearch(attrs, searchFilter, visitor);
+		visitor.flush();
 
 		return target;
 	}
@@ -461,15 +539,17 @@ public abstract class LdapUserAOSupport<E extends ILdapUser<G>, G extends ILdapU
 	/* Overridden (non-Javadoc) */
 	@Override
 	public List<E> loadByFilter(String searchFilter) throws NamingException {
-		List<E> list = new ArrayList<>();
+		final List<E> list = new ArrayList<>();
 		log.debug("--> loadByFilter: Sarch Filter: {}", searchFilter);
-		List<LdapResult> resultsList = super.loadByFilter(getFactory(), attrs, searchFilter);
-		for (LdapResult result : resultsList) {
-			E user = transform2LdapUser(result, true);
-			if (user != null) {
+		UsersVisitor visitor = new UsersVisitor() {
+
+			@Override
+			void accept(E user) {
 				list.add(user);
 			}
-		}
+		};
+		super.loadByFilter(getFactory(), attrs, searchFilter, visitor);
+		visitor.flush();
 		return list;
 	}
 
@@ -534,4 +614,65 @@ public abstract class LdapUserAOSupport<E extends ILdapUser<G>, G extends ILdapU
 	protected ILdapEntry4Changes transform4Changes(ILdapBaseEntry ldapUser) {
 		return EntryUtils.transform4Changes(ldapUser);
 	}
+
+	/**
+	 * Odbiorca wyników wyszukiwania użytkowników. W trakcie wyszukiwania wyniki
+	 * są jedynie gromadzone - przekształcenie wymaga wyszukiwania grup, a te nie
+	 * mogą być wykonywane, gdy wyszukiwanie użytkowników trzyma połączenie z puli
+	 * (zobacz {@link ILdapResultVisitor}). Po zakończeniu wyszukiwania
+	 * {@link #flush()} przekształca wyniki partiami po
+	 * {@link ProviderOptions#getGroupBatchSize()} (grupy użytkowników partii
+	 * wyszukiwane są wspólnie), zwalniając przekształcone wyniki.
+	 */
+	private abstract class UsersVisitor implements ILdapResultVisitor {
+
+		private final int batchSize = Math.max(1, lo.getGroupBatchSize());
+
+		private final ArrayDeque<LdapResult> results = new ArrayDeque<>();
+
+		@Override
+		public boolean visit(LdapResult result) {
+			results.add(result);
+			return true;
+		}
+
+		/**
+		 * Przekształcenie zgromadzonych wyników - wywoływane po zakończeniu
+		 * wyszukiwania.
+		 */
+		void flush() throws NamingException {
+			List<LdapResult> batch = new ArrayList<>(Math.min(batchSize, results.size()));
+			while (!results.isEmpty()) {
+				while (batch.size() < batchSize && !results.isEmpty()) {
+					batch.add(results.poll());
+				}
+				for (E user : transform2LdapUsers(batch, true)) {
+					accept(user);
+				}
+				batch.clear();
+			}
+		}
+
+		/**
+		 * Obsługa kompletnego obiektu użytkownika.
+		 */
+		abstract void accept(E user);
+	}
+
+	/**
+	 * Grupy wyszukane dla wielu użytkowników przez jeden obiekt dostępu do grup.
+	 */
+	private static class UsersGroups<G> {
+
+		/** DN użytkownika - lista grup użytkownika */
+		private final Map<String, List<G>> groups;
+
+		/** DN użytkownika - domyślna grupa użytkownika */
+		private final Map<String, G> primaryGroups;
+
+		UsersGroups(Map<String, List<G>> groups, Map<String, G> primaryGroups) {
+			this.groups = groups;
+			this.primaryGroups = primaryGroups;
+		}
+	}
 }
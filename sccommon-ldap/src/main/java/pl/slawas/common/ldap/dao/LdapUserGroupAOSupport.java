@@ -2,11 +2,13 @@ package pl.slawas.common.ldap.dao;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.naming.NamingException;
@@ -16,6 +18,7 @@ import org.apache.commons.lang.StringUtils;
 import pl.slawas.common.ldap.api.Constants;
 import pl.slawas.common.ldap.api.ILdapConnectionFactory;
 import pl.slawas.common.ldap.api.ILdapContextFactory;
+import pl.slawas.common.ldap.api.ILdapResultVisitor;
 import pl.slawas.common.ldap.api.ILdapUserGroup;
 import pl.slawas.common.ldap.api.ILdapUserGroupAO;
 import pl.slawas.common.ldap.api.IUserAttribute;
@@ -32,7 +35,7 @@ import org.slf4j.LoggerFactory;
  * LdapUserGroupAOSupport
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.5 $
  *
  * @param <G>
  */
@@ -43,6 +46,9 @@ public abstract class LdapUserGroupAOSupport<G extends ILdapUserGroup> extends L
 
 	private static final Logger logger = LoggerFactory.getLogger(LdapUserGroupAOSupport.class.getName());
 
+	/** Atrybut "brak atrybutów" (RFC 4511) - wyszukiwanie samych DN */
+	private static final String[] NO_ATTRIBUTES = { "1.1" };
+
 	private final transient ILdapConnectionFactory factory;
 
 	private final transient ProviderOptions lo;
@@ -187,20 +193,7 @@ public abstract class LdapUserGroupAOSupport<G extends ILdapUserGroup> extends L
 			single.setAttributes(attributes);
 		}
 
-		String groupDN = null;
-		if (lo.getGroupDNAttribute() != null) {
-			groupDN = LdapAOHelper.readValue(result, lo.getGroupDNAttribute());
-			if (StringUtils.isBlank(groupDN)) {
-				throw new NamingException("Can't follow referal for group: " + name);
-			}
-		} else {
-			String rname = result.getName();
-			if (result.isRelative()) {
-				groupDN = rname + "," + getFactory().getDynamicCtx();
-			} else {
-				throw new NamingException("Can't follow referal for authentication: " + name);
-			}
-		}
+		String groupDN = readGroupDN(result, name);
 		logger.trace("groupDN={}", groupDN);
 		single.setDn(groupDN);
 		single.setStructureUnit(lo.checkStructureUnit(single.getDn()));
@@ -486,6 +479,129 @@ public abstract class LdapUserGroupAOSupport<G extends ILdapUserGroup> extends L
 
 	}
 
+	public Map<String, List<G>> loadUsersGroups(List<String[]> usersArgs) throws NamingException {
+		if (!lo.isMemberMatchFilter(lo.getRoleFilter(null))) {
+			/* filtr nie jest dopasowaniem po członkach - osobno dla każdego */
+			Map<String, List<G>> usersGroups = new HashMap<>();
+			for (String[] userArgs : usersArgs) {
+				usersGroups.put(userArgs[1], loadUserGroups(userArgs));
+			}
+			return usersGroups;
+		}
+		return searchUsersGroups(usersArgs, false);
+	}
+
+	public Map<String, G> loadPrimaryUsersGroups(List<String[]> usersArgs) throws NamingException {
+		Map<String, G> primaryGroups = new HashMap<>();
+		if (StringUtils.isBlank(lo.getUserPrimaryGroupFilter(null))) {
+			return primaryGroups;
+		}
+		if (!lo.isMemberMatchFilter(lo.getUserPrimaryGroupFilter(null))) {
+			/* np. grupa domyślna AD nie ma użytkownika na liście członków */
+			for (String[] userArgs : usersArgs) {
+				G group = loadPrimaryUserGroup(userArgs);
+				if (group != null) {
+					primaryGroups.put(userArgs[1], group);
+				}
+			}
+			return primaryGroups;
+		}
+		for (Entry<String, List<G>> entry : searchUsersGroups(usersArgs, true).entrySet()) {
+			if (!entry.getValue().isEmpty()) {
+				primaryGroups.put(entry.getKey(), entry.getValue().get(0));
+			}
+		}
+		return primaryGroups;
+	}
+
+	/**
+	 * Wyszukiwanie grup partiami po {@link ProviderOptions#getGroupBatchSize()}
+	 * użytkowników. Filtry użytkowników partii łączone są operatorem {@code |}, a
+	 * znalezione grupy przypisywane użytkownikom, których DN albo nazwa jest na
+	 * liście członków grupy - dlatego tylko dla filtrów spełniających
+	 * {@link ProviderOptions#isMemberMatchFilter(String)}.
+	 * 
+	 * @param usersArgs
+	 *            lista argumentów filtrów użytkowników: {nazwa, DN}
+	 * @param primary
+	 *            czy wyszukiwane są grupy domyślne (filtr
+	 *            {@link ProviderOptions#getUserPrimaryGroupFilter(String[])})
+	 * @return mapa DN użytkownika - lista grup użytkownika
+	 * @throws NamingException
+	 */
+	private Map<String, List<G>> searchUsersGroups(List<String[]> usersArgs, boolean primary)
+			throws NamingException {
+		Map<String, List<G>> usersGroups = new HashMap<>();
+		/* grupa znaleziona w kilku partiach jest przekształcana tylko raz */
+		Map<String, G> groupsByDN = new HashMap<>();
+		Map<String, Set<String>> membersByDN = new HashMap<>();
+		int batchSize = Math.max(1, lo.getGroupBatchSize());
+		for (int from = 0; from < usersArgs.size(); from += batchSize) {
+			List<String[]> batch = usersArgs.subList(from, Math.min(from + batchSize, usersArgs.size()));
+			StringBuilder searchFilter = new StringBuilder("(|");
+			for (String[] userArgs : batch) {
+				usersGroups.put(userArgs[1], new ArrayList<G>());
+				searchFilter.append(primary ? lo.getUserPrimaryGroupFilter(userArgs) : lo.getRoleFilter(userArgs));
+			}
+			searchFilter.append(')');
+			logger.debug("--> searchUsersGroups: {} users, Sarch Filter: {}", batch.size(), searchFilter);
+			List<LdapResult> resultsList = super.loadByFilter(getFactory(), attrs, searchFilter.toString());
+			for (LdapResult result : resultsList) {
+				G group = transform2UserGroup(result);
+				if (group == null) {
+					continue;
+				}
+				Set<String> members = membersByDN.get(group.getDn());
+				if (members == null) {
+					checkMembers(result, group);
+					members = new HashSet<>();
+					for (String member : group.getMembers()) {
+						members.add(member.toLowerCase());
+					}
+					groupsByDN.put(group.getDn(), group);
+					membersByDN.put(group.getDn(), members);
+				} else {
+					group = groupsByDN.get(group.getDn());
+				}
+				for (String[] userArgs : batch) {
+					if ((userArgs[1] != null && members.contains(userArgs[1].toLowerCase()))
+							|| (userArgs[0] != null && members.contains(userArgs[0].toLowerCase()))) {
+						usersGroups.get(userArgs[1]).add(group);
+					}
+				}
+			}
+		}
+		return usersGroups;
+	}
+
+	/**
+	 * Ustalenie DN grupy na podstawie wyniku LDAP.
+	 * 
+	 * @param result
+	 *            wynik LDAP
+	 * @param name
+	 *            nazwa grupy (do komunikatu błędu)
+	 * @return DN grupy
+	 * @throws NamingException
+	 */
+	private String readGroupDN(LdapResult result, String name) throws NamingException {
+		String groupDN = null;
+		if (lo.getGroupDNAttribute() != null) {
+			groupDN = LdapAOHelper.readValue(result, lo.getGroupDNAttribute());
+			if (StringUtils.isBlank(groupDN)) {
+				throw new NamingException("Can't follow referal for group: " + name);
+			}
+		} else {
+			String rname = result.getName();
+			if (result.isRelative()) {
+				groupDN = rname + "," + getFactory().getDynamicCtx();
+			} else {
+				throw new NamingException("Can't follow referal for authentication: " + name);
+			}
+		}
+		return groupDN;
+	}
+
 	public Map<String, G> loadAllAsMap() throws NamingException {
 		Map<String, G> map = new HashMap<>();
 		return prepareAllAsMap(lo.getGroupsFilter(), map, false);
@@ -495,69 +611,134 @@ public abstract class LdapUserGroupAOSupport<G extends ILdapUserGroup> extends L
 		return prepareAllAsMap(lo.getGroupsFilter(), target, true);
 	}
 
+	public String mergeChangedAsMap(Map<String, G> target, String changeMarker) throws NamingException {
+		String changeAttribute = lo.getGroupChangeAttribute();
+		String searchFilter = lo.getGroupsFilter();
+		if (changeMarker != null) {
+			searchFilter = "(&" + searchFilter + "(" + changeAttribute + ">=" + changeMarker + "))";
+		}
+		logger.debug("--> mergeChangedAsMap: Sarch Filter: {}", searchFilter);
+		String[] syncAttrs = Arrays.copyOf(attrs, attrs.length + 1);
+		syncAttrs[attrs.length] = changeAttribute;
+		ChangedGroupsVisitor visitor = new ChangedGroupsVisitor(target, changeAttribute, changeMarker);
+		getFactory().manyEntrySearch(syncAttrs, searchFilter, visitor);
+		visitor.flush();
+		return visitor.changeMarker;
+	}
+
+	public Set<String> loadAllDNs() throws NamingException {
+		final String[] dnAttrs = (lo.getGroupDNAttribute() != null ? new String[] { lo.getGroupDNAttribute() }
+				: NO_ATTRIBUTES);
+		final Set<String> dns = new HashSet<>();
+		getFactory().manyEntrySearch(dnAttrs, lo.getGroupsFilter(), new ILdapResultVisitor() {
+
+			@Override
+			public boolean visit(LdapResult result) throws NamingException {
+				dns.add(readGroupDN(result, result.getName()).toUpperCase());
+				return true;
+			}
+		});
+		logger.debug("--> loadAllDNs: {} groups", dns.size());
+		return dns;
+	}
+
+	/**
+	 * Porównanie wartości atrybutu zmiany - liczbowo (np. {@code uSNChanged})
+	 * albo tekstowo (np. {@code modifyTimestamp} w formacie GeneralizedTime).
+	 */
+	private static int compareChangeMarkers(String marker1, String marker2) {
+		if (StringUtils.isNumeric(marker1) && StringUtils.isNumeric(marker2)) {
+			return Long.valueOf(marker1).compareTo(Long.valueOf(marker2));
+		}
+		return marker1.compareTo(marker2);
+	}
+
 	@Override
-	protected Map<String, G> prepareAllAsMap(String searchFilter, Map<String, G> target, boolean checkOldElement)
-			throws NamingException {
+	protected Map<String, G> prepareAllAsMap(String searchFilter, final Map<String, G> target,
+			final boolean checkOldElement) throws NamingException {
 
 		logger.debug("--> prepareAllAsMap: Sarch Filter: {}", searchFilter);
-		List<LdapResult> resultsList = getFactory().manyEntrySearch(attrs, searchFilter);
-		if (!checkOldElement) {
-			for (LdapResult result : resultsList) {
-				G group = transform2UserGroup(result);
-				if (group != null && group.getName() != null) {
-					checkMembers(result, group);
-					target.put(group.getName().toUpperCase(), group);
+		GroupsVisitor visitor = new GroupsVisitor() {
+
+			@Override
+			void accept(G group) {
+				if (group.getName() == null) {
+					return;
 				}
-			}
-		} else {
-			for (LdapResult result : resultsList) {
-				G group = transform2UserGroup(result);
-				if (group != null && group.getName() != null) {
-					checkMembers(result, group);
-					String key = group.getName().toUpperCase();
+				String key = group.getName().toUpperCase();
+				if (checkOldElement) {
 					G oldGroup = target.get(key);
-					if (!group.equals(oldGroup)) {
-						target.put(key, group);
+					if (group.equals(oldGroup)) {
+						return;
 					}
 				}
+				target.put(key, group);
 			}
-		}
+		};
+		getFactory().manyEntrySearch(attrs, searchFilter, visitor);
+		visitor.flush();
 
 		return target;
 	}
 
 	private void checkMembers(LdapResult result, G group) throws NamingException {
-		if (group.getMembers() == null || group.getMembers().isEmpty()) {
-			/* spróbuję pobrać użytkowników po range */
-			try {
-				String roleId = result.get(lo.getRoleAttributeID()).get(0).getString();
-				String internalFilter = "(" + lo.getRoleAttributeID() + "=" + roleId + ")";
-				String memeberAttrName = lo.getGroupMemberAttribute();
-				if (logger.isDebugEnabled()) {
-					logger.debug("--> checkMembers: try get range for '{}': roleId={}",
-							new Object[] { memeberAttrName, internalFilter });
-				}
-				Set<String> members = new HashSet<String>();
-				LdapResult membersRange = getFactory().uniqueEntrySearchWithRangeAttr(memeberAttrName, internalFilter);
-				if (membersRange != null && membersRange.get(memeberAttrName) != null) {
-					for (LdapValue memberResult : membersRange.get(memeberAttrName)) {
-						if (memberResult.getValue() != null) {
-							String member = (String) memberResult.getValue();
-							if (!Constants.NULL_STRING.equalsIgnoreCase(member) && StringUtils.isNotBlank(member)) {
-								members.add(member);
-							}
-						}
+		if (hasNoMembers(group)) {
+			loadMembersByRange(readRoleId(result), group);
+		}
+	}
+
+	private static boolean hasNoMembers(ILdapUserGroup group) {
+		return group.getMembers() == null || group.getMembers().isEmpty();
+	}
+
+	private String readRoleId(LdapResult result) {
+		try {
+			return result.get(lo.getRoleAttributeID()).get(0).getString();
+		} catch (UnsupportedEncodingException e) {
+			/* to się nie zdarzy! */
+			return null;
+		}
+	}
+
+	/**
+	 * Pobranie członków grupy po range - dla grup, których lista członków nie
+	 * została zwrócona razem z entry.
+	 * 
+	 * @param roleId
+	 *            wartość atrybutu {@link ProviderOptions#getRoleAttributeID()}
+	 *            grupy
+	 * @param group
+	 *            obiekt grupy
+	 * @throws NamingException
+	 */
+	private void loadMembersByRange(String roleId, G group) throws NamingException {
+		if (roleId == null) {
+			return;
+		}
+		/* spróbuję pobrać użytkowników po range */
+		String internalFilter = "(" + lo.getRoleAttributeID() + "=" + roleId + ")";
+		String memeberAttrName = lo.getGroupMemberAttribute();
+		if (logger.isDebugEnabled()) {
+			logger.debug("--> checkMembers: try get range for '{}': roleId={}",
+					new Object[] { memeberAttrName, internalFilter });
+		}
+		Set<String> members = new HashSet<String>();
+		LdapResult membersRange = getFactory().uniqueEntrySearchWithRangeAttr(memeberAttrName, internalFilter);
+		if (membersRange != null && membersRange.get(memeberAttrName) != null) {
+			for (LdapValue memberResult : membersRange.get(memeberAttrName)) {
+				if (memberResult.getValue() != null) {
+					String member = (String) memberResult.getValue();
+					if (!Constants.NULL_STRING.equalsIgnoreCase(member) && StringUtils.isNotBlank(member)) {
+						members.add(member);
 					}
 				}
-				group.setMembers(members);
-				if (logger.isDebugEnabled()) {
-					logger.debug("--> checkMembers: range execution result: roleId={}; group.members.size={}",
-							new Object[] { memeberAttrName, group.getMembers().size() });
-				}
-			} catch (UnsupportedEncodingException e) {
-				/* to się nie zdarzy! */
 			}
 		}
+		group.setMembers(members);
+		if (logger.isDebugEnabled()) {
+			logger.debug("--> checkMembers: range execution result: roleId={}; group.members.size={}",
+					new Object[] { memeberAttrName, group.getMembers().size() });
+		}
 	}
 	
 	/**
@@ -652,16 +833,17 @@ public abstract class LdapUserGroupAOSupport<G extends ILdapUserGroup> extends L
 	/* Overridden (non-Javadoc) */
 	@Override
 	public List<G> loadByFilter(String searchFilter) throws NamingException {
-		List<G> list = new ArrayList<>();
+		final List<G> list = new ArrayList<>();
 		logger.debug("loadByFilter -> Sarch Filter: {}", searchFilter);
-		List<LdapResult> resultsList = super.loadByFilter(getFactory(), attrs, searchFilter);
-		for (LdapResult result : resultsList) {
-			G group = transform2UserGroup(result);
-			if (group != null) {
-				checkMembers(result, group);
+		GroupsVisitor visitor = new GroupsVisitor() {
+
+			@Override
+			void accept(G group) {
 				list.add(group);
 			}
-		}
+		};
+		super.loadByFilter(getFactory(), attrs, searchFilter, visitor);
+		visitor.flush();
 		return list;
 	}
 
@@ -673,4 +855,84 @@ public abstract class LdapUserGroupAOSupport<G extends ILdapUserGroup> extends L
 		return logger;
 	}
 
+	/**
+	 * Odbiorca wyników synchronizacji grup zmienionych - zapamiętuje największą
+	 * wartość atrybutu zmiany wśród znalezionych grup.
+	 */
+	private class ChangedGroupsVisitor extends GroupsVisitor {
+
+		private final Map<String, G> target;
+
+		private final String changeAttribute;
+
+		private String changeMarker;
+
+		ChangedGroupsVisitor(Map<String, G> target, String changeAttribute, String changeMarker) {
+			this.target = target;
+			this.changeAttribute = changeAttribute;
+			this.changeMarker = changeMarker;
+		}
+
+		@Override
+		public boolean visit(LdapResult result) throws NamingException {
+			String marker = LdapAOHelper.readValue(result, changeAttribute);
+			if (StringUtils.isNotBlank(marker) && !Constants.NULL_STRING.equals(marker)
+					&& (changeMarker == null || compareChangeMarkers(marker, changeMarker) > 0)) {
+				changeMarker = marker;
+			}
+			return super.visit(result);
+		}
+
+		@Override
+		void accept(G group) {
+			if (group.getName() != null) {
+				target.put(group.getName().toUpperCase(), group);
+			}
+		}
+	}
+
+	/**
+	 * Odbiorca wyników wyszukiwania grup - wyniki przekształcane są zaraz po
+	 * odczytaniu z LDAP. Grupy bez listy członków uzupełniane są po range
+	 * dopiero w {@link #flush()}, po zakończeniu wyszukiwania, aby nie
+	 * wykonywać zapytań w jego trakcie.
+	 */
+	private abstract class GroupsVisitor implements ILdapResultVisitor {
+
+		private final List<G> unchecked = new ArrayList<>();
+
+		private final List<String> uncheckedRoleIds = new ArrayList<>();
+
+		@Override
+		public boolean visit(LdapResult result) throws NamingException {
+			G group = transform2UserGroup(result);
+			if (group != null) {
+				if (hasNoMembers(group)) {
+					unchecked.add(group);
+					uncheckedRoleIds.add(readRoleId(result));
+				} else {
+					accept(group);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Uzupełnienie członków grup odłożonych w trakcie wyszukiwania.
+		 */
+		void flush() throws NamingException {
+			for (int i = 0; i < unchecked.size(); i++) {
+				loadMembersByRange(uncheckedRoleIds.get(i), unchecked.get(i));
+				accept(unchecked.get(i));
+			}
+			unchecked.clear();
+			uncheckedRoleIds.clear();
+		}
+
+		/**
+		 * Obsługa kompletnego obiektu grupy.
+		 */
+		abstract void accept(G group);
+	}
+
 }
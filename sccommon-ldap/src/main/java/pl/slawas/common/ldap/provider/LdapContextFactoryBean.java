@@ -25,9 +25,11 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
@@ -48,6 +50,7 @@ import pl.slawas.common.ldap.api.Constants;
 import pl.slawas.common.ldap.api.ILdapAttribute;
 import pl.slawas.common.ldap.api.ILdapContextFactory;
 import pl.slawas.common.ldap.api.ILdapEntry4Changes;
+import pl.slawas.common.ldap.api.ILdapResultVisitor;
 import pl.slawas.common.ldap.dao.LdapAOHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,9 +59,15 @@ import org.slf4j.LoggerFactory;
  * LdapContextFactoryBean - główna implementacja kontekstu LDAP/AD z metodami
  * wspierającymi wyszukiwanie entry grup i użytkowników przechowywanych w
  * repozytorium.
+ * <p>
+ * Jeżeli {@link ProviderOptions#getLdapPoolMaxSize()} jest większe od 0, to
+ * każda operacja pożycza połączenie z {@link LdapContextPool} i oddaje je po
+ * zakończeniu - utworzenie obiektu nie nawiązuje połączenia. W przeciwnym
+ * wypadku obiekt nawiązuje własne połączenie, zamykane metodą {@link #close()}.
+ * </p>
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.6 $
  * 
  */
 public class LdapContextFactoryBean implements ILdapContextFactory {
@@ -79,6 +88,12 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 
 	protected LdapContext baseCtx = null;
 
+	/** pula połączeń, {@code null} - obiekt ma własne połączenie {@link #baseCtx} */
+	private volatile LdapContextPool pool = null;
+
+	/** parametry połączeń puli - do ponownego pobrania puli usuniętej z rejestru */
+	private Hashtable<?, ?> poolEnvironment;
+
 	private final ProviderOptions ldapOptions;
 
 	private final Integer pageSize;
@@ -180,8 +195,23 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 		env.put(Context.SECURITY_PRINCIPAL, bindDN);
 		env.put(Context.SECURITY_CREDENTIALS, bindCredential);
 		env.put(LDAP_ATTRIBUTES_BINARY, CustomBinaryField.CUSTOM_BINARY_FIELDS);
+		env.put(Context.PROVIDER_URL, entryProviderURL);
+		if (this.ldapOptions != null && this.ldapOptions.getLdapPoolMaxSize() > 0) {
+			this.poolEnvironment = env;
+			this.pool = LdapContextPool.getPool(env, this.ldapOptions.getLdapPoolMaxSize(),
+					this.ldapOptions.getLdapPoolMaxWait(), this.ldapOptions.getLdapPoolMaxIdleTime());
+			logger.debug("Kontekst dla userProviderURL = {} korzysta z puli polaczen", entryProviderURL);
+			if (!this.pool.isBound()) {
+				/* błąd uwierzytelnienia zgłaszany przy tworzeniu obiektu, jak bez puli */
+				try {
+					this.pool.release(this.pool.borrow());
+				} catch (NamingException e) {
+					logger.error("Inicjalize userCtx.", e);
+				}
+			}
+			return;
+		}
 		try {
-			env.put(Context.PROVIDER_URL, entryProviderURL);
 			this.baseCtx = new InitialLdapContext(env, null);
 		} catch (NamingException e) {
 			logger.error("Inicjalize userCtx.", e);
@@ -239,6 +269,60 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 		}
 	}
 
+	/**
+	 * Pula połączeń dla operacji - pula usunięta z rejestru jako nieużywana
+	 * ({@link LdapContextPool#isEvicted()}) jest pobierana ponownie.
+	 * 
+	 * @return pula połączeń, {@code null} - obiekt ma własne połączenie
+	 */
+	private LdapContextPool getContextPool() {
+		LdapContextPool current = this.pool;
+		if (current != null && current.isEvicted()) {
+			current = LdapContextPool.getPool(this.poolEnvironment, this.ldapOptions.getLdapPoolMaxSize(),
+					this.ldapOptions.getLdapPoolMaxWait(), this.ldapOptions.getLdapPoolMaxIdleTime());
+			this.pool = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Połączenie do wykonania operacji - pożyczone z puli albo własne połączenie
+	 * obiektu.
+	 * 
+	 * @param ctxPool
+	 *            pula z {@link #getContextPool()}
+	 * @return połączenie, {@code null} jeżeli własne połączenie nie zostało
+	 *         nawiązane
+	 * @throws NamingException
+	 *             brak wolnego połączenia w puli albo błąd nawiązania połączenia
+	 */
+	private LdapContext borrowContext(LdapContextPool ctxPool) throws NamingException {
+		return (ctxPool != null ? ctxPool.borrow() : this.baseCtx);
+	}
+
+	/**
+	 * Zwrot połączenia pożyczonego metodą {@link #borrowContext(LdapContextPool)}
+	 * do puli, z której zostało pożyczone. Połączenie, na którym wystąpił błąd
+	 * komunikacji, jest zamykane.
+	 * 
+	 * @param ctxPool
+	 *            pula, z której pożyczono połączenie
+	 * @param ctx
+	 *            połączenie
+	 * @param error
+	 *            błąd operacji, {@code null} - operacja zakończona poprawnie
+	 */
+	private void releaseContext(LdapContextPool ctxPool, LdapContext ctx, Throwable error) {
+		if (ctxPool == null || ctx == null) {
+			return;
+		}
+		if (error instanceof CommunicationException || error instanceof ServiceUnavailableException) {
+			ctxPool.invalidate(ctx);
+		} else {
+			ctxPool.release(ctx);
+		}
+	}
+
 	@SuppressWarnings("rawtypes")
 	private LdapResult getResult(String[] attrs, SearchResult sr) throws NamingException {
 
@@ -310,22 +394,32 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
 		controls.setReturningAttributes(attrs);
 
-		if (baseCtx != null) {
+		LdapContextPool ctxPool = getContextPool();
+		LdapContext ctx = borrowContext(ctxPool);
+		if (ctx != null) {
+			Throwable error = null;
 			try {
-				if (pageSize != null && pageSize.intValue() > 0) {
-					this.baseCtx.setRequestControls(
-							new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
+				try {
+					if (pageSize != null && pageSize.intValue() > 0) {
+						ctx.setRequestControls(
+								new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
+					}
+				} catch (IOException e) {
+					throw new NamingException(e.getMessage());
 				}
-			} catch (IOException e) {
-				throw new NamingException(e.getMessage());
-			}
-			results = baseCtx.search("", searchFilter, controls);
-			if (results != null) {
-				if (results.hasMore()) {
-					SearchResult sr = (SearchResult) results.next();
-					searchResult = getResult(attrs, sr);
+				results = ctx.search("", searchFilter, controls);
+				if (results != null) {
+					if (results.hasMore()) {
+						SearchResult sr = (SearchResult) results.next();
+						searchResult = getResult(attrs, sr);
+					}
+					results.close();
 				}
-				results.close();
+			} catch (NamingException | RuntimeException e) {
+				error = e;
+				throw e;
+			} finally {
+				releaseContext(ctxPool, ctx, error);
 			}
 		}
 
@@ -337,97 +431,149 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 	public LdapResult uniqueEntrySearchWithRangeAttr(String attributeName, String searchFilter) throws NamingException {
 
 		LdapResult searchResult = null;
-		if (baseCtx != null) {
-			boolean finallyFinished = false;
-			int step = 0;
-			List<LdapValue> values = new ArrayList<>();
-			while (!finallyFinished) {
-				int start = step * RANGE_SIZE;
-				int finish = start + (RANGE_SIZE - 1);
-				String range = start + "-" + finish;
-				SearchControls controls = new SearchControls();
-				controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-				String rangeAttributeName = attributeName + ";Range=" + range;
-				controls.setReturningAttributes(new String[] { rangeAttributeName });
-				NamingEnumeration<SearchResult> rangedEntries = baseCtx.search("", searchFilter, controls);
-				if (rangedEntries.hasMore()) {
-					SearchResult sr = (SearchResult) rangedEntries.next();
-					Attributes resultAttrs = sr.getAttributes();
-					NamingEnumeration<? extends Attribute> all = resultAttrs.getAll();
-					boolean hasMore = all.hasMore();
-					if (!hasMore) {
-						finallyFinished = true;
-						values.add(new LdapValue(Constants.NULL_STRING));
-						if (logger.isTraceEnabled()) {
-							logger.trace("-->uniqueEntrySearchWithRangeAttr: end because range does nit exists!");
-						}
-					}
-					while (hasMore) {
-						Attribute attribute = all.next();
-						String attrName = attribute.getID();
-						if (attrName.endsWith("*")) {
-							rangeAttributeName = attrName;
+		LdapContextPool ctxPool = getContextPool();
+		LdapContext ctx = borrowContext(ctxPool);
+		if (ctx != null) {
+			Throwable error = null;
+			try {
+				boolean finallyFinished = false;
+				int step = 0;
+				List<LdapValue> values = new ArrayList<>();
+				while (!finallyFinished) {
+					int start = step * RANGE_SIZE;
+					int finish = start + (RANGE_SIZE - 1);
+					String range = start + "-" + finish;
+					SearchControls controls = new SearchControls();
+					controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+					String rangeAttributeName = attributeName + ";Range=" + range;
+					controls.setReturningAttributes(new String[] { rangeAttributeName });
+					NamingEnumeration<SearchResult> rangedEntries = ctx.search("", searchFilter, controls);
+					if (rangedEntries.hasMore()) {
+						SearchResult sr = (SearchResult) rangedEntries.next();
+						Attributes resultAttrs = sr.getAttributes();
+						NamingEnumeration<? extends Attribute> all = resultAttrs.getAll();
+						boolean hasMore = all.hasMore();
+						if (!hasMore) {
 							finallyFinished = true;
+							values.add(new LdapValue(Constants.NULL_STRING));
+							if (logger.isTraceEnabled()) {
+								logger.trace("-->uniqueEntrySearchWithRangeAttr: end because range does nit exists!");
+							}
 						}
-						NamingEnumeration attrValues = attribute.getAll();
-						while (attrValues.hasMore()) {
-							Object objValue = attrValues.next();
-							if (objValue instanceof String) {
-								String value = (String) objValue;
-								values.add(new LdapValue(value));
-								logger.trace("{}: {}", new Object[] { rangeAttributeName, value });
-							} else if (objValue instanceof byte[]) {
-								byte[] value = (byte[]) objValue;
-								values.add(new LdapValue(value, Types.BLOB));
-							} else {
-								values.add(new LdapValue("Unknown type"));
-								logger.warn("{}: Unknown type {}",
-										new Object[] { rangeAttributeName, objValue.getClass().getName() });
+						while (hasMore) {
+							Attribute attribute = all.next();
+							String attrName = attribute.getID();
+							if (attrName.endsWith("*")) {
+								rangeAttributeName = attrName;
+								finallyFinished = true;
+							}
+							NamingEnumeration attrValues = attribute.getAll();
+							while (attrValues.hasMore()) {
+								Object objValue = attrValues.next();
+								if (objValue instanceof String) {
+									String value = (String) objValue;
+									values.add(new LdapValue(value));
+									logger.trace("{}: {}", new Object[] { rangeAttributeName, value });
+								} else if (objValue instanceof byte[]) {
+									byte[] value = (byte[]) objValue;
+									values.add(new LdapValue(value, Types.BLOB));
+								} else {
+									values.add(new LdapValue("Unknown type"));
+									logger.warn("{}: Unknown type {}",
+											new Object[] { rangeAttributeName, objValue.getClass().getName() });
+								}
 							}
+							hasMore = all.hasMore();
 						}
-						hasMore = all.hasMore();
+					} else {
+						finallyFinished = true;
 					}
-				} else {
-					finallyFinished = true;
+					rangedEntries.close();
+					step++;
 				}
-				rangedEntries.close();
-				step++;
+				searchResult = new LdapResult();
+				searchResult.put(attributeName, values);
+			} catch (NamingException | RuntimeException e) {
+				error = e;
+				throw e;
+			} finally {
+				releaseContext(ctxPool, ctx, error);
 			}
-			searchResult = new LdapResult();
-			searchResult.put(attributeName, values);
 		}
 		return searchResult;
 	}
 
-	@SuppressWarnings("rawtypes")
 	@Override
 	public List<LdapResult> manyEntrySearch(String[] attrs, String searchFilter) throws NamingException {
 
-		NamingEnumeration results = null;
-		List<LdapResult> searchResults = new ArrayList<>();
+		final List<LdapResult> searchResults = new ArrayList<>();
+		manyEntrySearch(attrs, searchFilter, new ILdapResultVisitor() {
+
+			@Override
+			public boolean visit(LdapResult result) {
+				searchResults.add(result);
+				return true;
+			}
+		});
+		return searchResults;
+	}
+
+	/* Overridden (non-Javadoc) */
+	@Override
+	public void manyEntrySearch(String[] attrs, String searchFilter, ILdapResultVisitor visitor)
+			throws NamingException {
 
 		SearchControls controls = new SearchControls();
 		controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
 		controls.setReturningAttributes(attrs);
 
-		if (baseCtx != null) {
-			logger.debug("pageSize={}", pageSize);
-			if (this.pageSize != null && this.pageSize.intValue() > 0) {
-				loadPagedResult(baseCtx, attrs, searchFilter, searchResults);
-			} else {
-				results = baseCtx.search("", searchFilter, controls);
-				if (results != null) {
-					while (results.hasMore()) {
-						SearchResult sr = (SearchResult) results.next();
-						LdapResult searchResult = getResult(attrs, sr);
-						searchResults.add(searchResult);
-					}
-					results.close();
+		LdapContextPool ctxPool = getContextPool();
+		LdapContext ctx = borrowContext(ctxPool);
+		if (ctx != null) {
+			Throwable error = null;
+			try {
+				logger.debug("pageSize={}", pageSize);
+				if (this.pageSize != null && this.pageSize.intValue() > 0) {
+					loadPagedResult(ctx, attrs, searchFilter, visitor);
+				} else {
+					visitResults(attrs, ctx.search("", searchFilter, controls), visitor);
 				}
+			} catch (NamingException | RuntimeException e) {
+				error = e;
+				throw e;
+			} finally {
+				releaseContext(ctxPool, ctx, error);
 			}
 		}
+	}
 
-		return searchResults;
+	/**
+	 * Przekazanie wyników wyszukiwania (jednej strony wyniku) do odbiorcy.
+	 * 
+	 * @param attrs
+	 *            lista pobieranych atrybutów
+	 * @param results
+	 *            wyniki wyszukiwania
+	 * @param visitor
+	 *            odbiorca wyników
+	 * @return {@code false} jeżeli odbiorca przerwał wyszukiwanie
+	 * @throws NamingException
+	 */
+	private boolean visitResults(String[] attrs, NamingEnumeration<SearchResult> results, ILdapResultVisitor visitor)
+			throws NamingException {
+		if (results == null) {
+			return true;
+		}
+		try {
+			while (results.hasMore()) {
+				if (!visitor.visit(getResult(attrs, results.next()))) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			results.close();
+		}
 	}
 
 	/**
@@ -437,12 +583,11 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 	 * @param searchResults
 	 * @throws NamingException
 	 */
-	@SuppressWarnings("rawtypes")
-	private void loadPagedResult(LdapContext ctx, String[] attrs, String searchFilter, List<LdapResult> searchResults)
+	private void loadPagedResult(LdapContext ctx, String[] attrs, String searchFilter, ILdapResultVisitor visitor)
 			throws NamingException {
-		NamingEnumeration results;
 		try {
 			byte[] cookie = null;
+			boolean more;
 			int total;
 			ctx.setRequestControls(new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
 			do {
@@ -454,17 +599,8 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 					logger.debug("--> loadPagedResult: searchFilter={}, ctx={}",
 							new Object[] { searchFilter, ctx.getNameInNamespace() });
 				}
-				results = ctx.search("", searchFilter, controls);
-
-				/* for each entry print out name + all attrs and values */
-				if (results != null) {
-					while (results.hasMore()) {
-						SearchResult sr = (SearchResult) results.next();
-						LdapResult searchResult = getResult(attrs, sr);
-						searchResults.add(searchResult);
-					}
-					results.close();
-				}
+				/* następna strona jest pobierana dopiero po obsłużeniu bieżącej */
+				more = visitResults(attrs, ctx.search("", searchFilter, controls), visitor);
 
 				// Examine the paged results control response
 				Control[] pControls = ctx.getResponseControls();
@@ -487,12 +623,28 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 				} else if (logger.isDebugEnabled()) {
 					logger.debug("No controls were sent from the server");
 				}
-				// Re-activate paged results
-				ctx.setRequestControls(new Control[] { new PagedResultsControl(pageSize, cookie, Control.CRITICAL) });
+				if (!more && cookie != null) {
+					/* odbiorca przerwał wyszukiwanie - zwolnienie wyniku po stronie serwera */
+					logger.debug("--> loadPagedResult: search is stopped by visitor");
+					ctx.setRequestControls(new Control[] { new PagedResultsControl(0, cookie, Control.CRITICAL) });
+					ctx.search("", searchFilter, controls).close();
+					cookie = null;
+				} else {
+					// Re-activate paged results
+					ctx.setRequestControls(
+							new Control[] { new PagedResultsControl(pageSize, cookie, Control.CRITICAL) });
+				}
 
 			} while (cookie != null);
 		} catch (IOException e) {
 			throw new NamingException(e.getMessage());
+		} finally {
+			/* kontekst (również spoza puli) nie może zachować kontrolki stronicowania */
+			try {
+				ctx.setRequestControls(null);
+			} catch (NamingException e) {
+				logger.warn(String.format("-->loadPagedResult: Can't reset request controls of %s", ctx), e);
+			}
 		}
 	}
 
@@ -574,15 +726,27 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 			logger.debug("-->addEntry: New entry attributes in {}: \n{}",
 					new Object[] { this.getDynamicCtx(), debugBuilder.toString() });
 		}
+		LdapContextPool ctxPool = getContextPool();
+		LdapContext ctx = borrowContext(ctxPool);
+		if (ctx == null) {
+			throw new NamingException("LDAP context is not initialized.");
+		}
+		Throwable error = null;
 		try {
-			if (pageSize != null && pageSize.intValue() > 0) {
-				this.baseCtx
-						.setRequestControls(new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
+			try {
+				if (pageSize != null && pageSize.intValue() > 0) {
+					ctx.setRequestControls(new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
+				}
+			} catch (IOException e) {
+				throw new NamingException(e.getMessage());
 			}
-		} catch (IOException e) {
-			throw new NamingException(e.getMessage());
+			ctx.createSubcontext(entryDN, entry);
+		} catch (NamingException | RuntimeException e) {
+			error = e;
+			throw e;
+		} finally {
+			releaseContext(ctxPool, ctx, error);
 		}
-		this.baseCtx.createSubcontext(entryDN, entry);
 	}
 
 	/* Overridden (non-Javadoc) */
@@ -662,15 +826,27 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 		}
 		logger.debug("-->modifyEntry: Modified entry attributes in {}: \n{}",
 				new Object[] { this.getDynamicCtx(), debugBuilder.toString() });
+		LdapContextPool ctxPool = getContextPool();
+		LdapContext ctx = borrowContext(ctxPool);
+		if (ctx == null) {
+			throw new NamingException("LDAP context is not initialized.");
+		}
+		Throwable error = null;
 		try {
-			if (pageSize != null && pageSize.intValue() > 0) {
-				this.baseCtx
-						.setRequestControls(new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
+			try {
+				if (pageSize != null && pageSize.intValue() > 0) {
+					ctx.setRequestControls(new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
+				}
+			} catch (IOException e) {
+				throw new NamingException(e.getMessage());
 			}
-		} catch (IOException e) {
-			throw new NamingException(e.getMessage());
+			ctx.modifyAttributes(entryDN, modifications.toArray(new ModificationItem[] {}));
+		} catch (NamingException | RuntimeException e) {
+			error = e;
+			throw e;
+		} finally {
+			releaseContext(ctxPool, ctx, error);
 		}
-		this.baseCtx.modifyAttributes(entryDN, modifications.toArray(new ModificationItem[] {}));
 
 	}
 
@@ -689,15 +865,27 @@ public class LdapContextFactoryBean implements ILdapContextFactory {
 			throw new NamingException("You can't change entry outside " + getDynamicCtx() + "context.");
 		}
 		entryDN = entryDN.substring(0, entryDN.length() - getDynamicCtx().length() - 1);
+		LdapContextPool ctxPool = getContextPool();
+		LdapContext ctx = borrowContext(ctxPool);
+		if (ctx == null) {
+			throw new NamingException("LDAP context is not initialized.");
+		}
+		Throwable error = null;
 		try {
-			if (pageSize != null && pageSize.intValue() > 0) {
-				this.baseCtx
-						.setRequestControls(new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
+			try {
+				if (pageSize != null && pageSize.intValue() > 0) {
+					ctx.setRequestControls(new Control[] { new PagedResultsControl(pageSize, Control.NONCRITICAL) });
+				}
+			} catch (IOException e) {
+				throw new NamingException(e.getMessage());
 			}
-		} catch (IOException e) {
-			throw new NamingException(e.getMessage());
+			ctx.destroySubcontext(entryDN);
+		} catch (NamingException | RuntimeException e) {
+			error = e;
+			throw e;
+		} finally {
+			releaseContext(ctxPool, ctx, error);
 		}
-		this.baseCtx.destroySubcontext(entryDN);
 	}
 
 }
@@ -0,0 +1,627 @@
+/*
+ * Slawas.pl Copyright &copy; 2011-2012
+ * http://slawas.pl
+ * All rights reserved.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN
+ * NO EVENT SHALL SŁAWOMIR CICHY BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package pl.slawas.common.ldap.provider;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LdapContextPool - ograniczona pula połączeń (kontekstów) LDAP o tych samych
+ * parametrach: adresie serwera razem z drzewem wyszukiwania
+ * ({@link Context#PROVIDER_URL}) i użytkowniku nawiązującym połączenie. Operacja
+ * LDAP pożycza połączenie z puli i oddaje je po zakończeniu, więc kolejne
+ * obiekty dostępu i kolejne wyszukiwania nie nawiązują nowego połączenia i nie
+ * uwierzytelniają się ponownie.
+ * <p>
+ * Liczba połączeń (pożyczonych i bezczynnych) nie przekracza
+ * {@link ProviderOptions#getLdapPoolMaxSize()}. Gdy wszystkie są pożyczone,
+ * wątek czeka na zwrot połączenia najwyżej
+ * {@link ProviderOptions#getLdapPoolMaxWait()} [ms]. Połączenia bezczynne
+ * dłużej niż {@link ProviderOptions#getLdapPoolMaxIdleTime()} [ms] są zamykane
+ * przy kolejnym pożyczeniu lub zwrocie, a połączenie bezczynne dłużej niż
+ * {@link #VALIDATE_AFTER_IDLE_MILLIS} jest sprawdzane przed pożyczeniem.
+ * </p>
+ * <p>
+ * Wspólny wątek (demon) co {@link #EVICTION_PERIOD_MILLIS} [ms] zamyka
+ * przeterminowane połączenia wszystkich pul, również pul, z których nikt już
+ * nie korzysta. Pula bez połączeń, nieużywana dłużej niż czas bezczynności,
+ * jest usuwana z rejestru pul ({@link #isEvicted()}) - jej użytkownik pobiera
+ * pulę ponownie metodą {@link #getPool(Hashtable, int, long, long)}. Przy
+ * zamykaniu JVM wszystkie pule zamyka {@link #closeAll()}.
+ * </p>
+ * <p>
+ * Dla adresu i użytkownika istnieje najwyżej jedna pula. Pula pamięta skrót
+ * hasła (HMAC z kluczem losowanym przy starcie JVM) - żądanie puli z innym
+ * hasłem zamyka starą pulę i tworzy nową, więc połączenie uwierzytelnione
+ * jednym hasłem nigdy nie jest wydawane dla innego. Pulę zamyka
+ * {@link #close()}, a wszystkie pule {@link #closeAll()}.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
+ * @version $Revision: 1.3 $
+ *
+ */
+public class LdapContextPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(LdapContextPool.class.getName());
+
+	public static final int DEFAULT_MAX_SIZE = 8;
+
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 5000L;
+
+	public static final long DEFAULT_MAX_IDLE_MILLIS = 300000L;
+
+	/** Czas bezczynności [ms], po którym połączenie jest sprawdzane */
+	public static final long VALIDATE_AFTER_IDLE_MILLIS = 30000L;
+
+	/** Okres [ms] przeglądu pul zamykającego przeterminowane połączenia */
+	public static final long EVICTION_PERIOD_MILLIS = 30000L;
+
+	/** Atrybut "brak atrybutów" (RFC 4511) - najtańszy odczyt entry */
+	private static final String[] NO_ATTRIBUTES = { "1.1" };
+
+	private static final ConcurrentMap<String, LdapContextPool> pools = new ConcurrentHashMap<>();
+
+	/** Klucz skrótów haseł - losowany dla każdej JVM */
+	private static final byte[] CREDENTIALS_KEY = new byte[32];
+
+	static {
+		new SecureRandom().nextBytes(CREDENTIALS_KEY);
+	}
+
+	/** Przegląd pul, {@code null} - nie jest uruchomiony */
+	private static ScheduledExecutorService evictor;
+
+	/** Czy zarejestrowano zamknięcie pul przy zamykaniu JVM */
+	private static boolean shutdownHookAdded = false;
+
+	private final String key;
+
+	private final String name;
+
+	private final byte[] credentialsDigest;
+
+	private final Hashtable<?, ?> environment;
+
+	private final int maxSize;
+
+	private final long maxWaitMillis;
+
+	private final long maxIdleMillis;
+
+	private final Semaphore permits;
+
+	/** bezczynne połączenia, ostatnio zwrócone na początku listy */
+	private final LinkedList<IdleContext> idle = new LinkedList<>();
+
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong createdCount = new AtomicLong();
+	private final AtomicLong closedCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong validationFailureCount = new AtomicLong();
+	private final AtomicLong waitTimeNanos = new AtomicLong();
+
+	/** czy udało się nawiązać połączenie (uwierzytelnić się) */
+	private volatile boolean bound = false;
+
+	private volatile boolean closed = false;
+
+	/** czy pula została usunięta z rejestru pul jako nieużywana */
+	private volatile boolean evicted = false;
+
+	/** czas [ms] ostatniego pożyczenia lub zwrotu połączenia */
+	private volatile long lastUsed = System.currentTimeMillis();
+
+	private LdapContextPool(String key, String name, byte[] credentialsDigest, Hashtable<?, ?> environment,
+			int maxSize, long maxWaitMillis, long maxIdleMillis) {
+		this.key = key;
+		this.name = name;
+		this.credentialsDigest = credentialsDigest;
+		this.environment = environment;
+		this.maxSize = maxSize;
+		this.maxWaitMillis = maxWaitMillis;
+		this.maxIdleMillis = maxIdleMillis;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Pula dla parametrów połączenia - pula jest tworzona przy pierwszym użyciu.
+	 * Parametry rozmiaru i czasów brane są z pierwszego wywołania dla danych
+	 * parametrów połączenia. Pula z innym hasłem dla tego samego adresu i
+	 * użytkownika jest zamykana i zastępowana nową.
+	 *
+	 * @param environment
+	 *            parametry kontekstu LDAP (z {@link Context#PROVIDER_URL} i
+	 *            {@link Context#SECURITY_PRINCIPAL})
+	 * @param maxSize
+	 *            maksymalna liczba połączeń
+	 * @param maxWaitMillis
+	 *            maksymalny czas oczekiwania [ms] na wolne połączenie
+	 * @param maxIdleMillis
+	 *            czas bezczynności [ms], po którym połączenie jest zamykane
+	 * @return pula połączeń
+	 */
+	public static LdapContextPool getPool(Hashtable<?, ?> environment, int maxSize, long maxWaitMillis,
+			long maxIdleMillis) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Maksymalny rozmiar puli musi być większy od 0: " + maxSize);
+		}
+		final String key = new StringBuilder().append(environment.get(Context.PROVIDER_URL)).append('|')
+				.append(environment.get(Context.SECURITY_PRINCIPAL)).toString();
+		byte[] digest = digest(environment.get(Context.SECURITY_CREDENTIALS));
+		while (true) {
+			LdapContextPool pool = pools.get(key);
+			if (pool != null) {
+				if (MessageDigest.isEqual(pool.credentialsDigest, digest)) {
+					return pool;
+				}
+				/* zmiana hasła - połączenia starej puli nie mogą być już wydawane */
+				logger.info("Hasło dla puli połączeń LDAP {} zmieniło się, zamykam starą pulę", pool.name);
+				pool.close();
+				continue;
+			}
+			String poolName = environment.get(Context.SECURITY_PRINCIPAL) + "@" + environment.get(Context.PROVIDER_URL);
+			LdapContextPool newPool = new LdapContextPool(key, poolName, digest, new Hashtable<>(environment),
+					maxSize, maxWaitMillis, maxIdleMillis);
+			if (pools.putIfAbsent(key, newPool) == null) {
+				logger.info("Utworzyłem pulę połączeń LDAP {} (maxSize={}, maxWait={}ms)",
+						new Object[] { poolName, maxSize, maxWaitMillis });
+				startEvictor();
+				return newPool;
+			}
+		}
+	}
+
+	/**
+	 * Skrót hasła do porównania z hasłem puli - samo hasło nie jest porównywane
+	 * ani przechowywane poza parametrami połączenia.
+	 */
+	private static byte[] digest(Object credentials) {
+		byte[] value;
+		if (credentials == null) {
+			value = new byte[0];
+		} else if (credentials instanceof byte[]) {
+			value = (byte[]) credentials;
+		} else if (credentials instanceof char[]) {
+			value = new String((char[]) credentials).getBytes(StandardCharsets.UTF_8);
+		} else {
+			value = credentials.toString().getBytes(StandardCharsets.UTF_8);
+		}
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(CREDENTIALS_KEY, "HmacSHA256"));
+			return mac.doFinal(value);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Brak algorytmu HmacSHA256", e);
+		}
+	}
+
+	/**
+	 * @return wszystkie utworzone pule - np. do odczytu statystyk
+	 */
+	public static Collection<LdapContextPool> getPools() {
+		return Collections.unmodifiableCollection(pools.values());
+	}
+
+	/**
+	 * Zamknięcie i usunięcie wszystkich pul, np. przy zamykaniu aplikacji albo
+	 * zmianie konfiguracji. Wywoływane również przy zamykaniu JVM.
+	 */
+	public static void closeAll() {
+		synchronized (LdapContextPool.class) {
+			if (evictor != null) {
+				evictor.shutdownNow();
+				evictor = null;
+			}
+		}
+		for (LdapContextPool pool : pools.values()) {
+			pool.close();
+		}
+	}
+
+	/**
+	 * Uruchomienie przeglądu pul, jeżeli nie jest uruchomiony, oraz rejestracja
+	 * zamknięcia pul przy zamykaniu JVM.
+	 */
+	private static synchronized void startEvictor() {
+		if (evictor != null) {
+			return;
+		}
+		evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "LdapContextPool-evictor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		evictor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				evictAll();
+			}
+		}, EVICTION_PERIOD_MILLIS, EVICTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+		if (!shutdownHookAdded) {
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					closeAll();
+				}
+			}, "LdapContextPool-shutdown"));
+			shutdownHookAdded = true;
+		}
+	}
+
+	/**
+	 * Przegląd wszystkich pul - zamknięcie przeterminowanych połączeń i usunięcie
+	 * z rejestru pul nieużywanych.
+	 */
+	static void evictAll() {
+		for (LdapContextPool pool : pools.values()) {
+			try {
+				pool.closeExpired();
+				if (pool.evictIfUnused()) {
+					logger.info("Usunąłem nieużywaną pulę połączeń LDAP {}", pool.name);
+				}
+			} catch (RuntimeException e) {
+				logger.warn(String.format("Błąd przeglądu puli połączeń LDAP %s", pool.name), e);
+			}
+		}
+	}
+
+	/**
+	 * Usunięcie puli z rejestru pul, jeżeli nie ma połączeń (pożyczonych i
+	 * bezczynnych) i nie była używana dłużej niż {@link #maxIdleMillis}.
+	 * 
+	 * @return czy pula została usunięta
+	 */
+	private boolean evictIfUnused() {
+		synchronized (idle) {
+			if (!idle.isEmpty() || getActiveCount() > 0
+					|| System.currentTimeMillis() - lastUsed <= maxIdleMillis) {
+				return false;
+			}
+			evicted = true;
+		}
+		pools.remove(key, this);
+		return true;
+	}
+
+	/**
+	 * Zamknięcie puli - pula jest usuwana z rejestru pul, bezczynne połączenia są
+	 * zamykane, a pożyczone zostaną zamknięte przy zwrocie. Kolejne pożyczenie
+	 * kończy się błędem, a {@link #getPool(Hashtable, int, long, long)} utworzy
+	 * nową pulę.
+	 */
+	public void close() {
+		closed = true;
+		pools.remove(key, this);
+		closeIdle();
+	}
+
+	/**
+	 * @return czy pula została zamknięta
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return czy pula została usunięta z rejestru pul jako nieużywana - nowe
+	 *         operacje powinny pobrać pulę ponownie metodą
+	 *         {@link #getPool(Hashtable, int, long, long)}, a połączenia
+	 *         pożyczone z tej puli są zamykane przy zwrocie
+	 */
+	public boolean isEvicted() {
+		return evicted;
+	}
+
+	/**
+	 * @return czy pula nawiązała już połączenie - czyli parametry połączenia (w
+	 *         tym hasło) zostały przyjęte przez serwer
+	 */
+	public boolean isBound() {
+		return bound;
+	}
+
+	/**
+	 * Pożyczenie połączenia z puli - połączenie trzeba oddać metodą
+	 * {@link #release(LdapContext)}.
+	 *
+	 * @return połączenie LDAP
+	 * @throws NamingException
+	 *             brak wolnego połączenia w czasie {@link #maxWaitMillis} albo
+	 *             błąd nawiązania nowego połączenia
+	 */
+	public LdapContext borrow() throws NamingException {
+		if (closed) {
+			throw new NamingException("Pula połączeń LDAP " + name + " została zamknięta");
+		}
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				timeoutCount.incrementAndGet();
+				throw new NamingException(String.format(
+						"Brak wolnego połączenia LDAP w puli %s po %d ms (maxSize=%d)", name, maxWaitMillis, maxSize));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NamingException("Przerwano oczekiwanie na połączenie LDAP w puli " + name);
+		}
+		waitTimeNanos.addAndGet(System.nanoTime() - start);
+		borrowCount.incrementAndGet();
+		lastUsed = System.currentTimeMillis();
+		try {
+			LdapContext ctx = takeIdle();
+			if (ctx == null) {
+				ctx = new InitialLdapContext(environment, null);
+				bound = true;
+				createdCount.incrementAndGet();
+				logger.debug("Utworzyłem nowe połączenie w puli {}", name);
+			}
+			return ctx;
+		} catch (NamingException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Zwrot pożyczonego połączenia do puli. Ustawione na połączeniu kontrolki
+	 * żądań (np. stronicowania) są usuwane.
+	 *
+	 * @param ctx
+	 *            połączenie pożyczone metodą {@link #borrow()}
+	 */
+	public void release(LdapContext ctx) {
+		lastUsed = System.currentTimeMillis();
+		try {
+			if (closed || evicted) {
+				close(ctx);
+				return;
+			}
+			ctx.setRequestControls(null);
+			synchronized (idle) {
+				idle.addFirst(new IdleContext(ctx));
+			}
+		} catch (NamingException e) {
+			logger.debug("Połączenie z puli {} nie nadaje się do ponownego użycia: {}", name, e.getMessage());
+			close(ctx);
+		} finally {
+			permits.release();
+		}
+		closeExpired();
+	}
+
+	/**
+	 * Zamknięcie pożyczonego połączenia zamiast zwrotu do puli, np. po błędzie
+	 * komunikacji z serwerem.
+	 *
+	 * @param ctx
+	 *            połączenie pożyczone metodą {@link #borrow()}
+	 */
+	public void invalidate(LdapContext ctx) {
+		try {
+			close(ctx);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private LdapContext takeIdle() {
+		while (true) {
+			IdleContext candidate;
+			synchronized (idle) {
+				candidate = idle.pollFirst();
+			}
+			if (candidate == null) {
+				return null;
+			}
+			long idleMillis = candidate.idleMillis();
+			if (idleMillis > maxIdleMillis) {
+				close(candidate.ctx);
+				continue;
+			}
+			if (idleMillis > VALIDATE_AFTER_IDLE_MILLIS && !isValid(candidate.ctx)) {
+				validationFailureCount.incrementAndGet();
+				close(candidate.ctx);
+				continue;
+			}
+			return candidate.ctx;
+		}
+	}
+
+	private boolean isValid(LdapContext ctx) {
+		try {
+			ctx.getAttributes("", NO_ATTRIBUTES);
+			return true;
+		} catch (NamingException e) {
+			logger.debug("Połączenie z puli {} jest niesprawne: {}", name, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Zamknięcie połączeń bezczynnych dłużej niż {@link #maxIdleMillis}. Najdłużej
+	 * bezczynne połączenia są na końcu listy.
+	 */
+	private void closeExpired() {
+		List<LdapContext> expired = null;
+		synchronized (idle) {
+			while (!idle.isEmpty() && idle.getLast().idleMillis() > maxIdleMillis) {
+				if (expired == null) {
+					expired = new ArrayList<>();
+				}
+				expired.add(idle.removeLast().ctx);
+			}
+		}
+		if (expired != null) {
+			for (LdapContext ctx : expired) {
+				close(ctx);
+			}
+		}
+	}
+
+	/**
+	 * Zamknięcie wszystkich bezczynnych połączeń puli.
+	 */
+	public void closeIdle() {
+		List<LdapContext> contexts = new ArrayList<>();
+		synchronized (idle) {
+			for (Iterator<IdleContext> it = idle.iterator(); it.hasNext();) {
+				contexts.add(it.next().ctx);
+				it.remove();
+			}
+		}
+		for (LdapContext ctx : contexts) {
+			close(ctx);
+		}
+	}
+
+	private void close(LdapContext ctx) {
+		closedCount.incrementAndGet();
+		try {
+			ctx.close();
+		} catch (NamingException e) {
+			logger.debug("Błąd zamknięcia połączenia z puli {} można zignorować: {}", name, e.getMessage());
+		}
+	}
+
+	/**
+	 * @return nazwa puli (użytkownik@adres)
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return liczba pożyczonych połączeń
+	 */
+	public int getActiveCount() {
+		return maxSize - permits.availablePermits();
+	}
+
+	/**
+	 * @return liczba bezczynnych połączeń
+	 */
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	/**
+	 * @return liczba pożyczeń połączenia
+	 */
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * @return liczba nawiązanych połączeń (uwierzytelnień)
+	 */
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	/**
+	 * @return liczba zamkniętych połączeń
+	 */
+	public long getClosedCount() {
+		return closedCount.get();
+	}
+
+	/**
+	 * @return liczba nieudanych pożyczeń z powodu braku wolnego połączenia
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	/**
+	 * @return liczba połączeń odrzuconych przez sprawdzenie przed pożyczeniem
+	 */
+	public long getValidationFailureCount() {
+		return validationFailureCount.get();
+	}
+
+	/**
+	 * @return średni czas oczekiwania [ms] na wolne połączenie
+	 */
+	public double getMeanWaitMillis() {
+		long borrows = borrowCount.get();
+		return (borrows == 0L ? 0.0 : waitTimeNanos.get() / 1000000.0 / borrows);
+	}
+
+	@Override
+	public String toString() {
+		return "LdapContextPool [name=" + name + ", active=" + getActiveCount() + ", idle=" + getIdleCount()
+				+ ", borrows=" + getBorrowCount() + ", created=" + getCreatedCount() + ", closed=" + getClosedCount()
+				+ ", timeouts=" + getTimeoutCount() + ", validationFailures=" + getValidationFailureCount()
+				+ ", meanWait=" + getMeanWaitMillis() + "ms]";
+	}
+
+	/**
+	 * Bezczynne połączenie z czasem zwrotu do puli.
+	 */
+	private static class IdleContext {
+
+		private final LdapContext ctx;
+
+		private final long returnedAt = System.currentTimeMillis();
+
+		IdleContext(LdapContext ctx) {
+			this.ctx = ctx;
+		}
+
+		long idleMillis() {
+			return System.currentTimeMillis() - returnedAt;
+		}
+	}
+
+}
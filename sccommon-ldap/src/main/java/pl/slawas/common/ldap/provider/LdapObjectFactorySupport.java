@@ -33,6 +33,7 @@ import pl.slawas.common.ldap.api.ILdapUserGroupAO;
 import pl.slawas.common.ldap.cache.LastTimeGroupSynchronization;
 import pl.slawas.common.ldap.cache.LdapGroupsCache;
 import pl.slawas.common.ldap.cache.LdapGroupsCacheLists;
+import pl.slawas.common.ldap.provider.LdapUnitsSearch.IUnitSearch;
 import pl.slawas.common.ldap.provider.beans.GroupCacheHashTable;
 import pl.slawas.common.ldap.provider.exceptions.LdapObjectFactoryException;
 import org.slf4j.Logger;
@@ -44,7 +45,7 @@ import org.slf4j.LoggerFactory;
  * repozytorium użytkowników.
  *
  * @author Sławomir Cichy &lt;slawomir.cichy@ibpm.pro&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.2 $
  *
  * @param <L>
  *            reprezentacja obiektu entry użytkownika
@@ -113,32 +114,34 @@ public abstract class LdapObjectFactorySupport<L extends ILdapUser<G>, G extends
 			String organizationalUnit);
 
 	/**
-	 * Pobieranie użytkownika po jego nazwie.
+	 * Pobieranie użytkownika po jego nazwie. Jednostki organizacyjne
+	 * przeszukiwane są równolegle ({@link LdapUnitsSearch}), a zwracany jest
+	 * użytkownik z jednostki występującej najwcześniej w konfiguracji.
 	 * 
 	 * @param ldapOptions
 	 * @param name
 	 * @return
 	 */
 	@SuppressWarnings("deprecation")
-	public L findUserByName(ProviderOptions ldapOptions, String name) {
+	public L findUserByName(final ProviderOptions ldapOptions, final String name) {
 		String organizationalUnitArray[] = ldapOptions.getUsersOrganizationalUnitNames();
 
-		L user = null;
-		for (String organizationalUnitName : organizationalUnitArray) {
-			ILdapAO<L> laoObject = getNewInstanceUserAO(ldapOptions, organizationalUnitName);
-			try {
-				user = laoObject.load(name);
-				if (user != null) {
-					return user;
+		return LdapUnitsSearch.searchFirst(ldapOptions, organizationalUnitArray, new IUnitSearch<L>() {
+
+			@Override
+			public L search(String organizationalUnitName) {
+				ILdapAO<L> laoObject = getNewInstanceUserAO(ldapOptions, organizationalUnitName);
+				try {
+					return laoObject.load(name);
+				} catch (NamingException e) {
+					logger.error(String.format("Błąd poszukiwania użtytkownika o nazwie %s w jednostce %s", name,
+							organizationalUnitName), e);
+					return null;
+				} finally {
+					laoObject.close();
 				}
-			} catch (NamingException e) {
-				logger.error(String.format("Błąd poszukiwania użtytkownika o nazwie %s w jednostce %s", name,
-						organizationalUnitName), e);
-			} finally {
-				laoObject.close();
 			}
-		}
-		return user;
+		});
 
 	}
 
@@ -0,0 +1,259 @@
+/*
+ * Slawas.pl Copyright &copy; 2011-2012
+ * http://slawas.pl
+ * All rights reserved.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN
+ * NO EVENT SHALL SŁAWOMIR CICHY BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package pl.slawas.common.ldap.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LdapUnitsSearch - równoległe wyszukiwanie w wielu jednostkach
+ * organizacyjnych. Wyszukiwanie w każdej jednostce jest osobnym zadaniem
+ * wykonywanym na wątkach wspólnego wykonawcy, a obiekt dostępu tworzony przez
+ * zadanie pobiera połączenie z puli {@link LdapContextPool} swojej jednostki.
+ * <p>
+ * Liczba zadań wykonywanych jednocześnie na jednym serwerze LDAP
+ * ({@link ProviderOptions#getProviderUrl()}) nie przekracza
+ * {@link ProviderOptions#getUnitSearchParallelism()} - limit jest wspólny dla
+ * wszystkich wątków korzystających z serwera z tą samą wartością limitu (po
+ * zmianie konfiguracji obowiązuje nowy limit). Przy limicie równym 1 (albo dla
+ * jednej jednostki) jednostki przeszukiwane są po kolei w wątku wywołującym.
+ * </p>
+ * <p>
+ * Wyniki są zwracane w kolejności jednostek z konfiguracji, niezależnie od
+ * kolejności zakończenia zadań, więc wynik jest taki sam jak przy
+ * przeszukiwaniu po kolei.
+ * </p>
+ *
+ * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
+ * @version $Revision: 1.2 $
+ *
+ */
+public class LdapUnitsSearch {
+
+	private static final Logger logger = LoggerFactory.getLogger(LdapUnitsSearch.class.getName());
+
+	/**
+	 * Limity zadań wykonywanych jednocześnie, z adresem serwera i wartością
+	 * limitu jako kluczem
+	 */
+	private static final ConcurrentMap<String, Semaphore> serverPermits = new ConcurrentHashMap<>();
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "LdapUnitsSearch-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private LdapUnitsSearch() {
+	}
+
+	/**
+	 * Wyszukiwanie w jednej jednostce organizacyjnej. Zadanie samo obsługuje
+	 * błędy LDAP (np. zapisuje je w logu i zwraca {@code null}) - wyjątek
+	 * wykonania przerywa całe wyszukiwanie.
+	 *
+	 * @param <T>
+	 *            typ wyniku
+	 */
+	public interface IUnitSearch<T> {
+
+		/**
+		 * @param organizationalUnitName
+		 *            nazwa jednostki organizacyjnej
+		 * @return wynik wyszukiwania w jednostce, {@code null} - brak wyniku
+		 */
+		T search(String organizationalUnitName);
+	}
+
+	/**
+	 * Wyszukiwanie we wszystkich jednostkach - np. do scalenia wyników podczas
+	 * przebudowy pamięci podręcznej.
+	 *
+	 * @param ldapOptions
+	 *            parametry połączenia do repozytorium użytkowników
+	 * @param organizationalUnitNames
+	 *            nazwy jednostek organizacyjnych
+	 * @param unitSearch
+	 *            wyszukiwanie w jednostce
+	 * @return wyniki w kolejności jednostek (również wartości {@code null})
+	 */
+	public static <T> List<T> searchAll(ProviderOptions ldapOptions, String[] organizationalUnitNames,
+			IUnitSearch<T> unitSearch) {
+		return search(ldapOptions, organizationalUnitNames, unitSearch, false);
+	}
+
+	/**
+	 * Wyszukiwanie pierwszego wyniku - np. użytkownika, który może być w jednej
+	 * z wielu jednostek. Zwracany jest wynik jednostki występującej najwcześniej
+	 * w konfiguracji, a zadania dalszych jednostek, które jeszcze nie ruszyły, nie
+	 * wykonują już wyszukiwania.
+	 *
+	 * @param ldapOptions
+	 *            parametry połączenia do repozytorium użytkowników
+	 * @param organizationalUnitNames
+	 *            nazwy jednostek organizacyjnych
+	 * @param unitSearch
+	 *            wyszukiwanie w jednostce
+	 * @return pierwszy wynik różny od {@code null} albo {@code null}
+	 */
+	public static <T> T searchFirst(ProviderOptions ldapOptions, String[] organizationalUnitNames,
+			IUnitSearch<T> unitSearch) {
+		List<T> results = search(ldapOptions, organizationalUnitNames, unitSearch, true);
+		return (results.isEmpty() ? null : results.get(results.size() - 1));
+	}
+
+	private static <T> List<T> search(ProviderOptions ldapOptions, String[] organizationalUnitNames,
+			IUnitSearch<T> unitSearch, boolean firstMatch) {
+		List<T> results = new ArrayList<>(organizationalUnitNames.length);
+		int parallelism = ldapOptions.getUnitSearchParallelism();
+		if (parallelism <= 1 || organizationalUnitNames.length <= 1) {
+			for (String organizationalUnitName : organizationalUnitNames) {
+				T result = unitSearch.search(organizationalUnitName);
+				results.add(result);
+				if (firstMatch && result != null) {
+					break;
+				}
+			}
+			return results;
+		}
+
+		Semaphore permits = getPermits(ldapOptions.getProviderUrl(), parallelism);
+		List<Future<T>> futures = new ArrayList<>(organizationalUnitNames.length);
+		AtomicBoolean stopped = new AtomicBoolean();
+		try {
+			for (String organizationalUnitName : organizationalUnitNames) {
+				if (firstMatch && collect(futures, results, true)) {
+					/* wynik z wcześniejszej jednostki już jest - dalsze nie są potrzebne */
+					return results;
+				}
+				permits.acquire();
+				try {
+					futures.add(
+							executor.submit(new UnitTask<>(permits, stopped, unitSearch, organizationalUnitName)));
+				} catch (RuntimeException e) {
+					permits.release();
+					throw e;
+				}
+			}
+			while (results.size() < futures.size()) {
+				futures.get(results.size()).get();
+				if (collect(futures, results, firstMatch)) {
+					return results;
+				}
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Przerwano wyszukiwanie w jednostkach organizacyjnych", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} finally {
+			/* zadania, które nie zdążyły ruszyć, nie są już potrzebne */
+			stopped.set(true);
+		}
+	}
+
+	/**
+	 * Przepisanie do listy wyników kolejnych (w kolejności jednostek) zakończonych
+	 * zadań.
+	 *
+	 * @return czy znaleziono wynik różny od {@code null} (przy wyszukiwaniu
+	 *         pierwszego wyniku)
+	 */
+	private static <T> boolean collect(List<Future<T>> futures, List<T> results, boolean firstMatch)
+			throws InterruptedException, ExecutionException {
+		while (results.size() < futures.size() && futures.get(results.size()).isDone()) {
+			T result = futures.get(results.size()).get();
+			results.add(result);
+			if (firstMatch && result != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Semaphore getPermits(String providerUrl, int parallelism) {
+		String key = providerUrl + '|' + parallelism;
+		Semaphore permits = serverPermits.get(key);
+		if (permits == null) {
+			Semaphore newPermits = new Semaphore(parallelism, true);
+			permits = serverPermits.putIfAbsent(key, newPermits);
+			if (permits == null) {
+				permits = newPermits;
+				logger.debug("Limit równoległych wyszukiwań dla {}: {}", providerUrl, parallelism);
+			}
+		}
+		return permits;
+	}
+
+	private static class UnitTask<T> implements Callable<T> {
+
+		private final Semaphore permits;
+
+		private final AtomicBoolean stopped;
+
+		private final IUnitSearch<T> unitSearch;
+
+		private final String organizationalUnitName;
+
+		UnitTask(Semaphore permits, AtomicBoolean stopped, IUnitSearch<T> unitSearch,
+				String organizationalUnitName) {
+			this.permits = permits;
+			this.stopped = stopped;
+			this.unitSearch = unitSearch;
+			this.organizationalUnitName = organizationalUnitName;
+		}
+
+		@Override
+		public T call() {
+			try {
+				return (stopped.get() ? null : unitSearch.search(organizationalUnitName));
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+}
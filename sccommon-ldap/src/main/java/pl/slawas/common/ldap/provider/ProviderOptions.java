@@ -7,6 +7,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.management.RuntimeErrorException;
 import javax.xml.bind.JAXBContext;
@@ -51,7 +53,7 @@ import pl.slawas.security.PasswordEncoder;
  * </ul>
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.6 $
  * 
  */
 public class ProviderOptions extends LdapConfigOptions implements Serializable {
@@ -63,6 +65,9 @@ public class ProviderOptions extends LdapConfigOptions implements Serializable {
 
 	private static final Logger log = LoggerFactory.getLogger(ProviderOptions.class.getName());
 
+	/** Warunek filtra postaci {@code (atrybut=wartość)} */
+	private static final Pattern FILTER_ASSERTION = Pattern.compile("\\(([^()=&|!]+)=([^()]*)\\)");
+
 	/** pełna ścieżka do pliku konfiguracyjnego */
 	public static final String configFilePath;
 	/**
@@ -360,6 +365,48 @@ public class ProviderOptions extends LdapConfigOptions implements Serializable {
 	 * Rozmiar strony dla wyniku wyszukiwania w LDAP.
 	 */
 	private Integer ldapResultPageSize = null;
+
+	/**
+	 * Maksymalna liczba połączeń w puli połączeń LDAP, 0 - każdy obiekt dostępu
+	 * nawiązuje własne połączenie.
+	 */
+	private int ldapPoolMaxSize = LdapContextPool.DEFAULT_MAX_SIZE;
+
+	/**
+	 * Maksymalny czas oczekiwania [ms] na wolne połączenie z puli.
+	 */
+	private long ldapPoolMaxWait = LdapContextPool.DEFAULT_MAX_WAIT_MILLIS;
+
+	/**
+	 * Czas bezczynności [ms], po którym połączenie z puli jest zamykane.
+	 */
+	private long ldapPoolMaxIdleTime = LdapContextPool.DEFAULT_MAX_IDLE_MILLIS;
+
+	/**
+	 * Liczba użytkowników, których grupy wyszukiwane są jednym zapytaniem do LDAP,
+	 * 0 - grupy każdego użytkownika wyszukiwane są osobno.
+	 */
+	private int groupBatchSize = DEFAULT_GROUP_BATCH_SIZE;
+
+	/**
+	 * Liczba jednostek organizacyjnych przeszukiwanych równolegle na jednym
+	 * serwerze LDAP, 1 - jednostki przeszukiwane są po kolei.
+	 */
+	private int unitSearchParallelism = DEFAULT_UNIT_SEARCH_PARALLELISM;
+
+	/**
+	 * Nazwa atrybutu grupy zmienianego przy każdej modyfikacji entry, np.
+	 * {@code modifyTimestamp} albo {@code uSNChanged} (AD). Wartości atrybutu
+	 * porównywane są tylko w obrębie jednego serwera - zobacz
+	 * {@link #isSingleServer()}.
+	 */
+	private String groupChangeAttribute = DEFAULT_GROUP_CHANGE_ATTRIBUTE;
+
+	/**
+	 * Okres [ms], co który synchronizacja grup zmienionych wyszukuje również grupy
+	 * usunięte z LDAP, 0 - każda synchronizacja pobiera wszystkie grupy.
+	 */
+	private long groupSweepPeriod = DEFAULT_GROUP_SWEEP_PERIOD;
 	/**
 	 * Nazwa opcji dla: Czy nadpisać ustawienia użytkownika ustawieniami domyślnymi?
 	 * Dotyczy tylko parametru {@link ProviderOptions#getDefaultTaskNotification()}.
@@ -786,6 +833,34 @@ public class ProviderOptions extends LdapConfigOptions implements Serializable {
 		if (StringUtils.isNotBlank(lLdapResultPageSize)) {
 			this.ldapResultPageSize = Integer.parseInt(lLdapResultPageSize);
 		}
+		String lLdapPoolMaxSize = optionalOption(option_ldapPoolMaxSize);
+		if (StringUtils.isNotBlank(lLdapPoolMaxSize)) {
+			this.ldapPoolMaxSize = Integer.parseInt(lLdapPoolMaxSize);
+		}
+		String lLdapPoolMaxWait = optionalOption(option_ldapPoolMaxWait);
+		if (StringUtils.isNotBlank(lLdapPoolMaxWait)) {
+			this.ldapPoolMaxWait = Long.parseLong(lLdapPoolMaxWait);
+		}
+		String lLdapPoolMaxIdleTime = optionalOption(option_ldapPoolMaxIdleTime);
+		if (StringUtils.isNotBlank(lLdapPoolMaxIdleTime)) {
+			this.ldapPoolMaxIdleTime = Long.parseLong(lLdapPoolMaxIdleTime);
+		}
+		String lGroupBatchSize = optionalOption(option_groupBatchSize);
+		if (StringUtils.isNotBlank(lGroupBatchSize)) {
+			this.groupBatchSize = Integer.parseInt(lGroupBatchSize);
+		}
+		String lUnitSearchParallelism = optionalOption(option_unitSearchParallelism);
+		if (StringUtils.isNotBlank(lUnitSearchParallelism)) {
+			this.unitSearchParallelism = Integer.parseInt(lUnitSearchParallelism);
+		}
+		String lGroupChangeAttribute = optionalOption(option_groupChangeAttribute);
+		if (StringUtils.isNotBlank(lGroupChangeAttribute)) {
+			this.groupChangeAttribute = lGroupChangeAttribute;
+		}
+		String lGroupSweepPeriod = optionalOption(option_groupSweepPeriod);
+		if (StringUtils.isNotBlank(lGroupSweepPeriod)) {
+			this.groupSweepPeriod = Long.parseLong(lGroupSweepPeriod);
+		}
 		String lUseDefaultParams = optionalOption(option_useDefaultParams);
 		if (StringUtils.isNotBlank(lUseDefaultParams)) {
 			this.useDefaultParams = Boolean.parseBoolean(lUseDefaultParams);
@@ -1223,6 +1298,106 @@ public class ProviderOptions extends LdapConfigOptions implements Serializable {
 		return ldapResultPageSize;
 	}
 
+	/**
+	 * @return the {@link #ldapPoolMaxSize}
+	 */
+	public int getLdapPoolMaxSize() {
+		return ldapPoolMaxSize;
+	}
+
+	/**
+	 * @return the {@link #ldapPoolMaxWait}
+	 */
+	public long getLdapPoolMaxWait() {
+		return ldapPoolMaxWait;
+	}
+
+	/**
+	 * @return the {@link #ldapPoolMaxIdleTime}
+	 */
+	public long getLdapPoolMaxIdleTime() {
+		return ldapPoolMaxIdleTime;
+	}
+
+	/**
+	 * @return the {@link #groupBatchSize}
+	 */
+	public int getGroupBatchSize() {
+		return groupBatchSize;
+	}
+
+	/**
+	 * Sprawdzenie, czy wzorzec filtra grup użytkownika (np.
+	 * {@link #getRoleFilter(String[])} z argumentami {@code null}) dopasowuje
+	 * grupy wyłącznie po liście członków - każdy warunek z argumentem użytkownika
+	 * ma postać {@code (}{@link #getGroupMemberAttribute()}{@code ={0})} albo
+	 * {@code ={1})}, a filtr nie zawiera operatorów {@code |} ani {@code !}.
+	 * Tylko dla takiego filtra grupy wielu użytkowników mogą być wyszukiwane
+	 * partiami - członkostwo zagnieżdżone (np.
+	 * {@code member:1.2.840.113556.1.4.1941:=}) czy grupy domyślne AD nie są
+	 * widoczne na liście członków grupy.
+	 * 
+	 * @param filter
+	 *            wzorzec filtra z symbolami {@code {0}} (nazwa) i {@code {1}}
+	 *            (DN) użytkownika
+	 * @return czy filtr dopasowuje grupy po liście członków
+	 */
+	public boolean isMemberMatchFilter(String filter) {
+		if (StringUtils.isBlank(filter) || StringUtils.isBlank(groupMemberAttribute) || filter.indexOf('|') >= 0
+				|| filter.indexOf('!') >= 0) {
+			return false;
+		}
+		boolean memberMatch = false;
+		Matcher matcher = FILTER_ASSERTION.matcher(filter);
+		while (matcher.find()) {
+			String value = matcher.group(2);
+			if (value.indexOf('{') < 0) {
+				continue;
+			}
+			if (!groupMemberAttribute.equalsIgnoreCase(matcher.group(1).trim())
+					|| !("{0}".equals(value) || "{1}".equals(value))) {
+				return false;
+			}
+			memberMatch = true;
+		}
+		return memberMatch;
+	}
+
+	/**
+	 * @return the {@link #unitSearchParallelism}
+	 */
+	public int getUnitSearchParallelism() {
+		return unitSearchParallelism;
+	}
+
+	/**
+	 * @return the {@link #groupChangeAttribute}
+	 */
+	public String getGroupChangeAttribute() {
+		return groupChangeAttribute;
+	}
+
+	/**
+	 * @return the {@link #groupSweepPeriod}
+	 */
+	public long getGroupSweepPeriod() {
+		return groupSweepPeriod;
+	}
+
+	/**
+	 * Sprawdzenie, czy {@link #getProviderUrl()} wskazuje jeden serwer LDAP.
+	 * Lista adresów oddzielonych spacjami oznacza, że kolejne połączenia mogą
+	 * trafiać na różne serwery (kontrolery domeny), a wartości atrybutu
+	 * {@link #getGroupChangeAttribute()} (np. {@code uSNChanged} w AD) są
+	 * lokalne dla serwera - synchronizacja tylko grup zmienionych jest wtedy
+	 * wyłączona.
+	 * 
+	 * @return czy adres dostawcy wskazuje jeden serwer
+	 */
+	public boolean isSingleServer() {
+		return StringUtils.isNotBlank(providerUrl) && providerUrl.trim().indexOf(' ') < 0;
+	}
+
 	public String toXMLStr() {
 		OutputStream output = new OutputStream() {
 
@@ -25,7 +25,7 @@ import pl.slawas.common.ldap.api.ILdapUserGroup;
  * GroupCacheHashTable
  * 
  * @author Sławomir Cichy &lt;slawas@slawas.pl&gt;
- * @version $Revision: 1.1 $
+ * @version $Revision: 1.2 $
  * 
  */
 public class GroupCacheHashTable<G extends ILdapUserGroup> extends Hashtable<String, G> {
@@ -78,6 +78,16 @@ public class GroupCacheHashTable<G extends ILdapUserGroup> extends Hashtable<Str
 		return super.containsKey(((String) key).toUpperCase());
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Hashtable#remove(java.lang.Object)
+	 */
+	@Override
+	public synchronized G remove(Object key) {
+		return super.remove(((String) key).toUpperCase());
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 